@@ -6,10 +6,13 @@
 
 package com.qStivi.Adapters;
 
+import com.qStivi.formatting.ResponseFormatter;
+
 /**
  * The {@code Adapter} interface defines the contract for message communication.
  * Implementations of this interface are responsible for sending and receiving messages
  * through different mediums such as console, network, or other interfaces.
+ * Each adapter converts replies into its own dialect with a {@link ResponseFormatter}, and may show them while they are generated.
  */
 public interface Adapter {
 
@@ -26,4 +29,58 @@ public interface Adapter {
      * @return The received message as a {@code String}.
      */
     String receiveMessage();
+
+    /**
+     * Returns the name of the channel this adapter serves, which selects the scheduling weight of its users.
+     *
+     * @return The channel name.
+     */
+    default String channel() {
+        return "default";
+    }
+
+    /**
+     * Returns the formatter that converts the markdown of model output into the dialect of this adapter.
+     *
+     * @return The {@link ResponseFormatter}; by default, text is passed through unchanged.
+     */
+    default ResponseFormatter formatter() {
+        return ResponseFormatter.IDENTITY;
+    }
+
+    /**
+     * Returns whether this adapter can show a reply while it is being generated.
+     *
+     * @return {@code true} if {@link #sendPartial} and {@link #endMessage} are supported.
+     */
+    default boolean supportsStreaming() {
+        return false;
+    }
+
+    /**
+     * Returns whether this adapter delivers new messages while earlier ones are still being answered, like a chat
+     * platform does. Only such adapters can see a user split one thought over several messages.
+     *
+     * @return {@code true} if messages arrive independently of replies; by default, the next message is only
+     * received once the previous one is answered.
+     */
+    default boolean receivesAsynchronously() {
+        return false;
+    }
+
+    /**
+     * Sends the next part of a streamed reply.
+     *
+     * @param part The already formatted part.
+     * @throws UnsupportedOperationException If this adapter does not support streaming.
+     */
+    default void sendPartial(String part) {
+        throw new UnsupportedOperationException("Streaming is not supported by " + getClass().getSimpleName());
+    }
+
+    /**
+     * Ends a streamed reply.
+     */
+    default void endMessage() {
+    }
 }
\ No newline at end of file
@@ -6,6 +6,8 @@
 
 package com.qStivi.Adapters;
 
+import com.qStivi.formatting.PlainTextFormatter;
+import com.qStivi.formatting.ResponseFormatter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,11 +19,13 @@ import java.io.InputStreamReader;
  * The {@code ConsoleAdapter} class implements the {@link Adapter} interface to facilitate
  * message communication through the console. It handles sending messages by logging them
  * and receiving messages by reading input from the standard input stream.
+ * Replies are shown as plain text and streamed to the standard output while they are generated.
  */
 public class ConsoleAdapter implements Adapter {
 
     private static final int PASTE_TIMEOUT_MS = 500; // Adjust as needed
     private final Logger logger = LoggerFactory.getLogger(ConsoleAdapter.class);
+    private boolean replyStarted;
 
     /**
      * Receives a message from the console input.
@@ -70,4 +74,60 @@ public class ConsoleAdapter implements Adapter {
     public void sendMessage(String message) {
         logger.info("Bot: {}", message);
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the name of the console channel.
+     *
+     * @return {@code "console"}.
+     */
+    @Override
+    public String channel() {
+        return "console";
+    }
+
+    /**
+     * Returns the plain text formatter, since the console cannot render markdown.
+     *
+     * @return {@link PlainTextFormatter#INSTANCE}.
+     */
+    @Override
+    public ResponseFormatter formatter() {
+        return PlainTextFormatter.INSTANCE;
+    }
+
+    /**
+     * Returns that the console streams replies.
+     *
+     * @return {@code true}.
+     */
+    @Override
+    public boolean supportsStreaming() {
+        return true;
+    }
+
+    /**
+     * Prints the next part of a streamed reply to the standard output.
+     *
+     * @param part The already formatted part.
+     */
+    @Override
+    public void sendPartial(String part) {
+        if (!replyStarted) {
+            System.out.print("Bot: ");
+            replyStarted = true;
+        }
+        System.out.print(part);
+        System.out.flush();
+    }
+
+    /**
+     * Ends the streamed reply with a line break.
+     */
+    @Override
+    public void endMessage() {
+        if (replyStarted) {
+            System.out.println();
+            replyStarted = false;
+        }
+    }
+}
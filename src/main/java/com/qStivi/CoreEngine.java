@@ -6,15 +6,47 @@
 
 package com.qStivi;
 
+import com.qStivi.ingress.MessageDeduplicator;
+import com.qStivi.metrics.Metrics;
+import com.qStivi.metrics.Stage;
 import com.qStivi.openai.OpenAiException;
+import com.qStivi.scheduling.AdmissionController;
+import com.qStivi.scheduling.CancellationRegistry;
+import com.qStivi.scheduling.ConversationMailboxes;
+import com.qStivi.scheduling.FairScheduler;
+import com.qStivi.scheduling.RequestHandle;
+import com.qStivi.tracing.MessageEvent;
+import com.qStivi.tracing.RequestContext;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * The {@code CoreEngine} class serves as the central component of the application,
  * orchestrating the processing of messages received from various adapters.
+ * Messages submitted through {@link #submitMessage(String, String, String)} are queued in a
+ * {@link FairScheduler}, so that no single user can starve the others, and an {@link AdmissionController}
+ * sheds them with a fast degraded reply when the engine is overloaded. Messages that carry a platform id can be
+ * submitted through {@link #submitInbound}, which drops redeliveries with a {@link MessageDeduplicator}.
+ * With {@link ConversationMailboxes}, a user's next message is only scheduled once the previous one is answered,
+ * so the messages of one conversation are processed in order while different conversations run in parallel.
+ * Admission is decided before a message enters its user's mailbox, counting the messages already waiting there.
+ * With a {@link MessagePipeline}, submitted messages pass its stages instead of the scheduler, under the same admission.
+ * With a {@link CancellationRegistry}, a new message cancels the user's previous one if it is still in flight.
  */
 public class CoreEngine {
 
     private final MessageProcessor messageProcessor;
+    private final FairScheduler scheduler;
+    private final AdmissionController admission;
+    private final MessageDeduplicator deduplicator;
+    private final ConversationMailboxes mailboxes;
+    private final MessagePipeline pipeline;
+    private final CancellationRegistry cancellations;
 
     /**
      * Constructs a {@code CoreEngine} with the specified {@link MessageProcessor}.
@@ -22,11 +54,179 @@ public class CoreEngine {
      * @param messageProcessor The {@link MessageProcessor} used to handle incoming messages.
      */
     public CoreEngine(MessageProcessor messageProcessor) {
-        this.messageProcessor = messageProcessor;
+        this(builder(messageProcessor));
+    }
+
+    private CoreEngine(Builder builder) {
+        this.messageProcessor = builder.messageProcessor;
+        this.scheduler = builder.scheduler;
+        this.admission = builder.scheduler == null ? null : builder.admission;
+        this.deduplicator = builder.deduplicator;
+        this.mailboxes = builder.mailboxes;
+        this.pipeline = builder.pipeline;
+        this.cancellations = builder.cancellations;
+    }
+
+    /**
+     * Returns a builder for a {@code CoreEngine}. Without further options, submitted messages are processed on the
+     * caller's thread.
+     *
+     * @param messageProcessor The {@link MessageProcessor} used to handle incoming messages.
+     * @return A new {@link Builder}.
+     */
+    public static Builder builder(MessageProcessor messageProcessor) {
+        return new Builder(messageProcessor);
+    }
+
+    /**
+     * Submits a message delivered by a platform with its own id. If the platform delivered the same id before,
+     * the message is dropped without being queued or answered.
+     *
+     * @param messageId The platform's id of the message.
+     * @param input     The input message from the user.
+     * @param userId    The unique identifier of the user.
+     * @param channel   The channel or user tier that determines the user's weight.
+     * @param onDelta   The consumer of the parts of the response, or {@code null} to not stream.
+     * @return A future completed with the response, or with {@code null} if the message was a redelivery.
+     */
+    public CompletableFuture<String> submitInbound(String messageId, String input, String userId, String channel, Consumer<String> onDelta) {
+        if (deduplicator != null && deduplicator.isDuplicate(messageId)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return submitMessage(input, userId, channel, onDelta);
+    }
+
+    /**
+     * Cancels the message of a user that is still queued or being processed, because the user edited or deleted it.
+     * Its future completes exceptionally with a {@link CancellationException}.
+     *
+     * @param userId The unique identifier of the user.
+     * @return {@code true} if a message was in flight, {@code false} if there was nothing to cancel.
+     */
+    public boolean cancelMessage(String userId) {
+        return cancellations != null && cancellations.cancel(userId);
+    }
+
+    /**
+     * Processes a message delivered by a platform with its own id on the caller's thread.
+     * If the platform delivered the same id before, the message is dropped.
+     *
+     * @param messageId The platform's id of the message.
+     * @param input     The input message from the user.
+     * @param userId    The unique identifier of the user.
+     * @return The processed response, or {@code null} if the message was a redelivery.
+     * @throws OpenAiException If an error occurs during message processing.
+     */
+    public String processInbound(String messageId, String input, String userId) throws OpenAiException {
+        if (deduplicator != null && deduplicator.isDuplicate(messageId)) {
+            return null;
+        }
+        return processMessage(input, userId);
+    }
+
+    /**
+     * Submits a message for processing. The message waits in its user's queue and is processed when the
+     * user's fair share of the workers allows it. If the engine is overloaded, or the message waited too long,
+     * the future completes with a degraded reply instead.
+     *
+     * @param input   The input message from the user.
+     * @param userId  The unique identifier of the user.
+     * @param channel The channel or user tier that determines the user's weight.
+     * @return A future completed with the response, or exceptionally with the error of processing.
+     */
+    public CompletableFuture<String> submitMessage(String input, String userId, String channel) {
+        return submitMessage(input, userId, channel, null);
+    }
+
+    /**
+     * Submits a message for processing and passes the response to {@code onDelta} while it is being generated.
+     * Degraded replies are passed on in one part. The parts are delivered on the processing thread.
+     * If cancellation is enabled, the message supersedes the user's previous one: the previous message's upstream
+     * calls, task iterations and memory lookups are aborted and its future completes with a {@link CancellationException}.
+     *
+     * @param input   The input message from the user.
+     * @param userId  The unique identifier of the user.
+     * @param channel The channel or user tier that determines the user's weight.
+     * @param onDelta The consumer of the parts of the response, or {@code null} to not stream.
+     * @return A future completed with the complete response, or exceptionally with the error of processing.
+     */
+    public CompletableFuture<String> submitMessage(String input, String userId, String channel, Consumer<String> onDelta) {
+        if (cancellations == null) {
+            return dispatch(input, userId, channel, onDelta, null);
+        }
+        RequestHandle handle = cancellations.supersede(userId);
+        return dispatch(input, userId, channel, onDelta, handle).whenComplete((response, error) -> cancellations.finish(handle));
+    }
+
+    /**
+     * Hands a message to the pipeline, the scheduler or the caller's thread.
+     *
+     * @param input   The input message from the user.
+     * @param userId  The unique identifier of the user.
+     * @param channel The channel or user tier that determines the user's weight.
+     * @param onDelta The consumer of the parts of the response, or {@code null} to not stream.
+     * @param handle  The {@link RequestHandle} that cancels the message, or {@code null} if it cannot be cancelled.
+     * @return A future completed with the complete response, or exceptionally with the error of processing.
+     */
+    private CompletableFuture<String> dispatch(String input, String userId, String channel, Consumer<String> onDelta, RequestHandle handle) {
+        if (pipeline != null) {
+            if (admission == null) {
+                return schedule(userId, () -> pipeline.submit(input, userId, onDelta, handle)
+                        .exceptionallyCompose(error -> shed(error, input, userId, onDelta, handle)));
+            }
+            AdmissionController.Verdict verdict = admission.admit(userId);
+            if (verdict != AdmissionController.Verdict.ADMITTED) {
+                return CompletableFuture.completedFuture(deliver(admission.degrade(input, userId, verdict), onDelta));
+            }
+
+            long deadline = admission.deadline();
+            return schedule(userId, () -> {
+                if (admission.expired(deadline)) {
+                    return CompletableFuture.completedFuture(deliver(admission.degrade(input, userId, AdmissionController.Verdict.DEADLINE_EXCEEDED), onDelta));
+                }
+                long start = System.nanoTime();
+                return pipeline.submit(input, userId, onDelta, handle)
+                        .thenApply(response -> {
+                            admission.completed(input, userId, response, System.nanoTime() - start);
+                            return response;
+                        })
+                        .exceptionallyCompose(error -> shed(error, input, userId, onDelta, handle));
+            });
+        }
+        if (scheduler == null) {
+            if (mailboxes != null) {
+                return mailboxes.submit(userId, () -> process(input, userId, onDelta, handle));
+            }
+            try {
+                return CompletableFuture.completedFuture(process(input, userId, onDelta, handle));
+            } catch (OpenAiException | RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        if (admission == null) {
+            return schedule(userId, () -> scheduler.submit(userId, channel, input, () -> process(input, userId, onDelta, handle)));
+        }
+
+        AdmissionController.Verdict verdict = admission.admit(userId);
+        if (verdict != AdmissionController.Verdict.ADMITTED) {
+            return CompletableFuture.completedFuture(deliver(admission.degrade(input, userId, verdict), onDelta));
+        }
+
+        long deadline = admission.deadline();
+        return schedule(userId, () -> scheduler.submit(userId, channel, input, () -> {
+            if (admission.expired(deadline)) {
+                return deliver(admission.degrade(input, userId, AdmissionController.Verdict.DEADLINE_EXCEEDED), onDelta);
+            }
+            long start = System.nanoTime();
+            String response = process(input, userId, onDelta, handle);
+            admission.completed(input, userId, response, System.nanoTime() - start);
+            return response;
+        }));
     }
 
     /**
      * Processes an incoming message from a user and generates a response.
+     * Each message gets its own {@link RequestContext}, which tags all logging and JFR events of the request.
      *
      * @param input  The input message from the user.
      * @param userId The unique identifier of the user.
@@ -34,6 +234,221 @@ public class CoreEngine {
      * @throws OpenAiException If an error occurs during message processing.
      */
     public String processMessage(String input, String userId) throws OpenAiException {
-        return messageProcessor.process(input, userId);
+        return processMessage(input, userId, null);
+    }
+
+    /**
+     * Processes an incoming message from a user and passes the response to {@code onDelta} while it is being generated.
+     *
+     * @param input   The input message from the user.
+     * @param userId  The unique identifier of the user.
+     * @param onDelta The consumer of the parts of the response, or {@code null} to not stream.
+     * @return The complete response as a {@code String}.
+     * @throws OpenAiException If an error occurs during message processing.
+     */
+    public String processMessage(String input, String userId, Consumer<String> onDelta) throws OpenAiException {
+        long start = System.nanoTime();
+        var event = new MessageEvent();
+        event.begin();
+        try (var scope = RequestContext.open(userId)) {
+            event.requestId = scope.context().requestId();
+            event.userId = userId;
+            event.inputLength = input == null ? 0 : input.length();
+
+            var response = messageProcessor.process(input, userId, onDelta);
+            event.success = true;
+            return response;
+        } catch (OpenAiException | RuntimeException e) {
+            Metrics.get().recordError(Stage.CORE_ENGINE);
+            throw e;
+        } finally {
+            event.commit();
+            Metrics.get().recordSince(Stage.CORE_ENGINE, start);
+        }
+    }
+
+    /**
+     * Processes a submitted message through {@link #processMessage(String, String)} unless it is streamed,
+     * so that overriding the plain variant still affects submitted messages.
+     * A cancellable message is skipped if it was superseded while queued, and any failure after its cancellation
+     * is reported as the cancellation.
+     *
+     * @param input   The input message from the user.
+     * @param userId  The unique identifier of the user.
+     * @param onDelta The consumer of the parts of the response, or {@code null} to not stream.
+     * @param handle  The {@link RequestHandle} that cancels the message, or {@code null} if it cannot be cancelled.
+     * @return The complete response as a {@code String}.
+     * @throws OpenAiException If an error occurs during message processing.
+     */
+    private String process(String input, String userId, Consumer<String> onDelta, RequestHandle handle) throws OpenAiException {
+        if (handle == null) {
+            return onDelta == null ? processMessage(input, userId) : processMessage(input, userId, onDelta);
+        }
+        handle.check();
+        try (var ignored = handle.bind()) {
+            return onDelta == null ? processMessage(input, userId) : processMessage(input, userId, onDelta);
+        } catch (OpenAiException | RuntimeException e) {
+            if (handle.isCancelled()) {
+                throw cancelled(handle, e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Hands a message to the scheduler, through the user's mailbox if messages are ordered.
+     * The mailbox waits on a virtual thread, so no scheduler worker is blocked by a user's earlier message.
+     *
+     * @param userId   The unique identifier of the user.
+     * @param dispatch The action that submits the message to the scheduler.
+     * @return A future completed like the scheduled message.
+     */
+    private CompletableFuture<String> schedule(String userId, Supplier<CompletableFuture<String>> dispatch) {
+        return mailboxes == null ? dispatch.get() : mailboxes.submitAsync(userId, dispatch);
+    }
+
+    /**
+     * Answers a message the pipeline rejected with a degraded reply, if admission control is enabled.
+     *
+     * @param error   The error of the pipeline.
+     * @param input   The input message from the user.
+     * @param userId  The unique identifier of the user.
+     * @param onDelta The consumer of the parts of the response, or {@code null} to not stream.
+     * @param handle  The {@link RequestHandle} that cancels the message, or {@code null} if it cannot be cancelled.
+     * @return A future completed with the degraded reply, or exceptionally with the error.
+     */
+    private CompletableFuture<String> shed(Throwable error, String input, String userId, Consumer<String> onDelta, RequestHandle handle) {
+        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+        if (handle != null && handle.isCancelled()) {
+            return CompletableFuture.failedFuture(cancelled(handle, cause));
+        }
+        if (admission != null && cause instanceof RejectedExecutionException) {
+            return CompletableFuture.completedFuture(deliver(admission.degrade(input, userId, AdmissionController.Verdict.QUEUE_FULL), onDelta));
+        }
+        return CompletableFuture.failedFuture(cause);
+    }
+
+    /**
+     * Returns the exception that reports a cancelled message.
+     *
+     * @param handle The {@link RequestHandle} of the message.
+     * @param error  The failure caused by the cancellation, such as an interrupted HTTP call.
+     * @return The {@link CancellationException}.
+     */
+    private static CancellationException cancelled(RequestHandle handle, Throwable error) {
+        if (error instanceof CancellationException cancellation) {
+            return cancellation;
+        }
+        var cancellation = new CancellationException("Message of user " + handle.conversation() + " was superseded");
+        cancellation.initCause(error);
+        return cancellation;
+    }
+
+    /**
+     * Passes a reply that was not streamed to the consumer of a streamed reply.
+     *
+     * @param response The reply.
+     * @param onDelta  The consumer of the parts of the response, or {@code null} if the reply is not streamed.
+     * @return The reply.
+     */
+    private static String deliver(String response, Consumer<String> onDelta) {
+        if (onDelta != null) {
+            onDelta.accept(response);
+        }
+        return response;
+    }
+
+    /**
+     * Builds a {@link CoreEngine} from its {@link MessageProcessor} and the optional components that schedule,
+     * guard and order the submitted messages.
+     */
+    public static final class Builder {
+
+        private final MessageProcessor messageProcessor;
+        private FairScheduler scheduler;
+        private AdmissionController admission;
+        private MessageDeduplicator deduplicator;
+        private ConversationMailboxes mailboxes;
+        private MessagePipeline pipeline;
+        private CancellationRegistry cancellations;
+
+        private Builder(MessageProcessor messageProcessor) {
+            this.messageProcessor = messageProcessor;
+        }
+
+        /**
+         * Schedules submitted messages fairly between users.
+         *
+         * @param scheduler The {@link FairScheduler} for submitted messages, or {@code null} to process them on the caller's thread.
+         * @return This builder.
+         */
+        public Builder scheduler(FairScheduler scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * Sheds submitted messages under overload. Only applies together with a {@link #scheduler}.
+         *
+         * @param admission The {@link AdmissionController} guarding the scheduler or pipeline, or {@code null} to admit every message.
+         * @return This builder.
+         */
+        public Builder admission(AdmissionController admission) {
+            this.admission = admission;
+            return this;
+        }
+
+        /**
+         * Drops redelivered inbound messages.
+         *
+         * @param deduplicator The {@link MessageDeduplicator} for inbound message ids, or {@code null} to process every delivery.
+         * @return This builder.
+         */
+        public Builder deduplicator(MessageDeduplicator deduplicator) {
+            this.deduplicator = deduplicator;
+            return this;
+        }
+
+        /**
+         * Processes the messages of each conversation in order.
+         *
+         * @param mailboxes The {@link ConversationMailboxes} ordering submitted messages per user, or {@code null} to not order them.
+         * @return This builder.
+         */
+        public Builder mailboxes(ConversationMailboxes mailboxes) {
+            this.mailboxes = mailboxes;
+            return this;
+        }
+
+        /**
+         * Passes submitted messages through a staged pipeline instead of the scheduler.
+         *
+         * @param pipeline The {@link MessagePipeline} for submitted messages, or {@code null} to use the scheduler.
+         * @return This builder.
+         */
+        public Builder pipeline(MessagePipeline pipeline) {
+            this.pipeline = pipeline;
+            return this;
+        }
+
+        /**
+         * Cancels a message when the same user submits a newer one.
+         *
+         * @param cancellations The {@link CancellationRegistry} of in-flight messages, or {@code null} to let superseded messages finish.
+         * @return This builder.
+         */
+        public Builder cancellations(CancellationRegistry cancellations) {
+            this.cancellations = cancellations;
+            return this;
+        }
+
+        /**
+         * Constructs the engine.
+         *
+         * @return A new {@link CoreEngine}.
+         */
+        public CoreEngine build() {
+            return new CoreEngine(this);
+        }
     }
 }
\ No newline at end of file
@@ -7,13 +7,43 @@
 package com.qStivi;
 
 import com.qStivi.Adapters.ConsoleAdapter;
+import com.qStivi.batch.BatchRunner;
 import com.qStivi.config.Config;
-import com.qStivi.config.ConfigKeys;
-import com.qStivi.openai.OpenAiClient;
+import com.qStivi.config.ConfigSnapshot;
+import com.qStivi.formatting.StreamingReply;
+import com.qStivi.ingress.BurstAggregator;
+import com.qStivi.ingress.MessageDeduplicator;
+import com.qStivi.logging.LogPayload;
+import com.qStivi.logging.LogSampler;
+import com.qStivi.memory.DocumentIngestor;
+import com.qStivi.memory.HashingEmbedder;
+import com.qStivi.memory.MemoryIndex;
+import com.qStivi.memory.TieredMemoryCache;
+import com.qStivi.metrics.Metrics;
+import com.qStivi.metrics.PrometheusExporter;
 import com.qStivi.openai.OpenAiException;
+import com.qStivi.openai.ConversationCompactor;
+import com.qStivi.openai.OpenAiSessions;
+import com.qStivi.openai.OpenAiTransport;
+import com.qStivi.persistence.ConversationJournal;
+import com.qStivi.persistence.MemoryIndexStore;
+import com.qStivi.scheduling.AdmissionController;
+import com.qStivi.scheduling.CancellationRegistry;
+import com.qStivi.scheduling.ConversationMailboxes;
+import com.qStivi.scheduling.FairScheduler;
+import com.qStivi.tools.ToolExecutor;
+import com.qStivi.tokenizer.Tokenizers;
+import com.qStivi.tools.ToolRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Deque;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * The {@code Main} class serves as the entry point for the qGPT application.
  * It initializes the configuration, sets up the core engine, and manages the main interaction loop.
@@ -22,10 +52,14 @@ public class Main {
 
     public static Config config;
 
+    private static final Deque<AutoCloseable> resources = new ConcurrentLinkedDeque<>();
+    private static final AtomicBoolean shutDown = new AtomicBoolean();
+
     /**
      * The main method that starts the application.
      *
-     * @param args Command-line arguments (not used).
+     * @param args Command-line arguments. {@code --batch <input> <output> [--parallelism <n>] [--unordered]}
+     *             processes a JSONL prompt file instead of starting the interactive loop.
      * @throws OpenAiException If an error occurs during message processing.
      */
     public static void main(String[] args) throws OpenAiException {
@@ -35,11 +69,66 @@ public class Main {
         // The first log message HAS to happen AFTER the log level is set.
         Logger logger = LoggerFactory.getLogger(Main.class);
         logger.info("Starting...");
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> shutdown(logger), "qgpt-shutdown"));
+        try {
+            run(args, logger);
+        } finally {
+            // Also on failure: the JVM does not exit while non-daemon threads, such as the metrics server's, still run
+            shutdown(logger);
+        }
+    }
 
+    /**
+     * Sets up the components and runs the batch mode or the interactive loop until the user exits.
+     *
+     * @param args   The command-line arguments of {@link #main(String[])}.
+     * @param logger The logger used to report progress and failures.
+     * @throws OpenAiException If an error occurs during message processing.
+     */
+    private static void run(String[] args, Logger logger) throws OpenAiException {
         config = new Config("config.properties", new ConsoleAdapter());
-        var core = new CoreEngine(new MessageProcessor(new TaskManager(new MemoryManager()),
-                new OpenAiClient(config.getConfiguration().getString(ConfigKeys.OPENAI_KEY))));
+        applyLogging(config.snapshot());
+        config.addListener(Main::applyLogging);
+        watchConfig(logger);
+        startMetrics(logger);
+        // Vocabularies that are not on the classpath are downloaded once and counted exactly from then on
+        Tokenizers.configure(Path.of("data/tokenizer"), true);
+        var journal = register(openJournal(logger));
+        var transport = register(new OpenAiTransport(config.snapshot().transport()));
+        transport.prewarm();
+        var service = transport.service(config.snapshot().openAi().apiKey(), config.snapshot().openAi().timeout());
+        var compactor = register(new ConversationCompactor(service, config::snapshot));
+        var tools = register(new ToolExecutor(new ToolRegistry(), config::snapshot));
+        var sessions = new OpenAiSessions(service, config::snapshot, journal, compactor, tools);
+        var scheduler = register(new FairScheduler(config::snapshot));
+        var memoryIndex = new MemoryIndex(config.snapshot().ingest().embeddingDimensions());
+        register(openIndexStore(memoryIndex, logger));
+        var memoryManager = new MemoryManager(openMemoryCache(logger), newIngestor(memoryIndex));
+        startIngestion(memoryManager, logger);
+        var processor = new MessageProcessor(new TaskManager(memoryManager, tools), sessions::get, config::snapshot, memoryManager);
+
+        if (args.length > 0 && args[0].equals("--batch")) {
+            // Batch jobs are throttled by their own parallelism; shedding would record busy replies as results
+            runBatch(args, CoreEngine.builder(processor).scheduler(scheduler).build(), sessions, logger);
+            return;
+        }
+
+        var pipeline = register(config.snapshot().pipeline().enabled() ? new MessagePipeline(processor, config.snapshot().pipeline()) : null);
+        // Closed before the pipeline, so messages already in a mailbox can still enter it
+        var mailboxes = register(new ConversationMailboxes());
+        // Adapters with platform message ids submit through submitInbound, which drops redeliveries while dedup.enabled is set
+        var core = CoreEngine.builder(processor)
+                .scheduler(scheduler)
+                .admission(new AdmissionController(config::snapshot, pipeline != null ? pipeline : scheduler, mailboxes))
+                .deduplicator(new MessageDeduplicator(config::snapshot))
+                .mailboxes(mailboxes)
+                .pipeline(pipeline)
+                .cancellations(new CancellationRegistry())
+                .build();
         var adapter = new ConsoleAdapter();
+        // Bursts only form when messages arrive while earlier ones are answered; otherwise every message waits the quiet window for nothing
+        var bursts = register(adapter.receivesAsynchronously() ? new BurstAggregator(config::snapshot, core::submitMessage) : null);
+        BurstAggregator.Sender sender = bursts == null ? core::submitMessage : bursts::submit;
 
         config.getConfiguration().getProperty("openai.token");
 
@@ -53,8 +142,240 @@ public class Main {
             }
 
             var userId = "1234";
-            var response = core.processMessage(input, userId);
-            adapter.sendMessage(response);
+            try {
+                if (adapter.supportsStreaming()) {
+                    var reply = new StreamingReply(adapter);
+                    sender.submit(input, userId, adapter.channel(), reply).join();
+                    reply.finish();
+                } else {
+                    var response = sender.submit(input, userId, adapter.channel(), null).join();
+                    if (response != null) {
+                        adapter.sendMessage(adapter.formatter().format(response));
+                    }
+                }
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof OpenAiException openAiException) {
+                    throw openAiException;
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Runs the batch mode with the given command-line arguments.
+     *
+     * @param args     The command-line arguments, starting with {@code --batch}.
+     * @param core     The {@link CoreEngine} that answers the prompts.
+     * @param sessions The {@link OpenAiSessions} of the engine, which hold prompts without a user only while they run.
+     * @param logger   The logger used to report failures.
+     */
+    private static void runBatch(String[] args, CoreEngine core, OpenAiSessions sessions, Logger logger) {
+        if (args.length < 3) {
+            logger.error("Usage: --batch <input> <output> [--parallelism <n>] [--unordered]");
+            return;
+        }
+
+        int parallelism = config.snapshot().models().fastMaxConcurrent();
+        boolean ordered = true;
+        for (int i = 3; i < args.length; i++) {
+            switch (args[i]) {
+                case "--parallelism" -> parallelism = Integer.parseInt(args[++i]);
+                case "--unordered" -> ordered = false;
+                default -> logger.warn("Ignoring unknown batch option {}", args[i]);
+            }
+        }
+
+        try {
+            new BatchRunner(core, parallelism, ordered, sessions).run(Path.of(args[1]), Path.of(args[2]));
+        } catch (IOException e) {
+            logger.error("Batch failed, rerun to resume from the checkpoint", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Batch interrupted, rerun to resume from the checkpoint");
+        }
+    }
+
+    /**
+     * Registers a component to be closed by {@link #shutdown(Logger)}.
+     *
+     * @param resource The component, or {@code null} if it is disabled.
+     * @param <T>      The type of the component.
+     * @return The component.
+     */
+    private static <T extends AutoCloseable> T register(T resource) {
+        if (resource != null) {
+            resources.push(resource);
+        }
+        return resource;
+    }
+
+    /**
+     * Closes the registered components in the reverse order of their registration, so each one is closed before
+     * the components it uses. Only the first call closes them, whether it comes from the end of {@link #main(String[])}
+     * or the shutdown hook.
+     *
+     * @param logger The logger used to report failures.
+     */
+    private static void shutdown(Logger logger) {
+        if (!shutDown.compareAndSet(false, true)) {
+            return;
+        }
+        AutoCloseable resource;
+        while ((resource = resources.poll()) != null) {
+            try {
+                resource.close();
+            } catch (Exception e) {
+                logger.error("Failed to close {}", resource.getClass().getSimpleName(), e);
+            }
+        }
+    }
+
+    /**
+     * Opens the conversation journal if persistence is enabled.
+     *
+     * @param logger The logger used to report failures.
+     * @return The opened {@link ConversationJournal}, or {@code null} if conversations are kept in memory only.
+     */
+    private static ConversationJournal openJournal(Logger logger) {
+        var settings = config.snapshot().journal();
+        if (!settings.enabled()) {
+            logger.info("Conversation journal disabled");
+            return null;
+        }
+
+        try {
+            return new ConversationJournal(Path.of(settings.directory()), settings.fsync(),
+                    settings.snapshotEveryRecords(), settings.snapshotInterval());
+        } catch (IOException e) {
+            logger.error("Failed to open conversation journal, conversations will not be persisted", e);
+            return null;
+        }
+    }
+
+    /**
+     * Creates the memory cache if it is enabled.
+     *
+     * @param logger The logger used to report failures.
+     * @return The {@link TieredMemoryCache}, or {@code null} if memory lookups are not cached.
+     */
+    private static TieredMemoryCache openMemoryCache(Logger logger) {
+        var settings = config.snapshot().memory();
+        if (!settings.cacheEnabled()) {
+            logger.info("Memory cache disabled");
+            return null;
+        }
+        if (!settings.warmEnabled()) {
+            return new TieredMemoryCache(settings.hotEntries());
+        }
+
+        try {
+            return new TieredMemoryCache(settings.hotEntries(), Path.of(settings.warmDirectory()), settings.warmMaxEntries(), settings.warmMaxAge());
+        } catch (IOException e) {
+            logger.error("Failed to open memory disk cache, caching in memory only", e);
+            return new TieredMemoryCache(settings.hotEntries());
+        }
+    }
+
+    /**
+     * Restores the memory index from disk and persists it from now on, if this is enabled.
+     *
+     * @param index  The empty {@link MemoryIndex}.
+     * @param logger The logger used to report failures.
+     * @return The opened {@link MemoryIndexStore}, or {@code null} if the index is kept in memory only.
+     */
+    private static MemoryIndexStore openIndexStore(MemoryIndex index, Logger logger) {
+        var settings = config.snapshot().ingest();
+        if (!settings.persist()) {
+            return null;
+        }
+
+        try {
+            return new MemoryIndexStore(Path.of(settings.directory()), index, config.snapshot().journal().fsync(),
+                    settings.snapshotEveryChunks(), settings.snapshotInterval(), settings.maxSegments());
+        } catch (IOException e) {
+            logger.error("Failed to open memory index store, documents will be ingested again on every start", e);
+            return null;
+        }
+    }
+
+    /**
+     * Creates the document ingestor of public memory.
+     *
+     * @param index The {@link MemoryIndex} that receives the documents.
+     * @return The {@link DocumentIngestor}.
+     */
+    private static DocumentIngestor newIngestor(MemoryIndex index) {
+        var snapshot = config.snapshot();
+        return new DocumentIngestor(snapshot.ingest(), new HashingEmbedder(snapshot.ingest().embeddingDimensions()),
+                index, Tokenizers.forModel(snapshot.openAi().modelName()));
+    }
+
+    /**
+     * Ingests the configured documents in the background, so the bot answers from placeholder memory until they are indexed.
+     *
+     * @param memoryManager The {@link MemoryManager} to ingest into.
+     * @param logger        The logger used to report progress.
+     */
+    private static void startIngestion(MemoryManager memoryManager, Logger logger) {
+        var paths = config.snapshot().ingest().paths().stream().map(Path::of).toList();
+        if (paths.isEmpty()) {
+            return;
+        }
+
+        Thread.ofVirtual().name("document-ingest").start(() -> {
+            try {
+                memoryManager.ingest(paths, progress -> logger.debug("Ingested {}/{} documents, {} chunks",
+                        progress.filesRead(), progress.filesTotal(), progress.chunksIndexed()));
+            } catch (IOException | RuntimeException e) {
+                logger.error("Failed to ingest documents", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    /**
+     * Applies the logging settings of a configuration snapshot.
+     *
+     * @param snapshot The {@link ConfigSnapshot} to apply.
+     */
+    private static void applyLogging(ConfigSnapshot snapshot) {
+        LogPayload.setMaxChars(snapshot.logging().payloadMaxChars());
+        LogSampler.setSampleEvery(snapshot.logging().messageSampleEvery());
+    }
+
+    /**
+     * Starts watching the configuration file so that changes apply without a restart.
+     *
+     * @param logger The logger used to report failures.
+     */
+    private static void watchConfig(Logger logger) {
+        try {
+            config.startWatching();
+        } catch (IOException e) {
+            logger.error("Failed to watch configuration file, changes require a restart", e);
+        }
+    }
+
+    /**
+     * Registers the metrics MBean and starts the Prometheus endpoint if a port is configured.
+     *
+     * @param logger The logger used to report failures.
+     */
+    private static void startMetrics(Logger logger) {
+        Metrics.get().registerMBean();
+
+        int port = config.snapshot().metricsPort();
+        if (port <= 0) {
+            logger.info("Prometheus endpoint disabled");
+            return;
+        }
+
+        try {
+            register(new PrometheusExporter(Metrics.get(), port));
+        } catch (IOException e) {
+            logger.error("Failed to start Prometheus endpoint on port {}", port, e);
         }
     }
 }
\ No newline at end of file
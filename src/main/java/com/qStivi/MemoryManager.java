@@ -6,16 +6,69 @@
 
 package com.qStivi;
 
+import com.qStivi.logging.LogPayload;
+import com.qStivi.memory.DocumentIngestor;
+import com.qStivi.memory.IngestProgress;
+import com.qStivi.memory.NearDuplicateDetector;
+import com.qStivi.memory.TieredMemoryCache;
+import com.qStivi.metrics.Metrics;
+import com.qStivi.metrics.Stage;
+import com.qStivi.prompt.Snippet;
+import com.qStivi.tracing.MemoryRetrievalEvent;
+import com.qStivi.tracing.RequestContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
 /**
  * The {@code MemoryManager} class handles retrieval of both public and private memory.
  * It serves as an interface to access stored data relevant to user interactions.
+ * <p>
+ * Lookups can be started speculatively with {@link #prefetch}; while the returned {@link MemoryPrefetch} is
+ * attached to the current {@link RequestContext}, matching retrievals reuse its results instead of looking up again.
+ * If a {@link TieredMemoryCache} is configured, lookups are answered from it and only misses reach the storage.
+ * If a {@link DocumentIngestor} is configured, public memory is recalled from the documents it ingested,
+ * leaving out chunks that nearly repeat a better match.
  */
 public class MemoryManager {
 
     private static final Logger logger = LoggerFactory.getLogger(MemoryManager.class);
+    private static final int RECALLED_CHUNKS = 3;
+
+    private final TieredMemoryCache cache;
+    private final DocumentIngestor ingestor;
+
+    /**
+     * Constructs a {@code MemoryManager} that looks up every retrieval in the storage.
+     */
+    public MemoryManager() {
+        this(null);
+    }
+
+    /**
+     * Constructs a {@code MemoryManager} that caches retrievals.
+     *
+     * @param cache The {@link TieredMemoryCache} in front of the storage, or {@code null} to not cache.
+     */
+    public MemoryManager(TieredMemoryCache cache) {
+        this(cache, null);
+    }
+
+    /**
+     * Constructs a {@code MemoryManager} that caches retrievals and recalls public memory from ingested documents.
+     *
+     * @param cache    The {@link TieredMemoryCache} in front of the storage, or {@code null} to not cache.
+     * @param ingestor The {@link DocumentIngestor} holding the documents, or {@code null} if none are ingested.
+     */
+    public MemoryManager(TieredMemoryCache cache, DocumentIngestor ingestor) {
+        this.cache = cache;
+        this.ingestor = ingestor;
+    }
 
     /**
      * Retrieves public memory based on the provided input.
@@ -24,9 +77,9 @@ public class MemoryManager {
      * @return A {@code String} representing the retrieved public memory.
      */
     public String retrievePublicMemory(String input) {
-        // Logic to fetch public memory
-        logger.info("Retrieving public memory for: {}", input);
-        return "Public memory for: " + input;
+        MemoryPrefetch prefetch = MemoryPrefetch.current();
+        String prefetched = prefetch == null ? null : prefetch.publicMemory(input);
+        return prefetched != null ? prefetched : lookupPublicMemory(input);
     }
 
     /**
@@ -37,8 +90,174 @@ public class MemoryManager {
      * @return A {@code String} representing the retrieved private memory for the user.
      */
     public String retrievePrivateMemory(String userId, String input) {
+        MemoryPrefetch prefetch = MemoryPrefetch.current();
+        String prefetched = prefetch == null ? null : prefetch.privateMemory(userId, input);
+        return prefetched != null ? prefetched : lookupPrivateMemory(userId, input);
+    }
+
+    /**
+     * Recalls the memory snippets most relevant to a message, to be ranked and packed by a
+     * {@link com.qStivi.prompt.PromptAssembler}. Only ingested documents are scored by relevance so far,
+     * so the placeholder memory of {@link #retrievePublicMemory} and {@link #retrievePrivateMemory} is not recalled.
+     *
+     * @param input  The message.
+     * @param userId The ID of the user who sent the message.
+     * @param limit  The maximum number of snippets.
+     * @return The snippets, most relevant first; empty if no documents are ingested.
+     */
+    public List<Snippet> recall(String input, String userId, int limit) {
+        if (ingestor == null || ingestor.index().size() == 0) {
+            return List.of();
+        }
+        logger.debug("Recalling memory for user {}", userId);
+        return ingestor.search(input, limit).stream()
+                .map(match -> new Snippet(match.chunk().text(), Snippet.Scope.PUBLIC,
+                        match.chunk().source() + "@" + match.chunk().offset(), match.score(), null))
+                .toList();
+    }
+
+    /**
+     * Starts the lookups a message's memory task could make in the background and attaches them to the
+     * current {@link RequestContext}, so they overlap with routing instead of following it.
+     *
+     * @param input  The message the lookups are for.
+     * @param userId The ID of the user who sent the message.
+     * @return The started {@link MemoryPrefetch}; {@link MemoryPrefetch#close() close} it when the request is done.
+     */
+    public MemoryPrefetch prefetch(String input, String userId) {
+        return MemoryPrefetch.start(this, input, userId);
+    }
+
+    /**
+     * Ingests documents into public memory and drops the cached public memory afterwards.
+     *
+     * @param roots    The files and directories to ingest.
+     * @param progress The consumer of progress reports.
+     * @return The final progress.
+     * @throws IOException           If a directory cannot be walked.
+     * @throws InterruptedException  If the thread is interrupted while ingesting.
+     * @throws IllegalStateException If no {@link DocumentIngestor} is configured.
+     */
+    public IngestProgress ingest(List<Path> roots, Consumer<IngestProgress> progress) throws IOException, InterruptedException {
+        if (ingestor == null) {
+            throw new IllegalStateException("No document ingestor configured");
+        }
+        try {
+            return ingestor.ingest(roots, progress);
+        } finally {
+            invalidatePublicMemory();
+        }
+    }
+
+    /**
+     * Drops the cached public memory. Call it whenever public memory is written.
+     */
+    public void invalidatePublicMemory() {
+        if (cache != null) {
+            cache.invalidate(TieredMemoryCache.PUBLIC_OWNER);
+        }
+    }
+
+    /**
+     * Drops the cached private memory of a user. Call it whenever the user's memory is written.
+     *
+     * @param userId The unique identifier of the user.
+     */
+    public void invalidatePrivateMemory(String userId) {
+        if (cache != null) {
+            cache.invalidate(userId);
+        }
+    }
+
+    /**
+     * Looks up public memory, bypassing any prefetched result.
+     *
+     * @param input The input used to fetch relevant public memory.
+     * @return A {@code String} representing the retrieved public memory.
+     */
+    String lookupPublicMemory(String input) {
+        // Logic to fetch public memory
+        logger.info("Retrieving public memory for: {}", LogPayload.of(input));
+        long start = System.nanoTime();
+        var event = new MemoryRetrievalEvent();
+        event.begin();
+        String result = null;
+        try {
+            result = cache == null ? loadPublicMemory(input) : cache.get(TieredMemoryCache.PUBLIC_OWNER, input, () -> loadPublicMemory(input));
+            return result;
+        } finally {
+            Metrics.get().recordSince(Stage.MEMORY_PUBLIC, start);
+            commit(event, "public", result);
+        }
+    }
+
+    /**
+     * Looks up private memory, bypassing any prefetched result.
+     *
+     * @param userId The unique identifier of the user.
+     * @param input  The input used to fetch relevant private memory.
+     * @return A {@code String} representing the retrieved private memory for the user.
+     */
+    String lookupPrivateMemory(String userId, String input) {
         // Logic to fetch private memory for a user
         logger.info("Retrieving private memory for user: {}", userId);
+        long start = System.nanoTime();
+        var event = new MemoryRetrievalEvent();
+        event.begin();
+        String result = null;
+        try {
+            result = cache == null ? loadPrivateMemory(userId, input) : cache.get(userId, input, () -> loadPrivateMemory(userId, input));
+            return result;
+        } finally {
+            Metrics.get().recordSince(Stage.MEMORY_PRIVATE, start);
+            commit(event, "private", result);
+        }
+    }
+
+    /**
+     * Loads public memory from the storage.
+     *
+     * @param input The input used to fetch relevant public memory.
+     * @return The stored public memory.
+     */
+    private String loadPublicMemory(String input) {
+        if (ingestor == null || ingestor.index().size() == 0) {
+            return "Public memory for: " + input;
+        }
+        // Search for more chunks than needed, so near-duplicates do not crowd out distinct ones
+        List<String> texts = ingestor.search(input, RECALLED_CHUNKS * 3).stream()
+                .map(match -> match.chunk().text())
+                .toList();
+        return NearDuplicateDetector.distinct(texts).stream()
+                .limit(RECALLED_CHUNKS)
+                .collect(Collectors.joining("\n---\n"));
+    }
+
+    /**
+     * Loads private memory of a user from the storage.
+     *
+     * @param userId The unique identifier of the user.
+     * @param input  The input used to fetch relevant private memory.
+     * @return The stored private memory.
+     */
+    private static String loadPrivateMemory(String userId, String input) {
         return "Private memory for user " + userId + ": " + input;
     }
+
+    /**
+     * Completes a {@link MemoryRetrievalEvent} with the attributes of the lookup.
+     *
+     * @param event  The started event.
+     * @param scope  The memory scope, either {@code "public"} or {@code "private"}.
+     * @param result The retrieved memory, or {@code null} if the lookup failed.
+     */
+    private static void commit(MemoryRetrievalEvent event, String scope, String result) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.requestId = RequestContext.currentId();
+            event.scope = scope;
+            event.resultLength = result == null ? -1 : result.length();
+            event.commit();
+        }
+    }
 }
\ No newline at end of file
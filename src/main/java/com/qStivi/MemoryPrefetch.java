@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi;
+
+import com.qStivi.metrics.Metrics;
+import com.qStivi.scheduling.RequestHandle;
+import com.qStivi.tracing.RequestContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The {@code MemoryPrefetch} class holds the speculative memory lookups of one request.
+ * The lookups the message's memory task could make start on virtual threads as soon as the message arrives;
+ * a message that cannot reach the memory task, or only its public branch, starts fewer or none. A retrieval for the
+ * same input waits for the running lookup instead of starting a second one, so a memory-backed reply costs the
+ * longer of retrieval and routing rather than their sum. Lookups nobody asked for are interrupted on {@link #close()},
+ * and all of them when the request's {@link RequestHandle} is cancelled.
+ * <p>
+ * Prefetch hits and misses are counted as the {@code "memory_prefetch"} cache.
+ */
+public final class MemoryPrefetch implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MemoryPrefetch.class);
+    private static final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("memory-prefetch-", 0).factory());
+
+    private final RequestContext context;
+    private final String input;
+    private final String userId;
+    private final Future<String> publicMemory;
+    private final Future<String> privateMemory;
+
+    private MemoryPrefetch(RequestContext context, String input, String userId,
+                           Future<String> publicMemory, Future<String> privateMemory) {
+        this.context = context;
+        this.input = input;
+        this.userId = userId;
+        this.publicMemory = publicMemory;
+        this.privateMemory = privateMemory;
+    }
+
+    /**
+     * Starts the lookups the message could need and attaches the prefetch to the current {@link RequestContext}.
+     * Without a context nobody could find the results, so nothing is started.
+     *
+     * @param memoryManager The {@link MemoryManager} that performs the lookups.
+     * @param input         The message the lookups are for.
+     * @param userId        The ID of the user who sent the message.
+     * @return The started prefetch.
+     */
+    static MemoryPrefetch start(MemoryManager memoryManager, String input, String userId) {
+        RequestContext context = RequestContext.current();
+        if (context == null) {
+            return new MemoryPrefetch(null, input, userId, null, null);
+        }
+
+        var prefetch = new MemoryPrefetch(context, input, userId,
+                TaskManager.readsPublicMemory(input) ? submit(() -> memoryManager.lookupPublicMemory(input)) : null,
+                TaskManager.readsPrivateMemory(input) ? submit(() -> memoryManager.lookupPrivateMemory(userId, input)) : null);
+        context.attach(MemoryPrefetch.class, prefetch);
+        RequestHandle handle = RequestHandle.current();
+        if (handle != null) {
+            handle.onCancel(prefetch::close);
+        }
+        return prefetch;
+    }
+
+    /**
+     * Returns the prefetch of the request bound to the current thread.
+     *
+     * @return The current {@code MemoryPrefetch}, or {@code null} if none was started.
+     */
+    static MemoryPrefetch current() {
+        RequestContext context = RequestContext.current();
+        return context == null ? null : context.attachment(MemoryPrefetch.class);
+    }
+
+    /**
+     * Returns the prefetched public memory, waiting for the lookup if it is still running.
+     *
+     * @param input The input of the retrieval.
+     * @return The prefetched memory, or {@code null} if the input differs or the lookup failed.
+     */
+    String publicMemory(String input) {
+        return publicMemory != null && this.input.equals(input) ? await(publicMemory) : miss();
+    }
+
+    /**
+     * Returns the prefetched private memory, waiting for the lookup if it is still running.
+     *
+     * @param userId The user of the retrieval.
+     * @param input  The input of the retrieval.
+     * @return The prefetched memory, or {@code null} if user or input differ or the lookup failed.
+     */
+    String privateMemory(String userId, String input) {
+        return privateMemory != null && this.userId.equals(userId) && this.input.equals(input) ? await(privateMemory) : miss();
+    }
+
+    /**
+     * Interrupts the lookups that were not needed and detaches the prefetch from its request.
+     */
+    @Override
+    public void close() {
+        if (context == null) {
+            return;
+        }
+        context.attach(MemoryPrefetch.class, null);
+        int wasted = cancel(publicMemory) + cancel(privateMemory);
+        if (wasted > 0) {
+            Metrics.get().count("memory_prefetch_cancelled", wasted);
+        }
+    }
+
+    private static Future<String> submit(Callable<String> lookup) {
+        return executor.submit(RequestContext.wrap(lookup));
+    }
+
+    private static int cancel(Future<String> lookup) {
+        return lookup != null && lookup.cancel(true) ? 1 : 0;
+    }
+
+    private static String await(Future<String> lookup) {
+        try {
+            String result = lookup.get();
+            Metrics.get().cacheHit("memory_prefetch");
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            RequestHandle.checkCurrent();
+            return miss();
+        } catch (CancellationException | ExecutionException e) {
+            // A cancelled request must not start the lookup again
+            RequestHandle.checkCurrent();
+            logger.debug("Prefetched memory lookup failed, looking up again", e);
+            return miss();
+        }
+    }
+
+    private static String miss() {
+        Metrics.get().cacheMiss("memory_prefetch");
+        return null;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi;
+
+import com.qStivi.config.PipelineSettings;
+import com.qStivi.metrics.Metrics;
+import com.qStivi.metrics.Stage;
+import com.qStivi.pipeline.PipelineStage;
+import com.qStivi.pipeline.StageHandler;
+import com.qStivi.pipeline.StagedPipeline;
+import com.qStivi.scheduling.Backlog;
+import com.qStivi.scheduling.RequestHandle;
+import com.qStivi.tracing.MessageEvent;
+import com.qStivi.tracing.RequestContext;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * The {@code MessagePipeline} class runs the steps of a {@link MessageProcessor} as the stages of a {@link StagedPipeline}:
+ * checking and prefetching at ingress, the routing decision, memory retrieval, the model or task manager call,
+ * and the release of the message's resources at egress. Each step runs in the message's {@link RequestContext},
+ * although the stages run on different threads. A cancelled message skips to egress at the next stage.
+ * <p>
+ * As a {@link Backlog}, the pipeline reports the messages waiting for the stages up to the model call, and its
+ * model call workers, since the model call takes most of the time of a message.
+ */
+public class MessagePipeline implements Backlog, AutoCloseable {
+
+    private static final PipelineStage[] BEFORE_ANSWER = {PipelineStage.INGRESS, PipelineStage.ROUTING, PipelineStage.RETRIEVAL, PipelineStage.LLM};
+
+    private final StagedPipeline<MessageProcessor.Turn> pipeline;
+    private final int llmWorkers;
+    private final Map<String, Integer> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a {@code MessagePipeline} and starts the workers of its stages.
+     *
+     * @param processor The {@link MessageProcessor} whose steps the stages run.
+     * @param settings  The {@link PipelineSettings}.
+     */
+    public MessagePipeline(MessageProcessor processor, PipelineSettings settings) {
+        this.pipeline = new StagedPipeline<>(settings, Map.of(
+                PipelineStage.INGRESS, inContext(processor::begin, true),
+                PipelineStage.ROUTING, inContext(processor::decide, true),
+                PipelineStage.RETRIEVAL, inContext(processor::retrieve, true),
+                PipelineStage.LLM, inContext(processor::answer, true),
+                PipelineStage.EGRESS, inContext(processor::end, false)));
+        this.llmWorkers = PipelineStage.LLM.workers(settings);
+    }
+
+    /**
+     * Submits a message to the pipeline.
+     *
+     * @param input   The input message from the user.
+     * @param userId  The unique identifier of the user.
+     * @param onDelta The consumer of the parts of the response, or {@code null} to not stream.
+     * @return A future completed with the response, or exceptionally with the error of processing
+     * or with a {@link RejectedExecutionException} if the pipeline is full.
+     */
+    public CompletableFuture<String> submit(String input, String userId, Consumer<String> onDelta) {
+        return submit(input, userId, onDelta, null);
+    }
+
+    /**
+     * Submits a message to the pipeline that is skipped by the remaining stages once its handle is cancelled.
+     *
+     * @param input   The input message from the user.
+     * @param userId  The unique identifier of the user.
+     * @param onDelta The consumer of the parts of the response, or {@code null} to not stream.
+     * @param handle  The {@link RequestHandle} that cancels the message, or {@code null} if it cannot be cancelled.
+     * @return A future completed with the response, or exceptionally with the error of processing
+     * or with a {@link RejectedExecutionException} if the pipeline is full.
+     */
+    public CompletableFuture<String> submit(String input, String userId, Consumer<String> onDelta, RequestHandle handle) {
+        long start = System.nanoTime();
+        var event = new MessageEvent();
+        event.begin();
+        var turn = new MessageProcessor.Turn(input, userId, onDelta);
+        turn.handle = handle;
+        try (var scope = RequestContext.open(userId)) {
+            turn.context = scope.context();
+            event.requestId = turn.context.requestId();
+        }
+        event.userId = userId;
+        event.inputLength = input == null ? 0 : input.length();
+
+        String flow = userId == null ? "" : userId;
+        inFlight.merge(flow, 1, Integer::sum);
+        return pipeline.submit(turn).whenComplete((done, error) -> {
+            inFlight.computeIfPresent(flow, (user, count) -> count == 1 ? null : count - 1);
+            event.success = error == null;
+            event.commit();
+            Metrics.get().recordSince(Stage.CORE_ENGINE, start);
+            if (error != null && !(error instanceof RejectedExecutionException)) {
+                Metrics.get().recordError(Stage.CORE_ENGINE);
+            }
+        }).thenApply(MessageProcessor.Turn::response);
+    }
+
+    /**
+     * Returns the number of messages waiting for a stage.
+     *
+     * @param stage The stage.
+     * @return The approximate queue length of the stage.
+     */
+    public int depth(PipelineStage stage) {
+        return pipeline.depth(stage);
+    }
+
+    /**
+     * Returns the number of messages waiting for a stage up to the model call.
+     *
+     * @return The approximate queue length in front of the model call workers.
+     */
+    @Override
+    public int queued() {
+        int queued = 0;
+        for (PipelineStage stage : BEFORE_ANSWER) {
+            queued += pipeline.depth(stage);
+        }
+        return queued;
+    }
+
+    /**
+     * Returns the number of messages of one user in the pipeline, including one that is being answered.
+     *
+     * @param userId The ID of the user.
+     * @return The number of messages of the user that are not answered yet.
+     */
+    @Override
+    public int queued(String userId) {
+        return inFlight.getOrDefault(userId == null ? "" : userId, 0);
+    }
+
+    /**
+     * Returns the number of messages answered by the model at the same time.
+     *
+     * @return The number of workers of {@link PipelineStage#LLM}.
+     */
+    @Override
+    public int workers() {
+        return llmWorkers;
+    }
+
+    /**
+     * Stops accepting messages. Messages already submitted are still answered.
+     */
+    @Override
+    public void close() {
+        pipeline.close();
+    }
+
+    /**
+     * Wraps a step so that it runs in the message's context. The handle of the message is bound while the step runs,
+     * so cancelling interrupts whichever stage is working on the message.
+     *
+     * @param step        The step.
+     * @param cancellable {@code false} for a step that must run even for a cancelled message.
+     * @return The handler of the stage.
+     */
+    private static StageHandler<MessageProcessor.Turn> inContext(StageHandler<MessageProcessor.Turn> step, boolean cancellable) {
+        return turn -> {
+            try (var ignored = RequestContext.resume(turn.context)) {
+                if (turn.handle == null) {
+                    step.handle(turn);
+                    return;
+                }
+                if (cancellable) {
+                    turn.handle.check();
+                }
+                try (var binding = turn.handle.bind()) {
+                    step.handle(turn);
+                }
+            }
+        };
+    }
+}
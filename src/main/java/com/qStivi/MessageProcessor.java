@@ -6,22 +6,47 @@
 
 package com.qStivi;
 
+import com.qStivi.config.ConfigSnapshot;
+import com.qStivi.config.PromptSettings;
+import com.qStivi.logging.LogPayload;
+import com.qStivi.logging.LogSampler;
+import com.qStivi.metrics.Metrics;
+import com.qStivi.metrics.Stage;
 import com.qStivi.openai.OpenAiClient;
 import com.qStivi.openai.OpenAiException;
+import com.qStivi.openai.Route;
+import com.qStivi.prompt.MemoryContext;
+import com.qStivi.prompt.PromptAssembler;
+import com.qStivi.prompt.Snippet;
+import com.qStivi.scheduling.RequestHandle;
+import com.qStivi.tokenizer.Tokenizers;
+import com.qStivi.tracing.RequestContext;
+import com.qStivi.tracing.RoutingEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
 /**
  * The {@code MessageProcessor} class processes incoming messages and delegates them
  * to appropriate handlers based on the complexity of the task.
+ * If a {@link MemoryManager} is configured, memory lookups for the message start before routing,
+ * so a delegated task finds them already running or finished, and the memory most relevant to a message that is
+ * handled directly is packed into its request by a {@link PromptAssembler}.
  */
 public class MessageProcessor {
 
     private static final Logger logger = LoggerFactory.getLogger(MessageProcessor.class);
-    private static final String COMPLEX_TASK_INDICATOR = "complex";
+    private static final LogSampler messageLogSampler = new LogSampler();
 
     private final TaskManager taskManager;
-    private final OpenAiClient openAiClient;
+    private final Function<String, OpenAiClient> clients;
+    private final Supplier<ConfigSnapshot> settings;
+    private final MemoryManager memoryManager;
+    private final PromptAssembler assembler;
 
     /**
      * Constructs a {@code MessageProcessor} with the specified {@link TaskManager} and {@link OpenAiClient}.
@@ -30,8 +55,46 @@ public class MessageProcessor {
      * @param openAiClient  The {@link OpenAiClient} used for communicating with OpenAI services.
      */
     public MessageProcessor(TaskManager taskManager, OpenAiClient openAiClient) {
+        this(taskManager, openAiClient, ConfigSnapshot::defaults);
+    }
+
+    /**
+     * Constructs a {@code MessageProcessor} whose routing follows the given configuration snapshots.
+     *
+     * @param taskManager  The {@link TaskManager} to delegate complex tasks to.
+     * @param openAiClient The {@link OpenAiClient} used for communicating with OpenAI services.
+     * @param settings     The supplier of the current {@link ConfigSnapshot}.
+     */
+    public MessageProcessor(TaskManager taskManager, OpenAiClient openAiClient, Supplier<ConfigSnapshot> settings) {
+        this(taskManager, userId -> openAiClient, settings);
+    }
+
+    /**
+     * Constructs a {@code MessageProcessor} that keeps a separate conversation per user.
+     *
+     * @param taskManager The {@link TaskManager} to delegate complex tasks to.
+     * @param clients     The function that returns the {@link OpenAiClient} holding a user's conversation.
+     * @param settings    The supplier of the current {@link ConfigSnapshot}.
+     */
+    public MessageProcessor(TaskManager taskManager, Function<String, OpenAiClient> clients, Supplier<ConfigSnapshot> settings) {
+        this(taskManager, clients, settings, null);
+    }
+
+    /**
+     * Constructs a {@code MessageProcessor} that prefetches memory while routing.
+     *
+     * @param taskManager   The {@link TaskManager} to delegate complex tasks to.
+     * @param clients       The function that returns the {@link OpenAiClient} holding a user's conversation.
+     * @param settings      The supplier of the current {@link ConfigSnapshot}.
+     * @param memoryManager The {@link MemoryManager} shared with the {@code taskManager}, or {@code null} to not prefetch.
+     */
+    public MessageProcessor(TaskManager taskManager, Function<String, OpenAiClient> clients, Supplier<ConfigSnapshot> settings,
+                            MemoryManager memoryManager) {
         this.taskManager = taskManager;
-        this.openAiClient = openAiClient;
+        this.clients = clients;
+        this.settings = settings;
+        this.memoryManager = memoryManager;
+        this.assembler = new PromptAssembler(settings);
     }
 
     /**
@@ -43,28 +106,160 @@ public class MessageProcessor {
      * @throws OpenAiException if an error occurs while communicating with OpenAI.
      */
     public String process(String input, String userId) throws OpenAiException {
-        if (input == null || userId == null) {
+        return process(input, userId, null);
+    }
+
+    /**
+     * Processes the message and passes the response to {@code onDelta} while it is being generated.
+     * Responses of the {@link TaskManager} are passed on in one part.
+     *
+     * @param input   The message to process.
+     * @param userId  The ID of the user who sent the message.
+     * @param onDelta The consumer of the parts of the response, or {@code null} to not stream.
+     * @return The complete response after processing the message.
+     * @throws OpenAiException if an error occurs while communicating with OpenAI.
+     */
+    public String process(String input, String userId, Consumer<String> onDelta) throws OpenAiException {
+        Turn turn = new Turn(input, userId, onDelta);
+        begin(turn);
+        try {
+            decide(turn);
+            retrieve(turn);
+            answer(turn);
+            return turn.response;
+        } finally {
+            end(turn);
+        }
+    }
+
+    /**
+     * Checks a message, counts its tokens and starts its memory prefetch.
+     *
+     * @param turn The message.
+     * @throws IllegalArgumentException If input or user ID are missing.
+     */
+    void begin(Turn turn) {
+        if (turn.input == null || turn.userId == null) {
             logger.warn("Input or userId is null");
             throw new IllegalArgumentException("Input and userId cannot be null");
         }
 
-        logger.info("Processing message from user {}: {}", userId, input);
+        if (messageLogSampler.sample() && logger.isInfoEnabled()) {
+            logger.info("Processing message from user {}: {}", turn.userId, LogPayload.of(turn.input));
+        }
+        turn.start = System.nanoTime();
+        turn.begun = true;
+        turn.prefetch = memoryManager == null ? null : memoryManager.prefetch(turn.input, turn.userId);
+        turn.inputTokens = Tokenizers.forModel(settings.get().openAi().modelName()).count(turn.input);
+        Metrics.get().count("input_tokens", turn.inputTokens);
+        logger.debug("Message has {} tokens", turn.inputTokens);
+    }
+
+    /**
+     * Decides whether a message is delegated to the {@link TaskManager}.
+     *
+     * @param turn The message.
+     */
+    void decide(Turn turn) {
+        turn.delegated = route(turn.input);
+    }
+
+    /**
+     * Attaches the memory relevant to a message that is handled directly.
+     *
+     * @param turn The message.
+     */
+    void retrieve(Turn turn) {
+        if (!turn.delegated) {
+            turn.client = clients.apply(turn.userId);
+            attachMemory(turn.client, turn.input, turn.userId, turn.inputTokens);
+        }
+    }
 
-        if (requiresComplexTask(input)) {
+    /**
+     * Generates the response to a message.
+     *
+     * @param turn The message.
+     * @throws OpenAiException if an error occurs while communicating with OpenAI.
+     */
+    void answer(Turn turn) throws OpenAiException {
+        if (turn.delegated) {
             logger.info("Delegating to TaskManager...");
-            return taskManager.handleTask(input, userId);
+            turn.response = taskManager.handleTask(turn.input, turn.userId);
+            if (turn.onDelta != null) {
+                turn.onDelta.accept(turn.response);
+            }
+            return;
         }
 
         logger.info("Handling directly...");
 
         try {
-            return openAiClient.sendRequest(input);
+            turn.response = turn.onDelta == null
+                    ? turn.client.sendRequest(turn.input)
+                    : turn.client.sendRequest(turn.input, Route.CHAT, turn.onDelta);
         } catch (OpenAiException e) {
             logger.error("Error processing message: {}", e.getMessage(), e);
+            Metrics.get().recordError(Stage.MESSAGE_PROCESSOR);
             throw e; // Propagate the exception
         }
     }
 
+    /**
+     * Releases the memory prefetch of a message and records its processing time, whether it succeeded or not.
+     *
+     * @param turn The message.
+     */
+    void end(Turn turn) {
+        if (!turn.begun) {
+            return;
+        }
+        if (turn.prefetch != null) {
+            turn.prefetch.close();
+        }
+        Metrics.get().recordSince(Stage.MESSAGE_PROCESSOR, turn.start);
+    }
+
+    /**
+     * Recalls the memory relevant to a message and attaches the part that fits the request's token budget
+     * to the current {@link RequestContext}, where the {@link OpenAiClient} picks it up.
+     *
+     * @param client      The {@link OpenAiClient} holding the user's conversation.
+     * @param input       The message.
+     * @param userId      The ID of the user who sent the message.
+     * @param inputTokens The number of tokens of the message.
+     */
+    private void attachMemory(OpenAiClient client, String input, String userId, int inputTokens) {
+        RequestContext context = RequestContext.current();
+        PromptSettings prompt = settings.get().prompt();
+        if (memoryManager == null || context == null || prompt.memoryTokens() == 0) {
+            return;
+        }
+        List<Snippet> snippets = memoryManager.recall(input, userId, prompt.maxSnippets());
+        if (!snippets.isEmpty()) {
+            context.attach(MemoryContext.class, assembler.assemble(snippets, client.historyTokens() + inputTokens + 4));
+        }
+    }
+
+    /**
+     * Makes the routing decision for a message and reports it as a {@link RoutingEvent}.
+     *
+     * @param input The input message to route.
+     * @return {@code true} if the message is delegated to the {@link TaskManager}; {@code false} otherwise.
+     */
+    private boolean route(String input) {
+        var event = new RoutingEvent();
+        event.begin();
+        boolean complexTask = requiresComplexTask(input);
+        event.end();
+        if (event.shouldCommit()) {
+            event.requestId = RequestContext.currentId();
+            event.complexTask = complexTask;
+            event.commit();
+        }
+        return complexTask;
+    }
+
     /**
      * Determines whether the message requires complex task handling.
      * Currently, this is a placeholder that needs to be implemented.
@@ -74,7 +269,58 @@ public class MessageProcessor {
      */
     boolean requiresComplexTask(String input) {
         // TODO: Implement actual complexity determination logic
-        logger.debug("Checking task complexity for: {}", input);
-        return input.contains(COMPLEX_TASK_INDICATOR);
+        logger.debug("Checking task complexity for: {}", LogPayload.of(input));
+        return input.contains(settings.get().routing().complexTaskIndicator());
+    }
+
+    /**
+     * The {@code Turn} class holds the state of one message between the steps of its processing,
+     * so that the steps can run on different threads of a staged pipeline.
+     */
+    public static final class Turn {
+
+        private final String input;
+        private final String userId;
+        private final Consumer<String> onDelta;
+        RequestContext context;
+        RequestHandle handle;
+        private boolean begun;
+        private long start;
+        private MemoryPrefetch prefetch;
+        private int inputTokens;
+        private boolean delegated;
+        private OpenAiClient client;
+        private String response;
+
+        /**
+         * Constructs a {@code Turn} for a message.
+         *
+         * @param input   The message to process.
+         * @param userId  The ID of the user who sent the message.
+         * @param onDelta The consumer of the parts of the response, or {@code null} to not stream.
+         */
+        Turn(String input, String userId, Consumer<String> onDelta) {
+            this.input = input;
+            this.userId = userId;
+            this.onDelta = onDelta;
+        }
+
+        /**
+         * Returns the ID of the user who sent the message.
+         *
+         * @return The user ID.
+         */
+        public String userId() {
+            return userId;
+        }
+
+        /**
+         * Returns the response to the message.
+         *
+         * @return The response, or {@code null} if it was not generated yet.
+         */
+        public String response() {
+            return response;
+        }
     }
-}
\ No newline at end of file
+}
@@ -6,19 +6,40 @@
 
 package com.qStivi;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.qStivi.logging.LogPayload;
+import com.qStivi.metrics.Metrics;
+import com.qStivi.metrics.Stage;
+import com.qStivi.scheduling.RequestHandle;
+import com.qStivi.tools.Tool;
+import com.qStivi.tools.ToolCall;
+import com.qStivi.tools.ToolExecutor;
+import com.qStivi.tools.ToolRegistry;
+import com.qStivi.tools.ToolResult;
+import com.qStivi.tracing.RequestContext;
+import com.qStivi.tracing.TaskIterationEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Optional;
+import java.util.regex.Pattern;
+
 /**
  * The {@code TaskManager} class handles complex tasks by managing memory retrieval
  * and performing specific actions based on user input. It also manages the reevaluation
- * process to handle additional tasks if necessary.
+ * process to handle additional tasks if necessary. Actions naming a tool of the configured
+ * {@link ToolExecutor} are executed through it. Pending iterations are skipped once the request is cancelled.
  */
 public class TaskManager {
 
     private static final Logger logger = LoggerFactory.getLogger(TaskManager.class);
     private static final int MAX_REEVALUATIONS = 3;
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final Pattern TOOL_NAME_SEPARATOR = Pattern.compile("[^A-Za-z0-9_-]+");
     private final MemoryManager memoryManager;
+    private final ToolExecutor tools;
 
     /**
      * Constructs a {@code TaskManager} with the specified {@link MemoryManager}.
@@ -26,7 +47,18 @@ public class TaskManager {
      * @param memoryManager The {@link MemoryManager} used for memory retrieval tasks.
      */
     public TaskManager(MemoryManager memoryManager) {
+        this(memoryManager, null);
+    }
+
+    /**
+     * Constructs a {@code TaskManager} that executes actions through registered tools.
+     *
+     * @param memoryManager The {@link MemoryManager} used for memory retrieval tasks.
+     * @param tools         The {@link ToolExecutor} that runs actions, or {@code null} to only acknowledge them.
+     */
+    public TaskManager(MemoryManager memoryManager, ToolExecutor tools) {
         this.memoryManager = memoryManager;
+        this.tools = tools;
     }
 
     /**
@@ -39,12 +71,20 @@ public class TaskManager {
      */
     public String handleTask(String input, String userId) {
         logger.info("Handling task for user: {}", userId);
-        var result = handleTaskIteration(input, userId);
+        long start = System.nanoTime();
+        try {
+            var result = handleTaskIteration(input, userId, 0);
 
-        // Now call reevaluateAndHandleMoreTasks every time
-        result += "\n" + reevaluateAndHandleMoreTasks(result, userId);
+            // Now call reevaluateAndHandleMoreTasks every time
+            result += "\n" + reevaluateAndHandleMoreTasks(result, userId);
 
-        return result;
+            return result;
+        } catch (RuntimeException e) {
+            Metrics.get().recordError(Stage.TASK_MANAGER);
+            throw e;
+        } finally {
+            Metrics.get().recordSince(Stage.TASK_MANAGER, start);
+        }
     }
 
     /**
@@ -57,7 +97,7 @@ public class TaskManager {
      */
     private String handleMemoryTask(String input, String userId) {
         logger.info("Handling memory task for user: {}", userId);
-        if (input.contains("private")) {
+        if (readsPrivateMemory(input)) {
             // Retrieve private memory for the user
             return memoryManager.retrievePrivateMemory(userId, input);
         } else {
@@ -66,19 +106,87 @@ public class TaskManager {
         }
     }
 
+    /**
+     * Returns whether a task with the given input looks up public memory.
+     *
+     * @param input The input describing the task.
+     * @return {@code true} if the task is a memory task that does not ask for private memory.
+     */
+    static boolean readsPublicMemory(String input) {
+        return input.contains("memory") && !input.contains("private");
+    }
+
+    /**
+     * Returns whether a task with the given input looks up the user's private memory.
+     *
+     * @param input The input describing the task.
+     * @return {@code true} if the task is a memory task that asks for private memory.
+     */
+    static boolean readsPrivateMemory(String input) {
+        return input.contains("memory") && input.contains("private");
+    }
+
     /**
      * Performs specific actions based on the input.
-     * This method serves as a placeholder for actual action logic.
+     * If a word of the action before its arguments is the name of a registered tool, the tool is executed with the
+     * first JSON object in the action as its arguments; otherwise the action is only acknowledged.
      *
      * @param action The action to be performed.
      * @return A {@code String} indicating the result of the performed action.
      */
     private String performAction(String action) {
-        // Logic to perform actions (placeholder)
-        logger.info("Performing action: {}", action);
+        logger.info("Performing action: {}", LogPayload.of(action));
+        if (tools != null) {
+            Optional<Tool> tool = toolOf(action, tools.registry());
+            if (tool.isPresent()) {
+                ToolResult result = tools.execute(new ToolCall("action-" + RequestContext.currentId(), tool.get().name(), argumentsOf(action)));
+                return result.content();
+            }
+        }
         return "Performed action: " + action;
     }
 
+    /**
+     * Finds the tool an action names. Only whole words count, so a tool named {@code time} is not called for an
+     * action about {@code runtime}, and the first named tool wins if an action names several.
+     *
+     * @param action   The action text.
+     * @param registry The {@link ToolRegistry} that resolves tool names.
+     * @return The named {@link Tool}, or an empty {@link Optional} if the action names none.
+     */
+    static Optional<Tool> toolOf(String action, ToolRegistry registry) {
+        int open = action.indexOf('{');
+        String words = open >= 0 ? action.substring(0, open) : action;
+        for (String word : TOOL_NAME_SEPARATOR.split(words)) {
+            if (!word.isEmpty()) {
+                Optional<Tool> tool = registry.find(word);
+                if (tool.isPresent()) {
+                    return tool;
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Extracts the arguments of an action.
+     *
+     * @param action The action text.
+     * @return The first JSON object in the action, or an empty object if there is none or it is malformed.
+     */
+    private static JsonNode argumentsOf(String action) {
+        int open = action.indexOf('{');
+        int close = action.lastIndexOf('}');
+        if (open >= 0 && close > open) {
+            try {
+                return JSON.readTree(action.substring(open, close + 1));
+            } catch (JsonProcessingException e) {
+                logger.debug("Action arguments are not valid JSON, calling tool without arguments");
+            }
+        }
+        return JSON.createObjectNode();
+    }
+
     /**
      * Reevaluates after the task to determine if further actions are needed and handles them.
      *
@@ -98,7 +206,7 @@ public class TaskManager {
             String newInput = currentInput + " iteration " + i;
 
             // Call handleTaskIteration to process newInput without further reevaluation
-            String reevaluatedResult = handleTaskIteration(newInput, userId);
+            String reevaluatedResult = handleTaskIteration(newInput, userId, i);
 
             result.append(reevaluatedResult).append("\n");
 
@@ -111,25 +219,42 @@ public class TaskManager {
 
     /**
      * Handles a single task iteration without triggering another reevaluation loop.
+     * Each iteration is reported as a {@link TaskIterationEvent}.
      *
-     * @param input  The input describing the task.
-     * @param userId The ID of the user requesting the task.
+     * @param input     The input describing the task.
+     * @param userId    The ID of the user requesting the task.
+     * @param iteration The iteration number, {@code 0} for the initial task.
      * @return A {@code String} representing the result of the task iteration.
      */
-    private String handleTaskIteration(String input, String userId) {
+    private String handleTaskIteration(String input, String userId, int iteration) {
+        RequestHandle.checkCurrent();
         logger.info("Handling task iteration for user: {}", userId);
+        var event = new TaskIterationEvent();
+        event.begin();
+        String kind;
         String result;
 
         if (input.contains("memory")) {
+            kind = "memory";
             result = handleMemoryTask(input, userId);
         } else if (input.contains("action")) {
+            kind = "action";
             result = performAction(input);
         } else if (input.contains("stop")) {
-            return "No further tasks to handle.";
+            kind = "stop";
+            result = "No further tasks to handle.";
         } else {
+            kind = "other";
             result = "Handled other task for input: " + input;
         }
 
+        event.end();
+        if (event.shouldCommit()) {
+            event.requestId = RequestContext.currentId();
+            event.iteration = iteration;
+            event.kind = kind;
+            event.commit();
+        }
         return result;
     }
 }
\ No newline at end of file
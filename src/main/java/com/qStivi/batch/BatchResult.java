@@ -0,0 +1,20 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.batch;
+
+import java.time.Duration;
+
+/**
+ * The {@code BatchResult} record summarizes a finished batch run.
+ *
+ * @param succeeded The number of prompts answered in this run.
+ * @param failed    The number of prompts that failed in this run, including malformed lines.
+ * @param skipped   The number of prompts skipped because the checkpoint marks them as done.
+ * @param elapsed   The wall-clock time of the run.
+ */
+public record BatchResult(int succeeded, int failed, int skipped, Duration elapsed) {
+}
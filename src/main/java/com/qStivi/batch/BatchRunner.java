@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.batch;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.qStivi.CoreEngine;
+import com.qStivi.openai.OpenAiSessions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@code BatchRunner} class streams a JSONL file of prompts through the {@link CoreEngine}.
+ * <p>
+ * Every input line is an object with an {@code input} and optional {@code id} and {@code userId} fields; prompts
+ * without a user get their own conversation, which is not persisted and is dropped once the prompt is answered,
+ * so a large job does not pile up sessions. Lines are read lazily and processed on virtual threads, at most
+ * {@code parallelism} at a time. Each result is written to the output file as soon as it may be, either in input
+ * order or in completion order, and its line number is then added to a checkpoint file. A rerun with the same
+ * checkpoint skips all lines that already succeeded, so an interrupted job resumes where it stopped and failed
+ * prompts are retried.
+ */
+public class BatchRunner {
+
+    /**
+     * The scheduling channel of batch prompts, so that their weight can be set apart from live chat.
+     */
+    public static final String CHANNEL = "batch";
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchRunner.class);
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final CoreEngine engine;
+    private final int parallelism;
+    private final boolean ordered;
+    private final OpenAiSessions sessions;
+
+    /**
+     * Constructs a {@code BatchRunner} that leaves the sessions of prompts without a user to the engine.
+     *
+     * @param engine      The {@link CoreEngine} that answers the prompts.
+     * @param parallelism The maximum number of prompts processed at the same time.
+     * @param ordered     Whether results are written in input order rather than completion order.
+     */
+    public BatchRunner(CoreEngine engine, int parallelism, boolean ordered) {
+        this(engine, parallelism, ordered, null);
+    }
+
+    /**
+     * Constructs a {@code BatchRunner} that answers prompts without a user in transient sessions.
+     *
+     * @param engine      The {@link CoreEngine} that answers the prompts.
+     * @param parallelism The maximum number of prompts processed at the same time.
+     * @param ordered     Whether results are written in input order rather than completion order.
+     * @param sessions    The {@link OpenAiSessions} of the engine, or {@code null} to leave sessions to the engine.
+     */
+    public BatchRunner(CoreEngine engine, int parallelism, boolean ordered, OpenAiSessions sessions) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive but was " + parallelism);
+        }
+        this.engine = engine;
+        this.parallelism = parallelism;
+        this.ordered = ordered;
+        this.sessions = sessions;
+    }
+
+    /**
+     * Returns the checkpoint file used for the given output file.
+     *
+     * @param output The output file.
+     * @return The checkpoint file next to it.
+     */
+    public static Path checkpointOf(Path output) {
+        return output.resolveSibling(output.getFileName() + ".checkpoint");
+    }
+
+    /**
+     * Processes all prompts of the input file that are not yet in the checkpoint next to the output file.
+     *
+     * @param input  The JSONL file of prompts.
+     * @param output The JSONL file results are appended to.
+     * @return The {@link BatchResult} of this run.
+     * @throws IOException          If a file cannot be read or written.
+     * @throws InterruptedException If the thread is interrupted while waiting for a free slot.
+     */
+    public BatchResult run(Path input, Path output) throws IOException, InterruptedException {
+        return run(input, output, checkpointOf(output));
+    }
+
+    /**
+     * Processes all prompts of the input file that are not yet in the checkpoint.
+     *
+     * @param input      The JSONL file of prompts.
+     * @param output     The JSONL file results are appended to.
+     * @param checkpoint The file holding the line numbers of finished prompts.
+     * @return The {@link BatchResult} of this run.
+     * @throws IOException          If a file cannot be read or written.
+     * @throws InterruptedException If the thread is interrupted while waiting for a free slot.
+     */
+    public BatchResult run(Path input, Path output, Path checkpoint) throws IOException, InterruptedException {
+        Set<Long> done = readCheckpoint(checkpoint);
+        long start = System.nanoTime();
+        int skipped = 0;
+        Semaphore permits = new Semaphore(parallelism);
+
+        Sink sink = new Sink(output, checkpoint, permits);
+        try (sink; BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            String line;
+            long lineNumber = 0;
+            long sequence = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (done.contains(lineNumber)) {
+                    skipped++;
+                    continue;
+                }
+
+                permits.acquire();
+                long position = sequence++;
+                long number = lineNumber;
+                String request = line;
+                executor.execute(() -> sink.complete(position, process(number, request)));
+            }
+        }
+
+        var result = new BatchResult(sink.succeeded.get(), sink.failed.get(), skipped, Duration.ofNanos(System.nanoTime() - start));
+        logger.info("Batch finished: {}", result);
+        return result;
+    }
+
+    /**
+     * Answers one input line. Never throws, so every line produces exactly one outcome.
+     */
+    private Outcome process(long lineNumber, String line) {
+        ObjectNode result = mapper.createObjectNode();
+        result.put("line", lineNumber);
+
+        JsonNode request;
+        try {
+            request = mapper.readTree(line);
+        } catch (JsonProcessingException e) {
+            result.put("error", "Malformed JSON: " + e.getOriginalMessage());
+            return new Outcome(lineNumber, result.toString(), false, true);
+        }
+
+        String input = request.path("input").asText(null);
+        if (input == null) {
+            result.put("error", "Missing field 'input'");
+            return new Outcome(lineNumber, result.toString(), false, true);
+        }
+        boolean anonymous = !request.hasNonNull("userId");
+        String userId = anonymous ? "batch-" + lineNumber : request.path("userId").asText();
+        result.put("id", request.path("id").asText(String.valueOf(lineNumber)));
+        result.put("userId", userId);
+
+        long start = System.nanoTime();
+        boolean success = false;
+        boolean transientSession = anonymous && sessions != null;
+        if (transientSession) {
+            sessions.openTransient(userId);
+        }
+        try {
+            result.put("output", engine.submitMessage(input, userId, CHANNEL).join());
+            success = true;
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            logger.warn("Prompt on line {} failed: {}", lineNumber, cause.getMessage());
+            result.put("error", String.valueOf(cause.getMessage()));
+        } finally {
+            if (transientSession) {
+                sessions.release(userId);
+            }
+        }
+        result.put("latencyMs", (System.nanoTime() - start) / 1_000_000);
+        return new Outcome(lineNumber, result.toString(), success, success);
+    }
+
+    private static Set<Long> readCheckpoint(Path checkpoint) throws IOException {
+        Set<Long> done = new HashSet<>();
+        if (!Files.exists(checkpoint)) {
+            return done;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(checkpoint, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    done.add(Long.parseLong(line.trim()));
+                } catch (NumberFormatException e) {
+                    logger.warn("Ignoring malformed checkpoint entry '{}'", line);
+                }
+            }
+        }
+        logger.info("Resuming with {} finished prompts", done.size());
+        return done;
+    }
+
+    /**
+     * The result of one input line.
+     *
+     * @param lineNumber The line number in the input file.
+     * @param json       The result line to write.
+     * @param success    Whether the prompt was answered.
+     * @param finished   Whether the line must not be retried by a later run.
+     */
+    private record Outcome(long lineNumber, String json, boolean success, boolean finished) {
+    }
+
+    /**
+     * Writes outcomes to the output and checkpoint files. In ordered mode, outcomes wait in a reorder buffer
+     * until all earlier lines are written; their slot is only released once written, which bounds the buffer
+     * to the configured parallelism.
+     */
+    private final class Sink implements Closeable {
+
+        private final BufferedWriter output;
+        private final BufferedWriter checkpoint;
+        private final Semaphore permits;
+        private final Map<Long, Outcome> pending = new HashMap<>();
+        private final AtomicInteger succeeded = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private long next;
+        private IOException error;
+
+        Sink(Path output, Path checkpoint, Semaphore permits) throws IOException {
+            this.output = Files.newBufferedWriter(output, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            this.checkpoint = Files.newBufferedWriter(checkpoint, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            this.permits = permits;
+        }
+
+        synchronized void complete(long position, Outcome outcome) {
+            if (!ordered) {
+                write(outcome);
+            } else {
+                pending.put(position, outcome);
+                Outcome head;
+                while ((head = pending.remove(next)) != null) {
+                    write(head);
+                    next++;
+                }
+            }
+            flush();
+        }
+
+        private void write(Outcome outcome) {
+            (outcome.success() ? succeeded : failed).incrementAndGet();
+            try {
+                if (error == null) {
+                    output.write(outcome.json());
+                    output.newLine();
+                    if (outcome.finished()) {
+                        checkpoint.write(Long.toString(outcome.lineNumber()));
+                        checkpoint.newLine();
+                    }
+                }
+            } catch (IOException e) {
+                logger.error("Failed to write batch result", e);
+                error = e;
+            } finally {
+                permits.release();
+            }
+        }
+
+        private void flush() {
+            try {
+                if (error == null) {
+                    // Results first, so a crash can only repeat a line, never lose one
+                    output.flush();
+                    checkpoint.flush();
+                }
+            } catch (IOException e) {
+                logger.error("Failed to flush batch results", e);
+                error = e;
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            try (output; checkpoint) {
+                if (error != null) {
+                    throw error;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.config;
+
+import org.apache.commons.configuration2.Configuration;
+
+import java.time.Duration;
+
+/**
+ * The settings of the admission control.
+ *
+ * @param enabled          Whether messages are shed when the engine is overloaded.
+ * @param maxQueueDepth    The number of queued messages over all users from which new messages are shed.
+ * @param maxQueuedPerUser The number of queued messages of one user from which their new messages are shed.
+ * @param maxWait          The longest expected or actual queueing time before a message is shed.
+ * @param cacheSize        The number of recent answers kept to answer repeated messages while shedding.
+ * @param busyMessage      The reply to shed messages without a cached answer.
+ */
+public record AdmissionSettings(boolean enabled, int maxQueueDepth, int maxQueuedPerUser, Duration maxWait, int cacheSize, String busyMessage) {
+
+    /**
+     * Parses the settings from the given configuration, using defaults for missing keys.
+     *
+     * @param configuration The {@link Configuration} to read.
+     * @return The parsed {@code AdmissionSettings}.
+     * @throws IllegalArgumentException If a value is present but invalid.
+     */
+    static AdmissionSettings from(Configuration configuration) {
+        return new AdmissionSettings(
+                configuration.getBoolean(ConfigKeys.ADMISSION_ENABLED, true),
+                ConfigValues.positive(configuration, ConfigKeys.ADMISSION_MAX_QUEUE_DEPTH, 200),
+                ConfigValues.positive(configuration, ConfigKeys.ADMISSION_MAX_QUEUED_PER_USER, 5),
+                Duration.ofMillis(ConfigValues.positive(configuration, ConfigKeys.ADMISSION_MAX_WAIT_MILLIS, 20_000)),
+                ConfigValues.positive(configuration, ConfigKeys.ADMISSION_CACHE_SIZE, 1000),
+                configuration.getString(ConfigKeys.ADMISSION_BUSY_MESSAGE,
+                        "Meow... I'm a bit overwhelmed right now. Please try again in a moment."));
+    }
+}
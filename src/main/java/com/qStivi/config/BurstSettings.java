@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.config;
+
+import org.apache.commons.configuration2.Configuration;
+
+import java.time.Duration;
+
+/**
+ * The settings of the aggregation of message bursts.
+ *
+ * @param enabled     Whether quick consecutive messages of a user are merged into one turn.
+ * @param quietWindow The pause after which a burst is complete, until the user's typing rhythm is learned.
+ * @param minQuiet    The shortest learned pause after which a burst is complete.
+ * @param maxQuiet    The longest learned pause after which a burst is complete.
+ * @param maxWait     The longest time the first message of a burst waits for the rest.
+ * @param maxMessages The number of messages that completes a burst right away.
+ */
+public record BurstSettings(boolean enabled, Duration quietWindow, Duration minQuiet, Duration maxQuiet, Duration maxWait, int maxMessages) {
+
+    /**
+     * Parses the settings from the given configuration, using defaults for missing keys.
+     *
+     * @param configuration The {@link Configuration} to read.
+     * @return The parsed {@code BurstSettings}.
+     * @throws IllegalArgumentException If a value is present but invalid.
+     */
+    static BurstSettings from(Configuration configuration) {
+        var burst = new BurstSettings(
+                configuration.getBoolean(ConfigKeys.BURST_ENABLED, false),
+                Duration.ofMillis(ConfigValues.positive(configuration, ConfigKeys.BURST_QUIET_WINDOW_MILLIS, 1500)),
+                Duration.ofMillis(ConfigValues.positive(configuration, ConfigKeys.BURST_MIN_QUIET_MILLIS, 300)),
+                Duration.ofMillis(ConfigValues.positive(configuration, ConfigKeys.BURST_MAX_QUIET_MILLIS, 4000)),
+                Duration.ofMillis(ConfigValues.positive(configuration, ConfigKeys.BURST_MAX_WAIT_MILLIS, 8000)),
+                ConfigValues.positive(configuration, ConfigKeys.BURST_MAX_MESSAGES, 8));
+        if (burst.minQuiet.compareTo(burst.maxQuiet) > 0) {
+            throw new IllegalArgumentException("Value of '" + ConfigKeys.BURST_MIN_QUIET_MILLIS + "' must not exceed '" + ConfigKeys.BURST_MAX_QUIET_MILLIS + "'");
+        }
+        return burst;
+    }
+}
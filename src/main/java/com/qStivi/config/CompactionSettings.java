@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.config;
+
+import org.apache.commons.configuration2.Configuration;
+
+/**
+ * The settings of the background conversation compaction.
+ *
+ * @param enabled            Whether long conversations are summarized.
+ * @param triggerMessages    The number of messages, including the system message, above which a conversation is compacted.
+ * @param keepRecentMessages The number of most recent messages that are never summarized.
+ * @param summaryMaxTokens   The maximum number of tokens of a summary.
+ * @param model              The model that writes summaries, or an empty string to use the chat model.
+ */
+public record CompactionSettings(boolean enabled, int triggerMessages, int keepRecentMessages, int summaryMaxTokens, String model) {
+
+    /**
+     * Parses the settings from the given configuration, using defaults for missing keys.
+     *
+     * @param configuration The {@link Configuration} to read.
+     * @return The parsed {@code CompactionSettings}.
+     * @throws IllegalArgumentException If a value is present but invalid.
+     */
+    static CompactionSettings from(Configuration configuration) {
+        var compaction = new CompactionSettings(
+                configuration.getBoolean(ConfigKeys.COMPACTION_ENABLED, true),
+                ConfigValues.positive(configuration, ConfigKeys.COMPACTION_TRIGGER_MESSAGES, 40),
+                ConfigValues.positive(configuration, ConfigKeys.COMPACTION_KEEP_RECENT_MESSAGES, 10),
+                ConfigValues.positive(configuration, ConfigKeys.COMPACTION_SUMMARY_MAX_TOKENS, 500),
+                configuration.getString(ConfigKeys.COMPACTION_MODEL, ""));
+        if (compaction.keepRecentMessages < 2 || compaction.keepRecentMessages >= compaction.triggerMessages) {
+            throw new IllegalArgumentException("Value of '" + ConfigKeys.COMPACTION_KEEP_RECENT_MESSAGES
+                    + "' must be at least 2 and less than '" + ConfigKeys.COMPACTION_TRIGGER_MESSAGES + "'");
+        }
+        return compaction;
+    }
+}
@@ -16,23 +16,32 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 /**
  * The {@code Config} class manages the application configuration by reading from and writing to
  * a properties file. It ensures that all required configuration keys are present, prompting the
  * user for input if necessary.
+ * <p>
+ * The configuration is also published as an immutable {@link ConfigSnapshot}. When watching is enabled,
+ * changes to the file are picked up at runtime and a new snapshot replaces the old one atomically.
  */
-public class Config {
+public class Config implements AutoCloseable {
 
     private final static Logger logger = LoggerFactory.getLogger(Config.class);
-    private final Configuration configuration;
+    private static final long RELOAD_DEBOUNCE_MS = 200;
     private final Path configPath;
     private final Map<String, String> requiredKeysWithDefaults;
     private final ConsoleAdapter consoleAdapter;
+    private final AtomicReference<ConfigSnapshot> snapshot = new AtomicReference<>();
+    private final List<Consumer<ConfigSnapshot>> listeners = new CopyOnWriteArrayList<>();
+    private volatile Configuration configuration;
+    private volatile WatchService watchService;
 
     /**
      * Constructs a {@code Config} instance with the specified configuration file path and adapter.
@@ -54,6 +63,7 @@ public class Config {
         this.consoleAdapter = consoleAdapter;
         this.requiredKeysWithDefaults = initializeRequiredKeysWithDefaults();
         this.configuration = initializeConfiguration();
+        this.snapshot.set(ConfigSnapshot.from(configuration));
     }
 
     /**
@@ -86,6 +96,138 @@ public class Config {
         return configuration;
     }
 
+    /**
+     * Returns the current configuration snapshot. This method does not lock and is safe to call on hot paths.
+     *
+     * @return The latest published {@link ConfigSnapshot}.
+     */
+    public ConfigSnapshot snapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * Registers a listener that is called with every newly published snapshot.
+     *
+     * @param listener The listener to call after a reload changed the configuration.
+     */
+    public void addListener(Consumer<ConfigSnapshot> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Reads the configuration file again and publishes a new snapshot if the contents changed.
+     * Invalid or unreadable files are logged and leave the current snapshot in place.
+     *
+     * @return {@code true} if a new snapshot was published; {@code false} otherwise.
+     */
+    public boolean reload() {
+        logger.debug("Reloading configuration from file: {}", configPath);
+        ConfigSnapshot updated;
+        PropertiesConfiguration config = new PropertiesConfiguration();
+        ConfigSnapshot current = snapshot.get();
+        try (Reader reader = Files.newBufferedReader(configPath)) {
+            config.read(reader);
+            if (!config.containsKey(ConfigKeys.OPENAI_KEY) && current.openAi().apiKey() != null) {
+                logger.warn("Key '{}' is missing after reload, keeping the previous value", ConfigKeys.OPENAI_KEY);
+                config.setProperty(ConfigKeys.OPENAI_KEY, current.openAi().apiKey());
+            }
+            updated = ConfigSnapshot.from(config);
+        } catch (IOException | ConfigurationException | RuntimeException e) {
+            logger.warn("Ignoring configuration change, file could not be loaded: {}", e.getMessage());
+            return false;
+        }
+
+        if (updated.equals(current)) {
+            logger.debug("Configuration unchanged");
+            return false;
+        }
+
+        configuration = config;
+        snapshot.set(updated);
+        logger.info("Configuration reloaded from file: {}", configPath);
+        for (Consumer<ConfigSnapshot> listener : listeners) {
+            try {
+                listener.accept(updated);
+            } catch (RuntimeException e) {
+                logger.error("Configuration listener failed", e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Starts watching the configuration file and reloads it whenever it changes.
+     * Bursts of file events are coalesced, so an editor saving in several steps triggers a single reload.
+     *
+     * @throws IOException If the file system watch cannot be registered.
+     */
+    public void startWatching() throws IOException {
+        if (watchService != null) {
+            return;
+        }
+
+        Path directory = configPath.toAbsolutePath().getParent();
+        Path fileName = configPath.getFileName();
+        WatchService service = directory.getFileSystem().newWatchService();
+        directory.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        watchService = service;
+
+        Thread watcher = new Thread(() -> watch(service, fileName), "config-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        logger.info("Watching configuration file for changes: {}", configPath);
+    }
+
+    /**
+     * Stops watching the configuration file.
+     */
+    @Override
+    public void close() {
+        WatchService service = watchService;
+        watchService = null;
+        if (service != null) {
+            try {
+                service.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close configuration watcher", e);
+            }
+        }
+    }
+
+    private void watch(WatchService service, Path fileName) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                boolean changed = containsFile(key, fileName);
+                key.reset();
+
+                // Coalesce the events of a single save before reloading
+                WatchKey next;
+                while ((next = service.poll(RELOAD_DEBOUNCE_MS, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= containsFile(next, fileName);
+                    next.reset();
+                }
+
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            logger.debug("Configuration watcher closed");
+        }
+    }
+
+    private static boolean containsFile(WatchKey key, Path fileName) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (fileName.equals(event.context())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Initializes the configuration by reading from the properties file and ensuring all required
      * keys are present. If keys are missing, prompts the user for input or sets default values.
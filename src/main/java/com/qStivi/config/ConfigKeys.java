@@ -16,4 +16,439 @@ public class ConfigKeys {
      * Configuration key for the OpenAI API key.
      */
     public static final String OPENAI_KEY = "openai.key";
+
+    /**
+     * Configuration key for the name of the OpenAI model.
+     */
+    public static final String OPENAI_MODEL = "openai.model";
+
+    /**
+     * Configuration key for the maximum number of tokens in a response.
+     */
+    public static final String OPENAI_MAX_TOKENS = "openai.maxTokens";
+
+    /**
+     * Configuration key for the timeout of OpenAI requests in seconds.
+     */
+    public static final String OPENAI_TIMEOUT_SECONDS = "openai.timeoutSeconds";
+
+    /**
+     * Configuration key for the system message that starts every conversation.
+     */
+    public static final String OPENAI_SYSTEM_MESSAGE = "openai.systemMessage";
+
+    /**
+     * Configuration key for the text that marks a message as a complex task.
+     */
+    public static final String ROUTING_COMPLEX_TASK_INDICATOR = "routing.complexTaskIndicator";
+
+    /**
+     * Configuration key for the model that hard requests escalate to. An empty value disables escalation.
+     */
+    public static final String MODELS_STRONG_NAME = "models.strong.name";
+
+    /**
+     * Configuration key for the maximum number of tokens in a response of the strong model.
+     */
+    public static final String MODELS_STRONG_MAX_TOKENS = "models.strong.maxTokens";
+
+    /**
+     * Configuration key for the maximum number of concurrent requests to the fast model.
+     */
+    public static final String MODELS_FAST_MAX_CONCURRENT = "models.fast.maxConcurrent";
+
+    /**
+     * Configuration key for the maximum number of concurrent requests to the strong model.
+     */
+    public static final String MODELS_STRONG_MAX_CONCURRENT = "models.strong.maxConcurrent";
+
+    /**
+     * Configuration key for whether unsure answers of the fast model are retried with the strong model.
+     */
+    public static final String MODELS_CASCADE = "models.cascade";
+
+    /**
+     * Configuration key for the prompt size in tokens from which requests go to the strong model directly.
+     */
+    public static final String MODELS_ESCALATE_INPUT_TOKENS = "models.escalateInputTokens";
+
+    /**
+     * Configuration key for the comma-separated phrases that mark an answer of the fast model as unsure.
+     */
+    public static final String MODELS_ESCALATE_PHRASES = "models.escalatePhrases";
+
+    /**
+     * Configuration key for whether conversations are persisted across restarts.
+     */
+    public static final String JOURNAL_ENABLED = "journal.enabled";
+
+    /**
+     * Configuration key for the directory holding the conversation journal.
+     */
+    public static final String JOURNAL_DIRECTORY = "journal.directory";
+
+    /**
+     * Configuration key for whether journal writes are forced to the storage device.
+     */
+    public static final String JOURNAL_FSYNC = "journal.fsync";
+
+    /**
+     * Configuration key for the number of journal records after which a snapshot is taken.
+     */
+    public static final String JOURNAL_SNAPSHOT_EVERY_RECORDS = "journal.snapshotEveryRecords";
+
+    /**
+     * Configuration key for the maximum time between journal snapshots in seconds.
+     */
+    public static final String JOURNAL_SNAPSHOT_INTERVAL_SECONDS = "journal.snapshotIntervalSeconds";
+
+    /**
+     * Configuration key for whether long conversations are summarized in the background.
+     */
+    public static final String COMPACTION_ENABLED = "compaction.enabled";
+
+    /**
+     * Configuration key for the number of messages above which a conversation is compacted.
+     */
+    public static final String COMPACTION_TRIGGER_MESSAGES = "compaction.triggerMessages";
+
+    /**
+     * Configuration key for the number of most recent messages that are never summarized.
+     */
+    public static final String COMPACTION_KEEP_RECENT_MESSAGES = "compaction.keepRecentMessages";
+
+    /**
+     * Configuration key for the maximum number of tokens of a conversation summary.
+     */
+    public static final String COMPACTION_SUMMARY_MAX_TOKENS = "compaction.summaryMaxTokens";
+
+    /**
+     * Configuration key for the model that writes conversation summaries. An empty value uses the chat model.
+     */
+    public static final String COMPACTION_MODEL = "compaction.model";
+
+    /**
+     * Configuration key for the number of messages processed at the same time.
+     */
+    public static final String SCHEDULING_WORKERS = "scheduling.workers";
+
+    /**
+     * Configuration key for the credit in tokens a flow earns per scheduling round.
+     */
+    public static final String SCHEDULING_QUANTUM = "scheduling.quantum";
+
+    /**
+     * Configuration key for the cost in tokens the fair scheduler charges per message on top of its input tokens.
+     */
+    public static final String SCHEDULING_MESSAGE_COST = "scheduling.messageCost";
+
+    /**
+     * Configuration key for the comma-separated {@code channel=weight} pairs of the fair scheduler.
+     */
+    public static final String SCHEDULING_WEIGHTS = "scheduling.weights";
+
+    /**
+     * Configuration key for whether messages are shed when the engine is overloaded.
+     */
+    public static final String ADMISSION_ENABLED = "admission.enabled";
+
+    /**
+     * Configuration key for the number of queued messages from which new messages are shed.
+     */
+    public static final String ADMISSION_MAX_QUEUE_DEPTH = "admission.maxQueueDepth";
+
+    /**
+     * Configuration key for the number of queued messages of one user from which their new messages are shed.
+     */
+    public static final String ADMISSION_MAX_QUEUED_PER_USER = "admission.maxQueuedPerUser";
+
+    /**
+     * Configuration key for the longest expected or actual queueing time in milliseconds before a message is shed.
+     */
+    public static final String ADMISSION_MAX_WAIT_MILLIS = "admission.maxWaitMillis";
+
+    /**
+     * Configuration key for the number of recent answers kept to answer repeated messages while shedding.
+     */
+    public static final String ADMISSION_CACHE_SIZE = "admission.cacheSize";
+
+    /**
+     * Configuration key for the reply to shed messages without a cached answer.
+     */
+    public static final String ADMISSION_BUSY_MESSAGE = "admission.busyMessage";
+
+    /**
+     * Configuration key for the maximum number of tool-calling rounds per message.
+     */
+    public static final String TOOLS_MAX_ROUNDS = "tools.maxRounds";
+
+    /**
+     * Configuration key for the timeout in milliseconds of tools that do not declare their own.
+     */
+    public static final String TOOLS_TIMEOUT_MILLIS = "tools.timeoutMillis";
+
+    /**
+     * Configuration key for the maximum number of cached tool results.
+     */
+    public static final String TOOLS_CACHE_SIZE = "tools.cacheSize";
+
+    /**
+     * Configuration key for the maximum number of idle connections of the shared HTTP transport.
+     */
+    public static final String TRANSPORT_MAX_IDLE_CONNECTIONS = "transport.maxIdleConnections";
+
+    /**
+     * Configuration key for how long in seconds an idle connection of the shared HTTP transport is kept alive.
+     */
+    public static final String TRANSPORT_KEEP_ALIVE_SECONDS = "transport.keepAliveSeconds";
+
+    /**
+     * Configuration key for the maximum number of concurrent asynchronous requests of the shared HTTP transport.
+     */
+    public static final String TRANSPORT_MAX_REQUESTS = "transport.maxRequests";
+
+    /**
+     * Configuration key for the maximum number of concurrent asynchronous requests to one host.
+     */
+    public static final String TRANSPORT_MAX_REQUESTS_PER_HOST = "transport.maxRequestsPerHost";
+
+    /**
+     * Configuration key for whether the shared HTTP transport negotiates HTTP/2.
+     */
+    public static final String TRANSPORT_HTTP2 = "transport.http2";
+
+    /**
+     * Configuration key for the number of connections opened at startup. A value of {@code 0} connects lazily.
+     */
+    public static final String TRANSPORT_PREWARM_CONNECTIONS = "transport.prewarmConnections";
+
+    /**
+     * Configuration key for whether redelivered inbound messages are dropped.
+     */
+    public static final String DEDUP_ENABLED = "dedup.enabled";
+
+    /**
+     * Configuration key for how long in seconds an inbound message id is remembered.
+     */
+    public static final String DEDUP_WINDOW_SECONDS = "dedup.windowSeconds";
+
+    /**
+     * Configuration key for the number of inbound messages expected per deduplication window.
+     */
+    public static final String DEDUP_EXPECTED_MESSAGES = "dedup.expectedMessages";
+
+    /**
+     * Configuration key for the false positive rate of the deduplication Bloom filters.
+     */
+    public static final String DEDUP_FALSE_POSITIVE_RATE = "dedup.falsePositiveRate";
+
+    /**
+     * Configuration key for the number of most recent inbound message ids remembered exactly.
+     */
+    public static final String DEDUP_EXACT_SIZE = "dedup.exactSize";
+
+    /**
+     * Configuration key for whether memory lookups are cached.
+     */
+    public static final String MEMORY_CACHE_ENABLED = "memory.cacheEnabled";
+
+    /**
+     * Configuration key for the maximum number of memory lookups cached in memory.
+     */
+    public static final String MEMORY_HOT_ENTRIES = "memory.hotEntries";
+
+    /**
+     * Configuration key for whether memory lookups are also cached on disk.
+     */
+    public static final String MEMORY_WARM_ENABLED = "memory.warmEnabled";
+
+    /**
+     * Configuration key for the directory of the memory disk cache.
+     */
+    public static final String MEMORY_WARM_DIRECTORY = "memory.warmDirectory";
+
+    /**
+     * Configuration key for the maximum number of memory lookups cached on disk.
+     */
+    public static final String MEMORY_WARM_MAX_ENTRIES = "memory.warmMaxEntries";
+
+    /**
+     * Configuration key for the number of hours after which a memory lookup cached on disk expires.
+     */
+    public static final String MEMORY_WARM_MAX_AGE_HOURS = "memory.warmMaxAgeHours";
+
+    /**
+     * Configuration key for the comma-separated files and directories ingested into public memory at startup.
+     */
+    public static final String INGEST_PATHS = "ingest.paths";
+
+    /**
+     * Configuration key for the maximum number of characters of an ingested chunk.
+     */
+    public static final String INGEST_CHUNK_CHARS = "ingest.chunkChars";
+
+    /**
+     * Configuration key for the number of characters a chunk repeats from the end of the previous one.
+     */
+    public static final String INGEST_OVERLAP_CHARS = "ingest.overlapChars";
+
+    /**
+     * Configuration key for the number of threads embedding chunks, or {@code 0} for one per processor.
+     */
+    public static final String INGEST_PARALLELISM = "ingest.parallelism";
+
+    /**
+     * Configuration key for the maximum number of chunks read but not yet indexed.
+     */
+    public static final String INGEST_MAX_IN_FLIGHT = "ingest.maxInFlight";
+
+    /**
+     * Configuration key for the length of the chunk vectors.
+     */
+    public static final String INGEST_EMBEDDING_DIMENSIONS = "ingest.embeddingDimensions";
+
+    /**
+     * Configuration key for the comma-separated file extensions that are ingested when a directory is walked.
+     */
+    public static final String INGEST_EXTENSIONS = "ingest.extensions";
+
+    /**
+     * Configuration key for whether the memory index is persisted, so documents are not ingested again at startup.
+     */
+    public static final String INGEST_PERSIST = "ingest.persist";
+
+    /**
+     * Configuration key for the directory of the persisted memory index.
+     */
+    public static final String INGEST_DIRECTORY = "ingest.directory";
+
+    /**
+     * Configuration key for the number of logged chunks after which a memory index segment is written.
+     */
+    public static final String INGEST_SNAPSHOT_EVERY_CHUNKS = "ingest.snapshotEveryChunks";
+
+    /**
+     * Configuration key for the maximum number of seconds between memory index segments while the log has new chunks.
+     */
+    public static final String INGEST_SNAPSHOT_INTERVAL_SECONDS = "ingest.snapshotIntervalSeconds";
+
+    /**
+     * Configuration key for the number of memory index segments above which segments are merged.
+     */
+    public static final String INGEST_MAX_SEGMENTS = "ingest.maxSegments";
+
+    /**
+     * Configuration key for whether ingested chunks that nearly repeat an indexed chunk are dropped.
+     */
+    public static final String INGEST_SKIP_NEAR_DUPLICATES = "ingest.skipNearDuplicates";
+
+    /**
+     * Configuration key for the maximum number of tokens of recalled memory added to a request. A value of {@code 0} adds none.
+     */
+    public static final String PROMPT_MEMORY_TOKENS = "prompt.memoryTokens";
+
+    /**
+     * Configuration key for the context window of the chat model in tokens.
+     */
+    public static final String PROMPT_CONTEXT_TOKENS = "prompt.contextTokens";
+
+    /**
+     * Configuration key for the maximum number of memory snippets considered per request.
+     */
+    public static final String PROMPT_MAX_SNIPPETS = "prompt.maxSnippets";
+
+    /**
+     * Configuration key for the minimum relevance of a memory snippet to be added to a request.
+     */
+    public static final String PROMPT_MIN_RELEVANCE = "prompt.minRelevance";
+
+    /**
+     * Configuration key for the age in hours at which the score of a dated memory snippet is halved.
+     */
+    public static final String PROMPT_RECENCY_HALF_LIFE_HOURS = "prompt.recencyHalfLifeHours";
+
+    /**
+     * Configuration key for whether messages pass through the staged pipeline.
+     */
+    public static final String PIPELINE_ENABLED = "pipeline.enabled";
+
+    /**
+     * Configuration key for the capacity of each pipeline stage's ring buffer.
+     */
+    public static final String PIPELINE_RING_SIZE = "pipeline.ringSize";
+
+    /**
+     * Configuration key for the number of messages a pipeline worker takes at once.
+     */
+    public static final String PIPELINE_BATCH_SIZE = "pipeline.batchSize";
+
+    /**
+     * Configuration key for the number of ingress workers of the pipeline.
+     */
+    public static final String PIPELINE_INGRESS_WORKERS = "pipeline.ingressWorkers";
+
+    /**
+     * Configuration key for the number of routing workers of the pipeline.
+     */
+    public static final String PIPELINE_ROUTING_WORKERS = "pipeline.routingWorkers";
+
+    /**
+     * Configuration key for the number of retrieval workers of the pipeline.
+     */
+    public static final String PIPELINE_RETRIEVAL_WORKERS = "pipeline.retrievalWorkers";
+
+    /**
+     * Configuration key for the number of workers of the pipeline that wait for the model.
+     */
+    public static final String PIPELINE_LLM_WORKERS = "pipeline.llmWorkers";
+
+    /**
+     * Configuration key for the number of egress workers of the pipeline.
+     */
+    public static final String PIPELINE_EGRESS_WORKERS = "pipeline.egressWorkers";
+
+    /**
+     * Configuration key for whether quick consecutive messages of a user are merged into one turn.
+     */
+    public static final String BURST_ENABLED = "burst.enabled";
+
+    /**
+     * Configuration key for the pause in milliseconds after which a burst is complete before the user's rhythm is learned.
+     */
+    public static final String BURST_QUIET_WINDOW_MILLIS = "burst.quietWindowMillis";
+
+    /**
+     * Configuration key for the shortest learned pause in milliseconds after which a burst is complete.
+     */
+    public static final String BURST_MIN_QUIET_MILLIS = "burst.minQuietMillis";
+
+    /**
+     * Configuration key for the longest learned pause in milliseconds after which a burst is complete.
+     */
+    public static final String BURST_MAX_QUIET_MILLIS = "burst.maxQuietMillis";
+
+    /**
+     * Configuration key for the longest time in milliseconds the first message of a burst waits for the rest.
+     */
+    public static final String BURST_MAX_WAIT_MILLIS = "burst.maxWaitMillis";
+
+    /**
+     * Configuration key for the number of messages that completes a burst right away.
+     */
+    public static final String BURST_MAX_MESSAGES = "burst.maxMessages";
+
+    /**
+     * Configuration key for the port of the Prometheus metrics endpoint. A value of {@code 0} disables the endpoint.
+     */
+    public static final String METRICS_PORT = "metrics.port";
+
+    /**
+     * Configuration key for the maximum number of characters of user text written to the log per message.
+     */
+    public static final String LOG_PAYLOAD_MAX_CHARS = "log.payloadMaxChars";
+
+    /**
+     * Configuration key for the sampling interval of per-message log lines. A value of {@code 10} logs every tenth message.
+     */
+    public static final String LOG_MESSAGE_SAMPLE_EVERY = "log.messageSampleEvery";
 }
\ No newline at end of file
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.config;
+
+import org.apache.commons.configuration2.BaseConfiguration;
+import org.apache.commons.configuration2.Configuration;
+
+/**
+ * The {@code ConfigSnapshot} record is an immutable, typed view of the configuration at one point in time.
+ * {@link Config} publishes a new snapshot whenever the configuration file changes, so hot paths can read
+ * settings without locks and always see a consistent set of values.
+ * <p>
+ * Each subsystem's settings are a record of their own that parses and validates its keys; a key missing from
+ * the configuration takes the default of its settings record.
+ *
+ * @param openAi      The settings of the OpenAI client.
+ * @param routing     The settings of the message routing.
+ * @param models      The settings of the model cascade.
+ * @param logging     The settings of the logging pipeline.
+ * @param journal     The settings of the conversation journal.
+ * @param compaction  The settings of the background conversation compaction.
+ * @param scheduling  The settings of the fair scheduler.
+ * @param admission   The settings of the admission control.
+ * @param tools       The settings of tool calling.
+ * @param transport   The settings of the shared HTTP transport.
+ * @param dedup       The settings of the inbound message deduplication.
+ * @param memory      The settings of the memory cache.
+ * @param ingest      The settings of the document ingestion.
+ * @param prompt      The settings of the prompt assembly.
+ * @param pipeline    The settings of the staged message pipeline.
+ * @param burst       The settings of the aggregation of message bursts.
+ * @param metricsPort The port of the Prometheus endpoint, or {@code 0} if it is disabled.
+ */
+public record ConfigSnapshot(OpenAiSettings openAi, RoutingSettings routing, ModelSettings models, LoggingSettings logging,
+                             JournalSettings journal, CompactionSettings compaction, SchedulingSettings scheduling,
+                             AdmissionSettings admission, ToolSettings tools, TransportSettings transport, DedupSettings dedup,
+                             MemorySettings memory, IngestSettings ingest, PromptSettings prompt, PipelineSettings pipeline,
+                             BurstSettings burst, int metricsPort) {
+
+    private static final ConfigSnapshot DEFAULTS = from(new BaseConfiguration());
+
+    /**
+     * Returns the snapshot used when no configuration file has been loaded.
+     *
+     * @return The default {@code ConfigSnapshot}.
+     */
+    public static ConfigSnapshot defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Parses a snapshot from the given configuration, using defaults for missing keys.
+     *
+     * @param configuration The {@link Configuration} to read.
+     * @return The parsed {@code ConfigSnapshot}.
+     * @throws IllegalArgumentException If a value is present but invalid.
+     */
+    public static ConfigSnapshot from(Configuration configuration) {
+        return new ConfigSnapshot(
+                OpenAiSettings.from(configuration),
+                RoutingSettings.from(configuration),
+                ModelSettings.from(configuration),
+                LoggingSettings.from(configuration),
+                JournalSettings.from(configuration),
+                CompactionSettings.from(configuration),
+                SchedulingSettings.from(configuration),
+                AdmissionSettings.from(configuration),
+                ToolSettings.from(configuration),
+                TransportSettings.from(configuration),
+                DedupSettings.from(configuration),
+                MemorySettings.from(configuration),
+                IngestSettings.from(configuration),
+                PromptSettings.from(configuration),
+                PipelineSettings.from(configuration),
+                BurstSettings.from(configuration),
+                configuration.getInt(ConfigKeys.METRICS_PORT, 0));
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.config;
+
+import org.apache.commons.configuration2.Configuration;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The {@code ConfigValues} class reads and validates the values shared by the settings records.
+ */
+final class ConfigValues {
+
+    private ConfigValues() {
+    }
+
+    /**
+     * Reads a positive integer.
+     *
+     * @param configuration The {@link Configuration} to read.
+     * @param key           The key of the value.
+     * @param defaultValue  The value used if the key is missing.
+     * @return The value.
+     * @throws IllegalArgumentException If the value is not positive.
+     */
+    static int positive(Configuration configuration, String key, int defaultValue) {
+        int value = configuration.getInt(key, defaultValue);
+        if (value <= 0) {
+            throw new IllegalArgumentException("Value of '" + key + "' must be positive but was " + value);
+        }
+        return value;
+    }
+
+    /**
+     * Reads a comma separated list, dropping empty items.
+     *
+     * @param configuration The {@link Configuration} to read.
+     * @param key           The key of the value.
+     * @param defaults      The list used if the key is missing.
+     * @return The items of the list.
+     */
+    static List<String> list(Configuration configuration, String key, List<String> defaults) {
+        String value = configuration.getString(key, null);
+        if (value == null) {
+            return defaults;
+        }
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(item -> !item.isEmpty())
+                .toList();
+    }
+
+    /**
+     * Reads a comma separated list of phrases, which are compared in lower case.
+     *
+     * @param configuration The {@link Configuration} to read.
+     * @param key           The key of the value.
+     * @param defaults      The phrases used if the key is missing.
+     * @return The lower-case phrases.
+     */
+    static List<String> phrases(Configuration configuration, String key, List<String> defaults) {
+        return list(configuration, key, defaults).stream()
+                .map(phrase -> phrase.toLowerCase(Locale.ROOT))
+                .toList();
+    }
+}
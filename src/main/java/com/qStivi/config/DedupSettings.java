@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.config;
+
+import org.apache.commons.configuration2.Configuration;
+
+import java.time.Duration;
+
+/**
+ * The settings of the inbound message deduplication, for adapters that deliver messages with platform ids through
+ * {@code CoreEngine.submitInbound}. Only {@code enabled} is read for every message; the others are read once at startup.
+ *
+ * @param enabled           Whether redelivered messages are dropped.
+ * @param window            How long a message id is remembered.
+ * @param expectedMessages  The number of messages expected per window, which sizes the Bloom filters.
+ * @param falsePositiveRate The probability that a new message older than the exact set is taken for a duplicate.
+ * @param exactSize         The number of most recent message ids that are remembered exactly.
+ */
+public record DedupSettings(boolean enabled, Duration window, int expectedMessages, double falsePositiveRate, int exactSize) {
+
+    /**
+     * Parses the settings from the given configuration, using defaults for missing keys.
+     *
+     * @param configuration The {@link Configuration} to read.
+     * @return The parsed {@code DedupSettings}.
+     * @throws IllegalArgumentException If a value is present but invalid.
+     */
+    static DedupSettings from(Configuration configuration) {
+        var dedup = new DedupSettings(
+                configuration.getBoolean(ConfigKeys.DEDUP_ENABLED, true),
+                Duration.ofSeconds(ConfigValues.positive(configuration, ConfigKeys.DEDUP_WINDOW_SECONDS, 600)),
+                ConfigValues.positive(configuration, ConfigKeys.DEDUP_EXPECTED_MESSAGES, 100_000),
+                configuration.getDouble(ConfigKeys.DEDUP_FALSE_POSITIVE_RATE, 1e-6),
+                ConfigValues.positive(configuration, ConfigKeys.DEDUP_EXACT_SIZE, 10_000));
+        if (!(dedup.falsePositiveRate > 0 && dedup.falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("Value of '" + ConfigKeys.DEDUP_FALSE_POSITIVE_RATE + "' must be between 0 and 1");
+        }
+        return dedup;
+    }
+}
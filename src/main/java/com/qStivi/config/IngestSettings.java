@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.config;
+
+import org.apache.commons.configuration2.Configuration;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * The settings of the document ingestion. They are read once at startup.
+ *
+ * @param paths               The files and directories ingested into public memory at startup.
+ * @param chunkChars          The maximum number of characters of a chunk.
+ * @param overlapChars        The number of characters a chunk repeats from the end of the previous one.
+ * @param parallelism         The number of threads embedding chunks, or {@code 0} for one per processor.
+ * @param maxInFlight         The maximum number of chunks read but not yet indexed.
+ * @param embeddingDimensions The length of the chunk vectors.
+ * @param extensions          The lower-case file extensions that are ingested when a directory is walked.
+ * @param persist             Whether the index is persisted, so documents are not ingested again at startup.
+ * @param directory           The directory of the persisted index.
+ * @param snapshotEveryChunks The number of logged chunks after which a segment is written.
+ * @param snapshotInterval    The maximum time between segments while the log has new chunks.
+ * @param maxSegments         The number of segments above which segments are merged.
+ * @param skipNearDuplicates  Whether recalled chunks that nearly repeat a more relevant one are left out.
+ */
+public record IngestSettings(List<String> paths, int chunkChars, int overlapChars, int parallelism, int maxInFlight,
+                             int embeddingDimensions, List<String> extensions, boolean persist, String directory,
+                             int snapshotEveryChunks, Duration snapshotInterval, int maxSegments, boolean skipNearDuplicates) {
+
+    /**
+     * Parses the settings from the given configuration, using defaults for missing keys.
+     *
+     * @param configuration The {@link Configuration} to read.
+     * @return The parsed {@code IngestSettings}.
+     * @throws IllegalArgumentException If a value is present but invalid.
+     */
+    static IngestSettings from(Configuration configuration) {
+        var ingest = new IngestSettings(
+                ConfigValues.list(configuration, ConfigKeys.INGEST_PATHS, List.of()),
+                ConfigValues.positive(configuration, ConfigKeys.INGEST_CHUNK_CHARS, 2000),
+                configuration.getInt(ConfigKeys.INGEST_OVERLAP_CHARS, 200),
+                configuration.getInt(ConfigKeys.INGEST_PARALLELISM, 0),
+                ConfigValues.positive(configuration, ConfigKeys.INGEST_MAX_IN_FLIGHT, 64),
+                ConfigValues.positive(configuration, ConfigKeys.INGEST_EMBEDDING_DIMENSIONS, 256),
+                ConfigValues.phrases(configuration, ConfigKeys.INGEST_EXTENSIONS,
+                        List.of("txt", "md", "markdown", "java", "py", "json", "yaml", "yml", "csv", "html")),
+                configuration.getBoolean(ConfigKeys.INGEST_PERSIST, true),
+                configuration.getString(ConfigKeys.INGEST_DIRECTORY, "data/memory-index"),
+                ConfigValues.positive(configuration, ConfigKeys.INGEST_SNAPSHOT_EVERY_CHUNKS, 10_000),
+                Duration.ofSeconds(ConfigValues.positive(configuration, ConfigKeys.INGEST_SNAPSHOT_INTERVAL_SECONDS, 600)),
+                ConfigValues.positive(configuration, ConfigKeys.INGEST_MAX_SEGMENTS, 8),
+                configuration.getBoolean(ConfigKeys.INGEST_SKIP_NEAR_DUPLICATES, true));
+        if (ingest.overlapChars < 0 || ingest.overlapChars * 2 >= ingest.chunkChars) {
+            throw new IllegalArgumentException("Value of '" + ConfigKeys.INGEST_OVERLAP_CHARS + "' must be at least 0 and less than half of '" + ConfigKeys.INGEST_CHUNK_CHARS + "'");
+        }
+        return ingest;
+    }
+}
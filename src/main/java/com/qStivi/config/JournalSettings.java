@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.config;
+
+import org.apache.commons.configuration2.Configuration;
+
+import java.time.Duration;
+
+/**
+ * The settings of the conversation journal. They are read once at startup.
+ *
+ * @param enabled              Whether conversations are persisted.
+ * @param directory            The directory holding the journal and snapshot files.
+ * @param fsync                Whether writes are forced to the storage device.
+ * @param snapshotEveryRecords The number of journal records after which a snapshot is taken.
+ * @param snapshotInterval     The maximum time between snapshots while the journal has new records.
+ */
+public record JournalSettings(boolean enabled, String directory, boolean fsync, int snapshotEveryRecords, Duration snapshotInterval) {
+
+    /**
+     * Parses the settings from the given configuration, using defaults for missing keys.
+     *
+     * @param configuration The {@link Configuration} to read.
+     * @return The parsed {@code JournalSettings}.
+     * @throws IllegalArgumentException If a value is present but invalid.
+     */
+    static JournalSettings from(Configuration configuration) {
+        return new JournalSettings(
+                configuration.getBoolean(ConfigKeys.JOURNAL_ENABLED, true),
+                configuration.getString(ConfigKeys.JOURNAL_DIRECTORY, "data/conversations"),
+                configuration.getBoolean(ConfigKeys.JOURNAL_FSYNC, true),
+                ConfigValues.positive(configuration, ConfigKeys.JOURNAL_SNAPSHOT_EVERY_RECORDS, 10_000),
+                Duration.ofSeconds(ConfigValues.positive(configuration, ConfigKeys.JOURNAL_SNAPSHOT_INTERVAL_SECONDS, 600)));
+    }
+}
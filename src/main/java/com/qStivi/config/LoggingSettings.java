@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.config;
+
+import org.apache.commons.configuration2.Configuration;
+
+/**
+ * The settings of the logging pipeline.
+ *
+ * @param payloadMaxChars    The maximum number of characters of user text per log line.
+ * @param messageSampleEvery The sampling interval of per-message log lines.
+ */
+public record LoggingSettings(int payloadMaxChars, int messageSampleEvery) {
+
+    /**
+     * Parses the settings from the given configuration, using defaults for missing keys.
+     *
+     * @param configuration The {@link Configuration} to read.
+     * @return The parsed {@code LoggingSettings}.
+     */
+    static LoggingSettings from(Configuration configuration) {
+        return new LoggingSettings(
+                configuration.getInt(ConfigKeys.LOG_PAYLOAD_MAX_CHARS, 200),
+                configuration.getInt(ConfigKeys.LOG_MESSAGE_SAMPLE_EVERY, 1));
+    }
+}
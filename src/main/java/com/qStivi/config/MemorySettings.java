@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.config;
+
+import org.apache.commons.configuration2.Configuration;
+
+import java.time.Duration;
+
+/**
+ * The settings of the memory cache. They are read once at startup.
+ *
+ * @param cacheEnabled   Whether memory lookups are cached.
+ * @param hotEntries     The maximum number of lookups cached in memory.
+ * @param warmEnabled    Whether lookups are also cached on disk.
+ * @param warmDirectory  The directory of the disk cache.
+ * @param warmMaxEntries The maximum number of lookups cached on disk.
+ * @param warmMaxAge     The time after which a lookup cached on disk expires.
+ */
+public record MemorySettings(boolean cacheEnabled, int hotEntries, boolean warmEnabled, String warmDirectory, int warmMaxEntries,
+                             Duration warmMaxAge) {
+
+    /**
+     * Parses the settings from the given configuration, using defaults for missing keys.
+     *
+     * @param configuration The {@link Configuration} to read.
+     * @return The parsed {@code MemorySettings}.
+     * @throws IllegalArgumentException If a value is present but invalid.
+     */
+    static MemorySettings from(Configuration configuration) {
+        var memory = new MemorySettings(
+                configuration.getBoolean(ConfigKeys.MEMORY_CACHE_ENABLED, true),
+                ConfigValues.positive(configuration, ConfigKeys.MEMORY_HOT_ENTRIES, 10_000),
+                configuration.getBoolean(ConfigKeys.MEMORY_WARM_ENABLED, false),
+                configuration.getString(ConfigKeys.MEMORY_WARM_DIRECTORY, "data/memory-cache"),
+                ConfigValues.positive(configuration, ConfigKeys.MEMORY_WARM_MAX_ENTRIES, 10_000),
+                Duration.ofHours(ConfigValues.positive(configuration, ConfigKeys.MEMORY_WARM_MAX_AGE_HOURS, 24)));
+        if (memory.hotEntries < 2) {
+            throw new IllegalArgumentException("Value of '" + ConfigKeys.MEMORY_HOT_ENTRIES + "' must be at least 2");
+        }
+        return memory;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.config;
+
+import org.apache.commons.configuration2.Configuration;
+
+import java.util.List;
+
+/**
+ * The settings of the model cascade. The model of {@link OpenAiSettings} is the fast tier that is tried first.
+ *
+ * @param strongModel         The model that hard requests escalate to, or an empty string to always use the fast tier.
+ * @param strongMaxTokens     The maximum number of tokens in a response of the strong model.
+ * @param fastMaxConcurrent   The maximum number of concurrent requests to the fast model.
+ * @param strongMaxConcurrent The maximum number of concurrent requests to the strong model.
+ * @param cascade             Whether an unsatisfying answer of the fast model is retried with the strong model.
+ * @param escalateInputTokens The size in tokens of a new user input from which it goes to the strong model directly.
+ * @param escalatePhrases     The lower-case phrases that mark an answer of the fast model as unsure.
+ */
+public record ModelSettings(String strongModel, int strongMaxTokens, int fastMaxConcurrent, int strongMaxConcurrent,
+                            boolean cascade, int escalateInputTokens, List<String> escalatePhrases) {
+
+    /**
+     * Parses the settings from the given configuration, using defaults for missing keys.
+     *
+     * @param configuration The {@link Configuration} to read.
+     * @return The parsed {@code ModelSettings}.
+     * @throws IllegalArgumentException If a value is present but invalid.
+     */
+    static ModelSettings from(Configuration configuration) {
+        return new ModelSettings(
+                configuration.getString(ConfigKeys.MODELS_STRONG_NAME, "gpt-4o"),
+                ConfigValues.positive(configuration, ConfigKeys.MODELS_STRONG_MAX_TOKENS, 5000),
+                ConfigValues.positive(configuration, ConfigKeys.MODELS_FAST_MAX_CONCURRENT, 16),
+                ConfigValues.positive(configuration, ConfigKeys.MODELS_STRONG_MAX_CONCURRENT, 4),
+                configuration.getBoolean(ConfigKeys.MODELS_CASCADE, false),
+                ConfigValues.positive(configuration, ConfigKeys.MODELS_ESCALATE_INPUT_TOKENS, 2000),
+                ConfigValues.phrases(configuration, ConfigKeys.MODELS_ESCALATE_PHRASES,
+                        List.of("i'm not sure", "i am not sure", "i don't know", "i do not know", "i cannot answer")));
+    }
+
+}
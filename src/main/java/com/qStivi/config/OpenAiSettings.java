@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.config;
+
+import org.apache.commons.configuration2.Configuration;
+
+import java.time.Duration;
+
+/**
+ * The settings of the OpenAI client.
+ *
+ * @param apiKey        The OpenAI API key.
+ * @param modelName     The name of the model to use.
+ * @param maxTokens     The maximum number of tokens in the response.
+ * @param timeout       The timeout duration for API requests.
+ * @param systemMessage The system message that starts every conversation.
+ */
+public record OpenAiSettings(String apiKey, String modelName, int maxTokens, Duration timeout, String systemMessage) {
+
+    /**
+     * Parses the settings from the given configuration, using defaults for missing keys.
+     *
+     * @param configuration The {@link Configuration} to read.
+     * @return The parsed {@code OpenAiSettings}.
+     * @throws IllegalArgumentException If a value is present but invalid.
+     */
+    static OpenAiSettings from(Configuration configuration) {
+        return new OpenAiSettings(
+                configuration.getString(ConfigKeys.OPENAI_KEY, null),
+                configuration.getString(ConfigKeys.OPENAI_MODEL, "gpt-4o-mini"),
+                ConfigValues.positive(configuration, ConfigKeys.OPENAI_MAX_TOKENS, 5000),
+                Duration.ofSeconds(ConfigValues.positive(configuration, ConfigKeys.OPENAI_TIMEOUT_SECONDS, 30)),
+                configuration.getString(ConfigKeys.OPENAI_SYSTEM_MESSAGE, "You are a cute cat and will speak as such."));
+    }
+
+    /**
+     * Returns a description of these settings with the API key masked.
+     *
+     * @return The settings as a {@code String}.
+     */
+    @Override
+    public String toString() {
+        return "OpenAiSettings[apiKey=" + (apiKey == null ? "null" : "***") + ", modelName=" + modelName + ", maxTokens=" + maxTokens
+                + ", timeout=" + timeout + ", systemMessage=" + systemMessage + "]";
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.config;
+
+import org.apache.commons.configuration2.Configuration;
+
+/**
+ * The settings of the staged message pipeline.
+ *
+ * @param enabled          Whether submitted messages pass through the staged pipeline instead of the fair scheduler.
+ * @param ringSize         The capacity of each stage's ring buffer, rounded up to a power of two.
+ * @param batchSize        The maximum number of messages a worker takes from its ring at once.
+ * @param ingressWorkers   The number of workers that check incoming messages and start their memory prefetch.
+ * @param routingWorkers   The number of workers that decide how messages are handled.
+ * @param retrievalWorkers The number of workers that recall memory for messages.
+ * @param llmWorkers       The number of workers that wait for the model or the task manager.
+ * @param egressWorkers    The number of workers that complete the replies.
+ */
+public record PipelineSettings(boolean enabled, int ringSize, int batchSize, int ingressWorkers, int routingWorkers,
+                               int retrievalWorkers, int llmWorkers, int egressWorkers) {
+
+    /**
+     * Parses the settings from the given configuration, using defaults for missing keys.
+     *
+     * @param configuration The {@link Configuration} to read.
+     * @return The parsed {@code PipelineSettings}.
+     * @throws IllegalArgumentException If a value is present but invalid.
+     */
+    static PipelineSettings from(Configuration configuration) {
+        return new PipelineSettings(
+                configuration.getBoolean(ConfigKeys.PIPELINE_ENABLED, false),
+                ConfigValues.positive(configuration, ConfigKeys.PIPELINE_RING_SIZE, 1024),
+                ConfigValues.positive(configuration, ConfigKeys.PIPELINE_BATCH_SIZE, 32),
+                ConfigValues.positive(configuration, ConfigKeys.PIPELINE_INGRESS_WORKERS, 1),
+                ConfigValues.positive(configuration, ConfigKeys.PIPELINE_ROUTING_WORKERS, 1),
+                ConfigValues.positive(configuration, ConfigKeys.PIPELINE_RETRIEVAL_WORKERS, 2),
+                ConfigValues.positive(configuration, ConfigKeys.PIPELINE_LLM_WORKERS, 16),
+                ConfigValues.positive(configuration, ConfigKeys.PIPELINE_EGRESS_WORKERS, 1));
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.config;
+
+import org.apache.commons.configuration2.Configuration;
+
+import java.time.Duration;
+
+/**
+ * The settings of the prompt assembly.
+ *
+ * @param memoryTokens    The maximum number of tokens of recalled memory added to a request, or {@code 0} to add none.
+ * @param contextTokens   The context window of the chat model, which request, memory and answer must fit into.
+ * @param maxSnippets     The maximum number of memory snippets considered per request.
+ * @param minRelevance    The minimum relevance of a snippet to be added.
+ * @param recencyHalfLife The age at which the score of a dated snippet is halved.
+ */
+public record PromptSettings(int memoryTokens, int contextTokens, int maxSnippets, double minRelevance, Duration recencyHalfLife) {
+
+    /**
+     * Parses the settings from the given configuration, using defaults for missing keys.
+     *
+     * @param configuration The {@link Configuration} to read.
+     * @return The parsed {@code PromptSettings}.
+     * @throws IllegalArgumentException If a value is present but invalid.
+     */
+    static PromptSettings from(Configuration configuration) {
+        var prompt = new PromptSettings(
+                configuration.getInt(ConfigKeys.PROMPT_MEMORY_TOKENS, 1000),
+                ConfigValues.positive(configuration, ConfigKeys.PROMPT_CONTEXT_TOKENS, 128_000),
+                ConfigValues.positive(configuration, ConfigKeys.PROMPT_MAX_SNIPPETS, 8),
+                configuration.getDouble(ConfigKeys.PROMPT_MIN_RELEVANCE, 0.1),
+                Duration.ofHours(ConfigValues.positive(configuration, ConfigKeys.PROMPT_RECENCY_HALF_LIFE_HOURS, 720)));
+        if (prompt.memoryTokens < 0) {
+            throw new IllegalArgumentException("Value of '" + ConfigKeys.PROMPT_MEMORY_TOKENS + "' must not be negative");
+        }
+        return prompt;
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.config;
+
+import org.apache.commons.configuration2.Configuration;
+
+/**
+ * The settings of the message routing.
+ *
+ * @param complexTaskIndicator The text that marks a message as a complex task.
+ */
+public record RoutingSettings(String complexTaskIndicator) {
+
+    /**
+     * Parses the settings from the given configuration, using defaults for missing keys.
+     *
+     * @param configuration The {@link Configuration} to read.
+     * @return The parsed {@code RoutingSettings}.
+     */
+    static RoutingSettings from(Configuration configuration) {
+        return new RoutingSettings(configuration.getString(ConfigKeys.ROUTING_COMPLEX_TASK_INDICATOR, "complex"));
+    }
+}
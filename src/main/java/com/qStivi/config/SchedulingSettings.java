@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.config;
+
+import org.apache.commons.configuration2.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The settings of the fair scheduler.
+ *
+ * @param workers     The number of messages processed at the same time. Read once at startup.
+ * @param quantum     The credit in tokens a flow earns per round before its weight is applied.
+ * @param messageCost The cost in tokens charged per message on top of its input tokens, for the system message and
+ *                    the reply that every message costs regardless of its length.
+ * @param weights     The weight per channel or tier; the {@code default} entry applies to all others.
+ */
+public record SchedulingSettings(int workers, int quantum, int messageCost, Map<String, Integer> weights) {
+
+    /**
+     * Parses the settings from the given configuration, using defaults for missing keys.
+     *
+     * @param configuration The {@link Configuration} to read.
+     * @return The parsed {@code SchedulingSettings}.
+     * @throws IllegalArgumentException If a value is present but invalid.
+     */
+    static SchedulingSettings from(Configuration configuration) {
+        var scheduling = new SchedulingSettings(
+                ConfigValues.positive(configuration, ConfigKeys.SCHEDULING_WORKERS, 8),
+                ConfigValues.positive(configuration, ConfigKeys.SCHEDULING_QUANTUM, 256),
+                configuration.getInt(ConfigKeys.SCHEDULING_MESSAGE_COST, 256),
+                weights(configuration.getString(ConfigKeys.SCHEDULING_WEIGHTS, null)));
+        if (scheduling.messageCost < 0) {
+            throw new IllegalArgumentException("Value of '" + ConfigKeys.SCHEDULING_MESSAGE_COST + "' must not be negative");
+        }
+        return scheduling;
+    }
+
+    private static Map<String, Integer> weights(String value) {
+        if (value == null || value.isBlank()) {
+            return Map.of("default", 2, "batch", 1);
+        }
+        Map<String, Integer> weights = new HashMap<>();
+        for (String entry : value.split(",")) {
+            int separator = entry.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Value of '" + ConfigKeys.SCHEDULING_WEIGHTS + "' must look like 'channel=weight,...' but was " + value);
+            }
+            String channel = entry.substring(0, separator).trim();
+            int weight;
+            try {
+                weight = Integer.parseInt(entry.substring(separator + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Weight of channel '" + channel + "' is not a number: " + entry, e);
+            }
+            if (weight <= 0) {
+                throw new IllegalArgumentException("Value of '" + ConfigKeys.SCHEDULING_WEIGHTS + "' must be positive but was " + weight);
+            }
+            weights.put(channel, weight);
+        }
+        return Map.copyOf(weights);
+    }
+}
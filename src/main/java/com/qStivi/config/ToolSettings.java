@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.config;
+
+import org.apache.commons.configuration2.Configuration;
+
+import java.time.Duration;
+
+/**
+ * The settings of tool calling.
+ *
+ * @param maxRounds The maximum number of tool-calling rounds per message before the model must answer.
+ * @param timeout   The timeout of tools that do not declare their own.
+ * @param cacheSize The maximum number of cached tool results.
+ */
+public record ToolSettings(int maxRounds, Duration timeout, int cacheSize) {
+
+    /**
+     * Parses the settings from the given configuration, using defaults for missing keys.
+     *
+     * @param configuration The {@link Configuration} to read.
+     * @return The parsed {@code ToolSettings}.
+     * @throws IllegalArgumentException If a value is present but invalid.
+     */
+    static ToolSettings from(Configuration configuration) {
+        return new ToolSettings(
+                ConfigValues.positive(configuration, ConfigKeys.TOOLS_MAX_ROUNDS, 5),
+                Duration.ofMillis(ConfigValues.positive(configuration, ConfigKeys.TOOLS_TIMEOUT_MILLIS, 10_000)),
+                ConfigValues.positive(configuration, ConfigKeys.TOOLS_CACHE_SIZE, 1000));
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.config;
+
+import org.apache.commons.configuration2.Configuration;
+
+import java.time.Duration;
+
+/**
+ * The settings of the HTTP transport shared by all OpenAI clients. They are read once at startup.
+ *
+ * @param maxIdleConnections The maximum number of idle connections kept alive.
+ * @param keepAlive          How long an idle connection is kept alive.
+ * @param maxRequests        The maximum number of concurrent asynchronous requests.
+ * @param maxRequestsPerHost The maximum number of concurrent asynchronous requests to one host.
+ * @param http2              Whether HTTP/2 is negotiated, which multiplexes requests over one connection.
+ * @param prewarmConnections The number of connections opened at startup, or {@code 0} to connect lazily.
+ */
+public record TransportSettings(int maxIdleConnections, Duration keepAlive, int maxRequests, int maxRequestsPerHost, boolean http2, int prewarmConnections) {
+
+    /**
+     * Parses the settings from the given configuration, using defaults for missing keys.
+     *
+     * @param configuration The {@link Configuration} to read.
+     * @return The parsed {@code TransportSettings}.
+     * @throws IllegalArgumentException If a value is present but invalid.
+     */
+    static TransportSettings from(Configuration configuration) {
+        return new TransportSettings(
+                ConfigValues.positive(configuration, ConfigKeys.TRANSPORT_MAX_IDLE_CONNECTIONS, 8),
+                Duration.ofSeconds(ConfigValues.positive(configuration, ConfigKeys.TRANSPORT_KEEP_ALIVE_SECONDS, 300)),
+                ConfigValues.positive(configuration, ConfigKeys.TRANSPORT_MAX_REQUESTS, 64),
+                ConfigValues.positive(configuration, ConfigKeys.TRANSPORT_MAX_REQUESTS_PER_HOST, 32),
+                configuration.getBoolean(ConfigKeys.TRANSPORT_HTTP2, true),
+                configuration.getInt(ConfigKeys.TRANSPORT_PREWARM_CONNECTIONS, 2));
+    }
+}
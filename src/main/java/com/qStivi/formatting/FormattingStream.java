@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.formatting;
+
+/**
+ * The {@code FormattingStream} interface converts one reply into an adapter's dialect while it is being received.
+ * Converted text is passed on as soon as it is known; only characters whose meaning depends on the next character are held back.
+ */
+public interface FormattingStream {
+
+    /**
+     * Converts the next part of the reply.
+     *
+     * @param delta The next characters of the reply, of any length.
+     */
+    void append(CharSequence delta);
+
+    /**
+     * Converts the characters held back and closes all open constructs. The stream must not be used afterwards.
+     */
+    void finish();
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.formatting;
+
+import java.util.function.Consumer;
+
+/**
+ * The {@code MarkdownStream} class is a state machine that recognizes the markdown constructs of model output
+ * one character at a time and reports them to dialect-specific hooks. Every character is looked at exactly once,
+ * so a streamed reply costs the same as a complete one regardless of how it is split into deltas.
+ * <p>
+ * Recognized are code fences, inline code, {@code **bold**}, {@code *italic*}, {@code *} bullets at the start of a line
+ * and, if the dialect asks for them, {@code @mentions}. Only a run of {@code `} or {@code *}, a fence info string
+ * and a mention name are held back until the character that ends them arrives.
+ */
+public abstract class MarkdownStream implements FormattingStream {
+
+    private static final char END = '\0';
+
+    private enum State { TEXT, MENTION, INLINE_CODE, FENCE_INFO, CODE, FENCE_CLOSE }
+
+    private final Consumer<? super CharSequence> sink;
+    private final StringBuilder out = new StringBuilder();
+    private final StringBuilder token = new StringBuilder();
+    private State state = State.TEXT;
+    private boolean lineStart = true;
+    private char run;
+    private int runLength;
+    private boolean runAtLineStart;
+    private int inlineTicks;
+    private boolean bold;
+    private boolean italic;
+
+    /**
+     * Constructs a {@code MarkdownStream} that passes converted text to the given sink.
+     *
+     * @param sink The consumer of the converted text.
+     */
+    protected MarkdownStream(Consumer<? super CharSequence> sink) {
+        this.sink = sink;
+    }
+
+    @Override
+    public final void append(CharSequence delta) {
+        for (int i = 0; i < delta.length(); i++) {
+            accept(delta.charAt(i));
+        }
+        flush();
+    }
+
+    @Override
+    public final void finish() {
+        if (run != 0) {
+            resolveRun(END);
+        }
+        switch (state) {
+            case MENTION -> endMention();
+            case INLINE_CODE -> inlineCode(false);
+            case FENCE_INFO -> {
+                fence(token.toString().trim(), true);
+                fence(null, false);
+            }
+            case CODE -> fence(null, false);
+            default -> {
+            }
+        }
+        if (italic) {
+            italic(false);
+        }
+        if (bold) {
+            bold(false);
+        }
+        state = State.TEXT;
+        flush();
+    }
+
+    /**
+     * Writes plain text.
+     *
+     * @param c The character.
+     */
+    protected void text(char c) {
+        emit(c);
+    }
+
+    /**
+     * Writes a character of inline code or a code block.
+     *
+     * @param c The character.
+     */
+    protected void code(char c) {
+        emit(c);
+    }
+
+    /**
+     * Writes a mention. Only called if {@link #formatsMentions()} returns {@code true}.
+     *
+     * @param name The mentioned name, without the {@code @}.
+     */
+    protected void mention(CharSequence name) {
+        emit('@').emit(name);
+    }
+
+    /**
+     * Returns whether this dialect rewrites mentions. If not, mentions are plain text and never held back.
+     *
+     * @return {@code true} to receive {@link #mention} calls.
+     */
+    protected boolean formatsMentions() {
+        return false;
+    }
+
+    /**
+     * Writes the start or end of bold text.
+     *
+     * @param open {@code true} at the start, {@code false} at the end.
+     */
+    protected abstract void bold(boolean open);
+
+    /**
+     * Writes the start or end of italic text.
+     *
+     * @param open {@code true} at the start, {@code false} at the end.
+     */
+    protected abstract void italic(boolean open);
+
+    /**
+     * Writes the start or end of inline code.
+     *
+     * @param open {@code true} at the start, {@code false} at the end.
+     */
+    protected abstract void inlineCode(boolean open);
+
+    /**
+     * Writes the start or end of a code block. The fence lines themselves are consumed.
+     *
+     * @param language The language of the block when it starts, possibly empty; {@code null} at the end.
+     * @param open     {@code true} at the start, {@code false} at the end.
+     */
+    protected abstract void fence(String language, boolean open);
+
+    /**
+     * Writes the marker of a bullet point. The space after the marker is written as text.
+     */
+    protected abstract void bullet();
+
+    /**
+     * Appends converted output.
+     *
+     * @param c The character to write.
+     * @return This stream, for chaining.
+     */
+    protected final MarkdownStream emit(char c) {
+        out.append(c);
+        return this;
+    }
+
+    /**
+     * Appends converted output.
+     *
+     * @param s The characters to write.
+     * @return This stream, for chaining.
+     */
+    protected final MarkdownStream emit(CharSequence s) {
+        out.append(s);
+        return this;
+    }
+
+    private void flush() {
+        if (!out.isEmpty()) {
+            sink.accept(out);
+            out.setLength(0);
+        }
+    }
+
+    private void accept(char c) {
+        if (run != 0) {
+            if (c == run) {
+                runLength++;
+                return;
+            }
+            resolveRun(c);
+        }
+
+        switch (state) {
+            case TEXT -> {
+                if (c == '`' || c == '*') {
+                    startRun(c);
+                } else if (c == '@' && formatsMentions()) {
+                    state = State.MENTION;
+                } else {
+                    text(c);
+                    lineStart = c == '\n';
+                }
+            }
+            case MENTION -> {
+                if (Character.isLetterOrDigit(c) || c == '_') {
+                    token.append(c);
+                } else {
+                    endMention();
+                    accept(c);
+                }
+            }
+            case INLINE_CODE -> {
+                if (c == '`') {
+                    startRun(c);
+                } else {
+                    code(c);
+                }
+            }
+            case FENCE_INFO -> {
+                if (c == '\n') {
+                    fence(token.toString().trim(), true);
+                    token.setLength(0);
+                    state = State.CODE;
+                    lineStart = true;
+                } else {
+                    token.append(c);
+                }
+            }
+            case CODE -> {
+                if (c == '`' && lineStart) {
+                    startRun(c);
+                } else {
+                    code(c);
+                    lineStart = c == '\n';
+                }
+            }
+            case FENCE_CLOSE -> {
+                // The rest of the closing fence line is dropped
+                if (c == '\n') {
+                    state = State.TEXT;
+                    lineStart = true;
+                }
+            }
+        }
+    }
+
+    private void startRun(char c) {
+        run = c;
+        runLength = 1;
+        runAtLineStart = lineStart;
+        lineStart = false;
+    }
+
+    /**
+     * Decides what a run of {@code `} or {@code *} means, now that the character after it is known.
+     *
+     * @param next The character after the run, or {@link #END} at the end of the reply.
+     */
+    private void resolveRun(char next) {
+        char c = run;
+        int length = runLength;
+        run = 0;
+        runLength = 0;
+
+        switch (state) {
+            case TEXT -> {
+                if (c == '`') {
+                    if (runAtLineStart && length >= 3) {
+                        state = State.FENCE_INFO;
+                    } else {
+                        inlineTicks = length;
+                        inlineCode(true);
+                        state = State.INLINE_CODE;
+                    }
+                } else {
+                    resolveStars(length, next);
+                }
+            }
+            case INLINE_CODE -> {
+                if (length == inlineTicks) {
+                    inlineCode(false);
+                    state = State.TEXT;
+                } else {
+                    codeTicks(length);
+                }
+            }
+            case CODE -> {
+                if (length >= 3) {
+                    fence(null, false);
+                    state = State.FENCE_CLOSE;
+                } else {
+                    codeTicks(length);
+                }
+            }
+            default -> throw new IllegalStateException("Unexpected run in state " + state);
+        }
+    }
+
+    private void resolveStars(int length, char next) {
+        if (length == 1 && runAtLineStart && next == ' ') {
+            bullet();
+        } else if (length == 1 && (italic || !Character.isWhitespace(next) && next != END)) {
+            italic = !italic;
+            italic(italic);
+        } else if (length == 2 && (bold || !Character.isWhitespace(next) && next != END)) {
+            bold = !bold;
+            bold(bold);
+        } else if (length == 3 && (bold && italic || !Character.isWhitespace(next) && next != END)) {
+            bold = !bold;
+            italic = !italic;
+            bold(bold);
+            italic(italic);
+        } else {
+            // Not emphasis, such as "2 * 3" or a horizontal rule
+            for (int i = 0; i < length; i++) {
+                text('*');
+            }
+        }
+    }
+
+    private void codeTicks(int length) {
+        for (int i = 0; i < length; i++) {
+            code('`');
+        }
+    }
+
+    private void endMention() {
+        state = State.TEXT;
+        if (token.isEmpty()) {
+            text('@');
+        } else {
+            mention(token);
+            token.setLength(0);
+        }
+    }
+}
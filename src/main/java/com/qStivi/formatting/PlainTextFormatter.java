@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.formatting;
+
+import java.util.function.Consumer;
+
+/**
+ * The {@code PlainTextFormatter} class converts markdown into plain text for adapters that cannot render it, such as the console.
+ * Emphasis and code markers are removed, code blocks are indented and bullets are replaced by {@code •}.
+ */
+public class PlainTextFormatter implements ResponseFormatter {
+
+    /**
+     * The shared instance; the formatter itself holds no state.
+     */
+    public static final PlainTextFormatter INSTANCE = new PlainTextFormatter();
+
+    private static final String CODE_INDENT = "    ";
+
+    @Override
+    public FormattingStream open(Consumer<? super CharSequence> sink) {
+        return new MarkdownStream(sink) {
+
+            private boolean inBlock;
+            private boolean blockLineStart;
+
+            @Override
+            protected void code(char c) {
+                if (inBlock && blockLineStart && c != '\n') {
+                    emit(CODE_INDENT);
+                }
+                emit(c);
+                blockLineStart = c == '\n';
+            }
+
+            @Override
+            protected void bold(boolean open) {
+            }
+
+            @Override
+            protected void italic(boolean open) {
+            }
+
+            @Override
+            protected void inlineCode(boolean open) {
+            }
+
+            @Override
+            protected void fence(String language, boolean open) {
+                inBlock = open;
+                blockLineStart = open;
+            }
+
+            @Override
+            protected void bullet() {
+                emit('•');
+            }
+        };
+    }
+}
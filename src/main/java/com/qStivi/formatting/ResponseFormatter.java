@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.formatting;
+
+import java.util.function.Consumer;
+
+/**
+ * The {@code ResponseFormatter} interface converts model output, which is written in markdown, into the dialect of an adapter.
+ * Each reply gets its own {@link FormattingStream}, so streamed replies are converted incrementally.
+ */
+public interface ResponseFormatter {
+
+    /**
+     * The formatter for adapters that render markdown themselves; it passes the text through unchanged.
+     */
+    ResponseFormatter IDENTITY = sink -> new FormattingStream() {
+        @Override
+        public void append(CharSequence delta) {
+            if (!delta.isEmpty()) {
+                sink.accept(delta);
+            }
+        }
+
+        @Override
+        public void finish() {
+        }
+    };
+
+    /**
+     * Opens a stream for one reply.
+     *
+     * @param sink The consumer of the converted text. It receives a part after every {@link FormattingStream#append append}
+     *             that produced output, and must not keep a reference to it.
+     * @return A new {@link FormattingStream}.
+     */
+    FormattingStream open(Consumer<? super CharSequence> sink);
+
+    /**
+     * Converts a complete reply.
+     *
+     * @param text The reply in markdown.
+     * @return The reply in the dialect of this formatter.
+     */
+    default String format(CharSequence text) {
+        var out = new StringBuilder(text.length());
+        FormattingStream stream = open(out::append);
+        stream.append(text);
+        stream.finish();
+        return out.toString();
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.formatting;
+
+import com.qStivi.Adapters.Adapter;
+
+import java.util.function.Consumer;
+
+/**
+ * The {@code StreamingReply} class connects a streamed response to an {@link Adapter}.
+ * Every part is converted by the adapter's {@link ResponseFormatter} and sent as soon as it is converted.
+ */
+public class StreamingReply implements Consumer<String> {
+
+    private final Adapter adapter;
+    private final FormattingStream stream;
+
+    /**
+     * Constructs a {@code StreamingReply} that sends one reply through the given adapter.
+     *
+     * @param adapter The {@link Adapter} that supports streaming.
+     */
+    public StreamingReply(Adapter adapter) {
+        this.adapter = adapter;
+        this.stream = adapter.formatter().open(part -> adapter.sendPartial(part.toString()));
+    }
+
+    /**
+     * Converts and sends the next part of the reply.
+     *
+     * @param delta The next part of the reply.
+     */
+    @Override
+    public void accept(String delta) {
+        stream.append(delta);
+    }
+
+    /**
+     * Sends the characters held back by the formatter and ends the reply.
+     */
+    public void finish() {
+        stream.finish();
+        adapter.endMessage();
+    }
+}
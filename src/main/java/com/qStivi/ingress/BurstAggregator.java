@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.ingress;
+
+import com.qStivi.config.BurstSettings;
+import com.qStivi.config.ConfigSnapshot;
+import com.qStivi.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * The {@code BurstAggregator} class merges messages a user sends in quick succession into one turn, so a thought
+ * split over several chat messages costs one model call and gets one coherent answer.
+ * <p>
+ * A burst is complete once the user pauses for longer than their quiet window, the first message has waited
+ * {@code maxWait}, or the burst has {@code maxMessages} messages. The quiet window adapts to each user: it is twice
+ * the moving average of the pauses within their bursts, bounded by {@code minQuiet} and {@code maxQuiet}. Every burst
+ * of a single message shrinks it, so users who do not split their messages soon wait only {@code minQuiet}.
+ * <p>
+ * The reply to a burst completes the future of its last message. The futures of the earlier messages complete with
+ * {@code null}, like those of redelivered messages, so the adapter answers only once.
+ * <p>
+ * Merging needs an adapter that delivers messages while earlier ones are answered; an adapter that waits for each
+ * reply before reading the next message never forms a burst.
+ */
+public class BurstAggregator implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BurstAggregator.class);
+    private static final double SMOOTHING = 0.3;
+    private static final double WINDOW_FACTOR = 2.0;
+    private static final long IDLE_EXPIRY_NANOS = TimeUnit.HOURS.toNanos(1);
+
+    /**
+     * The {@code Sender} interface submits a complete turn, usually {@code CoreEngine::submitMessage}.
+     */
+    @FunctionalInterface
+    public interface Sender {
+
+        /**
+         * Submits a turn for processing.
+         *
+         * @param input   The merged messages.
+         * @param userId  The unique identifier of the user.
+         * @param channel The channel of the last message.
+         * @param onDelta The consumer of the parts of the response, or {@code null} to not stream.
+         * @return A future completed with the response.
+         */
+        CompletableFuture<String> submit(String input, String userId, String channel, Consumer<String> onDelta);
+    }
+
+    private final Supplier<ConfigSnapshot> settings;
+    private final Sender sender;
+    private final ConcurrentHashMap<String, Conversation> conversations = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("burst-aggregator").factory());
+    private final ExecutorService flusher = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("burst-flush-", 0).factory());
+
+    /**
+     * Constructs a {@code BurstAggregator} that submits complete bursts to the given sender.
+     *
+     * @param settings The supplier of the current {@link ConfigSnapshot}.
+     * @param sender   The {@link Sender} of complete turns.
+     */
+    public BurstAggregator(Supplier<ConfigSnapshot> settings, Sender sender) {
+        this.settings = settings;
+        this.sender = sender;
+        timer.scheduleWithFixedDelay(this::expire, 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Adds a message to the user's current burst, or submits it right away if aggregation is disabled.
+     *
+     * @param input   The input message from the user.
+     * @param userId  The unique identifier of the user.
+     * @param channel The channel or user tier that determines the user's weight.
+     * @param onDelta The consumer of the parts of the response, or {@code null} to not stream.
+     * @return A future completed with the response to the burst if this is its last message, or with {@code null}
+     * if the message was merged into a later one.
+     */
+    public CompletableFuture<String> submit(String input, String userId, String channel, Consumer<String> onDelta) {
+        BurstSettings burst = settings.get().burst();
+        if (!burst.enabled()) {
+            return sender.submit(input, userId, channel, onDelta);
+        }
+        return conversations.computeIfAbsent(userId, Conversation::new).add(input, channel, onDelta, burst);
+    }
+
+    /**
+     * Returns the current quiet window of a user.
+     *
+     * @param userId The unique identifier of the user.
+     * @return The pause after which the user's burst is complete.
+     */
+    long quietWindowNanos(String userId) {
+        BurstSettings burst = settings.get().burst();
+        Conversation conversation = conversations.get(userId);
+        if (conversation == null) {
+            return burst.quietWindow().toNanos();
+        }
+        synchronized (conversation) {
+            return conversation.quietWindow(burst);
+        }
+    }
+
+    /**
+     * Submits all pending bursts and stops the timer.
+     */
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        conversations.values().forEach(Conversation::flush);
+        flusher.shutdown();
+    }
+
+    /**
+     * Forgets users who have not sent a message for a long time, and with them their learned quiet window.
+     */
+    private void expire() {
+        long now = System.nanoTime();
+        conversations.values().removeIf(conversation -> {
+            synchronized (conversation) {
+                return conversation.pending.isEmpty() && now - conversation.lastNanos > IDLE_EXPIRY_NANOS;
+            }
+        });
+    }
+
+    /**
+     * A message waiting for the rest of its burst.
+     */
+    private record Pending(String input, String channel, Consumer<String> onDelta, CompletableFuture<String> future) {
+    }
+
+    /**
+     * The current burst and the learned typing rhythm of one user. Only messages of the same user share its lock.
+     */
+    private final class Conversation {
+
+        private final String userId;
+        private final List<Pending> pending = new ArrayList<>();
+        private long firstNanos;
+        private long lastNanos;
+        private double gapNanos = Double.NaN;
+        private ScheduledFuture<?> scheduled;
+
+        private Conversation(String userId) {
+            this.userId = userId;
+        }
+
+        private synchronized CompletableFuture<String> add(String input, String channel, Consumer<String> onDelta, BurstSettings burst) {
+            long now = System.nanoTime();
+            if (pending.isEmpty()) {
+                firstNanos = now;
+            } else {
+                long gap = now - lastNanos;
+                gapNanos = Double.isNaN(gapNanos) ? gap : gapNanos + SMOOTHING * (gap - gapNanos);
+            }
+            lastNanos = now;
+
+            var future = new CompletableFuture<String>();
+            pending.add(new Pending(input, channel, onDelta, future));
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+            long delay = pending.size() >= burst.maxMessages()
+                    ? 0
+                    : Math.min(quietWindow(burst), firstNanos + burst.maxWait().toNanos() - now);
+            scheduled = timer.schedule(() -> flusher.execute(this::flush), Math.max(0, delay), TimeUnit.NANOSECONDS);
+            return future;
+        }
+
+        private long quietWindow(BurstSettings burst) {
+            if (Double.isNaN(gapNanos)) {
+                return burst.quietWindow().toNanos();
+            }
+            long window = (long) (WINDOW_FACTOR * gapNanos);
+            return Math.clamp(window, burst.minQuiet().toNanos(), burst.maxQuiet().toNanos());
+        }
+
+        private void flush() {
+            List<Pending> burst;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                burst = List.copyOf(pending);
+                pending.clear();
+                scheduled = null;
+                if (burst.size() == 1) {
+                    // A message on its own: wait a little less for the next one
+                    double gap = Double.isNaN(gapNanos) ? settings.get().burst().quietWindow().toNanos() / WINDOW_FACTOR : gapNanos;
+                    gapNanos = gap * (1 - SMOOTHING);
+                }
+                Metrics.get().delay("burst").record(System.nanoTime() - firstNanos);
+            }
+
+            Pending last = burst.getLast();
+            var input = new StringBuilder();
+            for (Pending message : burst) {
+                if (!input.isEmpty()) {
+                    input.append('\n');
+                }
+                input.append(message.input());
+                if (message != last) {
+                    message.future().complete(null);
+                }
+            }
+            if (burst.size() > 1) {
+                Metrics.get().count("burst_messages_merged", burst.size() - 1);
+                logger.debug("Merged {} messages of user {} into one turn", burst.size(), userId);
+            }
+
+            try {
+                sender.submit(input.toString(), userId, last.channel(), last.onDelta()).whenComplete((response, error) -> {
+                    if (error == null) {
+                        last.future().complete(response);
+                    } else {
+                        last.future().completeExceptionally(error);
+                    }
+                });
+            } catch (RuntimeException e) {
+                last.future().completeExceptionally(e);
+            }
+        }
+    }
+}
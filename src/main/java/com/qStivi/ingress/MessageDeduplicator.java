@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.ingress;
+
+import com.qStivi.config.ConfigSnapshot;
+import com.qStivi.config.DedupSettings;
+import com.qStivi.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * The {@code MessageDeduplicator} class recognizes inbound messages that a platform delivers more than once,
+ * for example after a gateway reconnect, so they are not answered twice.
+ * <p>
+ * The most recent message ids are kept in an exact set. Older ids are remembered by rotating Bloom filters:
+ * the window is split into generations, each with its own filter, and the oldest filter is cleared and reused
+ * when a new generation starts. Memory is therefore fixed at startup, and each check costs a constant number of
+ * hash probes. An id that only the Bloom filters know is taken for a duplicate, which is wrong for new messages
+ * with the configured false positive rate.
+ * <p>
+ * {@link DedupSettings#enabled()} is read for every message, so deduplication can be switched off and on
+ * without a restart; the window and the filter sizes are fixed at startup.
+ */
+public class MessageDeduplicator {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageDeduplicator.class);
+    private static final int GENERATIONS = 4;
+
+    private final Supplier<ConfigSnapshot> settings;
+    private final LongSupplier clock;
+    private final long windowNanos;
+    private final long generationNanos;
+    private final int exactSize;
+    private final Map<String, Long> exact = new LinkedHashMap<>();
+    private final long[][] filters;
+    private final int bits;
+    private final int hashes;
+    private int current;
+    private long generationStart;
+
+    /**
+     * Constructs a {@code MessageDeduplicator} with the given settings.
+     *
+     * @param settings The supplier of the current {@link ConfigSnapshot}.
+     */
+    public MessageDeduplicator(Supplier<ConfigSnapshot> settings) {
+        this(settings, System::nanoTime);
+    }
+
+    /**
+     * Constructs a {@code MessageDeduplicator} with the given settings and clock.
+     *
+     * @param settings The supplier of the current {@link ConfigSnapshot}.
+     * @param clock    The source of {@link System#nanoTime()}-like timestamps.
+     */
+    MessageDeduplicator(Supplier<ConfigSnapshot> settings, LongSupplier clock) {
+        DedupSettings dedup = settings.get().dedup();
+        this.settings = settings;
+        this.clock = clock;
+        this.windowNanos = dedup.window().toNanos();
+        this.generationNanos = Math.max(1, windowNanos / (GENERATIONS - 1));
+        this.exactSize = dedup.exactSize();
+
+        // Each filter is sized for a whole window, so a burst within one generation keeps the false positive rate
+        double perGeneration = Math.max(1.0, dedup.expectedMessages());
+        double ln2 = Math.log(2);
+        long optimalBits = (long) Math.ceil(-perGeneration * Math.log(dedup.falsePositiveRate()) / (ln2 * ln2));
+        this.bits = (int) Math.min(Integer.MAX_VALUE - 63, Math.max(64, optimalBits));
+        this.hashes = Math.max(1, (int) Math.round(bits / perGeneration * ln2));
+        this.filters = new long[GENERATIONS][(bits + 63) >>> 6];
+        this.generationStart = clock.getAsLong();
+        logger.info("Deduplicating inbound messages with {} KiB of Bloom filters and {} hashes",
+                (long) GENERATIONS * filters[0].length * Long.BYTES / 1024, hashes);
+    }
+
+    /**
+     * Records a message id and reports whether it was seen within the window. While deduplication is disabled,
+     * ids are neither checked nor recorded.
+     *
+     * @param messageId The platform's id of the message.
+     * @return {@code true} if the message is a duplicate and should be dropped.
+     */
+    public synchronized boolean isDuplicate(String messageId) {
+        if (!settings.get().dedup().enabled()) {
+            return false;
+        }
+        long now = clock.getAsLong();
+        rotate(now);
+        expire(now);
+
+        if (exact.containsKey(messageId)) {
+            Metrics.get().count("duplicate_messages", 1);
+            return true;
+        }
+
+        long hash = hash(messageId);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (long[] filter : filters) {
+            if (contains(filter, h1, h2)) {
+                Metrics.get().count("duplicate_messages", 1);
+                logger.debug("Dropping message {} known to the Bloom filters", messageId);
+                return true;
+            }
+        }
+
+        add(filters[current], h1, h2);
+        exact.put(messageId, now);
+        return false;
+    }
+
+    private void rotate(long now) {
+        long elapsed = now - generationStart;
+        if (elapsed < generationNanos) {
+            return;
+        }
+        // Skip generations that passed without any message, at most clearing every filter once
+        long steps = Math.min(GENERATIONS, elapsed / generationNanos);
+        for (int i = 0; i < steps; i++) {
+            current = (current + 1) % GENERATIONS;
+            Arrays.fill(filters[current], 0L);
+        }
+        generationStart += steps == GENERATIONS ? elapsed - elapsed % generationNanos : steps * generationNanos;
+    }
+
+    private void expire(long now) {
+        Iterator<Map.Entry<String, Long>> iterator = exact.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            if (exact.size() <= exactSize && now - eldest.getValue() < windowNanos) {
+                break;
+            }
+            iterator.remove();
+        }
+    }
+
+    private boolean contains(long[] filter, int h1, int h2) {
+        for (int i = 0; i < hashes; i++) {
+            int bit = index(h1, h2, i);
+            if ((filter[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void add(long[] filter, int h1, int h2) {
+        for (int i = 0; i < hashes; i++) {
+            int bit = index(h1, h2, i);
+            filter[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    private int index(int h1, int h2, int i) {
+        // Kirsch-Mitzenmacher double hashing
+        return Math.floorMod(h1 + i * h2, bits);
+    }
+
+    /**
+     * Computes a 64-bit hash of an id with FNV-1a followed by a finalizer that spreads all bits.
+     *
+     * @param id The id to hash.
+     * @return The hash.
+     */
+    private static long hash(String id) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            h ^= id.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
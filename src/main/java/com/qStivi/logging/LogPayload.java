@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.logging;
+
+/**
+ * The {@code LogPayload} class wraps user-provided text for logging.
+ * The text is only converted when the logger actually formats the message, and it is
+ * truncated to a configurable length so that large pastes do not dominate logging cost.
+ */
+public final class LogPayload {
+
+    private static volatile int maxChars = 200;
+
+    private final CharSequence text;
+
+    private LogPayload(CharSequence text) {
+        this.text = text;
+    }
+
+    /**
+     * Wraps the given text as a truncating log argument.
+     *
+     * @param text The text to log, may be {@code null}.
+     * @return An object whose {@link #toString()} yields the truncated text.
+     */
+    public static LogPayload of(CharSequence text) {
+        return new LogPayload(text);
+    }
+
+    /**
+     * Sets the maximum number of characters written for a payload.
+     *
+     * @param maxChars The maximum length. Values below {@code 1} disable truncation.
+     */
+    public static void setMaxChars(int maxChars) {
+        LogPayload.maxChars = maxChars;
+    }
+
+    /**
+     * Returns the text, truncated to the configured maximum length.
+     *
+     * @return The truncated text, followed by the number of omitted characters if it was cut.
+     */
+    @Override
+    public String toString() {
+        if (text == null) {
+            return "null";
+        }
+        int limit = maxChars;
+        int length = text.length();
+        if (limit < 1 || length <= limit) {
+            return text.toString();
+        }
+        return new StringBuilder(limit + 24)
+                .append(text, 0, limit)
+                .append("... (+").append(length - limit).append(" chars)")
+                .toString();
+    }
+}
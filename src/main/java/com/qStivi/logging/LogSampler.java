@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code LogSampler} class decides whether a high-frequency log statement should be written.
+ * Each call site owns its own sampler; all samplers share the configured rate, which lets only
+ * every n-th call through.
+ */
+public final class LogSampler {
+
+    private static volatile int sampleEvery = 1;
+
+    private final AtomicLong calls = new AtomicLong();
+
+    /**
+     * Sets how many calls share one written log line.
+     *
+     * @param sampleEvery The sampling interval. Values below {@code 2} log every call.
+     */
+    public static void setSampleEvery(int sampleEvery) {
+        LogSampler.sampleEvery = sampleEvery;
+    }
+
+    /**
+     * Returns whether the current call should be logged.
+     *
+     * @return {@code true} for every n-th call; {@code false} otherwise.
+     */
+    public boolean sample() {
+        int every = sampleEvery;
+        return every < 2 || calls.getAndIncrement() % every == 0;
+    }
+}
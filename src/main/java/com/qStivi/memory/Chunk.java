@@ -0,0 +1,20 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.memory;
+
+import java.nio.file.Path;
+
+/**
+ * The {@code Chunk} record is a piece of an ingested document, small enough to be embedded and recalled on its own.
+ *
+ * @param source The file the chunk was read from.
+ * @param offset The character offset of the chunk in its file.
+ * @param text   The text of the chunk.
+ * @param tokens The number of tokens of the text.
+ */
+public record Chunk(Path source, long offset, String text, int tokens) {
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.memory;
+
+import com.qStivi.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * The {@code DiskTier} class is the warm tier of the {@link TieredMemoryCache}: a bounded key-value store on disk.
+ * Each entry is a file in the directory of its owner, named after the hash of its key, so an owner's entries can be
+ * dropped by deleting one directory. The file also holds the full key, which guards against hash collisions.
+ * Entries are written to a temporary file and moved into place, so readers never see a partial entry.
+ * <p>
+ * Entries expire {@code maxAge} after they were written, which also bounds how stale an entry left over from before
+ * a restart can be. Once there are more than {@code maxEntries}, the oldest entries are deleted until a tenth of the
+ * space is free again, so the directory is scanned only every so often.
+ * <p>
+ * Failures are logged and treated as misses, since every entry can be loaded again from the backend.
+ */
+final class DiskTier {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiskTier.class);
+    private static final HexFormat HEX = HexFormat.of();
+    private static final long ABANDONED_TEMP_MILLIS = 60_000;
+
+    private final Path directory;
+    private final int maxEntries;
+    private final long maxAgeMillis;
+    private final AtomicInteger entries = new AtomicInteger();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    /**
+     * Constructs a {@code DiskTier} in the given directory, creating it if necessary.
+     * Expired entries and entries over the limit are deleted right away.
+     *
+     * @param directory  The directory holding the entries.
+     * @param maxEntries The maximum number of entries.
+     * @param maxAge     The time after which an entry expires.
+     * @throws IOException If the directory cannot be created.
+     */
+    DiskTier(Path directory, int maxEntries, Duration maxAge) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxEntries = maxEntries;
+        this.maxAgeMillis = maxAge.toMillis();
+        entries.set(sweep(maxEntries));
+    }
+
+    /**
+     * Reads an entry.
+     *
+     * @param owner The owner of the entry.
+     * @param key   The key of the entry.
+     * @return The value, or {@code null} if the entry does not exist or cannot be read.
+     */
+    String get(String owner, String key) {
+        Path file = fileOf(owner, key);
+        try {
+            if (isExpired(Files.getLastModifiedTime(file).toMillis())) {
+                if (Files.deleteIfExists(file)) {
+                    entries.decrementAndGet();
+                }
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+            byte[] storedKey = new byte[buffer.getInt()];
+            buffer.get(storedKey);
+            if (!Arrays.equals(storedKey, key.getBytes(StandardCharsets.UTF_8))) {
+                return null;
+            }
+            return StandardCharsets.UTF_8.decode(buffer).toString();
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to read warm cache entry {}", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes an entry, replacing any previous value.
+     *
+     * @param owner The owner of the entry.
+     * @param key   The key of the entry.
+     * @param value The value.
+     */
+    void put(String owner, String key, String value) {
+        Path file = fileOf(owner, key);
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + keyBytes.length + valueBytes.length)
+                .putInt(keyBytes.length).put(keyBytes).put(valueBytes);
+        try {
+            Files.createDirectories(file.getParent());
+            boolean added = Files.notExists(file);
+            Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            Files.write(temp, buffer.array());
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (added && entries.incrementAndGet() > maxEntries) {
+                evict();
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to write warm cache entry {}", file, e);
+        }
+    }
+
+    /**
+     * Returns the number of entries, which may include entries that expired but were not read since.
+     *
+     * @return The number of entries on disk.
+     */
+    int size() {
+        return entries.get();
+    }
+
+    /**
+     * Deletes all entries of an owner.
+     *
+     * @param owner The owner whose entries are deleted.
+     */
+    void invalidate(String owner) {
+        Path ownerDirectory = directory.resolve(hash(owner));
+        if (!Files.exists(ownerDirectory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(ownerDirectory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                boolean entry = Files.isRegularFile(path) && isEntry(path);
+                if (Files.deleteIfExists(path) && entry) {
+                    entries.decrementAndGet();
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to delete warm cache entries of {}", ownerDirectory, e);
+        }
+    }
+
+    /**
+     * Deletes the oldest entries until the tier is back below its limit. Only one thread evicts at a time;
+     * the others keep writing, since the limit is a target and not a hard cap.
+     */
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int remaining = sweep(maxEntries - maxEntries / 10);
+            entries.set(remaining);
+            logger.debug("Evicted warm cache entries, {} remain", remaining);
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * Deletes expired entries, abandoned temporary files and, oldest first, the entries over the given count.
+     *
+     * @param keep The maximum number of entries to keep.
+     * @return The number of entries kept.
+     */
+    private int sweep(int keep) {
+        record Entry(Path path, long modified) {
+        }
+
+        List<Entry> live = new ArrayList<>();
+        int deleted = 0;
+        try (Stream<Path> files = Files.walk(directory, 2)) {
+            for (Path path : files.toList()) {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                if (!attributes.isRegularFile()) {
+                    continue;
+                }
+                long modified = attributes.lastModifiedTime().toMillis();
+                if (!isEntry(path)) {
+                    // A temporary file that was never moved into place, unless a write is still in progress
+                    if (System.currentTimeMillis() - modified > ABANDONED_TEMP_MILLIS) {
+                        Files.deleteIfExists(path);
+                    }
+                } else if (isExpired(modified)) {
+                    deleted += Files.deleteIfExists(path) ? 1 : 0;
+                } else {
+                    live.add(new Entry(path, modified));
+                }
+            }
+
+            if (live.size() > keep) {
+                live.sort(Comparator.comparingLong(Entry::modified));
+                for (Entry entry : live.subList(0, live.size() - keep)) {
+                    deleted += Files.deleteIfExists(entry.path()) ? 1 : 0;
+                }
+                live = live.subList(live.size() - keep, live.size());
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to clean up warm cache {}", directory, e);
+        }
+        if (deleted > 0) {
+            Metrics.get().count("memory_warm_evictions", deleted);
+        }
+        return live.size();
+    }
+
+    private boolean isExpired(long modifiedMillis) {
+        return System.currentTimeMillis() - modifiedMillis > maxAgeMillis;
+    }
+
+    private static boolean isEntry(Path path) {
+        return !path.getFileName().toString().endsWith(".tmp");
+    }
+
+    private Path fileOf(String owner, String key) {
+        return directory.resolve(hash(owner)).resolve(hash(key));
+    }
+
+    private static String hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return HEX.formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.memory;
+
+import com.qStivi.config.IngestSettings;
+import com.qStivi.metrics.Metrics;
+import com.qStivi.tokenizer.TokenCounter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * The {@code DocumentIngestor} class reads documents into a {@link MemoryIndex}.
+ * <p>
+ * Files are memory-mapped in large windows and decoded straight into a chunk-sized buffer, so reading costs no copies
+ * beyond the decoded text. A chunk ends at the last whitespace in its final tenth and the next one repeats
+ * {@link IngestSettings#overlapChars()} characters of it, so text near a boundary can be recalled from either side.
+ * Counting tokens, embedding and indexing run on a fork-join pool while the reader continues with the next chunk.
+ * At most {@link IngestSettings#maxInFlight()} chunks wait for the pool, so the reader blocks rather than
+ * buffering a large corpus in memory.
+ * <p>
+ * Every chunk is indexed, even if it nearly repeats a chunk of another file, so it is still recalled after that file is
+ * edited or removed. If {@link IngestSettings#skipNearDuplicates()} is set, {@link #search} drops matches that
+ * nearly repeat a better match instead.
+ * <p>
+ * Once all chunks of a run are indexed, each file read completely is recorded in the index with the size and
+ * modification time it had when the run started. A later run skips these files while both are unchanged, and reads
+ * edited or partially ingested files again, after retiring the chunks they left in the index. The chunks of indexed files
+ * that no longer exist are retired as well.
+ */
+public class DocumentIngestor {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentIngestor.class);
+    private static final long WINDOW_BYTES = 1L << 26;
+    private static final int DUPLICATE_OVERSAMPLING = 3;
+
+    private final IngestSettings settings;
+    private final Embedder embedder;
+    private final MemoryIndex index;
+    private final TokenCounter tokenCounter;
+
+    /**
+     * Constructs a {@code DocumentIngestor} with the given settings.
+     *
+     * @param settings     The {@link IngestSettings}.
+     * @param embedder     The {@link Embedder} of chunks and queries.
+     * @param index        The {@link MemoryIndex} that receives the chunks.
+     * @param tokenCounter The {@link TokenCounter} of the chat model, used to record the size of each chunk.
+     */
+    public DocumentIngestor(IngestSettings settings, Embedder embedder, MemoryIndex index, TokenCounter tokenCounter) {
+        if (embedder.dimensions() != index.dimensions()) {
+            throw new IllegalArgumentException("Embedder and index differ in dimensions: " + embedder.dimensions() + " and " + index.dimensions());
+        }
+        this.settings = settings;
+        this.embedder = embedder;
+        this.index = index;
+        this.tokenCounter = tokenCounter;
+    }
+
+    /**
+     * Returns the index this ingestor writes to.
+     *
+     * @return The {@link MemoryIndex}.
+     */
+    public MemoryIndex index() {
+        return index;
+    }
+
+    /**
+     * Finds the ingested chunks most similar to a text. If near-duplicates are skipped, a match that nearly repeats a
+     * more similar one is left out.
+     *
+     * @param text  The text to search for.
+     * @param limit The maximum number of matches.
+     * @return The matches, most similar first.
+     */
+    public List<MemoryIndex.Match> search(String text, int limit) {
+        if (!settings.skipNearDuplicates()) {
+            return index.search(embedder.embed(text), limit);
+        }
+        // Search for more chunks than needed, so near-duplicates do not crowd out distinct ones
+        List<MemoryIndex.Match> matches = index.search(embedder.embed(text), limit * DUPLICATE_OVERSAMPLING);
+        var duplicates = new NearDuplicateDetector();
+        return matches.stream()
+                .filter(match -> duplicates.add(match.chunk().text()))
+                .limit(limit)
+                .toList();
+    }
+
+    /**
+     * Ingests files and all files with a configured extension below directories.
+     * Unreadable files and files indexed completely with their current size and modification time, for example
+     * restored from a snapshot, are skipped. Chunks of files that are read again or no longer exist are retired first.
+     *
+     * @param roots    The files and directories to ingest.
+     * @param progress The consumer of progress reports, called after each file.
+     * @return The final progress.
+     * @throws IOException          If a directory cannot be walked.
+     * @throws InterruptedException If the thread is interrupted while waiting for the pool.
+     */
+    public IngestProgress ingest(List<Path> roots, Consumer<IngestProgress> progress) throws IOException, InterruptedException {
+        List<Source> files = collect(roots);
+        int retired = retireRemoved();
+        long bytesTotal = 0;
+        for (Source file : files) {
+            retired += index.retire(file.path());
+            bytesTotal += file.size();
+        }
+        if (retired > 0) {
+            logger.info("Retired {} chunks of changed, removed or incompletely ingested documents", retired);
+        }
+        // Chunks of this run are added from here on, so older chunks of its files stay retired after a restart
+        int from = index.size();
+        List<MemoryIndex.Completion> completed = new ArrayList<>(files.size());
+
+        int parallelism = settings.parallelism() > 0 ? settings.parallelism() : Runtime.getRuntime().availableProcessors();
+        var pool = new ForkJoinPool(parallelism);
+        var run = new Run(pool, new Semaphore(settings.maxInFlight()));
+        long start = System.nanoTime();
+        int filesRead = 0;
+        long bytesRead = 0;
+        try {
+            for (Source file : files) {
+                try {
+                    bytesRead += read(file.path(), run);
+                    completed.add(new MemoryIndex.Completion(file.path(), file.size(), file.modified(), from));
+                } catch (IOException e) {
+                    logger.warn("Skipping unreadable document {}: {}", file.path(), e.getMessage());
+                }
+                filesRead++;
+                run.rethrow();
+                progress.accept(new IngestProgress(filesRead, files.size(), bytesRead, bytesTotal, run.indexed.get()));
+            }
+            // Wait until every chunk is indexed
+            run.permits.acquire(settings.maxInFlight());
+            run.permits.release(settings.maxInFlight());
+            run.rethrow();
+            index.complete(completed);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        var result = new IngestProgress(filesRead, files.size(), bytesRead, bytesTotal, run.indexed.get());
+        progress.accept(result);
+        logger.info("Ingested {} chunks from {} files ({} KiB) in {} ms", result.chunksIndexed(),
+                result.filesRead(), result.bytesRead() / 1024, (System.nanoTime() - start) / 1_000_000);
+        return result;
+    }
+
+    /**
+     * Retires the chunks of indexed files that no longer exist, and records them as removed so they stay retired
+     * after a restart.
+     *
+     * @return The number of chunks retired.
+     */
+    private int retireRemoved() {
+        int retired = 0;
+        List<MemoryIndex.Completion> removed = new ArrayList<>();
+        for (Path source : index.sources()) {
+            if (Files.notExists(source)) {
+                retired += index.retire(source);
+                removed.add(MemoryIndex.Completion.removed(source, index.size()));
+            }
+        }
+        index.complete(removed);
+        return retired;
+    }
+
+    private List<Source> collect(List<Path> roots) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        for (Path root : roots) {
+            if (Files.isRegularFile(root)) {
+                paths.add(root);
+                continue;
+            }
+            try (Stream<Path> walk = Files.walk(root)) {
+                walk.filter(Files::isRegularFile).filter(this::hasExtension).sorted().forEach(paths::add);
+            }
+        }
+
+        List<Source> files = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            long modified = attributes.lastModifiedTime().toMillis();
+            if (!index.isCurrent(path, attributes.size(), modified)) {
+                files.add(new Source(path, attributes.size(), modified));
+            }
+        }
+        if (files.size() < paths.size()) {
+            logger.info("Skipping {} documents that are unchanged since they were indexed", paths.size() - files.size());
+        }
+        return files;
+    }
+
+    private boolean hasExtension(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && settings.extensions().contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Reads a file window by window and submits its chunks.
+     *
+     * @param file The file to read.
+     * @param run  The state of the ingestion.
+     * @return The size of the file.
+     */
+    private long read(Path file, Run run) throws IOException, InterruptedException {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        var chunker = new Chunker(file, run);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long length = Math.min(WINDOW_BYTES, size - position);
+                boolean last = position + length == size;
+                MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                while (decoder.decode(bytes, chunker.chars, last).isOverflow()) {
+                    chunker.emit();
+                }
+                // A character split by the window end is decoded again from the next window
+                position += bytes.position();
+                if (!last && bytes.position() == 0) {
+                    throw new IOException("Cannot decode " + file + " at byte " + position);
+                }
+            }
+            CoderResult result;
+            while ((result = decoder.flush(chunker.chars)).isOverflow()) {
+                chunker.emit();
+            }
+            if (result.isError()) {
+                result.throwException();
+            }
+            chunker.finish();
+            Metrics.get().count("ingested_bytes", size);
+            return size;
+        }
+    }
+
+    /**
+     * A file to ingest, with the size and modification time it had when it was listed.
+     */
+    private record Source(Path path, long size, long modified) {
+    }
+
+    /**
+     * The shared state of one {@link #ingest} call.
+     */
+    private final class Run {
+
+        private final ForkJoinPool pool;
+        private final Semaphore permits;
+        private final AtomicLong indexed = new AtomicLong();
+        private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        private Run(ForkJoinPool pool, Semaphore permits) {
+            this.pool = pool;
+            this.permits = permits;
+        }
+
+        /**
+         * Hands a chunk to the pool, waiting while too many chunks are in flight.
+         */
+        private void submit(Path file, long offset, String text) throws InterruptedException {
+            permits.acquire();
+            pool.execute(() -> {
+                try {
+                    var chunk = new Chunk(file, offset, text, tokenCounter.count(text));
+                    index.add(chunk, embedder.embed(text));
+                    indexed.incrementAndGet();
+                    Metrics.get().count("ingested_chunks", 1);
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+
+        private void rethrow() {
+            RuntimeException e = failure.get();
+            if (e != null) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Cuts the decoded text of one file into overlapping chunks.
+     */
+    private final class Chunker {
+
+        private final Path file;
+        private final Run run;
+        private final CharBuffer chars = CharBuffer.allocate(settings.chunkChars());
+        private long offset;
+        private int freshFrom;
+
+        private Chunker(Path file, Run run) {
+            this.file = file;
+            this.run = run;
+        }
+
+        /**
+         * Submits the full buffer as a chunk and keeps its overlap for the next one.
+         */
+        private void emit() throws InterruptedException {
+            chars.flip();
+            int limit = chars.limit();
+            int split = limit;
+            for (int i = limit - 1; i >= limit - limit / 10; i--) {
+                if (Character.isWhitespace(chars.get(i))) {
+                    split = i + 1;
+                    break;
+                }
+            }
+            submit(0, split);
+
+            int keepFrom = split - settings.overlapChars();
+            chars.position(keepFrom);
+            chars.compact();
+            offset += keepFrom;
+            freshFrom = split - keepFrom;
+        }
+
+        /**
+         * Submits the rest of the buffer unless it only repeats the previous chunk.
+         */
+        private void finish() throws InterruptedException {
+            if (chars.position() > freshFrom) {
+                submit(0, chars.position());
+            }
+        }
+
+        private void submit(int from, int to) throws InterruptedException {
+            String text = new String(chars.array(), from, to - from);
+            if (!text.isBlank()) {
+                run.submit(file, offset + from, text);
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.memory;
+
+/**
+ * The {@code Embedder} interface maps text to a vector, such that similar texts get vectors with a high cosine similarity.
+ * Implementations must be thread-safe, since chunks are embedded in parallel.
+ */
+public interface Embedder {
+
+    /**
+     * Returns the length of the vectors of this embedder.
+     *
+     * @return The number of dimensions.
+     */
+    int dimensions();
+
+    /**
+     * Embeds a text.
+     *
+     * @param text The text to embed.
+     * @return A vector of {@link #dimensions()} components with unit length, or all zeros for text without words.
+     */
+    float[] embed(CharSequence text);
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.memory;
+
+/**
+ * The {@code FrequencySketch} class estimates how often keys were accessed recently, in a fixed amount of memory.
+ * It is a count-min sketch of four rows of 4-bit counters packed into longs. After a sample of accesses ten times
+ * the cache size, all counters are halved, so old popularity fades and new hot keys can take over.
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * Constructs a {@code FrequencySketch} for a cache of the given size.
+     *
+     * @param maximumSize The maximum number of entries of the cache.
+     */
+    FrequencySketch(int maximumSize) {
+        int size = Integer.highestOneBit(Math.max(16, maximumSize - 1) << 1);
+        this.table = new long[size];
+        this.mask = size - 1;
+        this.sampleSize = 10 * Math.max(1, maximumSize);
+    }
+
+    /**
+     * Returns the estimated number of recent accesses of a key.
+     *
+     * @param key The key.
+     * @return The estimate, at most {@code 15}.
+     */
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Records an access of a key.
+     *
+     * @param key The key.
+     */
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long counterMask = 0xfL << offset;
+        if ((table[index] & counterMask) != counterMask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+
+    private int indexOf(int item, int i) {
+        long hash = (item + SEEDS[i]) * SEEDS[i];
+        hash += hash >>> 32;
+        return (int) hash & mask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
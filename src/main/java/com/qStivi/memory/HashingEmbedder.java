@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.memory;
+
+/**
+ * The {@code HashingEmbedder} class embeds text locally by feature hashing: every word is hashed to a dimension and
+ * a sign, and the counts are normalized to unit length. It needs no model or network call, runs at memory speed,
+ * and gives texts that share words a high similarity, which is enough to recall ingested documents by topic.
+ */
+public final class HashingEmbedder implements Embedder {
+
+    private final int dimensions;
+
+    /**
+     * Constructs a {@code HashingEmbedder} with the given number of dimensions.
+     *
+     * @param dimensions The length of the vectors.
+     */
+    public HashingEmbedder(int dimensions) {
+        if (dimensions <= 0) {
+            throw new IllegalArgumentException("Dimensions must be positive");
+        }
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public float[] embed(CharSequence text) {
+        float[] vector = new float[dimensions];
+        int hash = 0;
+        int length = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                // FNV-1a over the lower-cased word, computed without allocating it
+                if (length++ == 0) {
+                    hash = 0x811c9dc5;
+                }
+                hash = (hash ^ Character.toLowerCase(c)) * 0x01000193;
+            } else if (length > 0) {
+                int mixed = hash ^ (hash >>> 16);
+                vector[Math.floorMod(mixed, dimensions)] += (mixed & 0x80000000) == 0 ? 1f : -1f;
+                length = 0;
+            }
+        }
+        normalize(vector);
+        return vector;
+    }
+
+    /**
+     * Scales a vector to unit length. A zero vector is left unchanged.
+     *
+     * @param vector The vector to scale in place.
+     */
+    static void normalize(float[] vector) {
+        double sum = 0;
+        for (float component : vector) {
+            sum += component * component;
+        }
+        if (sum == 0) {
+            return;
+        }
+        float scale = (float) (1 / Math.sqrt(sum));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= scale;
+        }
+    }
+}
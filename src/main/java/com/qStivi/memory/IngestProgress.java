@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.memory;
+
+/**
+ * The {@code IngestProgress} record is the state of a running {@link DocumentIngestor#ingest ingestion}.
+ *
+ * @param filesRead     The number of files read so far.
+ * @param filesTotal    The number of files to read.
+ * @param bytesRead     The number of bytes read so far.
+ * @param bytesTotal    The number of bytes to read.
+ * @param chunksIndexed The number of chunks embedded and indexed so far.
+ */
+public record IngestProgress(int filesRead, int filesTotal, long bytesRead, long bytesTotal, long chunksIndexed) {
+
+    /**
+     * Returns the share of bytes read.
+     *
+     * @return A value between {@code 0} and {@code 1}.
+     */
+    public double fraction() {
+        return bytesTotal == 0 ? 1 : (double) bytesRead / bytesTotal;
+    }
+}
@@ -0,0 +1,416 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.memory;
+
+import java.nio.FloatBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The {@code MemoryIndex} class holds embedded chunks and finds the ones most similar to a query vector.
+ * Vectors are stored in one growing float array, so a search is a linear scan over contiguous memory.
+ * Chunks are added concurrently by the ingestion workers while searches run under a shared lock.
+ * <p>
+ * The index is append-only, so a chunk is identified by its position. An {@link Observer} sees every added chunk
+ * in position order, which lets a store persist the index incrementally.
+ * <p>
+ * Each completely ingested file is recorded as a {@link Completion} with its size and modification time, so unchanged
+ * files are not read again. Before a changed file is read again, its chunks are retired: they keep their positions
+ * but are no longer found. A completion also retires the chunks of its file from before the ingestion that completed it,
+ * which restores the retirements when the index is loaded from storage. A file that no longer exists is recorded with a
+ * {@linkplain Completion#removed removed completion}, which retires all of its chunks and is never current.
+ */
+public class MemoryIndex {
+
+    private final int dimensions;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Chunk> chunks = new ArrayList<>();
+    private final Set<Path> sources = new HashSet<>();
+    private final Map<Path, Completion> completions = new HashMap<>();
+    private final BitSet retired = new BitSet();
+    private float[] vectors;
+    private Observer observer;
+
+    /**
+     * Constructs an empty {@code MemoryIndex} for vectors of the given length.
+     *
+     * @param dimensions The length of the vectors.
+     */
+    public MemoryIndex(int dimensions) {
+        this.dimensions = dimensions;
+        this.vectors = new float[dimensions * 1024];
+    }
+
+    /**
+     * Adds a chunk with its vector.
+     *
+     * @param chunk  The chunk.
+     * @param vector The vector of the chunk, with unit length.
+     */
+    public void add(Chunk chunk, float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected a vector of " + dimensions + " dimensions, got " + vector.length);
+        }
+        lock.writeLock().lock();
+        try {
+            int position = chunks.size();
+            ensureCapacity(position + 1);
+            System.arraycopy(vector, 0, vectors, position * dimensions, dimensions);
+            chunks.add(chunk);
+            sources.add(chunk.source());
+            if (observer != null) {
+                // Under the lock, so the observer sees the chunks in position order
+                observer.onAdd(position, chunk, vector);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds chunks restored from storage, without notifying the observer.
+     *
+     * @param added   The chunks.
+     * @param vectors The vectors of the chunks, one after the other.
+     */
+    public void restore(List<Chunk> added, FloatBuffer vectors) {
+        if (vectors.remaining() != added.size() * dimensions) {
+            throw new IllegalArgumentException("Expected " + added.size() * dimensions + " vector components, got " + vectors.remaining());
+        }
+        lock.writeLock().lock();
+        try {
+            ensureCapacity(chunks.size() + added.size());
+            vectors.get(this.vectors, chunks.size() * dimensions, vectors.remaining());
+            chunks.addAll(added);
+            for (Chunk chunk : added) {
+                sources.add(chunk.source());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Records files whose chunks are all indexed, and notifies the observer.
+     *
+     * @param completed The {@link Completion} of each file.
+     */
+    public void complete(Collection<Completion> completed) {
+        if (completed.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (Completion completion : completed) {
+                completions.put(completion.source(), completion);
+            }
+            if (observer != null) {
+                observer.onComplete(List.copyOf(completed));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Records completed files restored from storage, without notifying the observer.
+     * Chunks of each file that were indexed before its completed ingestion started are retired.
+     *
+     * @param restored The {@link Completion} of each file.
+     */
+    public void restoreCompletions(Collection<Completion> restored) {
+        lock.writeLock().lock();
+        try {
+            for (Completion completion : restored) {
+                completions.put(completion.source(), completion);
+            }
+            sources.clear();
+            for (int i = 0; i < chunks.size(); i++) {
+                Completion completion = completions.get(chunks.get(i).source());
+                if (completion != null && i < completion.from()) {
+                    retired.set(i);
+                } else {
+                    sources.add(chunks.get(i).source());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns whether a file was completely indexed with the given size and modification time.
+     *
+     * @param source   The file.
+     * @param size     The current size of the file in bytes.
+     * @param modified The current modification time of the file in milliseconds since the epoch.
+     * @return {@code true} if the file is indexed and unchanged since.
+     */
+    public boolean isCurrent(Path source, long size, long modified) {
+        lock.readLock().lock();
+        try {
+            Completion completion = completions.get(source);
+            return completion != null && completion.size() == size && completion.modified() == modified;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retires the chunks of a file, so searches no longer find them, before the file is read again.
+     *
+     * @param source The file.
+     * @return The number of chunks retired.
+     */
+    public int retire(Path source) {
+        lock.writeLock().lock();
+        try {
+            if (!sources.remove(source)) {
+                return 0;
+            }
+            int count = 0;
+            for (int i = 0; i < chunks.size(); i++) {
+                if (!retired.get(i) && chunks.get(i).source().equals(source)) {
+                    retired.set(i);
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the files that have chunks which are not retired.
+     *
+     * @return A copy of the files.
+     */
+    public Set<Path> sources() {
+        lock.readLock().lock();
+        try {
+            return Set.copyOf(sources);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the completed files.
+     *
+     * @return A copy of the completions.
+     */
+    public List<Completion> completions() {
+        lock.readLock().lock();
+        try {
+            return List.copyOf(completions.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the observer of added chunks.
+     *
+     * @param observer The {@link Observer}, or {@code null} to remove it.
+     */
+    public void observe(Observer observer) {
+        lock.writeLock().lock();
+        try {
+            this.observer = observer;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Copies a range of chunks, their vectors and which of them are retired.
+     *
+     * @param from The position of the first chunk, inclusive.
+     * @param to   The position of the last chunk, exclusive.
+     * @return The copied {@link Slice}.
+     */
+    public Slice slice(int from, int to) {
+        lock.readLock().lock();
+        try {
+            if (from < 0 || to > chunks.size() || from > to) {
+                throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") of " + chunks.size() + " chunks");
+            }
+            return new Slice(List.copyOf(chunks.subList(from, to)), Arrays.copyOfRange(vectors, from * dimensions, to * dimensions), retired.get(from, to));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns whether chunks of a file are indexed.
+     *
+     * @param source The file.
+     * @return {@code true} if at least one chunk was read from the file and has not been retired.
+     */
+    public boolean contains(Path source) {
+        lock.readLock().lock();
+        try {
+            return sources.contains(source);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the chunks most similar to a query.
+     *
+     * @param query The query vector, with unit length.
+     * @param limit The maximum number of matches.
+     * @return The matches with a positive similarity, most similar first.
+     */
+    public List<Match> search(float[] query, int limit) {
+        var best = new PriorityQueue<Match>(Comparator.comparingDouble(Match::score));
+        lock.readLock().lock();
+        try {
+            for (int i = retired.nextClearBit(0); i < chunks.size(); i = retired.nextClearBit(i + 1)) {
+                int offset = i * dimensions;
+                float score = 0;
+                for (int d = 0; d < dimensions; d++) {
+                    score += query[d] * vectors[offset + d];
+                }
+                if (score > 0 && (best.size() < limit || score > best.peek().score())) {
+                    best.add(new Match(chunks.get(i), score));
+                    if (best.size() > limit) {
+                        best.poll();
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        var matches = new ArrayList<>(best);
+        matches.sort(Comparator.comparingDouble(Match::score).reversed());
+        return matches;
+    }
+
+    /**
+     * Returns the number of indexed chunks, including retired ones.
+     *
+     * @return The size of the index.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return chunks.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the indexed chunks in the order they were added.
+     *
+     * @return A copy of the chunks.
+     */
+    List<Chunk> chunks() {
+        lock.readLock().lock();
+        try {
+            return List.copyOf(chunks);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the length of the vectors of this index.
+     *
+     * @return The number of dimensions.
+     */
+    public int dimensions() {
+        return dimensions;
+    }
+
+    private void ensureCapacity(int count) {
+        if (count * dimensions > vectors.length) {
+            vectors = Arrays.copyOf(vectors, Math.max(vectors.length * 2, count * dimensions));
+        }
+    }
+
+    /**
+     * Receives the chunks added to an index.
+     */
+    @FunctionalInterface
+    public interface Observer {
+
+        /**
+         * Called after a chunk was added, while the index is locked for writing.
+         *
+         * @param position The position of the chunk.
+         * @param chunk    The chunk.
+         * @param vector   The vector of the chunk.
+         */
+        void onAdd(int position, Chunk chunk, float[] vector);
+
+        /**
+         * Called after files were completed, while the index is locked for writing.
+         *
+         * @param completed The {@link Completion} of each file.
+         */
+        default void onComplete(List<Completion> completed) {
+        }
+    }
+
+    /**
+     * A file whose chunks are all indexed.
+     *
+     * @param source   The file.
+     * @param size     The size of the file in bytes when it was read.
+     * @param modified The modification time of the file in milliseconds since the epoch when it was read.
+     * @param from     The size of the index when the ingestion started; older chunks of the file are retired.
+     */
+    public record Completion(Path source, long size, long modified, int from) {
+
+        /**
+         * Returns the completion of a file that no longer exists.
+         *
+         * @param source The file.
+         * @param from   The size of the index when the file was found missing; all of its chunks are retired.
+         * @return A {@code Completion} that is never current.
+         */
+        public static Completion removed(Path source, int from) {
+            return new Completion(source, -1, -1, from);
+        }
+    }
+
+    /**
+     * A copied range of an index.
+     *
+     * @param chunks  The chunks.
+     * @param vectors The vectors of the chunks, one after the other.
+     * @param retired The retired chunks, by their index in the range.
+     */
+    public record Slice(List<Chunk> chunks, float[] vectors, BitSet retired) {
+    }
+
+    /**
+     * A chunk found by a search.
+     *
+     * @param chunk The matching chunk.
+     * @param score The cosine similarity to the query.
+     */
+    public record Match(Chunk chunk, float score) {
+    }
+}
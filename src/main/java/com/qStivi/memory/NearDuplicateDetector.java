@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.memory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code NearDuplicateDetector} class recognizes texts that are nearly identical to a text seen before,
+ * such as a fact restated with different punctuation or with one word changed.
+ * <p>
+ * Each text is reduced to a MinHash signature of its lower-cased word pairs: the share of equal signature values of
+ * two texts estimates the Jaccard similarity of their word pairs. Signatures are indexed by locality-sensitive hashing
+ * in bands of four values, so only texts that agree on a whole band are compared, and texts at the default
+ * threshold are found with a probability above 99.9%.
+ */
+public class NearDuplicateDetector {
+
+    /**
+     * The default minimum estimated Jaccard similarity of near-duplicates.
+     */
+    public static final double DEFAULT_THRESHOLD = 0.8;
+
+    private static final int BANDS = 16;
+    private static final int ROWS = 4;
+    private static final int HASHES = BANDS * ROWS;
+    private static final long[] SEEDS = new long[HASHES];
+
+    static {
+        long seed = 0x2545f4914f6cdd1dL;
+        for (int i = 0; i < HASHES; i++) {
+            seed = mix(seed + 0x9e3779b97f4a7c15L);
+            SEEDS[i] = seed;
+        }
+    }
+
+    private final int minEqual;
+    private final List<int[]> signatures = new ArrayList<>();
+    private final Map<Long, List<Integer>> buckets = new HashMap<>();
+
+    /**
+     * Constructs a {@code NearDuplicateDetector} with the default threshold.
+     */
+    public NearDuplicateDetector() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Constructs a {@code NearDuplicateDetector} with the given threshold.
+     *
+     * @param threshold The minimum estimated Jaccard similarity of near-duplicates, between {@code 0} and {@code 1}.
+     */
+    public NearDuplicateDetector(double threshold) {
+        if (!(threshold > 0 && threshold <= 1)) {
+            throw new IllegalArgumentException("Threshold must be between 0 and 1 but was " + threshold);
+        }
+        this.minEqual = (int) Math.ceil(threshold * HASHES);
+    }
+
+    /**
+     * Remembers a text unless it is a near-duplicate of a remembered one. The signature is computed before the
+     * detector is locked, so concurrent callers only wait for each other's bucket lookups.
+     *
+     * @param text The text.
+     * @return {@code true} if the text is new; {@code false} if it is a near-duplicate.
+     */
+    public boolean add(CharSequence text) {
+        int[] signature = signature(text);
+        long[] keys = new long[BANDS];
+        for (int band = 0; band < BANDS; band++) {
+            keys[band] = key(band, signature);
+        }
+
+        synchronized (this) {
+            for (long key : keys) {
+                List<Integer> bucket = buckets.get(key);
+                if (bucket != null) {
+                    for (int candidate : bucket) {
+                        if (equalValues(signature, signatures.get(candidate)) >= minEqual) {
+                            return false;
+                        }
+                    }
+                }
+            }
+
+            int id = signatures.size();
+            signatures.add(signature);
+            for (long key : keys) {
+                buckets.computeIfAbsent(key, k -> new ArrayList<>(1)).add(id);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Returns the number of remembered texts.
+     *
+     * @return The size of the detector.
+     */
+    public synchronized int size() {
+        return signatures.size();
+    }
+
+    /**
+     * Removes the near-duplicates from a list of texts, keeping the first of each group.
+     *
+     * @param texts The texts, in order of preference.
+     * @return The distinct texts, in their original order.
+     */
+    public static List<String> distinct(List<String> texts) {
+        var detector = new NearDuplicateDetector();
+        return texts.stream().filter(detector::add).toList();
+    }
+
+    /**
+     * Computes the MinHash signature of the word pairs of a text. A text with a single word uses the word itself.
+     *
+     * @param text The text.
+     * @return The signature.
+     */
+    static int[] signature(CharSequence text) {
+        int[] signature = new int[HASHES];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        long previous = 0;
+        long hash = 0;
+        int words = 0;
+        int length = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                // FNV-1a over the lower-cased word, computed without allocating it
+                if (length++ == 0) {
+                    hash = 0xcbf29ce484222325L;
+                }
+                hash = (hash ^ Character.toLowerCase(c)) * 0x100000001b3L;
+            } else if (length > 0) {
+                if (words++ > 0) {
+                    accumulate(signature, previous * 0x9e3779b97f4a7c15L ^ hash);
+                }
+                previous = hash;
+                length = 0;
+            }
+        }
+        if (words == 1) {
+            accumulate(signature, previous);
+        }
+        return signature;
+    }
+
+    private static void accumulate(int[] signature, long feature) {
+        for (int i = 0; i < HASHES; i++) {
+            int value = (int) (mix(feature ^ SEEDS[i]) >>> 33);
+            if (value < signature[i]) {
+                signature[i] = value;
+            }
+        }
+    }
+
+    private static int equalValues(int[] a, int[] b) {
+        int equal = 0;
+        for (int i = 0; i < HASHES; i++) {
+            if (a[i] == b[i]) {
+                equal++;
+            }
+        }
+        return equal;
+    }
+
+    private static long key(int band, int[] signature) {
+        long h = band;
+        for (int i = band * ROWS; i < (band + 1) * ROWS; i++) {
+            h = h * 0x100000001b3L ^ signature[i];
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.memory;
+
+import com.qStivi.config.ConfigSnapshot;
+import com.qStivi.metrics.Metrics;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * The {@code TieredMemoryCache} class caches memory lookups in two tiers in front of the memory backend.
+ * The hot tier is a bounded in-heap {@link TinyLfuCache}, so frequently recalled memory stays in memory even while
+ * many one-off lookups pass through. The optional warm tier is a bounded {@link DiskTier} holding the recently loaded entries.
+ * <p>
+ * Entries belong to an owner, a user for private memory or {@link #PUBLIC_OWNER} for public memory.
+ * {@link #invalidate} drops all entries of an owner after its memory was written: the hot tier is keyed by a
+ * per-owner generation, which is advanced, and the owner's directory in the warm tier is deleted.
+ * Hits and misses are counted as the {@code "memory_hot"} and {@code "memory_warm"} caches.
+ */
+public class TieredMemoryCache {
+
+    /**
+     * The owner of public memory.
+     */
+    public static final String PUBLIC_OWNER = "";
+
+    private final TinyLfuCache<String, String> hot;
+    private final DiskTier warm;
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a {@code TieredMemoryCache} with only the hot tier.
+     *
+     * @param hotEntries The maximum number of entries kept in memory.
+     */
+    public TieredMemoryCache(int hotEntries) {
+        this.hot = new TinyLfuCache<>(hotEntries);
+        this.warm = null;
+    }
+
+    /**
+     * Constructs a {@code TieredMemoryCache} with a hot tier and a warm tier on disk with the default bounds.
+     *
+     * @param hotEntries    The maximum number of entries kept in memory.
+     * @param warmDirectory The directory of the warm tier.
+     * @throws IOException If the directory cannot be created.
+     */
+    public TieredMemoryCache(int hotEntries, Path warmDirectory) throws IOException {
+        this(hotEntries, warmDirectory, ConfigSnapshot.defaults().memory().warmMaxEntries(), ConfigSnapshot.defaults().memory().warmMaxAge());
+    }
+
+    /**
+     * Constructs a {@code TieredMemoryCache} with a hot tier and a bounded warm tier on disk.
+     *
+     * @param hotEntries     The maximum number of entries kept in memory.
+     * @param warmDirectory  The directory of the warm tier.
+     * @param warmMaxEntries The maximum number of entries kept on disk.
+     * @param warmMaxAge     The time after which an entry on disk expires.
+     * @throws IOException If the directory cannot be created.
+     */
+    public TieredMemoryCache(int hotEntries, Path warmDirectory, int warmMaxEntries, Duration warmMaxAge) throws IOException {
+        this.hot = new TinyLfuCache<>(hotEntries);
+        this.warm = new DiskTier(warmDirectory, warmMaxEntries, warmMaxAge);
+    }
+
+    /**
+     * Returns the cached memory for a key, loading and caching it on a miss in both tiers.
+     * A value loaded while the owner was invalidated is returned but not cached.
+     *
+     * @param owner  The owner of the memory.
+     * @param key    The key of the lookup.
+     * @param loader The lookup in the memory backend.
+     * @return The memory, or {@code null} if the backend has none.
+     */
+    public String get(String owner, String key, Supplier<String> loader) {
+        long generation = generation(owner).get();
+        String hotKey = owner + '\u0000' + generation + '\u0000' + key;
+
+        String value = hot.get(hotKey);
+        if (value != null) {
+            Metrics.get().cacheHit("memory_hot");
+            return value;
+        }
+        Metrics.get().cacheMiss("memory_hot");
+
+        if (warm != null) {
+            value = warm.get(owner, key);
+            if (value != null) {
+                Metrics.get().cacheHit("memory_warm");
+                hot.put(hotKey, value);
+                return value;
+            }
+            Metrics.get().cacheMiss("memory_warm");
+        }
+
+        value = loader.get();
+        if (value != null && generation(owner).get() == generation) {
+            hot.put(hotKey, value);
+            if (warm != null) {
+                warm.put(owner, key, value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Drops all cached memory of an owner. Call it whenever the owner's memory is written.
+     *
+     * @param owner The owner whose memory changed.
+     */
+    public void invalidate(String owner) {
+        generation(owner).incrementAndGet();
+        if (warm != null) {
+            warm.invalidate(owner);
+        }
+    }
+
+    private AtomicLong generation(String owner) {
+        return generations.computeIfAbsent(owner, key -> new AtomicLong());
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.memory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The {@code TinyLfuCache} class is a bounded in-heap cache with W-TinyLFU admission and eviction.
+ * New entries enter a small LRU window. An entry leaving the window only enters the main space, a segmented LRU of
+ * probation and protected entries, if it was accessed more often than the entry it would evict there. A scan of
+ * one-off keys therefore cannot flush the frequently used entries, while a key that becomes hot is admitted quickly.
+ * <p>
+ * All operations are synchronized; they touch a constant number of entries.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ */
+final class TinyLfuCache<K, V> {
+
+    private final FrequencySketch sketch;
+    private final int windowMaximum;
+    private final int mainMaximum;
+    private final int protectedMaximum;
+    private final LinkedHashMap<K, V> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, V> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, V> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Constructs a {@code TinyLfuCache} holding at most the given number of entries.
+     *
+     * @param maximumSize The maximum number of entries, at least {@code 2}.
+     */
+    TinyLfuCache(int maximumSize) {
+        if (maximumSize < 2) {
+            throw new IllegalArgumentException("Maximum size must be at least 2");
+        }
+        this.sketch = new FrequencySketch(maximumSize);
+        this.windowMaximum = Math.max(1, maximumSize / 100);
+        this.mainMaximum = maximumSize - windowMaximum;
+        this.protectedMaximum = Math.max(1, mainMaximum * 4 / 5);
+    }
+
+    /**
+     * Returns the value of a key and records the access.
+     *
+     * @param key The key.
+     * @return The cached value, or {@code null} if the key is not cached.
+     */
+    synchronized V get(K key) {
+        sketch.increment(key);
+        V value = window.get(key);
+        if (value != null) {
+            return value;
+        }
+        value = protectedSegment.get(key);
+        if (value != null) {
+            return value;
+        }
+        value = probation.remove(key);
+        if (value != null) {
+            // A second access in the main space promotes the entry
+            protectedSegment.put(key, value);
+            if (protectedSegment.size() > protectedMaximum) {
+                Map.Entry<K, V> demoted = removeEldest(protectedSegment);
+                probation.put(demoted.getKey(), demoted.getValue());
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Adds or replaces the value of a key. A new key may be rejected right away or evict another key.
+     *
+     * @param key   The key.
+     * @param value The value.
+     */
+    synchronized void put(K key, V value) {
+        sketch.increment(key);
+        if (window.containsKey(key)) {
+            window.put(key, value);
+            return;
+        }
+        if (protectedSegment.containsKey(key)) {
+            protectedSegment.put(key, value);
+            return;
+        }
+        if (probation.containsKey(key)) {
+            probation.put(key, value);
+            return;
+        }
+
+        window.put(key, value);
+        if (window.size() > windowMaximum) {
+            admit(removeEldest(window));
+        }
+    }
+
+    /**
+     * Removes all entries. The access frequencies are kept.
+     */
+    synchronized void clear() {
+        window.clear();
+        probation.clear();
+        protectedSegment.clear();
+    }
+
+    /**
+     * Returns the number of cached entries.
+     *
+     * @return The size of the cache.
+     */
+    synchronized int size() {
+        return window.size() + probation.size() + protectedSegment.size();
+    }
+
+    private void admit(Map.Entry<K, V> candidate) {
+        if (probation.size() + protectedSegment.size() < mainMaximum) {
+            probation.put(candidate.getKey(), candidate.getValue());
+            return;
+        }
+
+        LinkedHashMap<K, V> victimSegment = probation.isEmpty() ? protectedSegment : probation;
+        K victim = victimSegment.keySet().iterator().next();
+        if (sketch.frequency(candidate.getKey()) > sketch.frequency(victim)) {
+            victimSegment.remove(victim);
+            probation.put(candidate.getKey(), candidate.getValue());
+        }
+    }
+
+    private static <K, V> Map.Entry<K, V> removeEldest(LinkedHashMap<K, V> segment) {
+        Iterator<Map.Entry<K, V>> iterator = segment.entrySet().iterator();
+        Map.Entry<K, V> eldest = iterator.next();
+        Map.Entry<K, V> copy = Map.entry(eldest.getKey(), eldest.getValue());
+        iterator.remove();
+        return copy;
+    }
+}
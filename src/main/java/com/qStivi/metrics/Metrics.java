@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code Metrics} class is the process-wide registry for latency histograms and counters.
+ * Stage histograms time the work of a processing stage; delay histograms time deliberate waits, such as holding
+ * a message for the rest of its burst, and are kept apart so they do not show up as stage latency.
+ * Recording is lock-free so it can be called from every stage of the hot path; readers such as
+ * JMX and {@link PrometheusExporter} aggregate the values on demand.
+ */
+public class Metrics implements MetricsMXBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(Metrics.class);
+    private static final Metrics INSTANCE = new Metrics();
+    private static final String OBJECT_NAME = "com.qStivi:type=Metrics";
+
+    private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LatencyHistogram> delays = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> cacheHits = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> cacheMisses = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final LongAdder promptTokens = new LongAdder();
+    private final LongAdder completionTokens = new LongAdder();
+
+    /**
+     * Returns the shared {@code Metrics} instance.
+     *
+     * @return The process-wide metrics registry.
+     */
+    public static Metrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the histogram with the given name, creating it on first use.
+     *
+     * @param name The name of the histogram.
+     * @return The {@link LatencyHistogram} registered under the name.
+     */
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    /**
+     * Returns the delay histogram with the given name, creating it on first use.
+     *
+     * @param name The name of the delay.
+     * @return The {@link LatencyHistogram} registered under the name.
+     */
+    public LatencyHistogram delay(String name) {
+        return delays.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    /**
+     * Records the time elapsed since {@code startNanos} for a stage.
+     *
+     * @param stage      The stage that completed.
+     * @param startNanos The {@link System#nanoTime()} value taken when the stage started.
+     */
+    public void recordSince(Stage stage, long startNanos) {
+        histogram(stage.metricName()).record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Counts a failed call of a stage.
+     *
+     * @param stage The stage that failed.
+     */
+    public void recordError(Stage stage) {
+        increment(errors, stage.metricName());
+    }
+
+    /**
+     * Counts a cache hit.
+     *
+     * @param cache The name of the cache.
+     */
+    public void cacheHit(String cache) {
+        increment(cacheHits, cache);
+    }
+
+    /**
+     * Counts a cache miss.
+     *
+     * @param cache The name of the cache.
+     */
+    public void cacheMiss(String cache) {
+        increment(cacheMisses, cache);
+    }
+
+    /**
+     * Adds to a named counter, creating it on first use.
+     *
+     * @param name  The name of the counter.
+     * @param delta The amount to add.
+     */
+    public void count(String name, long delta) {
+        counters.computeIfAbsent(name, key -> new LongAdder()).add(delta);
+    }
+
+    /**
+     * Adds the token usage reported for a single OpenAI request.
+     *
+     * @param prompt     The number of prompt tokens.
+     * @param completion The number of completion tokens.
+     */
+    public void recordTokens(long prompt, long completion) {
+        promptTokens.add(prompt);
+        completionTokens.add(completion);
+    }
+
+    /**
+     * Registers this instance with the platform MBean server.
+     * Registering twice is a no-op.
+     */
+    public void registerMBean() {
+        try {
+            var server = ManagementFactory.getPlatformMBeanServer();
+            var name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+                logger.info("Registered metrics MBean as {}", OBJECT_NAME);
+            }
+        } catch (JMException e) {
+            logger.error("Failed to register metrics MBean", e);
+        }
+    }
+
+    /**
+     * Returns all histograms sorted by name.
+     *
+     * @return A snapshot map from name to histogram.
+     */
+    public Map<String, LatencyHistogram> getHistograms() {
+        return new TreeMap<>(histograms);
+    }
+
+    /**
+     * Returns all delay histograms sorted by name.
+     *
+     * @return A snapshot map from name to histogram.
+     */
+    public Map<String, LatencyHistogram> getDelays() {
+        return new TreeMap<>(delays);
+    }
+
+    /**
+     * Returns all named counters sorted by name.
+     *
+     * @return A snapshot map from name to current value.
+     */
+    public Map<String, Long> getCounters() {
+        return sums(counters);
+    }
+
+    /**
+     * Returns the number of cache hits per cache.
+     *
+     * @return A snapshot map from cache name to hit count.
+     */
+    public Map<String, Long> getCacheHits() {
+        return sums(cacheHits);
+    }
+
+    /**
+     * Returns the number of cache misses per cache.
+     *
+     * @return A snapshot map from cache name to miss count.
+     */
+    public Map<String, Long> getCacheMisses() {
+        return sums(cacheMisses);
+    }
+
+    @Override
+    public Map<String, Long> getStageCounts() {
+        Map<String, Long> result = new TreeMap<>();
+        histograms.forEach((name, histogram) -> result.put(name, histogram.getCount()));
+        return result;
+    }
+
+    @Override
+    public Map<String, Double> getStageP50Millis() {
+        return quantileMillis(0.5);
+    }
+
+    @Override
+    public Map<String, Double> getStageP99Millis() {
+        return quantileMillis(0.99);
+    }
+
+    @Override
+    public Map<String, Long> getErrorCounts() {
+        return sums(errors);
+    }
+
+    @Override
+    public Map<String, Double> getCacheHitRatios() {
+        Map<String, Double> result = new TreeMap<>();
+        Map<String, Long> misses = getCacheMisses();
+        getCacheHits().forEach((cache, hits) -> {
+            long total = hits + misses.getOrDefault(cache, 0L);
+            result.put(cache, total == 0 ? 0.0 : (double) hits / total);
+        });
+        misses.keySet().forEach(cache -> result.putIfAbsent(cache, 0.0));
+        return result;
+    }
+
+    @Override
+    public long getPromptTokens() {
+        return promptTokens.sum();
+    }
+
+    @Override
+    public long getCompletionTokens() {
+        return completionTokens.sum();
+    }
+
+    private Map<String, Double> quantileMillis(double quantile) {
+        Map<String, Double> result = new TreeMap<>();
+        histograms.forEach((name, histogram) -> result.put(name, histogram.getValueAtQuantile(quantile) / 1_000_000.0));
+        return result;
+    }
+
+    private static void increment(ConcurrentMap<String, LongAdder> map, String key) {
+        map.computeIfAbsent(key, k -> new LongAdder()).increment();
+    }
+
+    private static Map<String, Long> sums(ConcurrentMap<String, LongAdder> map) {
+        Map<String, Long> result = new TreeMap<>();
+        map.forEach((key, adder) -> result.put(key, adder.sum()));
+        return result;
+    }
+}
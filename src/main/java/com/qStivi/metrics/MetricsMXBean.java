@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.metrics;
+
+import java.util.Map;
+
+/**
+ * The {@code MetricsMXBean} interface defines the management view of {@link Metrics} exposed through JMX.
+ * All maps are keyed by stage or cache name.
+ */
+public interface MetricsMXBean {
+
+    /**
+     * Returns the number of completed calls per stage.
+     *
+     * @return A map from stage name to call count.
+     */
+    Map<String, Long> getStageCounts();
+
+    /**
+     * Returns the estimated median latency per stage.
+     *
+     * @return A map from stage name to p50 latency in milliseconds.
+     */
+    Map<String, Double> getStageP50Millis();
+
+    /**
+     * Returns the estimated 99th percentile latency per stage.
+     *
+     * @return A map from stage name to p99 latency in milliseconds.
+     */
+    Map<String, Double> getStageP99Millis();
+
+    /**
+     * Returns the number of failed calls per stage.
+     *
+     * @return A map from stage name to error count.
+     */
+    Map<String, Long> getErrorCounts();
+
+    /**
+     * Returns the hit ratio per cache.
+     *
+     * @return A map from cache name to hit ratio between {@code 0.0} and {@code 1.0}.
+     */
+    Map<String, Double> getCacheHitRatios();
+
+    /**
+     * Returns the total number of prompt tokens reported by the OpenAI service.
+     *
+     * @return The prompt token count.
+     */
+    long getPromptTokens();
+
+    /**
+     * Returns the total number of completion tokens reported by the OpenAI service.
+     *
+     * @return The completion token count.
+     */
+    long getCompletionTokens();
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The {@code PrometheusExporter} class serves the contents of {@link Metrics} in the Prometheus
+ * text exposition format on {@code /metrics}.
+ */
+public class PrometheusExporter implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PrometheusExporter.class);
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private final Metrics metrics;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Starts an exporter for the given metrics on the given port.
+     *
+     * @param metrics The {@link Metrics} registry to export.
+     * @param port    The TCP port to listen on, or {@code 0} for any free port.
+     * @throws IOException If the HTTP server cannot be bound.
+     */
+    public PrometheusExporter(Metrics metrics, int port) throws IOException {
+        this.metrics = metrics;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.server.createContext("/metrics", this::handle);
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-exporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server.setExecutor(executor);
+        this.server.start();
+        logger.info("Prometheus exporter listening on port {}", server.getAddress().getPort());
+    }
+
+    /**
+     * Returns the port the exporter listens on.
+     *
+     * @return The bound TCP port.
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Renders the given metrics in the Prometheus text exposition format.
+     *
+     * @param metrics The {@link Metrics} registry to render.
+     * @return The rendered metrics.
+     */
+    public static String render(Metrics metrics) {
+        StringBuilder out = new StringBuilder(4096);
+
+        out.append("# HELP qgpt_stage_latency_seconds Latency of each processing stage.\n");
+        out.append("# TYPE qgpt_stage_latency_seconds summary\n");
+        metrics.getHistograms().forEach((stage, histogram) -> {
+            for (double quantile : QUANTILES) {
+                out.append("qgpt_stage_latency_seconds{stage=\"").append(stage)
+                        .append("\",quantile=\"").append(quantile).append("\"} ")
+                        .append(seconds(histogram.getValueAtQuantile(quantile))).append('\n');
+            }
+            out.append("qgpt_stage_latency_seconds_sum{stage=\"").append(stage).append("\"} ")
+                    .append(seconds(histogram.getSum())).append('\n');
+            out.append("qgpt_stage_latency_seconds_count{stage=\"").append(stage).append("\"} ")
+                    .append(histogram.getCount()).append('\n');
+        });
+
+        out.append("# HELP qgpt_delay_seconds Deliberate waits before processing.\n");
+        out.append("# TYPE qgpt_delay_seconds summary\n");
+        metrics.getDelays().forEach((name, histogram) -> {
+            for (double quantile : QUANTILES) {
+                out.append("qgpt_delay_seconds{delay=\"").append(name)
+                        .append("\",quantile=\"").append(quantile).append("\"} ")
+                        .append(seconds(histogram.getValueAtQuantile(quantile))).append('\n');
+            }
+            out.append("qgpt_delay_seconds_sum{delay=\"").append(name).append("\"} ")
+                    .append(seconds(histogram.getSum())).append('\n');
+            out.append("qgpt_delay_seconds_count{delay=\"").append(name).append("\"} ")
+                    .append(histogram.getCount()).append('\n');
+        });
+
+        out.append("# HELP qgpt_stage_errors_total Failed calls of each processing stage.\n");
+        out.append("# TYPE qgpt_stage_errors_total counter\n");
+        metrics.getErrorCounts().forEach((stage, count) -> out.append("qgpt_stage_errors_total{stage=\"")
+                .append(stage).append("\"} ").append(count).append('\n'));
+
+        out.append("# HELP qgpt_tokens_total Tokens reported by the OpenAI service.\n");
+        out.append("# TYPE qgpt_tokens_total counter\n");
+        out.append("qgpt_tokens_total{kind=\"prompt\"} ").append(metrics.getPromptTokens()).append('\n');
+        out.append("qgpt_tokens_total{kind=\"completion\"} ").append(metrics.getCompletionTokens()).append('\n');
+
+        out.append("# HELP qgpt_cache_requests_total Cache lookups by result.\n");
+        out.append("# TYPE qgpt_cache_requests_total counter\n");
+        metrics.getCacheHits().forEach((cache, count) -> out.append("qgpt_cache_requests_total{cache=\"")
+                .append(cache).append("\",result=\"hit\"} ").append(count).append('\n'));
+        metrics.getCacheMisses().forEach((cache, count) -> out.append("qgpt_cache_requests_total{cache=\"")
+                .append(cache).append("\",result=\"miss\"} ").append(count).append('\n'));
+
+        metrics.getCounters().forEach((name, count) -> {
+            out.append("# TYPE qgpt_").append(name).append("_total counter\n");
+            out.append("qgpt_").append(name).append("_total ").append(count).append('\n');
+        });
+
+        return out.toString();
+    }
+
+    /**
+     * Stops the HTTP server. Its dispatcher thread is not a daemon, so the JVM only exits once this was called.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+        logger.info("Prometheus exporter stopped");
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] body = render(metrics).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1_000_000_000.0);
+    }
+}
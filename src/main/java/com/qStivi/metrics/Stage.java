@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.metrics;
+
+/**
+ * The {@code Stage} enum lists the instrumented stages of the message processing pipeline.
+ * Each stage owns a latency histogram and an error counter in {@link Metrics}.
+ */
+public enum Stage {
+    CORE_ENGINE("core_engine"),
+    MESSAGE_PROCESSOR("message_processor"),
+    TASK_MANAGER("task_manager"),
+    MEMORY_PUBLIC("memory_public"),
+    MEMORY_PRIVATE("memory_private"),
+    OPENAI_REQUEST("openai_request"),
+    TOOL_CALL("tool_call");
+
+    private final String metricName;
+
+    Stage(String metricName) {
+        this.metricName = metricName;
+    }
+
+    /**
+     * Returns the name used for this stage in exported metrics.
+     *
+     * @return The metric label value of this stage.
+     */
+    public String metricName() {
+        return metricName;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.openai;
+
+import com.qStivi.config.CompactionSettings;
+import com.qStivi.config.ConfigSnapshot;
+import com.qStivi.metrics.Metrics;
+import com.theokanning.openai.completion.chat.*;
+import com.theokanning.openai.service.OpenAiService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * The {@code ConversationCompactor} class keeps long conversations small by summarizing their older turns.
+ * <p>
+ * Once a conversation grows beyond the configured number of messages, everything except the system message and
+ * the most recent turns is summarized on a low-priority background thread. The summary, which includes any earlier
+ * summary, then replaces the summarized messages in a single step. If the conversation changed in a way that
+ * affects the summarized messages in the meantime, the summary is discarded.
+ */
+public class ConversationCompactor implements AutoCloseable {
+
+    /**
+     * The prefix of the system message that holds the rolling summary.
+     */
+    public static final String SUMMARY_PREFIX = "Summary of the earlier conversation:\n";
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationCompactor.class);
+    private static final String INSTRUCTIONS = "Summarize the following conversation between a user and an assistant so that "
+            + "the summary can replace the original messages. Keep facts, names, decisions, preferences and open questions. "
+            + "If it starts with an earlier summary, merge it into the new one. Reply with the summary only.";
+
+    private final OpenAiService service;
+    private final Supplier<ConfigSnapshot> settings;
+    private final Set<OpenAiClient> scheduled = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "conversation-compactor");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    /**
+     * Constructs a {@code ConversationCompactor}.
+     *
+     * @param service  The {@link OpenAiService} used to create summaries.
+     * @param settings The supplier of the current {@link ConfigSnapshot}.
+     */
+    public ConversationCompactor(OpenAiService service, Supplier<ConfigSnapshot> settings) {
+        this.service = service;
+        this.settings = settings;
+    }
+
+    /**
+     * Schedules a compaction of the client's conversation if it exceeds the configured size.
+     * Returns immediately; at most one compaction per conversation is pending at a time.
+     *
+     * @param client The client whose conversation changed.
+     */
+    public void maybeCompact(OpenAiClient client) {
+        CompactionSettings compaction = settings.get().compaction();
+        if (!compaction.enabled() || client.historySize() <= compaction.triggerMessages() || !scheduled.add(client)) {
+            return;
+        }
+
+        executor.execute(() -> {
+            try {
+                compact(client, compaction);
+            } catch (Exception e) {
+                logger.warn("Conversation compaction failed: {}", e.getMessage(), e);
+            } finally {
+                scheduled.remove(client);
+            }
+        });
+    }
+
+    /**
+     * Stops the background thread. Pending compactions are dropped.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void compact(OpenAiClient client, CompactionSettings compaction) {
+        List<ChatMessage> history = client.getMessages();
+
+        // Keep the system message and the recent turns; never separate tool results from the call they answer
+        int end = history.size() - compaction.keepRecentMessages();
+        while (end < history.size() && "tool".equals(history.get(end).getRole())) {
+            end++;
+        }
+        if (end <= 2) {
+            return;
+        }
+        List<ChatMessage> older = history.subList(1, end);
+
+        long start = System.nanoTime();
+        String summary = summarize(older, compaction);
+        if (summary == null || summary.isBlank()) {
+            logger.warn("Received an empty summary, keeping the conversation as is");
+            return;
+        }
+
+        if (client.replaceHistory(older, new SystemMessage(SUMMARY_PREFIX + summary.trim()))) {
+            Metrics.get().count("conversation_compactions", 1);
+            logger.info("Compacted {} messages into a summary in {} ms", older.size(), (System.nanoTime() - start) / 1_000_000);
+        } else {
+            logger.debug("Conversation changed during compaction, discarding summary");
+        }
+    }
+
+    private String summarize(List<ChatMessage> messages, CompactionSettings compaction) {
+        StringBuilder transcript = new StringBuilder();
+        for (ChatMessage message : messages) {
+            if (message.getTextContent() == null) {
+                continue;
+            }
+            String text = message.getTextContent();
+            if (text.startsWith(SUMMARY_PREFIX)) {
+                transcript.append("Earlier summary: ").append(text.substring(SUMMARY_PREFIX.length()));
+            } else {
+                transcript.append(message.getRole()).append(": ").append(text);
+            }
+            transcript.append("\n\n");
+        }
+
+        List<ChatMessage> request = new ArrayList<>(2);
+        request.add(new SystemMessage(INSTRUCTIONS));
+        request.add(new UserMessage(transcript.toString()));
+
+        String model = compaction.model().isBlank() ? settings.get().openAi().modelName() : compaction.model();
+        ChatCompletionResult result = service.createChatCompletion(ChatCompletionRequest.builder()
+                .model(model)
+                .messages(request)
+                .n(1)
+                .maxTokens(compaction.summaryMaxTokens())
+                .build());
+
+        if (result.getUsage() != null) {
+            Metrics.get().count("compaction_prompt_tokens", result.getUsage().getPromptTokens());
+            Metrics.get().count("compaction_completion_tokens", result.getUsage().getCompletionTokens());
+        }
+        if (result.getChoices() == null || result.getChoices().isEmpty()) {
+            return null;
+        }
+        return result.getChoices().getFirst().getMessage().getTextContent();
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.openai;
+
+import com.theokanning.openai.completion.chat.ChatMessage;
+
+import java.util.List;
+
+/**
+ * The {@code ConversationObserver} interface receives every change to the history of an {@link OpenAiClient}.
+ * The leading system message is not part of the observed history, since it always comes from the configuration.
+ */
+public interface ConversationObserver {
+
+    /**
+     * An observer that ignores all changes.
+     */
+    ConversationObserver NONE = new ConversationObserver() {
+        @Override
+        public void onAppend(ChatMessage message) {
+        }
+
+        @Override
+        public void onReplace(List<ChatMessage> history) {
+        }
+    };
+
+    /**
+     * Called after a message was appended to the conversation.
+     *
+     * @param message The appended message.
+     */
+    void onAppend(ChatMessage message);
+
+    /**
+     * Called after the whole conversation was replaced, for example by a reset.
+     *
+     * @param history The new history, without the leading system message.
+     */
+    void onReplace(List<ChatMessage> history);
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.openai;
+
+import com.theokanning.openai.completion.chat.ChatMessage;
+
+import java.util.List;
+
+/**
+ * The {@code ConversationStore} interface defines where {@link OpenAiSessions} restores conversations from
+ * and where it reports their changes to.
+ */
+public interface ConversationStore {
+
+    /**
+     * Loads the stored history of a session.
+     *
+     * @param sessionId The ID of the session.
+     * @return The stored history without the leading system message, or an empty list if there is none.
+     */
+    List<ChatMessage> restore(String sessionId);
+
+    /**
+     * Returns the observer that persists changes to a session.
+     *
+     * @param sessionId The ID of the session.
+     * @return The {@link ConversationObserver} for the session.
+     */
+    ConversationObserver observer(String sessionId);
+}
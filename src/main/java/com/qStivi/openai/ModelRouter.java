@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.openai;
+
+import com.qStivi.config.ConfigSnapshot;
+import com.qStivi.config.ModelSettings;
+import com.qStivi.config.OpenAiSettings;
+import com.qStivi.metrics.Metrics;
+import com.theokanning.openai.completion.chat.ChatCompletionChoice;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * The {@code ModelRouter} class picks the models that answer a request.
+ * <p>
+ * Chat requests with small inputs go to the fast model configured in {@link OpenAiSettings}. If the
+ * cascade is enabled, an answer that was cut off or contains one of the configured unsure phrases is retried
+ * with the strong model. Task requests and large inputs go to the strong model directly. Only the new input counts
+ * towards that size, not the history, so a long conversation does not move to the strong model for good.
+ * Each model has its own limit of concurrent requests, so a burst on one tier does not starve the other.
+ */
+public class ModelRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModelRouter.class);
+
+    private final Supplier<ConfigSnapshot> settings;
+    private final Map<String, Permits> permits = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a {@code ModelRouter}.
+     *
+     * @param settings The supplier of the current {@link ConfigSnapshot}.
+     */
+    public ModelRouter(Supplier<ConfigSnapshot> settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Returns the models to try for a request, in order. Every model but the last may be escalated from.
+     *
+     * @param route       The {@link Route} of the request.
+     * @param inputTokens The estimated size of the new user input in tokens.
+     * @return The models to try, never empty.
+     */
+    public List<Choice> plan(Route route, int inputTokens) {
+        ConfigSnapshot snapshot = settings.get();
+        ModelSettings models = snapshot.models();
+        Choice fast = new Choice(snapshot.openAi().modelName(), snapshot.openAi().maxTokens());
+        if (models.strongModel().isBlank() || models.strongModel().equals(fast.model())) {
+            return List.of(fast);
+        }
+
+        Choice strong = new Choice(models.strongModel(), models.strongMaxTokens());
+        if (route == Route.TASK || inputTokens >= models.escalateInputTokens()) {
+            return List.of(strong);
+        }
+        return models.cascade() ? List.of(fast, strong) : List.of(fast);
+    }
+
+    /**
+     * Returns whether an answer should be retried with the next model of the plan.
+     *
+     * @param choice The answer of the previous model.
+     * @return {@code true} if the answer was cut off, is empty or sounds unsure; {@code false} otherwise, or if it calls tools.
+     */
+    public boolean shouldEscalate(ChatCompletionChoice choice) {
+        if ("length".equals(choice.getFinishReason())) {
+            return true;
+        }
+        if (choice.getMessage() != null && choice.getMessage().getToolCalls() != null && !choice.getMessage().getToolCalls().isEmpty()) {
+            // A tool call is a decision, not an unsure answer
+            return false;
+        }
+        String text = choice.getMessage() == null ? null : choice.getMessage().getTextContent();
+        if (text == null || text.isBlank()) {
+            return true;
+        }
+
+        String lowerCase = text.toLowerCase(Locale.ROOT);
+        for (String phrase : settings.get().models().escalatePhrases()) {
+            if (lowerCase.contains(phrase)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs a request against the given model while holding one of its permits.
+     *
+     * @param model   The model that is called.
+     * @param request The request to run.
+     * @param <T>     The type of the result.
+     * @return The result of the request.
+     * @throws Exception If the request fails or the thread is interrupted while waiting for a permit.
+     */
+    public <T> T call(String model, Callable<T> request) throws Exception {
+        Semaphore semaphore = permits(model);
+        if (!semaphore.tryAcquire()) {
+            Metrics.get().count("model_permit_waits", 1);
+            logger.debug("Waiting for a free slot of model {}", model);
+            semaphore.acquire();
+        }
+        try {
+            return request.call();
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * Returns the permits of a model for its current limit. A changed limit replaces the semaphore, so limits follow
+     * the configuration; requests still running return their permits to the old one, which may briefly let both
+     * limits' worth of requests run at once.
+     */
+    private Semaphore permits(String model) {
+        ModelSettings models = settings.get().models();
+        int limit = model.equals(models.strongModel()) ? models.strongMaxConcurrent() : models.fastMaxConcurrent();
+        Permits current = permits.get(model);
+        if (current != null && current.limit() == limit) {
+            return current.semaphore();
+        }
+        return permits.compute(model, (key, existing) -> {
+            if (existing != null && existing.limit() == limit) {
+                return existing;
+            }
+            if (existing != null) {
+                logger.info("Concurrency limit of model {} changed from {} to {}", model, existing.limit(), limit);
+            }
+            return new Permits(limit, new Semaphore(limit, true));
+        }).semaphore();
+    }
+
+    /**
+     * The permits of a model and the limit they were created for.
+     */
+    private record Permits(int limit, Semaphore semaphore) {
+    }
+
+    /**
+     * A model and the response size allowed for it.
+     *
+     * @param model     The name of the model.
+     * @param maxTokens The maximum number of tokens in the response.
+     */
+    public record Choice(String model, int maxTokens) {
+    }
+}
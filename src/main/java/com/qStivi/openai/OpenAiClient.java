@@ -6,32 +6,68 @@
 
 package com.qStivi.openai;
 
+import com.qStivi.config.ConfigKeys;
+import com.qStivi.config.ConfigSnapshot;
+import com.qStivi.config.OpenAiSettings;
+import com.qStivi.metrics.Metrics;
+import com.qStivi.metrics.Stage;
+import com.qStivi.prompt.MemoryContext;
+import com.qStivi.scheduling.RequestHandle;
+import com.qStivi.tokenizer.TokenCounter;
+import com.qStivi.tokenizer.Tokenizers;
+import com.qStivi.tools.ToolCall;
+import com.qStivi.tools.ToolExecutor;
+import com.qStivi.tools.ToolResult;
+import com.qStivi.tracing.OpenAiRequestEvent;
+import com.qStivi.tracing.RequestContext;
 import com.theokanning.openai.completion.chat.*;
 import com.theokanning.openai.service.OpenAiService;
+import org.apache.commons.configuration2.MapConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Represents a client for OpenAI's chat completion service.
  * Maintains a conversation history and allows sending messages to the service.
+ * <p>
+ * Model, token limit and system message are read from a {@link ConfigSnapshot} on every request,
+ * so configuration changes apply to the next request without recreating the client.
+ * Changes to the history are reported to a {@link ConversationObserver}, and a {@link ConversationCompactor}
+ * may replace older turns with a summary in the background. All access to the history is synchronized on it.
+ * The model answering each request is picked by a {@link ModelRouter}. If a {@link ToolExecutor} is configured,
+ * the model may call tools; their results are fed back until the model answers in text.
+ * A request whose {@link RequestHandle} is cancelled stops before the next model call or tool round.
+ * Clients that follow a configuration or use any of these parts are created with {@link #builder}.
  */
 public class OpenAiClient {
 
+    private static final Logger logger = LoggerFactory.getLogger(OpenAiClient.class);
+
     private final OpenAiService service;
     private final List<ChatMessage> messages;
-    private final String modelName;
-    private final int maxTokens;
-    private final String defaultSystemMessage;
+    private final Supplier<ConfigSnapshot> settings;
+    private final ConversationObserver observer;
+    private final ConversationCompactor compactor;
+    private final ModelRouter router;
+    private final ToolExecutor tools;
 
     /**
      * Constructs an {@code OpenAiClient} with the specified API key and default settings.
+     * Clients constructed from an API key send their requests over the {@link OpenAiTransport#shared() shared transport}.
      *
      * @param apiKey The OpenAI API key.
      */
     public OpenAiClient(String apiKey) {
-        this(apiKey, Duration.ofSeconds(30), "gpt-4o-mini", 5000, "You are a cute cat and will speak as such.");
+        this(builder(OpenAiTransport.shared().service(apiKey, ConfigSnapshot.defaults().openAi().timeout()), ConfigSnapshot::defaults));
     }
 
     /**
@@ -44,12 +80,7 @@ public class OpenAiClient {
      * @param defaultSystemMessage The default system message to start the conversation.
      */
     public OpenAiClient(String apiKey, Duration timeout, String modelName, int maxTokens, String defaultSystemMessage) {
-        this.service = new OpenAiService(apiKey, timeout);
-        this.messages = new ArrayList<>();
-        this.modelName = modelName;
-        this.maxTokens = maxTokens;
-        this.defaultSystemMessage = defaultSystemMessage;
-        this.messages.add(new SystemMessage(defaultSystemMessage));
+        this(builder(OpenAiTransport.shared().service(apiKey, timeout), fixedSettings(apiKey, timeout, modelName, maxTokens, defaultSystemMessage)));
     }
 
     /**
@@ -62,12 +93,31 @@ public class OpenAiClient {
      * @param defaultSystemMessage The default system message to start the conversation.
      */
     public OpenAiClient(OpenAiService service, String modelName, int maxTokens, String defaultSystemMessage) {
-        this.service = service;
-        this.messages = new ArrayList<>();
-        this.modelName = modelName;
-        this.maxTokens = maxTokens;
-        this.defaultSystemMessage = defaultSystemMessage;
-        this.messages.add(new SystemMessage(defaultSystemMessage));
+        this(builder(service, fixedSettings(null, ConfigSnapshot.defaults().openAi().timeout(), modelName, maxTokens, defaultSystemMessage)));
+    }
+
+    private OpenAiClient(Builder builder) {
+        this.service = builder.service;
+        this.settings = builder.settings;
+        this.observer = builder.observer;
+        this.compactor = builder.compactor;
+        this.router = builder.router != null ? builder.router : new ModelRouter(builder.settings);
+        this.tools = builder.tools;
+        this.messages = new ArrayList<>(builder.history.size() + 1);
+        this.messages.add(new SystemMessage(settings.get().openAi().systemMessage()));
+        this.messages.addAll(builder.history);
+    }
+
+    /**
+     * Returns a builder for an {@code OpenAiClient} whose settings follow the given configuration snapshots.
+     * Without further options, the client starts a new conversation, keeps its full history and offers no tools.
+     *
+     * @param service  The {@link OpenAiService} instance.
+     * @param settings The supplier of the current {@link ConfigSnapshot}.
+     * @return A new {@link Builder}.
+     */
+    public static Builder builder(OpenAiService service, Supplier<ConfigSnapshot> settings) {
+        return new Builder(service, settings);
     }
 
     /**
@@ -78,37 +128,286 @@ public class OpenAiClient {
      * @throws OpenAiException If an error occurs during the API request.
      */
     public String sendRequest(String input) throws OpenAiException {
-        messages.add(new UserMessage(input));
+        return sendRequest(input, Route.CHAT);
+    }
 
-        ChatCompletionRequest chatCompletionRequest = ChatCompletionRequest.builder()
-                .model(modelName)
-                .messages(new ArrayList<>(messages))
-                .n(1)
-                .maxTokens(maxTokens)
-                .build();
+    /**
+     * Sends a user input to the model the {@link ModelRouter} picks for the route and returns the assistant's response.
+     * If the cascade escalates, only the final answer is added to the conversation.
+     *
+     * @param input The user's input message.
+     * @param route The {@link Route} of the request.
+     * @return The assistant's response as a {@code String}.
+     * @throws OpenAiException If an error occurs during the API request.
+     */
+    public String sendRequest(String input, Route route) throws OpenAiException {
+        OpenAiSettings openAi = settings.get().openAi();
+        List<ChatMessage> requestMessages = appendUserMessage(openAi, input);
+
+        List<ModelRouter.Choice> plan = router.plan(route, inputTokens(input, openAi.modelName()));
+        List<ChatTool> chatTools = tools == null ? List.of() : tools.registry().chatTools();
+        int maxRounds = settings.get().tools().maxRounds();
+        String model = plan.getFirst().model();
 
+        long start = System.nanoTime();
+        var event = new OpenAiRequestEvent();
+        event.begin();
         try {
-            ChatCompletionResult chatCompletion = service.createChatCompletion(chatCompletionRequest);
+            for (int round = 0; ; round++) {
+                RequestHandle.checkCurrent();
+                // Offer tools until the round limit, then force a text answer
+                List<ChatTool> offered = round < maxRounds ? chatTools : List.of();
+                ChatCompletionChoice choice = complete(requestMessages, plan, offered, event);
+                model = event.model;
+                AssistantMessage responseMessage = choice.getMessage();
 
-            if (chatCompletion.getChoices().isEmpty()) {
-                throw new OpenAiException("No response received from OpenAI service.");
+                List<ChatToolCall> toolCalls = responseMessage.getToolCalls();
+                if (offered.isEmpty() || toolCalls == null || toolCalls.isEmpty()) {
+                    appendAnswer(responseMessage);
+                    event.success = true;
+                    return responseMessage.getTextContent();
+                }
+
+                List<ChatMessage> toolTurn = runTools(responseMessage, toolCalls);
+                requestMessages.addAll(toolTurn);
+                synchronized (messages) {
+                    for (ChatMessage message : toolTurn) {
+                        messages.add(message);
+                        observer.onAppend(message);
+                    }
+                }
+            }
+        } catch (CancellationException e) {
+            // The user superseded the message, which is not an error of the request
+            throw e;
+        } catch (Exception e) {
+            // A call cancelled with the request fails with an I/O error, which is the cancellation as well
+            RequestHandle.checkCurrent();
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
             }
+            Metrics.get().recordError(Stage.OPENAI_REQUEST);
+            throw new OpenAiException("Error during OpenAI request", e);
+        } finally {
+            Metrics.get().recordSince(Stage.OPENAI_REQUEST, start);
+            event.requestId = RequestContext.currentId();
+            event.model = model;
+            event.messageCount = requestMessages.size();
+            event.commit();
+        }
+    }
 
-            ChatMessage responseMessage = chatCompletion.getChoices().getFirst().getMessage();
-            messages.add(responseMessage); // Add the assistant's response to the conversation history
-            return responseMessage.getTextContent();
+    /**
+     * Sends a user input and passes the answer to {@code onDelta} while it is being generated.
+     * A streamed answer cannot be taken back once it is shown, so it comes from the first model of the plan without
+     * escalation. If tools are registered, the answer is requested as usual and passed on in one part.
+     *
+     * @param input   The user's input message.
+     * @param route   The {@link Route} of the request.
+     * @param onDelta The consumer of the parts of the answer, or {@code null} to not stream.
+     * @return The complete assistant's response as a {@code String}.
+     * @throws OpenAiException If an error occurs during the API request.
+     */
+    public String sendRequest(String input, Route route, Consumer<String> onDelta) throws OpenAiException {
+        if (onDelta == null) {
+            return sendRequest(input, route);
+        }
+        if (tools != null && !tools.registry().isEmpty()) {
+            String response = sendRequest(input, route);
+            onDelta.accept(response);
+            return response;
+        }
 
+        OpenAiSettings openAi = settings.get().openAi();
+        List<ChatMessage> requestMessages = appendUserMessage(openAi, input);
+        ModelRouter.Choice choice = router.plan(route, inputTokens(input, openAi.modelName())).getFirst();
+
+        long start = System.nanoTime();
+        var event = new OpenAiRequestEvent();
+        event.begin();
+        try {
+            ChatCompletionRequest chatCompletionRequest = ChatCompletionRequest.builder()
+                    .model(choice.model())
+                    .messages(requestMessages)
+                    .n(1)
+                    .maxTokens(choice.maxTokens())
+                    .build();
+            var response = new StringBuilder();
+            router.call(choice.model(), () -> {
+                service.streamChatCompletion(chatCompletionRequest).blockingForEach(chunk -> {
+                    for (ChatCompletionChoice chunkChoice : chunk.getChoices()) {
+                        String delta = chunkChoice.getMessage() == null ? null : chunkChoice.getMessage().getTextContent();
+                        if (delta != null && !delta.isEmpty()) {
+                            response.append(delta);
+                            onDelta.accept(delta);
+                        }
+                    }
+                });
+                return null;
+            });
+
+            appendAnswer(new AssistantMessage(response.toString()));
+            event.success = true;
+            return response.toString();
+        } catch (CancellationException e) {
+            // The user superseded the message, which is not an error of the request
+            throw e;
         } catch (Exception e) {
+            // A call cancelled with the request fails with an I/O error, which is the cancellation as well
+            RequestHandle.checkCurrent();
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            Metrics.get().recordError(Stage.OPENAI_REQUEST);
             throw new OpenAiException("Error during OpenAI request", e);
+        } finally {
+            Metrics.get().recordSince(Stage.OPENAI_REQUEST, start);
+            event.requestId = RequestContext.currentId();
+            event.model = choice.model();
+            event.messageCount = requestMessages.size();
+            event.commit();
         }
     }
 
+    /**
+     * Adds a user message to the conversation history.
+     *
+     * @param openAi The current OpenAI settings.
+     * @param input  The user's input message.
+     * @return A copy of the history to send, ending with the new message.
+     */
+    private List<ChatMessage> appendUserMessage(OpenAiSettings openAi, String input) {
+        UserMessage userMessage = new UserMessage(input);
+        List<ChatMessage> requestMessages;
+        synchronized (messages) {
+            applySystemMessage(openAi.systemMessage());
+            messages.add(userMessage);
+            observer.onAppend(userMessage);
+            requestMessages = new ArrayList<>(messages);
+        }
+        addMemory(requestMessages);
+        return requestMessages;
+    }
+
+    /**
+     * Inserts the {@link MemoryContext} of the current request before its message.
+     * The memory is only sent with this request and never kept in the history.
+     *
+     * @param requestMessages The messages to send, ending with the user's message.
+     */
+    private static void addMemory(List<ChatMessage> requestMessages) {
+        RequestContext context = RequestContext.current();
+        MemoryContext memory = context == null ? null : context.attachment(MemoryContext.class);
+        if (memory != null && !memory.isEmpty()) {
+            requestMessages.add(requestMessages.size() - 1, new SystemMessage(memory.text()));
+        }
+    }
+
+    /**
+     * Estimates the prompt size of the conversation so far: the system message and the history.
+     *
+     * @return The estimated number of tokens.
+     */
+    public int historyTokens() {
+        List<ChatMessage> history;
+        synchronized (messages) {
+            history = new ArrayList<>(messages);
+        }
+        return estimateTokens(history, settings.get().openAi().modelName());
+    }
+
+    /**
+     * Adds the final answer of a request to the conversation history and compacts it if it has grown too long.
+     *
+     * @param responseMessage The assistant's answer.
+     */
+    private void appendAnswer(AssistantMessage responseMessage) {
+        synchronized (messages) {
+            messages.add(responseMessage); // Add the assistant's response to the conversation history
+            observer.onAppend(responseMessage);
+        }
+        if (compactor != null) {
+            compactor.maybeCompact(this);
+        }
+    }
+
+    /**
+     * Requests a completion, walking the model cascade until an answer is not escalated.
+     *
+     * @param requestMessages The messages to send.
+     * @param plan            The models to try, in order.
+     * @param chatTools       The tools offered to the model.
+     * @param event           The event that collects token usage and the answering model.
+     * @return The first choice of the accepted answer.
+     * @throws Exception If a request fails or returns no choice.
+     */
+    private ChatCompletionChoice complete(List<ChatMessage> requestMessages, List<ModelRouter.Choice> plan,
+                                          List<ChatTool> chatTools, OpenAiRequestEvent event) throws Exception {
+        for (int i = 0; ; i++) {
+            RequestHandle.checkCurrent();
+            ModelRouter.Choice candidate = plan.get(i);
+            event.model = candidate.model();
+            var builder = ChatCompletionRequest.builder()
+                    .model(candidate.model())
+                    .messages(requestMessages)
+                    .n(1)
+                    .maxTokens(candidate.maxTokens());
+            if (!chatTools.isEmpty()) {
+                builder.tools(chatTools);
+            }
+            ChatCompletionRequest chatCompletionRequest = builder.build();
+            ChatCompletionResult chatCompletion = router.call(candidate.model(), () -> service.createChatCompletion(chatCompletionRequest));
+
+            if (chatCompletion.getUsage() != null) {
+                Metrics.get().recordTokens(chatCompletion.getUsage().getPromptTokens(), chatCompletion.getUsage().getCompletionTokens());
+                event.promptTokens += chatCompletion.getUsage().getPromptTokens();
+                event.completionTokens += chatCompletion.getUsage().getCompletionTokens();
+            }
+
+            if (chatCompletion.getChoices().isEmpty()) {
+                throw new OpenAiException("No response received from OpenAI service.");
+            }
+
+            ChatCompletionChoice choice = chatCompletion.getChoices().getFirst();
+            if (i == plan.size() - 1 || !router.shouldEscalate(choice)) {
+                return choice;
+            }
+            Metrics.get().count("model_escalations", 1);
+            logger.info("Escalating from {} to {}", candidate.model(), plan.get(i + 1).model());
+        }
+    }
+
+    /**
+     * Runs the tool calls of an answer in parallel.
+     *
+     * @param responseMessage The answer that requested the calls.
+     * @param toolCalls       The requested calls.
+     * @return The answer followed by one {@link ToolMessage} per call, in call order.
+     */
+    private List<ChatMessage> runTools(AssistantMessage responseMessage, List<ChatToolCall> toolCalls) {
+        List<ToolCall> calls = new ArrayList<>(toolCalls.size());
+        for (ChatToolCall toolCall : toolCalls) {
+            calls.add(new ToolCall(toolCall.getId(), toolCall.getFunction().getName(), toolCall.getFunction().getArguments()));
+        }
+        logger.info("Model requested {} tool call(s)", calls.size());
+
+        List<ChatMessage> toolTurn = new ArrayList<>(calls.size() + 1);
+        toolTurn.add(responseMessage);
+        for (ToolResult result : tools.executeAll(calls)) {
+            toolTurn.add(new ToolMessage(result.content(), result.callId()));
+        }
+        return toolTurn;
+    }
+
     /**
      * Resets the conversation history to the default system message.
      */
     public void resetConversation() {
-        messages.clear();
-        messages.add(new SystemMessage(defaultSystemMessage));
+        synchronized (messages) {
+            messages.clear();
+            messages.add(new SystemMessage(settings.get().openAi().systemMessage()));
+            observer.onReplace(List.of());
+        }
     }
 
     /**
@@ -117,6 +416,174 @@ public class OpenAiClient {
      * @return A list of {@link ChatMessage} representing the conversation history.
      */
     public List<ChatMessage> getMessages() {
-        return new ArrayList<>(messages);
+        synchronized (messages) {
+            return new ArrayList<>(messages);
+        }
+    }
+
+    /**
+     * Returns the number of messages in the conversation, including the system message.
+     *
+     * @return The size of the conversation history.
+     */
+    public int historySize() {
+        synchronized (messages) {
+            return messages.size();
+        }
+    }
+
+    /**
+     * Replaces the messages directly after the system message with a single message, but only if they are
+     * still exactly the given messages.
+     *
+     * @param expected    The messages expected to follow the system message.
+     * @param replacement The message that takes their place.
+     * @return {@code true} if the history was replaced; {@code false} if it changed in the meantime.
+     */
+    public boolean replaceHistory(List<ChatMessage> expected, ChatMessage replacement) {
+        synchronized (messages) {
+            if (messages.size() <= expected.size()) {
+                return false;
+            }
+            for (int i = 0; i < expected.size(); i++) {
+                if (messages.get(i + 1) != expected.get(i)) {
+                    return false;
+                }
+            }
+            messages.subList(1, expected.size() + 1).clear();
+            messages.add(1, replacement);
+            observer.onReplace(new ArrayList<>(messages.subList(1, messages.size())));
+            return true;
+        }
+    }
+
+    /**
+     * Estimates the prompt size of the given messages, including the few tokens of framing per message.
+     *
+     * @param messages  The messages of the request.
+     * @param modelName The model whose encoding is used.
+     * @return The estimated number of prompt tokens.
+     */
+    private static int estimateTokens(List<ChatMessage> messages, String modelName) {
+        TokenCounter counter = Tokenizers.forModel(modelName);
+        int tokens = 0;
+        for (ChatMessage message : messages) {
+            String text = message.getTextContent();
+            tokens += 4 + (text == null ? 0 : counter.count(text));
+        }
+        return tokens;
+    }
+
+    /**
+     * Estimates the size of a new user input, which decides whether it goes to the strong model directly.
+     *
+     * @param input     The user's input message.
+     * @param modelName The model whose encoding is used.
+     * @return The estimated number of tokens of the input.
+     */
+    private static int inputTokens(String input, String modelName) {
+        return input == null ? 0 : Tokenizers.forModel(modelName).count(input);
+    }
+
+    /**
+     * Replaces the leading system message if the configured system message has changed since it was added.
+     * Must be called while holding the lock on the history.
+     *
+     * @param systemMessage The currently configured system message.
+     */
+    private void applySystemMessage(String systemMessage) {
+        ChatMessage first = messages.isEmpty() ? null : messages.getFirst();
+        if (first instanceof SystemMessage && !systemMessage.equals(first.getTextContent())) {
+            messages.set(0, new SystemMessage(systemMessage));
+        }
+    }
+
+    private static Supplier<ConfigSnapshot> fixedSettings(String apiKey, Duration timeout, String modelName, int maxTokens, String systemMessage) {
+        Map<String, Object> values = new HashMap<>();
+        if (apiKey != null) {
+            values.put(ConfigKeys.OPENAI_KEY, apiKey);
+        }
+        values.put(ConfigKeys.OPENAI_MODEL, modelName);
+        values.put(ConfigKeys.OPENAI_MAX_TOKENS, maxTokens);
+        values.put(ConfigKeys.OPENAI_TIMEOUT_SECONDS, timeout.toSeconds());
+        values.put(ConfigKeys.OPENAI_SYSTEM_MESSAGE, systemMessage);
+        // Without a strong model every request goes to the given one
+        values.put(ConfigKeys.MODELS_STRONG_NAME, "");
+        ConfigSnapshot snapshot = ConfigSnapshot.from(new MapConfiguration(values));
+        return () -> snapshot;
+    }
+
+    /**
+     * Builds an {@link OpenAiClient} from its service, its settings and the optional parts of a conversation.
+     */
+    public static final class Builder {
+
+        private final OpenAiService service;
+        private final Supplier<ConfigSnapshot> settings;
+        private List<ChatMessage> history = List.of();
+        private ConversationObserver observer = ConversationObserver.NONE;
+        private ConversationCompactor compactor;
+        private ModelRouter router;
+        private ToolExecutor tools;
+
+        private Builder(OpenAiService service, Supplier<ConfigSnapshot> settings) {
+            this.service = service;
+            this.settings = settings;
+        }
+
+        /**
+         * Continues a previous conversation.
+         *
+         * @param history  The restored history, without the leading system message.
+         * @param observer The {@link ConversationObserver} notified of every change to the history.
+         * @return This builder.
+         */
+        public Builder history(List<ChatMessage> history, ConversationObserver observer) {
+            this.history = history;
+            this.observer = observer;
+            return this;
+        }
+
+        /**
+         * Compacts the conversation in the background.
+         *
+         * @param compactor The {@link ConversationCompactor} that summarizes older turns, or {@code null} to keep the full history.
+         * @return This builder.
+         */
+        public Builder compactor(ConversationCompactor compactor) {
+            this.compactor = compactor;
+            return this;
+        }
+
+        /**
+         * Shares a {@link ModelRouter} with other clients.
+         *
+         * @param router The {@link ModelRouter} that picks the model of each request, or {@code null} for a router of the client's own.
+         * @return This builder.
+         */
+        public Builder router(ModelRouter router) {
+            this.router = router;
+            return this;
+        }
+
+        /**
+         * Lets the model call tools.
+         *
+         * @param tools The {@link ToolExecutor} that runs tool calls of the model, or {@code null} to offer no tools.
+         * @return This builder.
+         */
+        public Builder tools(ToolExecutor tools) {
+            this.tools = tools;
+            return this;
+        }
+
+        /**
+         * Constructs the client.
+         *
+         * @return A new {@link OpenAiClient}.
+         */
+        public OpenAiClient build() {
+            return new OpenAiClient(this);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.openai;
+
+import com.qStivi.config.ConfigSnapshot;
+import com.qStivi.tools.ToolExecutor;
+import com.theokanning.openai.service.OpenAiService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * The {@code OpenAiSessions} class keeps one {@link OpenAiClient}, and therefore one conversation, per session.
+ * Clients are created on first access; if a {@link ConversationStore} is configured, the stored history of the
+ * session is restored at that moment and every later change is reported back to the store.
+ * All clients share one {@link ModelRouter}, so the per-model request limits apply across sessions,
+ * and one {@link ToolExecutor}, so the per-tool limits and cached results do as well.
+ */
+public class OpenAiSessions {
+
+    private static final Logger logger = LoggerFactory.getLogger(OpenAiSessions.class);
+
+    private final Map<String, OpenAiClient> clients = new ConcurrentHashMap<>();
+    private final OpenAiService service;
+    private final Supplier<ConfigSnapshot> settings;
+    private final ConversationStore store;
+    private final ConversationCompactor compactor;
+    private final ModelRouter router;
+    private final ToolExecutor tools;
+
+    /**
+     * Constructs an {@code OpenAiSessions} registry without persistence.
+     *
+     * @param service  The {@link OpenAiService} shared by all sessions.
+     * @param settings The supplier of the current {@link ConfigSnapshot}.
+     */
+    public OpenAiSessions(OpenAiService service, Supplier<ConfigSnapshot> settings) {
+        this(service, settings, null);
+    }
+
+    /**
+     * Constructs an {@code OpenAiSessions} registry backed by a {@link ConversationStore}.
+     *
+     * @param service  The {@link OpenAiService} shared by all sessions.
+     * @param settings The supplier of the current {@link ConfigSnapshot}.
+     * @param store    The {@link ConversationStore} to restore and persist sessions, or {@code null} to keep them in memory only.
+     */
+    public OpenAiSessions(OpenAiService service, Supplier<ConfigSnapshot> settings, ConversationStore store) {
+        this(service, settings, store, null);
+    }
+
+    /**
+     * Constructs an {@code OpenAiSessions} registry backed by a {@link ConversationStore} whose conversations are compacted in the background.
+     *
+     * @param service   The {@link OpenAiService} shared by all sessions.
+     * @param settings  The supplier of the current {@link ConfigSnapshot}.
+     * @param store     The {@link ConversationStore} to restore and persist sessions, or {@code null} to keep them in memory only.
+     * @param compactor The {@link ConversationCompactor} for long conversations, or {@code null} to keep full histories.
+     */
+    public OpenAiSessions(OpenAiService service, Supplier<ConfigSnapshot> settings, ConversationStore store, ConversationCompactor compactor) {
+        this(service, settings, store, compactor, null);
+    }
+
+    /**
+     * Constructs an {@code OpenAiSessions} registry whose conversations may call tools.
+     *
+     * @param service   The {@link OpenAiService} shared by all sessions.
+     * @param settings  The supplier of the current {@link ConfigSnapshot}.
+     * @param store     The {@link ConversationStore} to restore and persist sessions, or {@code null} to keep them in memory only.
+     * @param compactor The {@link ConversationCompactor} for long conversations, or {@code null} to keep full histories.
+     * @param tools     The {@link ToolExecutor} offered to the model, or {@code null} to offer no tools.
+     */
+    public OpenAiSessions(OpenAiService service, Supplier<ConfigSnapshot> settings, ConversationStore store,
+                          ConversationCompactor compactor, ToolExecutor tools) {
+        this.service = service;
+        this.settings = settings;
+        this.store = store;
+        this.compactor = compactor;
+        this.router = new ModelRouter(settings);
+        this.tools = tools;
+    }
+
+    /**
+     * Returns the client of a session, creating and restoring it on first access.
+     *
+     * @param sessionId The ID of the session.
+     * @return The {@link OpenAiClient} holding the session's conversation.
+     */
+    public OpenAiClient get(String sessionId) {
+        OpenAiClient client = clients.get(sessionId);
+        return client != null ? client : clients.computeIfAbsent(sessionId, this::create);
+    }
+
+    /**
+     * Starts a session that is neither restored from nor persisted to the {@link ConversationStore},
+     * for a one-off conversation. {@link #release} it once it is done.
+     *
+     * @param sessionId The ID of the session, replacing any session with the same ID that is held in memory.
+     */
+    public void openTransient(String sessionId) {
+        clients.put(sessionId, client().build());
+    }
+
+    /**
+     * Drops the client of a session from memory. A persisted session is restored again on its next access.
+     *
+     * @param sessionId The ID of the session.
+     */
+    public void release(String sessionId) {
+        clients.remove(sessionId);
+    }
+
+    /**
+     * Returns all sessions that have been accessed since startup and not released.
+     *
+     * @return An unmodifiable view of the active sessions by ID.
+     */
+    public Map<String, OpenAiClient> active() {
+        return Collections.unmodifiableMap(clients);
+    }
+
+    private OpenAiClient create(String sessionId) {
+        if (store == null) {
+            return client().build();
+        }
+
+        var history = store.restore(sessionId);
+        logger.debug("Restored {} messages for session {}", history.size(), sessionId);
+        return client().history(history, store.observer(sessionId)).build();
+    }
+
+    private OpenAiClient.Builder client() {
+        return OpenAiClient.builder(service, settings).compactor(compactor).router(router).tools(tools);
+    }
+}
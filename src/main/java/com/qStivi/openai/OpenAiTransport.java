@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.openai;
+
+import com.qStivi.config.ConfigSnapshot;
+import com.qStivi.config.TransportSettings;
+import com.qStivi.metrics.Metrics;
+import com.qStivi.scheduling.RequestHandle;
+import com.theokanning.openai.client.OpenAiApi;
+import com.theokanning.openai.service.OpenAiService;
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code OpenAiTransport} class owns the HTTP connection pool and dispatcher shared by all {@link OpenAiService}s.
+ * Services created through {@link #service} differ only in API key and timeout, so every client, session and model
+ * reuses the same keep-alive connections, which are multiplexed over HTTP/2 where the server supports it.
+ * Response compression is negotiated by OkHttp transparently.
+ * <p>
+ * A call made while a {@link RequestHandle} is bound to the calling thread is cancelled together with the request.
+ * Interrupting the thread is not enough for that, since it does not unblock a socket read.
+ * <p>
+ * {@link #prewarm()} opens connections before the first message, so the first request does not pay for the TLS handshake.
+ */
+public class OpenAiTransport implements AutoCloseable {
+
+    /**
+     * The base URL of the OpenAI API.
+     */
+    public static final String BASE_URL = "https://api.openai.com/";
+
+    private static final Logger logger = LoggerFactory.getLogger(OpenAiTransport.class);
+    private static volatile OpenAiTransport shared;
+
+    private final TransportSettings settings;
+    private final ConnectionPool connectionPool;
+    private final Dispatcher dispatcher;
+    private final ExecutorService executor;
+    private final List<Protocol> protocols;
+
+    /**
+     * Constructs an {@code OpenAiTransport} with the given settings.
+     *
+     * @param settings The {@link TransportSettings}.
+     */
+    public OpenAiTransport(TransportSettings settings) {
+        this.settings = settings;
+        this.connectionPool = new ConnectionPool(settings.maxIdleConnections(), settings.keepAlive().toMillis(), TimeUnit.MILLISECONDS);
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("openai-http-", 0).factory());
+        this.dispatcher = new Dispatcher(executor);
+        this.dispatcher.setMaxRequests(settings.maxRequests());
+        this.dispatcher.setMaxRequestsPerHost(settings.maxRequestsPerHost());
+        this.protocols = settings.http2() ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1) : List.of(Protocol.HTTP_1_1);
+    }
+
+    /**
+     * Returns the transport used by clients that are not given a service, created with default settings on first use.
+     *
+     * @return The process-wide {@code OpenAiTransport}.
+     */
+    public static OpenAiTransport shared() {
+        OpenAiTransport transport = shared;
+        if (transport == null) {
+            synchronized (OpenAiTransport.class) {
+                transport = shared;
+                if (transport == null) {
+                    transport = new OpenAiTransport(ConfigSnapshot.defaults().transport());
+                    shared = transport;
+                }
+            }
+        }
+        return transport;
+    }
+
+    /**
+     * Creates a service that sends its requests over this transport.
+     *
+     * @param apiKey  The OpenAI API key.
+     * @param timeout The read timeout of requests.
+     * @return A new {@link OpenAiService} sharing the connections of this transport.
+     */
+    public OpenAiService service(String apiKey, Duration timeout) {
+        OpenAiApi api = OpenAiService.defaultRetrofit(client(apiKey, timeout), OpenAiService.defaultObjectMapper(), BASE_URL).create(OpenAiApi.class);
+        return new OpenAiService(api, executor);
+    }
+
+    /**
+     * Creates the HTTP client behind a {@link #service}.
+     *
+     * @param apiKey  The OpenAI API key.
+     * @param timeout The read timeout of requests.
+     * @return A new {@link OkHttpClient} sharing the connection pool and dispatcher of this transport.
+     */
+    OkHttpClient client(String apiKey, Duration timeout) {
+        return OpenAiService.defaultClient(apiKey, timeout).newBuilder()
+                .connectionPool(connectionPool)
+                .dispatcher(dispatcher)
+                .protocols(protocols)
+                .eventListenerFactory(OpenAiTransport::cancelWithRequest)
+                .build();
+    }
+
+    /**
+     * Ties a new call to the request of the calling thread, so that cancelling the request cancels the call.
+     * Both blocking and streamed completions create their call on the thread that waits for them.
+     *
+     * @param call The call being created.
+     * @return The listener of the call's events, which ignores them.
+     */
+    private static EventListener cancelWithRequest(Call call) {
+        RequestHandle handle = RequestHandle.current();
+        if (handle != null) {
+            handle.onCancel(call::cancel);
+        }
+        return EventListener.NONE;
+    }
+
+    /**
+     * Opens the configured number of connections to the API in the background.
+     * Failures are only logged, since the connections are opened again on demand.
+     */
+    public void prewarm() {
+        int connections = settings.prewarmConnections();
+        if (connections <= 0) {
+            return;
+        }
+
+        OkHttpClient client = new OkHttpClient.Builder()
+                .connectionPool(connectionPool)
+                .dispatcher(dispatcher)
+                .protocols(protocols)
+                .build();
+        Request request = new Request.Builder().url(BASE_URL).head().build();
+        for (int i = 0; i < connections; i++) {
+            executor.execute(() -> {
+                // Any response will do, the connection stays in the pool
+                try (Response response = client.newCall(request).execute()) {
+                    Metrics.get().count("transport_prewarmed", 1);
+                    logger.debug("Pre-warmed connection using {}", response.protocol());
+                } catch (IOException e) {
+                    logger.warn("Failed to pre-warm connection: {}", e.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the number of open connections, idle or in use.
+     *
+     * @return The connection count of the pool.
+     */
+    public int connectionCount() {
+        return connectionPool.connectionCount();
+    }
+
+    /**
+     * Closes all idle connections and stops the dispatcher threads.
+     */
+    @Override
+    public void close() {
+        dispatcher.cancelAll();
+        executor.shutdown();
+        connectionPool.evictAll();
+    }
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.openai;
+
+/**
+ * The {@code Route} enum describes what a request to the model is for, which the {@link ModelRouter}
+ * uses to pick a model.
+ */
+public enum Route {
+
+    /**
+     * A direct reply in the conversation. Tries the fast model first.
+     */
+    CHAT,
+
+    /**
+     * A step of a complex task. Goes to the strong model.
+     */
+    TASK
+}
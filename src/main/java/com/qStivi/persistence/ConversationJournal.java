@@ -0,0 +1,328 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.persistence;
+
+import com.qStivi.openai.ConversationObserver;
+import com.qStivi.openai.ConversationStore;
+import com.theokanning.openai.completion.chat.AssistantMessage;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import com.theokanning.openai.completion.chat.SystemMessage;
+import com.theokanning.openai.completion.chat.UserMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * The {@code ConversationJournal} class persists conversations so they survive a restart.
+ * <p>
+ * Changes are appended asynchronously to a {@link WriteBehindLog} and never wait for the disk. From time to time
+ * the journal is compacted into a snapshot that holds only the current history of each session, after which the
+ * journal is emptied. Sessions are not loaded at startup; {@link #restore(String)} reads a session's records the
+ * first time it is accessed.
+ * <p>
+ * Each record carries a sequence number. The snapshot remembers the last sequence it includes, so journal records
+ * that survived a crash between writing the snapshot and emptying the journal are skipped instead of applied twice.
+ */
+public class ConversationJournal implements ConversationStore, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationJournal.class);
+    private static final String JOURNAL_FILE = "conversations.journal";
+    private static final String SNAPSHOT_FILE = "conversations.snapshot";
+    private static final byte HEADER = 0;
+    private static final byte APPEND = 1;
+    private static final byte REPLACE = 2;
+    private static final byte ROLE_SYSTEM = 0;
+    private static final byte ROLE_USER = 1;
+    private static final byte ROLE_ASSISTANT = 2;
+
+    private final Path journalPath;
+    private final Path snapshotPath;
+    private final int snapshotEveryRecords;
+    private final long snapshotIntervalNanos;
+    private final WriteBehindLog<Entry> log;
+
+    // Only accessed on the writer thread of the log
+    private long sequence;
+    private long recordsSinceSnapshot;
+    private long lastSnapshotNanos = System.nanoTime();
+
+    /**
+     * Opens the journal in the given directory, creating it if necessary.
+     *
+     * @param directory            The directory holding the journal and snapshot files.
+     * @param fsync                Whether writes are forced to the storage device.
+     * @param snapshotEveryRecords The number of journal records after which a snapshot is taken.
+     * @param snapshotInterval     The maximum time between snapshots while the journal has new records.
+     * @throws IOException If the files cannot be opened.
+     */
+    public ConversationJournal(Path directory, boolean fsync, int snapshotEveryRecords, Duration snapshotInterval) throws IOException {
+        Files.createDirectories(directory);
+        this.journalPath = directory.resolve(JOURNAL_FILE);
+        this.snapshotPath = directory.resolve(SNAPSHOT_FILE);
+        this.snapshotEveryRecords = snapshotEveryRecords;
+        this.snapshotIntervalNanos = snapshotInterval.toNanos();
+        this.sequence = Math.max(readSnapshotSequence(), lastJournalSequence());
+        this.log = new WriteBehindLog<>(journalPath, this::encode, fsync, 1000, this::snapshotIfDue, "conversation-journal");
+        logger.info("Opened conversation journal in {}", directory);
+    }
+
+    @Override
+    public List<ChatMessage> restore(String sessionId) {
+        try {
+            return log.submit(() -> replay(sessionId)).join();
+        } catch (CompletionException e) {
+            logger.error("Failed to restore session {}, starting a new conversation", sessionId, e.getCause());
+            return List.of();
+        }
+    }
+
+    @Override
+    public ConversationObserver observer(String sessionId) {
+        return new ConversationObserver() {
+            @Override
+            public void onAppend(ChatMessage message) {
+                if (isPersistent(message)) {
+                    log.append(new Entry(APPEND, sessionId, List.of(message)));
+                }
+            }
+
+            @Override
+            public void onReplace(List<ChatMessage> history) {
+                log.append(new Entry(REPLACE, sessionId, history.stream().filter(ConversationJournal::isPersistent).toList()));
+            }
+        };
+    }
+
+    /**
+     * Compacts the journal into a new snapshot in the background.
+     *
+     * @return A future completed once the snapshot is durable.
+     */
+    public CompletableFuture<Void> snapshot() {
+        return log.submit(() -> {
+            compact();
+            return null;
+        });
+    }
+
+    /**
+     * Writes all pending records and closes the journal.
+     */
+    @Override
+    public void close() {
+        log.close();
+        logger.info("Closed conversation journal");
+    }
+
+    /**
+     * Returns whether a message can be stored. Tool calls and their results cannot be replayed
+     * without the original call IDs, so only plain text messages are persisted.
+     *
+     * @param message The message to check.
+     * @return {@code true} if the message is persisted; {@code false} otherwise.
+     */
+    private static boolean isPersistent(ChatMessage message) {
+        return roleCode(message.getRole()) >= 0 && message.getTextContent() != null;
+    }
+
+    private void snapshotIfDue() {
+        if (recordsSinceSnapshot > 0 && System.nanoTime() - lastSnapshotNanos >= snapshotIntervalNanos) {
+            try {
+                compact();
+            } catch (IOException e) {
+                logger.error("Failed to write conversation snapshot", e);
+            }
+        }
+    }
+
+    private void encode(Entry entry, DataOutput out) throws IOException {
+        sequence++;
+        out.writeByte(entry.type());
+        out.writeLong(sequence);
+        writeString(out, entry.sessionId());
+        writeMessages(out, entry.messages());
+
+        if (++recordsSinceSnapshot >= snapshotEveryRecords) {
+            // Runs after this batch is written, still on the writer thread
+            log.submit(() -> {
+                compact();
+                return null;
+            });
+            recordsSinceSnapshot = Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Replays the snapshot and the journal for one session.
+     */
+    private List<ChatMessage> replay(String sessionId) throws IOException {
+        List<ChatMessage> history = new ArrayList<>();
+        long snapshotSequence = replayFile(snapshotPath, sessionId, history, -1);
+        replayFile(journalPath, sessionId, history, snapshotSequence);
+        return history;
+    }
+
+    /**
+     * Applies the records of one session from a file to the given history.
+     *
+     * @return The sequence stored in the file's header, or {@code -1} if it has none.
+     */
+    private static long replayFile(Path path, String sessionId, List<ChatMessage> history, long skipUpTo) throws IOException {
+        long[] headerSequence = {-1};
+        WriteBehindLog.readRecords(path, in -> {
+            byte type = in.readByte();
+            long recordSequence = in.readLong();
+            if (type == HEADER) {
+                headerSequence[0] = recordSequence;
+                return;
+            }
+            String recordSession = readString(in);
+            if (recordSequence <= skipUpTo || !recordSession.equals(sessionId)) {
+                return;
+            }
+            List<ChatMessage> messages = readMessages(in);
+            if (type == REPLACE) {
+                history.clear();
+            }
+            history.addAll(messages);
+        });
+        return headerSequence[0];
+    }
+
+    /**
+     * Takes a snapshot and resets the snapshot schedule, also if the snapshot failed.
+     */
+    private void compact() throws IOException {
+        try {
+            writeSnapshot();
+        } finally {
+            recordsSinceSnapshot = 0;
+            lastSnapshotNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Folds the snapshot and the journal into a new snapshot and empties the journal.
+     */
+    private void writeSnapshot() throws IOException {
+        long start = System.nanoTime();
+        Map<String, List<ChatMessage>> sessions = new LinkedHashMap<>();
+        long[] snapshotSequence = {-1};
+        for (Path path : List.of(snapshotPath, journalPath)) {
+            WriteBehindLog.readRecords(path, in -> {
+                byte type = in.readByte();
+                long recordSequence = in.readLong();
+                if (type == HEADER) {
+                    snapshotSequence[0] = recordSequence;
+                    return;
+                }
+                String sessionId = readString(in);
+                if (path.equals(journalPath) && recordSequence <= snapshotSequence[0]) {
+                    return;
+                }
+                List<ChatMessage> history = sessions.computeIfAbsent(sessionId, key -> new ArrayList<>());
+                if (type == REPLACE) {
+                    history.clear();
+                }
+                history.addAll(readMessages(in));
+            });
+        }
+
+        List<Entry> entries = new ArrayList<>(sessions.size() + 1);
+        entries.add(new Entry(HEADER, null, List.of()));
+        sessions.forEach((sessionId, history) -> entries.add(new Entry(REPLACE, sessionId, history)));
+        long snapshotUpTo = sequence;
+        WriteBehindLog.writeRecords(snapshotPath, (entry, out) -> {
+            out.writeByte(entry.type());
+            out.writeLong(snapshotUpTo);
+            if (entry.type() != HEADER) {
+                writeString(out, entry.sessionId());
+                writeMessages(out, entry.messages());
+            }
+        }, entries);
+        log.truncate();
+        logger.info("Wrote conversation snapshot with {} sessions in {} ms", sessions.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private long readSnapshotSequence() throws IOException {
+        long[] result = {0};
+        WriteBehindLog.readRecords(snapshotPath, in -> {
+            if (in.readByte() == HEADER) {
+                result[0] = in.readLong();
+            }
+        });
+        return result[0];
+    }
+
+    private long lastJournalSequence() throws IOException {
+        long[] result = {0};
+        WriteBehindLog.readRecords(journalPath, in -> {
+            in.readByte();
+            result[0] = Math.max(result[0], in.readLong());
+        });
+        return result[0];
+    }
+
+    private static void writeMessages(DataOutput out, List<ChatMessage> messages) throws IOException {
+        out.writeInt(messages.size());
+        for (ChatMessage message : messages) {
+            out.writeByte(roleCode(message.getRole()));
+            writeString(out, message.getTextContent());
+        }
+    }
+
+    private static List<ChatMessage> readMessages(DataInput in) throws IOException {
+        int count = in.readInt();
+        List<ChatMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte role = in.readByte();
+            String content = readString(in);
+            messages.add(switch (role) {
+                case ROLE_SYSTEM -> new SystemMessage(content);
+                case ROLE_USER -> new UserMessage(content);
+                case ROLE_ASSISTANT -> new AssistantMessage(content);
+                default -> throw new IOException("Unknown role code " + role);
+            });
+        }
+        return messages;
+    }
+
+    private static byte roleCode(String role) {
+        return switch (role) {
+            case "system" -> ROLE_SYSTEM;
+            case "user" -> ROLE_USER;
+            case "assistant" -> ROLE_ASSISTANT;
+            default -> -1;
+        };
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private record Entry(byte type, String sessionId, List<ChatMessage> messages) {
+    }
+}
@@ -0,0 +1,526 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.persistence;
+
+import com.qStivi.memory.Chunk;
+import com.qStivi.memory.MemoryIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The {@code MemoryIndexStore} class persists a {@link MemoryIndex} so it does not have to be rebuilt at startup.
+ * <p>
+ * Every added chunk is appended to a {@link WriteBehindLog}, so ingestion never waits for the disk. From time to time
+ * the chunks added since the last snapshot are written to a new immutable segment file in the background, the
+ * manifest listing the live segments is replaced atomically, and the log is emptied. When there are more than the
+ * configured number of segments, the two adjacent segments with the fewest chunks are merged, so the number of files
+ * stays bounded while each chunk is only rewritten a logarithmic number of times.
+ * <p>
+ * A segment stores its vectors as one contiguous block, which is memory-mapped and copied into the index in bulk at
+ * startup. Only the log tail written after the last snapshot is decoded record by record. Chunks are identified by their
+ * stored position, which is their position in the index when they were added, so log records that survived a crash after
+ * their snapshot are skipped.
+ * <p>
+ * Segments, including merged ones, only hold the chunks that were not retired when they were written. A segment still
+ * spans the stored positions of its dropped chunks, so stored positions never change, but the index is loaded without
+ * gaps: a chunk's position in the index is the number of loaded chunks stored before it. Log records and completed
+ * files are translated between the two when they are read and written.
+ * <p>
+ * The files completed by an ingestion are written to a sources file right after a snapshot holding their chunks.
+ * A crash before that loses only the record of the completion, and the files are ingested again.
+ */
+public class MemoryIndexStore implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MemoryIndexStore.class);
+    private static final String LOG_FILE = "index.log";
+    private static final String MANIFEST_FILE = "index.manifest";
+    private static final String SOURCES_FILE = "index.sources";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int MAGIC = 0x51494458;
+    private static final int MAGIC_SPARSE = 0x51494459;
+    private static final int HEADER_BYTES = 16;
+    private static final int SPARSE_HEADER_BYTES = 20;
+
+    private final Path directory;
+    private final Path manifestPath;
+    private final Path sourcesPath;
+    private final MemoryIndex index;
+    private final int snapshotEveryChunks;
+    private final long snapshotIntervalNanos;
+    private final int maxSegments;
+    private final WriteBehindLog<Entry> log;
+    private int[] loadedPositions = new int[0];
+    private int loaded;
+    private int storedSize;
+    private int offset;
+
+    // Only accessed on the writer thread of the log once it is started
+    private final List<Segment> segments = new ArrayList<>();
+    private int persisted;
+    private int written;
+    private int nextSegmentId;
+    private boolean snapshotPending;
+    private long lastSnapshotNanos = System.nanoTime();
+
+    /**
+     * Restores the index from the given directory and starts persisting the chunks added to it.
+     *
+     * @param directory           The directory holding the log, manifest and segment files.
+     * @param index               The empty {@link MemoryIndex} to restore into.
+     * @param fsync               Whether writes are forced to the storage device.
+     * @param snapshotEveryChunks The number of logged chunks after which a segment is written.
+     * @param snapshotInterval    The maximum time between snapshots while the log has new chunks.
+     * @param maxSegments         The number of segments above which segments are merged.
+     * @throws IOException If the files cannot be read or belong to an index of different dimensions.
+     */
+    public MemoryIndexStore(Path directory, MemoryIndex index, boolean fsync, int snapshotEveryChunks, Duration snapshotInterval, int maxSegments) throws IOException {
+        if (index.size() != 0) {
+            throw new IllegalArgumentException("Index must be empty to be restored");
+        }
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.manifestPath = directory.resolve(MANIFEST_FILE);
+        this.sourcesPath = directory.resolve(SOURCES_FILE);
+        this.index = index;
+        this.snapshotEveryChunks = snapshotEveryChunks;
+        this.snapshotIntervalNanos = snapshotInterval.toNanos();
+        this.maxSegments = maxSegments;
+
+        long start = System.nanoTime();
+        readManifest();
+        for (int i = 0; i < segments.size(); i++) {
+            segments.set(i, loadSegment(segments.get(i)));
+        }
+        // Chunks added from here on are stored at their position plus the number of dropped chunks before them
+        offset = storedSize - loaded;
+        persisted = index.size();
+        Path logPath = directory.resolve(LOG_FILE);
+        int[] replayed = {0};
+        WriteBehindLog.readRecords(logPath, in -> {
+            if (replay(in)) {
+                replayed[0]++;
+            }
+        });
+        written = index.size();
+        List<MemoryIndex.Completion> completions = new ArrayList<>();
+        WriteBehindLog.readRecords(sourcesPath, in -> {
+            MemoryIndex.Completion completion = readCompletion(in);
+            completions.add(new MemoryIndex.Completion(completion.source(), completion.size(), completion.modified(), position(completion.from())));
+        });
+        index.restoreCompletions(completions);
+        deleteOrphans();
+
+        this.log = new WriteBehindLog<>(logPath, this::encode, fsync, 1000, this::snapshotIfDue, "memory-index-log");
+        index.observe(new MemoryIndex.Observer() {
+            @Override
+            public void onAdd(int position, Chunk chunk, float[] vector) {
+                log.append(new Entry(position, chunk, vector));
+            }
+
+            @Override
+            public void onComplete(List<MemoryIndex.Completion> completed) {
+                writeSources().exceptionally(e -> {
+                    logger.error("Failed to write memory index sources, completed documents will be ingested again", e);
+                    return null;
+                });
+            }
+        });
+        logger.info("Restored {} chunks from {} segments and {} log records and {} completed documents in {} ms",
+                written, segments.size(), replayed[0], completions.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Writes the chunks logged since the last snapshot to a new segment in the background.
+     *
+     * @return A future completed once the segment is durable.
+     */
+    public CompletableFuture<Void> snapshot() {
+        return log.submit(() -> {
+            compact();
+            return null;
+        });
+    }
+
+    /**
+     * Writes a snapshot, so the chunks of the completed files are in segments, and then the completed files.
+     *
+     * @return A future completed once the completed files are durable.
+     */
+    private CompletableFuture<Void> writeSources() {
+        return log.submit(() -> {
+            compact();
+            WriteBehindLog.writeRecords(sourcesPath, this::writeCompletion, index.completions());
+            return null;
+        });
+    }
+
+    /**
+     * Stops observing the index, writes all pending records and closes the log.
+     */
+    @Override
+    public void close() {
+        index.observe(null);
+        log.close();
+        logger.info("Closed memory index store");
+    }
+
+    private void snapshotIfDue() {
+        if (written > persisted && System.nanoTime() - lastSnapshotNanos >= snapshotIntervalNanos) {
+            try {
+                compact();
+            } catch (IOException e) {
+                logger.error("Failed to write memory index segment", e);
+            }
+        }
+    }
+
+    private void encode(Entry entry, DataOutput out) throws IOException {
+        out.writeInt(stored(entry.position()));
+        writeChunk(out, entry.chunk());
+        for (float component : entry.vector()) {
+            out.writeFloat(component);
+        }
+        written = entry.position() + 1;
+
+        if (written - persisted >= snapshotEveryChunks && !snapshotPending) {
+            // Runs after this batch is written, still on the writer thread
+            snapshotPending = true;
+            snapshot().exceptionally(e -> {
+                logger.error("Failed to write memory index segment", e);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Applies one log record to the index unless a segment already holds its chunk.
+     *
+     * @return {@code true} if the record was applied.
+     */
+    private boolean replay(DataInput in) throws IOException {
+        int position = in.readInt();
+        if (position < storedSize) {
+            return false;
+        }
+        if (position > storedSize) {
+            throw new IOException("Memory index log skips from chunk " + storedSize + " to " + position);
+        }
+        storedSize++;
+        Chunk chunk = readChunk(in);
+        float[] vector = new float[index.dimensions()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = in.readFloat();
+        }
+        index.restore(List.of(chunk), FloatBuffer.wrap(vector));
+        return true;
+    }
+
+    /**
+     * Writes a segment, merges segments if there are too many and resets the snapshot schedule, also if this failed.
+     */
+    private void compact() throws IOException {
+        try {
+            if (written > persisted) {
+                long start = System.nanoTime();
+                Segment segment = writeSegment(stored(persisted), stored(written));
+                segments.add(segment);
+                writeManifest();
+                // Every logged chunk is in a segment now; chunks logged later are written after this task
+                log.truncate();
+                persisted = written;
+                logger.info("Wrote memory index segment of {} chunks in {} ms", segment.live(), (System.nanoTime() - start) / 1_000_000);
+            }
+            while (segments.size() > maxSegments) {
+                merge();
+            }
+        } finally {
+            snapshotPending = false;
+            lastSnapshotNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Replaces the two adjacent segments with the fewest chunks by one segment.
+     * The merged segment is written from the index, which already holds their chunks, without the retired ones.
+     */
+    private void merge() throws IOException {
+        int smallest = 0;
+        for (int i = 1; i < segments.size() - 1; i++) {
+            if (segments.get(i).live() + segments.get(i + 1).live() < segments.get(smallest).live() + segments.get(smallest + 1).live()) {
+                smallest = i;
+            }
+        }
+        Segment first = segments.get(smallest);
+        Segment second = segments.get(smallest + 1);
+        Segment merged = writeSegment(first.from(), second.to());
+        segments.set(smallest, merged);
+        segments.remove(smallest + 1);
+        writeManifest();
+        Files.deleteIfExists(segmentPath(first.id()));
+        Files.deleteIfExists(segmentPath(second.id()));
+        logger.debug("Merged memory index segments {} and {} into {} with {} of {} chunks", first.id(), second.id(), merged.id(),
+                merged.live(), first.live() + second.live());
+    }
+
+    /**
+     * Writes the chunks of a stored position range that are not retired to a new segment file.
+     * The file is only moved into place once complete, so a crash never leaves a partial segment behind.
+     */
+    private Segment writeSegment(int from, int to) throws IOException {
+        int first = position(from);
+        MemoryIndex.Slice slice = index.slice(first, position(to));
+        BitSet retired = slice.retired();
+        var segment = new Segment(nextSegmentId++, from, to - from, slice.chunks().size() - retired.cardinality());
+        Path target = segmentPath(segment.id());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        var checksum = new CRC32();
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            var out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(Channels.newOutputStream(channel), checksum), 64 * 1024));
+            out.writeInt(MAGIC_SPARSE);
+            out.writeInt(index.dimensions());
+            out.writeInt(segment.from());
+            out.writeInt(segment.count());
+            out.writeInt(segment.live());
+            int dimensions = index.dimensions();
+            for (int i = retired.nextClearBit(0); i < slice.chunks().size(); i = retired.nextClearBit(i + 1)) {
+                for (int d = 0; d < dimensions; d++) {
+                    out.writeFloat(slice.vectors()[i * dimensions + d]);
+                }
+            }
+            for (int i = retired.nextClearBit(0); i < slice.chunks().size(); i = retired.nextClearBit(i + 1)) {
+                out.writeInt(stored(first + i));
+                writeChunk(out, slice.chunks().get(i));
+            }
+            out.flush();
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, (int) checksum.getValue()));
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return segment;
+    }
+
+    /**
+     * Maps a segment file, verifies it and copies its chunks into the index. Segments written before retired chunks
+     * were dropped hold every chunk of their range, without stored positions.
+     */
+    private Segment loadSegment(Segment segment) throws IOException {
+        Path path = segmentPath(segment.id());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES + Integer.BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Memory index segment " + path + " has an invalid size of " + size + " bytes");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int body = (int) size - Integer.BYTES;
+            var checksum = new CRC32();
+            checksum.update(buffer.slice(0, body));
+            if ((int) checksum.getValue() != buffer.getInt(body)) {
+                throw new IOException("Memory index segment " + path + " is corrupt");
+            }
+            int magic = buffer.getInt(0);
+            boolean sparse = magic == MAGIC_SPARSE;
+            if (!sparse && magic != MAGIC || buffer.getInt(4) != index.dimensions()
+                    || buffer.getInt(8) != segment.from() || buffer.getInt(12) != segment.count()) {
+                throw new IOException("Memory index segment " + path + " does not match the manifest");
+            }
+            if (segment.from() != storedSize) {
+                throw new IOException("Memory index segment " + path + " starts at chunk " + segment.from() + " instead of " + storedSize);
+            }
+
+            int header = sparse ? SPARSE_HEADER_BYTES : HEADER_BYTES;
+            int live = sparse ? buffer.getInt(16) : segment.count();
+            int vectorBytes = live * index.dimensions() * Float.BYTES;
+            FloatBuffer vectors = buffer.slice(header, vectorBytes).asFloatBuffer();
+            byte[] metadata = new byte[body - header - vectorBytes];
+            buffer.get(header + vectorBytes, metadata);
+            var in = new DataInputStream(new ByteArrayInputStream(metadata));
+            List<Chunk> chunks = new ArrayList<>(live);
+            int previous = segment.from() - 1;
+            for (int i = 0; i < live; i++) {
+                int position = sparse ? in.readInt() : segment.from() + i;
+                if (position <= previous || position >= segment.to()) {
+                    throw new IOException("Memory index segment " + path + " holds chunk " + position + " out of order");
+                }
+                previous = position;
+                addLoadedPosition(position);
+                chunks.add(readChunk(in));
+            }
+            index.restore(chunks, vectors);
+            storedSize = segment.to();
+            nextSegmentId = Math.max(nextSegmentId, segment.id() + 1);
+            return new Segment(segment.id(), segment.from(), segment.count(), live);
+        }
+    }
+
+    private void addLoadedPosition(int position) {
+        if (loaded == loadedPositions.length) {
+            loadedPositions = Arrays.copyOf(loadedPositions, Math.max(1024, loaded * 2));
+        }
+        loadedPositions[loaded++] = position;
+    }
+
+    /**
+     * Returns the stored position of the chunk at a position of the index.
+     */
+    private int stored(int position) {
+        return position < loaded ? loadedPositions[position] : position + offset;
+    }
+
+    /**
+     * Returns the position in the index of the first chunk stored at or after a stored position.
+     */
+    private int position(int stored) {
+        if (stored - offset >= loaded) {
+            return stored - offset;
+        }
+        int found = Arrays.binarySearch(loadedPositions, 0, loaded, stored);
+        return found >= 0 ? found : -found - 1;
+    }
+
+    private void readManifest() throws IOException {
+        WriteBehindLog.readRecords(manifestPath, in -> {
+            int dimensions = in.readInt();
+            if (dimensions != index.dimensions()) {
+                throw new IOException("Memory index in " + directory + " has " + dimensions + " dimensions instead of " + index.dimensions());
+            }
+            nextSegmentId = in.readInt();
+            int count = in.readInt();
+            segments.clear();
+            for (int i = 0; i < count; i++) {
+                int id = in.readInt();
+                int from = in.readInt();
+                int span = in.readInt();
+                // The number of chunks held is read from the segment file
+                segments.add(new Segment(id, from, span, span));
+            }
+        });
+    }
+
+    private void writeManifest() throws IOException {
+        WriteBehindLog.writeRecords(manifestPath, (List<Segment> live, DataOutput out) -> {
+            out.writeInt(index.dimensions());
+            out.writeInt(nextSegmentId);
+            out.writeInt(live.size());
+            for (Segment segment : live) {
+                out.writeInt(segment.id());
+                out.writeInt(segment.from());
+                out.writeInt(segment.count());
+            }
+        }, List.of(List.copyOf(segments)));
+    }
+
+    /**
+     * Deletes segment files left behind by a crash during a snapshot or merge.
+     */
+    private void deleteOrphans() throws IOException {
+        Set<Path> live = new HashSet<>();
+        for (Segment segment : segments) {
+            live.add(segmentPath(segment.id()));
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*")) {
+            for (Path file : files) {
+                if (!live.contains(file)) {
+                    logger.warn("Deleting orphaned memory index segment {}", file);
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private Path segmentPath(int id) {
+        return directory.resolve(SEGMENT_PREFIX + id + SEGMENT_SUFFIX);
+    }
+
+    private static void writeChunk(DataOutput out, Chunk chunk) throws IOException {
+        writeString(out, chunk.source().toString());
+        out.writeLong(chunk.offset());
+        out.writeInt(chunk.tokens());
+        writeString(out, chunk.text());
+    }
+
+    private static Chunk readChunk(DataInput in) throws IOException {
+        Path source = Path.of(readString(in));
+        long offset = in.readLong();
+        int tokens = in.readInt();
+        return new Chunk(source, offset, readString(in), tokens);
+    }
+
+    private void writeCompletion(MemoryIndex.Completion completion, DataOutput out) throws IOException {
+        writeString(out, completion.source().toString());
+        out.writeLong(completion.size());
+        out.writeLong(completion.modified());
+        out.writeInt(stored(completion.from()));
+    }
+
+    private static MemoryIndex.Completion readCompletion(DataInput in) throws IOException {
+        Path source = Path.of(readString(in));
+        long size = in.readLong();
+        long modified = in.readLong();
+        return new MemoryIndex.Completion(source, size, modified, in.readInt());
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private record Entry(int position, Chunk chunk, float[] vector) {
+    }
+
+    /**
+     * An immutable segment file holding the chunks of a stored position range that were not retired.
+     *
+     * @param id    The number in the file name.
+     * @param from  The stored position of the first chunk of the range.
+     * @param count The number of stored positions in the range.
+     * @param live  The number of chunks the file holds.
+     */
+    private record Segment(int id, int from, int count, int live) {
+
+        int to() {
+            return from + count;
+        }
+    }
+}
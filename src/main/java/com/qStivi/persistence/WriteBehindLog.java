@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * The {@code WriteBehindLog} class is an append-only file of checksummed records written by a single background thread.
+ * <p>
+ * Callers only enqueue entries. The writer thread drains whatever has accumulated, encodes it into one buffer,
+ * writes it with a single call and forces it to disk once per batch (group commit), so the cost of an fsync is
+ * shared by all entries that arrived while the previous batch was being written.
+ * <p>
+ * Every record is framed as {@code [int length][int crc32][payload]}. Readers stop at the first incomplete or
+ * corrupt frame, which makes a torn write at the end of the file harmless.
+ *
+ * @param <T> The type of the entries written to the log.
+ */
+public class WriteBehindLog<T> implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindLog.class);
+    private static final int MAX_RECORD_LENGTH = 64 * 1024 * 1024;
+    private static final int MAX_BATCH = 1024;
+    private static final Object CLOSE = new Object();
+
+    private final Path path;
+    private final Encoder<T> encoder;
+    private final boolean fsync;
+    private final long idleMillis;
+    private final Runnable idleTask;
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private final ByteArrayOutputStream batch = new ByteArrayOutputStream(16 * 1024);
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(1024);
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private final CRC32 crc = new CRC32();
+    private final FileChannel channel;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * Opens or creates a log file and starts its writer thread.
+     * A torn record at the end of an existing file is cut off.
+     *
+     * @param path       The path of the log file.
+     * @param encoder    The {@link Encoder} that serializes entries on the writer thread.
+     * @param fsync      Whether each batch is forced to the storage device.
+     * @param idleMillis How long the writer waits for entries before running {@code idleTask}.
+     * @param idleTask   A task run on the writer thread whenever it was idle for {@code idleMillis}, may be {@code null}.
+     * @param name       The name of the writer thread.
+     * @throws IOException If the file cannot be opened.
+     */
+    public WriteBehindLog(Path path, Encoder<T> encoder, boolean fsync, long idleMillis, Runnable idleTask, String name) throws IOException {
+        this.path = path;
+        this.encoder = encoder;
+        this.fsync = fsync;
+        this.idleMillis = idleMillis;
+        this.idleTask = idleTask;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        long validLength = readRecords(path, in -> {
+        });
+        if (validLength < channel.size()) {
+            logger.warn("Discarding {} bytes of incomplete records at the end of {}", channel.size() - validLength, path);
+            channel.truncate(validLength);
+        }
+        channel.position(validLength);
+
+        this.writer = new Thread(this::run, name);
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Reads all intact records of a file in order.
+     *
+     * @param path    The file to read. A missing file has no records.
+     * @param handler The {@link RecordHandler} called with each record's payload.
+     * @return The number of bytes occupied by intact records.
+     * @throws IOException If the file cannot be read or the handler fails.
+     */
+    public static long readRecords(Path path, RecordHandler handler) throws IOException {
+        if (Files.notExists(path)) {
+            return 0;
+        }
+
+        long validLength = 0;
+        CRC32 checksum = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 64 * 1024))) {
+            while (true) {
+                int length;
+                int expectedCrc;
+                byte[] payload;
+                try {
+                    length = in.readInt();
+                    expectedCrc = in.readInt();
+                    if (length < 0 || length > MAX_RECORD_LENGTH) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+
+                checksum.reset();
+                checksum.update(payload);
+                if ((int) checksum.getValue() != expectedCrc) {
+                    break;
+                }
+
+                handler.handle(new DataInputStream(new ByteArrayInputStream(payload)));
+                validLength += 8 + length;
+            }
+        }
+        return validLength;
+    }
+
+    /**
+     * Writes a complete file of records and atomically replaces {@code target} with it.
+     *
+     * @param target  The file to replace.
+     * @param encoder The {@link Encoder} that serializes the entries.
+     * @param entries The entries to write.
+     * @param <E>     The type of the entries.
+     * @throws IOException If the file cannot be written.
+     */
+    public static <E> void writeRecords(Path target, Encoder<E> encoder, Iterable<E> entries) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(1024);
+        DataOutputStream payloadOut = new DataOutputStream(payload);
+        CRC32 checksum = new CRC32();
+
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             DataOutputStream file = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(out), 64 * 1024))) {
+            for (E entry : entries) {
+                payload.reset();
+                encoder.encode(entry, payloadOut);
+                payloadOut.flush();
+                checksum.reset();
+                checksum.update(payload.toByteArray());
+                file.writeInt(payload.size());
+                file.writeInt((int) checksum.getValue());
+                payload.writeTo(file);
+            }
+            file.flush();
+            out.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Enqueues an entry to be written. This method never blocks on I/O.
+     *
+     * @param entry The entry to write.
+     * @throws IllegalStateException If the log is closed.
+     */
+    public void append(T entry) {
+        if (closed) {
+            throw new IllegalStateException("Log " + path + " is closed");
+        }
+        queue.add(entry);
+    }
+
+    /**
+     * Runs a task on the writer thread after all previously enqueued entries have been written.
+     *
+     * @param task The task to run.
+     * @param <R>  The result type of the task.
+     * @return A {@link CompletableFuture} completed with the task's result.
+     */
+    public <R> CompletableFuture<R> submit(Callable<R> task) {
+        var future = new CompletableFuture<R>();
+        if (closed) {
+            future.completeExceptionally(new IllegalStateException("Log " + path + " is closed"));
+            return future;
+        }
+        queue.add(new Task<>(task, future));
+        return future;
+    }
+
+    /**
+     * Empties the log file. Must only be called from a task running on the writer thread.
+     *
+     * @throws IOException If the file cannot be truncated.
+     */
+    public void truncate() throws IOException {
+        if (Thread.currentThread() != writer) {
+            throw new IllegalStateException("truncate() must be called from the writer thread");
+        }
+        channel.truncate(0);
+        channel.position(0);
+        channel.force(true);
+    }
+
+    /**
+     * Writes all pending entries and stops the writer thread.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.add(CLOSE);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.error("Failed to close log {}", path, e);
+        }
+    }
+
+    private void run() {
+        List<Object> pending = new ArrayList<>(MAX_BATCH);
+        boolean running = true;
+        while (running) {
+            try {
+                Object first = queue.poll(idleMillis, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (idleTask != null) {
+                        idleTask.run();
+                    }
+                    continue;
+                }
+                pending.add(first);
+                queue.drainTo(pending, MAX_BATCH - 1);
+                running = process(pending);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } catch (RuntimeException e) {
+                logger.error("Idle task of log {} failed", path, e);
+            } finally {
+                pending.clear();
+            }
+        }
+
+        // Fail tasks that raced with close()
+        for (Object item : queue) {
+            if (item instanceof Task<?> task) {
+                task.future().completeExceptionally(new IllegalStateException("Log " + path + " is closed"));
+            }
+        }
+    }
+
+    /**
+     * Writes one batch of entries and runs the tasks contained in it, in order.
+     *
+     * @param pending The drained queue items.
+     * @return {@code false} if the batch contained the close marker; {@code true} otherwise.
+     */
+    private boolean process(List<Object> pending) {
+        boolean running = true;
+        int index = 0;
+        try {
+            for (; index < pending.size(); index++) {
+                Object item = pending.get(index);
+                if (item == CLOSE) {
+                    running = false;
+                } else if (item instanceof Task<?> task) {
+                    flush();
+                    task.run();
+                } else {
+                    encode(item);
+                }
+            }
+            flush();
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to write log {}", path, e);
+            batch.reset();
+            for (; index < pending.size(); index++) {
+                Object item = pending.get(index);
+                if (item == CLOSE) {
+                    running = false;
+                } else if (item instanceof Task<?> task) {
+                    task.future().completeExceptionally(e);
+                }
+            }
+        }
+        return running;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void encode(Object item) throws IOException {
+        record.reset();
+        encoder.encode((T) item, recordOut);
+        recordOut.flush();
+        byte[] payload = record.toByteArray();
+        crc.reset();
+        crc.update(payload);
+
+        DataOutputStream out = new DataOutputStream(batch);
+        out.writeInt(payload.length);
+        out.writeInt((int) crc.getValue());
+        out.write(payload);
+    }
+
+    private void flush() throws IOException {
+        if (batch.size() == 0) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+        batch.reset();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (fsync) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Serializes one entry into the payload of a record.
+     *
+     * @param <E> The type of the entries.
+     */
+    @FunctionalInterface
+    public interface Encoder<E> {
+
+        /**
+         * Writes the entry to the output.
+         *
+         * @param entry The entry to write.
+         * @param out   The output receiving the payload.
+         * @throws IOException If writing fails.
+         */
+        void encode(E entry, DataOutput out) throws IOException;
+    }
+
+    /**
+     * Consumes the payload of one record while reading a log file.
+     */
+    @FunctionalInterface
+    public interface RecordHandler {
+
+        /**
+         * Handles one record.
+         *
+         * @param in The payload of the record.
+         * @throws IOException If the payload cannot be decoded.
+         */
+        void handle(DataInput in) throws IOException;
+    }
+
+    private record Task<R>(Callable<R> callable, CompletableFuture<R> future) {
+
+        void run() {
+            try {
+                future.complete(callable.call());
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
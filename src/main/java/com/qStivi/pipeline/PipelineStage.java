@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.pipeline;
+
+import com.qStivi.config.PipelineSettings;
+
+/**
+ * The {@code PipelineStage} enum lists the stages of a {@link StagedPipeline} in the order messages pass them.
+ * Each stage has its own ring buffer and workers, and its own wait and service time histograms in the metrics.
+ */
+public enum PipelineStage {
+    INGRESS("pipeline_ingress", false),
+    ROUTING("pipeline_routing", false),
+    RETRIEVAL("pipeline_retrieval", true),
+    LLM("pipeline_llm", true),
+    EGRESS("pipeline_egress", false);
+
+    private final String metricName;
+    private final boolean blocking;
+
+    PipelineStage(String metricName, boolean blocking) {
+        this.metricName = metricName;
+        this.blocking = blocking;
+    }
+
+    /**
+     * Returns the name of the service time histogram of this stage. The wait time histogram has the suffix {@code _wait}.
+     *
+     * @return The metric name of this stage.
+     */
+    public String metricName() {
+        return metricName;
+    }
+
+    /**
+     * Returns whether the work of this stage mostly waits for I/O. Workers of a blocking stage are virtual threads
+     * and take one message at a time, since a batch would make each message wait for the calls of the ones before it.
+     *
+     * @return {@code true} if the stage blocks on I/O.
+     */
+    public boolean blocking() {
+        return blocking;
+    }
+
+    /**
+     * Returns the configured number of workers of this stage.
+     *
+     * @param settings The {@link PipelineSettings}.
+     * @return The number of workers.
+     */
+    public int workers(PipelineSettings settings) {
+        return switch (this) {
+            case INGRESS -> settings.ingressWorkers();
+            case ROUTING -> settings.routingWorkers();
+            case RETRIEVAL -> settings.retrievalWorkers();
+            case LLM -> settings.llmWorkers();
+            case EGRESS -> settings.egressWorkers();
+        };
+    }
+}
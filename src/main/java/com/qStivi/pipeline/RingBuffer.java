@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The {@code RingBuffer} class is a bounded multi-producer, multi-consumer queue on a pre-allocated array,
+ * after Dmitry Vyukov's design. Every slot carries a sequence number that tells producers and consumers whether
+ * it is free for the lap they are on, so a transfer costs one compare-and-set on the shared position and no lock.
+ * A full buffer rejects offers instead of growing, which is what lets a pipeline stage push back on its producer.
+ *
+ * @param <E> The type of the elements.
+ */
+public class RingBuffer<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Constructs a {@code RingBuffer} with at least the given capacity.
+     *
+     * @param capacity The minimum number of elements, rounded up to a power of two of at least 2.
+     * @throws IllegalArgumentException If the capacity is not positive or too large.
+     */
+    public RingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30: " + capacity);
+        }
+        // A single slot could not tell a full lap from an empty one
+        int size = Math.max(2, Integer.highestOneBit(capacity - 1) << 1);
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds an element if there is room.
+     *
+     * @param element The element to add.
+     * @return {@code true} if the element was added, {@code false} if the buffer is full.
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException("element");
+        }
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, element);
+                    // Publishing the sequence hands the slot to consumers
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // The slot still holds the element of the previous lap
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Removes the oldest element if there is one.
+     *
+     * @return The removed element, or {@code null} if the buffer is empty.
+     */
+    public E poll() {
+        long position = head.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    E element = elements.get(index);
+                    elements.lazySet(index, null);
+                    // The slot is free again one lap later
+                    sequences.set(index, position + mask + 1);
+                    return element;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * Removes up to {@code max} elements into the given array, oldest first.
+     *
+     * @param batch The array that receives the elements.
+     * @param max   The maximum number of elements to remove.
+     * @return The number of elements removed.
+     */
+    public int drainTo(E[] batch, int max) {
+        int count = 0;
+        int limit = Math.min(max, batch.length);
+        E element;
+        while (count < limit && (element = poll()) != null) {
+            batch[count++] = element;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the approximate number of elements, which may be stale by the time it is used.
+     *
+     * @return The number of elements between head and tail.
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    /**
+     * Returns the number of slots.
+     *
+     * @return The capacity of the buffer.
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+}
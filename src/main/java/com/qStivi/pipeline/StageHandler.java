@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.pipeline;
+
+/**
+ * The {@code StageHandler} interface is the work of one {@link PipelineStage} on an event.
+ * Handlers keep their results in the event, which the next stage receives.
+ *
+ * @param <E> The type of the events.
+ */
+@FunctionalInterface
+public interface StageHandler<E> {
+
+    /**
+     * Processes an event.
+     *
+     * @param event The event.
+     * @throws Exception If the event cannot be processed. The remaining stages except {@link PipelineStage#EGRESS} are skipped.
+     */
+    void handle(E event) throws Exception;
+}
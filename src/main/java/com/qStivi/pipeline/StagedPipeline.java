@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.pipeline;
+
+import com.qStivi.config.PipelineSettings;
+import com.qStivi.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The {@code StagedPipeline} class passes events through the {@link PipelineStage}s, each with its own pre-allocated
+ * {@link RingBuffer} and its own workers, so a slow stage only holds up the events waiting for it.
+ * <p>
+ * Workers take up to {@code batchSize} events from their ring at once, process them and publish them to the next ring.
+ * A worker whose ring stays empty spins and yields briefly, then parks until an event is published to its ring, so idle
+ * stages cost no CPU. If the next ring is full, the worker waits, so a stalled stage pushes back on the stages before it until the ingress
+ * ring is full and {@link #submit} rejects new events. An event whose handler throws skips to {@link PipelineStage#EGRESS},
+ * which always runs, so resources held by the event are released.
+ * <p>
+ * Per stage, the time events wait in the ring and the time the handler takes are recorded as histograms,
+ * and {@link #depth} reports the current queue length.
+ *
+ * @param <E> The type of the events.
+ */
+public class StagedPipeline<E> implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(StagedPipeline.class);
+    private static final PipelineStage[] STAGES = PipelineStage.values();
+    private static final int SPINS = 100;
+    private static final int YIELDS = 100;
+    private static final long MAX_PARK_NANOS = 1_000_000;
+
+    private final Map<PipelineStage, StageHandler<? super E>> handlers;
+    private final EnumMap<PipelineStage, RingBuffer<Envelope<E>>> rings = new EnumMap<>(PipelineStage.class);
+    private final EnumMap<PipelineStage, AtomicInteger> running = new EnumMap<>(PipelineStage.class);
+    private final EnumMap<PipelineStage, Signal> signals = new EnumMap<>(PipelineStage.class);
+    private final int batchSize;
+    private volatile boolean closed;
+
+    /**
+     * Constructs a {@code StagedPipeline} and starts its workers.
+     *
+     * @param settings The {@link PipelineSettings}.
+     * @param handlers The handler of each stage. Stages without a handler pass events on unchanged.
+     */
+    public StagedPipeline(PipelineSettings settings, Map<PipelineStage, ? extends StageHandler<? super E>> handlers) {
+        this.handlers = new EnumMap<>(PipelineStage.class);
+        this.handlers.putAll(handlers);
+        this.batchSize = settings.batchSize();
+        for (PipelineStage stage : STAGES) {
+            rings.put(stage, new RingBuffer<>(settings.ringSize()));
+            running.put(stage, new AtomicInteger(stage.workers(settings)));
+            signals.put(stage, new Signal());
+        }
+        for (PipelineStage stage : STAGES) {
+            int workers = stage.workers(settings);
+            Thread.Builder builder = stage.blocking()
+                    ? Thread.ofVirtual().name(stage.metricName() + "-", 0)
+                    : Thread.ofPlatform().daemon().name(stage.metricName() + "-", 0);
+            for (int i = 0; i < workers; i++) {
+                builder.start(() -> work(stage));
+            }
+        }
+        logger.info("Started pipeline with rings of {} slots", rings.get(PipelineStage.INGRESS).capacity());
+    }
+
+    /**
+     * Submits an event to the first stage.
+     *
+     * @param event The event.
+     * @return A future completed with the event after {@link PipelineStage#EGRESS}, or exceptionally with the
+     * first failure of a handler, or with a {@link RejectedExecutionException} if the ingress ring is full.
+     */
+    public CompletableFuture<E> submit(E event) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Pipeline is closed"));
+        }
+        var envelope = new Envelope<>(event);
+        envelope.enqueued = System.nanoTime();
+        if (!rings.get(PipelineStage.INGRESS).offer(envelope)) {
+            Metrics.get().count("pipeline_rejected", 1);
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Pipeline is full"));
+        }
+        signals.get(PipelineStage.INGRESS).wake();
+        return envelope.future;
+    }
+
+    /**
+     * Returns the number of events waiting for a stage.
+     *
+     * @param stage The stage.
+     * @return The approximate length of the stage's ring.
+     */
+    public int depth(PipelineStage stage) {
+        return rings.get(stage).size();
+    }
+
+    /**
+     * Stops accepting events. Events already submitted still pass all stages, then the workers exit.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        signals.values().forEach(Signal::wakeAll);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void work(PipelineStage stage) {
+        RingBuffer<Envelope<E>> ring = rings.get(stage);
+        Envelope<E>[] batch = new Envelope[stage.blocking() ? 1 : batchSize];
+        int idle = 0;
+        try {
+            while (true) {
+                int count = ring.drainTo(batch, batch.length);
+                if (count == 0) {
+                    if (closed && drained(stage)) {
+                        return;
+                    }
+                    if (idle < SPINS + YIELDS) {
+                        idle = idle(idle);
+                    } else {
+                        signals.get(stage).await(() -> ring.size() == 0 && !(closed && drained(stage)));
+                    }
+                    continue;
+                }
+                idle = 0;
+                for (int i = 0; i < count; i++) {
+                    Envelope<E> envelope = batch[i];
+                    batch[i] = null;
+                    process(stage, envelope);
+                }
+            }
+        } finally {
+            // The workers of the next stage may be parked, waiting for this stage to stop
+            if (running.get(stage).decrementAndGet() == 0 && stage != PipelineStage.EGRESS) {
+                signals.get(STAGES[stage.ordinal() + 1]).wakeAll();
+            }
+        }
+    }
+
+    /**
+     * Returns whether no more events can reach a stage, because every stage before it has stopped.
+     */
+    private boolean drained(PipelineStage stage) {
+        return stage.ordinal() == 0 || running.get(STAGES[stage.ordinal() - 1]).get() == 0 && rings.get(stage).size() == 0;
+    }
+
+    private void process(PipelineStage stage, Envelope<E> envelope) {
+        long start = System.nanoTime();
+        Metrics.get().histogram(stage.metricName() + "_wait").record(start - envelope.enqueued);
+
+        StageHandler<? super E> handler = handlers.get(stage);
+        if (handler != null && (envelope.failure == null || stage == PipelineStage.EGRESS)) {
+            try {
+                handler.handle(envelope.event);
+            } catch (Exception | Error e) {
+                Metrics.get().count(stage.metricName() + "_errors", 1);
+                if (envelope.failure == null) {
+                    envelope.failure = e;
+                } else {
+                    envelope.failure.addSuppressed(e);
+                }
+            }
+        }
+        Metrics.get().histogram(stage.metricName()).record(System.nanoTime() - start);
+
+        if (stage == PipelineStage.EGRESS) {
+            if (envelope.failure == null) {
+                envelope.future.complete(envelope.event);
+            } else {
+                envelope.future.completeExceptionally(envelope.failure);
+            }
+        } else {
+            publish(envelope.failure == null ? STAGES[stage.ordinal() + 1] : PipelineStage.EGRESS, envelope);
+        }
+    }
+
+    /**
+     * Hands an event to a stage, waiting while its ring is full.
+     */
+    private void publish(PipelineStage stage, Envelope<E> envelope) {
+        RingBuffer<Envelope<E>> ring = rings.get(stage);
+        envelope.enqueued = System.nanoTime();
+        if (!ring.offer(envelope)) {
+            Metrics.get().count(stage.metricName() + "_backpressure", 1);
+            int idle = 0;
+            do {
+                idle = idle(idle);
+            } while (!ring.offer(envelope));
+        }
+        signals.get(stage).wake();
+    }
+
+    /**
+     * Waits a little longer on every call: first by spinning, then by yielding, then by parking up to a millisecond.
+     * Only a worker waiting for room in a full ring parks, and only while the stage after it drains the ring.
+     */
+    private static int idle(int idle) {
+        if (idle < SPINS) {
+            Thread.onSpinWait();
+        } else if (idle < SPINS + YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1000L << Math.min(10, idle - SPINS - YIELDS)));
+        }
+        return idle + 1;
+    }
+
+    /**
+     * Parks the idle workers of one stage until an event is published to its ring.
+     * Publishers only take the lock if a worker is parked, so a busy pipeline does not contend on it.
+     */
+    private static final class Signal {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition published = lock.newCondition();
+        private final AtomicInteger parked = new AtomicInteger();
+
+        /**
+         * Parks the calling worker while the condition holds. The condition is checked after the worker counts as
+         * parked, so an event published concurrently either is seen by the check or wakes the worker.
+         */
+        private void await(BooleanSupplier idle) {
+            lock.lock();
+            parked.incrementAndGet();
+            try {
+                while (idle.getAsBoolean()) {
+                    published.awaitUninterruptibly();
+                }
+            } finally {
+                parked.decrementAndGet();
+                lock.unlock();
+            }
+        }
+
+        private void wake() {
+            if (parked.get() > 0) {
+                lock.lock();
+                try {
+                    published.signal();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        private void wakeAll() {
+            lock.lock();
+            try {
+                published.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * An event on its way through the stages.
+     */
+    private static final class Envelope<E> {
+
+        private final E event;
+        private final CompletableFuture<E> future = new CompletableFuture<>();
+        private Throwable failure;
+        private long enqueued;
+
+        private Envelope(E event) {
+            this.event = event;
+        }
+    }
+}
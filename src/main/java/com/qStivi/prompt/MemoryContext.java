@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.prompt;
+
+import java.util.List;
+
+/**
+ * The {@code MemoryContext} record is the recalled memory chosen for one request by the {@link PromptAssembler}.
+ * While it is attached to the request's {@link com.qStivi.tracing.RequestContext}, the request is sent with its text
+ * as an additional system message that is not kept in the conversation history.
+ *
+ * @param text   The text sent to the model, or an empty string if no snippet was chosen.
+ * @param used   The chosen snippets, best first.
+ * @param tokens The number of tokens of the text.
+ */
+public record MemoryContext(String text, List<Snippet> used, int tokens) {
+
+    /**
+     * The context of a request without recalled memory.
+     */
+    public static final MemoryContext EMPTY = new MemoryContext("", List.of(), 0);
+
+    /**
+     * Returns whether no snippet was chosen.
+     *
+     * @return {@code true} if there is nothing to send.
+     */
+    public boolean isEmpty() {
+        return used.isEmpty();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.prompt;
+
+import com.qStivi.config.ConfigSnapshot;
+import com.qStivi.config.PromptSettings;
+import com.qStivi.logging.LogPayload;
+import com.qStivi.memory.NearDuplicateDetector;
+import com.qStivi.metrics.Metrics;
+import com.qStivi.tokenizer.TokenCounter;
+import com.qStivi.tokenizer.Tokenizers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * The {@code PromptAssembler} class chooses which recalled memory snippets are sent with a request.
+ * <p>
+ * Snippets are ranked by their relevance, halved for every {@link PromptSettings#recencyHalfLife()} of age if
+ * they are dated. Near-duplicates of a better snippet are dropped, and the rest are packed greedily into a token
+ * budget: the configured memory budget, but never more than what the context window leaves next to the system message,
+ * the history, the message and the answer. A snippet that does not fit is skipped in favour of smaller ones below it.
+ */
+public class PromptAssembler {
+
+    private static final Logger logger = LoggerFactory.getLogger(PromptAssembler.class);
+    private static final String HEADER = "Relevant memory, use it only if it helps to answer:";
+    private static final String SEPARATOR = "\n---\n";
+
+    private final Supplier<ConfigSnapshot> settings;
+    private final Supplier<Instant> clock;
+
+    /**
+     * Constructs a {@code PromptAssembler} that follows the given configuration snapshots.
+     *
+     * @param settings The supplier of the current {@link ConfigSnapshot}.
+     */
+    public PromptAssembler(Supplier<ConfigSnapshot> settings) {
+        this(settings, Instant::now);
+    }
+
+    /**
+     * Constructs a {@code PromptAssembler} with the given clock.
+     *
+     * @param settings The supplier of the current {@link ConfigSnapshot}.
+     * @param clock    The source of the current time, used to age dated snippets.
+     */
+    PromptAssembler(Supplier<ConfigSnapshot> settings, Supplier<Instant> clock) {
+        this.settings = settings;
+        this.clock = clock;
+    }
+
+    /**
+     * Chooses the snippets to send with a request.
+     *
+     * @param candidates   The recalled snippets, in any order.
+     * @param promptTokens The tokens of the request without memory: system message, history and message.
+     * @return The {@link MemoryContext} of the request, {@link MemoryContext#EMPTY} if no snippet fits.
+     */
+    public MemoryContext assemble(List<Snippet> candidates, int promptTokens) {
+        ConfigSnapshot snapshot = settings.get();
+        PromptSettings prompt = snapshot.prompt();
+        int budget = Math.min(prompt.memoryTokens(), prompt.contextTokens() - promptTokens - snapshot.openAi().maxTokens());
+        if (candidates.isEmpty() || budget <= 0) {
+            return MemoryContext.EMPTY;
+        }
+
+        Instant now = clock.get();
+        List<Ranked> ranked = new ArrayList<>(candidates.size());
+        for (Snippet snippet : candidates) {
+            if (snippet.relevance() >= prompt.minRelevance() && !snippet.text().isBlank()) {
+                ranked.add(new Ranked(snippet, score(snippet, now, prompt.recencyHalfLife())));
+            }
+        }
+        ranked.sort(Comparator.comparingDouble(Ranked::score).reversed());
+
+        TokenCounter counter = Tokenizers.forModel(snapshot.openAi().modelName());
+        var duplicates = new NearDuplicateDetector();
+        var text = new StringBuilder(HEADER);
+        List<Snippet> used = new ArrayList<>();
+        // The header and the framing of the extra message
+        int tokens = counter.count(HEADER) + 4;
+        for (Ranked candidate : ranked) {
+            Snippet snippet = candidate.snippet();
+            int cost = counter.count(snippet.text()) + 2;
+            if (tokens + cost > budget || !duplicates.add(snippet.text())) {
+                continue;
+            }
+            text.append(used.isEmpty() ? "\n" : SEPARATOR).append(snippet.text());
+            used.add(snippet);
+            tokens += cost;
+            logger.debug("Using {} memory snippet from {} with score {}: {}", snippet.scope(), snippet.source(),
+                    candidate.score(), LogPayload.of(snippet.text()));
+        }
+        if (used.isEmpty()) {
+            return MemoryContext.EMPTY;
+        }
+
+        Metrics.get().count("memory_snippets_used", used.size());
+        Metrics.get().count("memory_tokens_used", tokens);
+        logger.info("Added {} of {} memory snippets with {} of {} tokens", used.size(), candidates.size(), tokens, budget);
+        return new MemoryContext(text.toString(), List.copyOf(used), tokens);
+    }
+
+    private static double score(Snippet snippet, Instant now, Duration halfLife) {
+        if (snippet.updated() == null) {
+            return snippet.relevance();
+        }
+        double age = Math.max(0, Duration.between(snippet.updated(), now).toMillis());
+        return snippet.relevance() * Math.pow(0.5, age / halfLife.toMillis());
+    }
+
+    private record Ranked(Snippet snippet, double score) {
+    }
+}
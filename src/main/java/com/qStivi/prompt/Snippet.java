@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.prompt;
+
+import java.time.Instant;
+
+/**
+ * The {@code Snippet} record is a piece of recalled memory that may be added to a request.
+ *
+ * @param text      The text of the snippet.
+ * @param scope     Whether the snippet comes from public or private memory.
+ * @param source    A description of where the snippet comes from, used in logs.
+ * @param relevance The similarity of the snippet to the message, between {@code 0} and {@code 1}.
+ * @param updated   When the remembered fact was last written, or {@code null} if it does not age.
+ */
+public record Snippet(String text, Scope scope, String source, double relevance, Instant updated) {
+
+    /**
+     * The memory a snippet is recalled from.
+     */
+    public enum Scope {
+        PUBLIC, PRIVATE
+    }
+}
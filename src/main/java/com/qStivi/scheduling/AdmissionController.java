@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.scheduling;
+
+import com.qStivi.config.AdmissionSettings;
+import com.qStivi.config.ConfigSnapshot;
+import com.qStivi.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * The {@code AdmissionController} class decides whether a message may enter the {@link FairScheduler} or the
+ * message pipeline, whichever {@link Backlog} answers messages.
+ * <p>
+ * A message is shed when the overall queue or the sender's own queue is full, or when the expected wait exceeds
+ * the configured limit. The expected wait is the queue depth per worker times a moving average of recent
+ * processing times. With {@link ConversationMailboxes}, the messages waiting in a mailbox behind their user's
+ * earlier message count as queued too, since they have not reached the backlog yet. Messages that were admitted but waited longer than the limit anyway are shed when they
+ * reach a worker. Shed messages get a fast degraded reply: the sender's last answer to the same message if it
+ * is still cached, or a configurable busy message.
+ */
+public class AdmissionController {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionController.class);
+    private static final double SMOOTHING = 0.2;
+
+    private final Supplier<ConfigSnapshot> settings;
+    private final Backlog backlog;
+    private final ConversationMailboxes mailboxes;
+    private final AtomicLong averageServiceNanos = new AtomicLong(Double.doubleToLongBits(0));
+    private final Map<String, String> recentAnswers = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Constructs an {@code AdmissionController} for the given backlog.
+     *
+     * @param settings The supplier of the current {@link ConfigSnapshot}.
+     * @param backlog  The {@link Backlog} whose queues are watched, such as the {@link FairScheduler}.
+     */
+    public AdmissionController(Supplier<ConfigSnapshot> settings, Backlog backlog) {
+        this(settings, backlog, null);
+    }
+
+    /**
+     * Constructs an {@code AdmissionController} for the given backlog and the mailboxes in front of it.
+     *
+     * @param settings  The supplier of the current {@link ConfigSnapshot}.
+     * @param backlog   The {@link Backlog} whose queues are watched, such as the {@link FairScheduler}.
+     * @param mailboxes The {@link ConversationMailboxes} whose waiting messages are counted, or {@code null} if messages are not ordered.
+     */
+    public AdmissionController(Supplier<ConfigSnapshot> settings, Backlog backlog, ConversationMailboxes mailboxes) {
+        this.settings = settings;
+        this.backlog = backlog;
+        this.mailboxes = mailboxes;
+    }
+
+    /**
+     * Decides whether a new message of the given user is admitted.
+     *
+     * @param userId The ID of the sender.
+     * @return {@link Verdict#ADMITTED}, or the reason the message is shed.
+     */
+    public Verdict admit(String userId) {
+        AdmissionSettings admission = settings.get().admission();
+        if (!admission.enabled()) {
+            return Verdict.ADMITTED;
+        }
+
+        Verdict verdict;
+        int queued = backlog.queued() + (mailboxes == null ? 0 : mailboxes.waiting());
+        int queuedByUser = backlog.queued(userId) + (mailboxes == null ? 0 : mailboxes.waiting(userId));
+        if (queued >= admission.maxQueueDepth()) {
+            verdict = Verdict.QUEUE_FULL;
+        } else if (queuedByUser >= admission.maxQueuedPerUser()) {
+            verdict = Verdict.USER_QUEUE_FULL;
+        } else if (estimatedWaitNanos(queued) > admission.maxWait().toNanos()) {
+            verdict = Verdict.WAIT_TOO_LONG;
+        } else {
+            verdict = Verdict.ADMITTED;
+        }
+        Metrics.get().count(verdict.metricName(), 1);
+        return verdict;
+    }
+
+    /**
+     * Returns the time after which an admitted message is shed instead of processed.
+     *
+     * @return The deadline as a {@link System#nanoTime()} value.
+     */
+    public long deadline() {
+        AdmissionSettings admission = settings.get().admission();
+        return admission.enabled() ? System.nanoTime() + admission.maxWait().toNanos() : Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns whether an admitted message has waited past its deadline, counting it as shed if so.
+     *
+     * @param deadline The deadline returned by {@link #deadline()} at admission.
+     * @return {@code true} if the message should be shed; {@code false} otherwise.
+     */
+    public boolean expired(long deadline) {
+        if (System.nanoTime() - deadline <= 0) {
+            return false;
+        }
+        Metrics.get().count(Verdict.DEADLINE_EXCEEDED.metricName(), 1);
+        return true;
+    }
+
+    /**
+     * Records a processed message, updating the processing-time average and the answer cache.
+     *
+     * @param input        The message.
+     * @param userId       The ID of the sender.
+     * @param response     The answer.
+     * @param serviceNanos The time it took to process the message.
+     */
+    public void completed(String input, String userId, String response, long serviceNanos) {
+        long current;
+        long updated;
+        do {
+            current = averageServiceNanos.get();
+            double average = Double.longBitsToDouble(current);
+            double next = average == 0 ? serviceNanos : average + SMOOTHING * (serviceNanos - average);
+            updated = Double.doubleToLongBits(next);
+        } while (!averageServiceNanos.compareAndSet(current, updated));
+
+        int cacheSize = settings.get().admission().cacheSize();
+        synchronized (recentAnswers) {
+            recentAnswers.put(cacheKey(input, userId), response);
+            var iterator = recentAnswers.entrySet().iterator();
+            while (recentAnswers.size() > cacheSize && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the degraded reply to a shed message.
+     *
+     * @param input   The message.
+     * @param userId  The ID of the sender.
+     * @param verdict The reason the message is shed.
+     * @return The cached answer to the same message of the same user, or the busy message.
+     */
+    public String degrade(String input, String userId, Verdict verdict) {
+        logger.warn("Shedding message of user {}: {}", userId, verdict);
+        String cached;
+        synchronized (recentAnswers) {
+            cached = recentAnswers.get(cacheKey(input, userId));
+        }
+        if (cached != null) {
+            Metrics.get().cacheHit("degraded_answers");
+            return cached;
+        }
+        Metrics.get().cacheMiss("degraded_answers");
+        return settings.get().admission().busyMessage();
+    }
+
+    /**
+     * Returns the expected queueing time of a new message.
+     *
+     * @param queued The current queue depth.
+     * @return The expected wait in nanoseconds.
+     */
+    long estimatedWaitNanos(int queued) {
+        double average = Double.longBitsToDouble(averageServiceNanos.get());
+        return (long) (average * queued / backlog.workers());
+    }
+
+    /**
+     * Answers are only reused for the same user, since they may depend on the user's private context.
+     */
+    private static String cacheKey(String input, String userId) {
+        return userId + '\u0000' + input.strip().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * The outcome of an admission decision.
+     */
+    public enum Verdict {
+
+        /**
+         * The message is queued.
+         */
+        ADMITTED,
+
+        /**
+         * The overall queue is full.
+         */
+        QUEUE_FULL,
+
+        /**
+         * The sender already has too many queued messages.
+         */
+        USER_QUEUE_FULL,
+
+        /**
+         * The expected wait is longer than allowed.
+         */
+        WAIT_TOO_LONG,
+
+        /**
+         * The message was admitted but waited longer than allowed.
+         */
+        DEADLINE_EXCEEDED;
+
+        /**
+         * Returns the name of the counter of this verdict.
+         *
+         * @return The counter name.
+         */
+        public String metricName() {
+            return this == ADMITTED ? "admission_admitted" : "admission_shed_" + name().toLowerCase(Locale.ROOT);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.scheduling;
+
+/**
+ * The {@code Backlog} interface reports how much work waits in front of the workers that answer messages, so the
+ * {@link AdmissionController} can estimate how long a new message would wait.
+ */
+public interface Backlog {
+
+    /**
+     * Returns the number of messages that wait for a worker.
+     *
+     * @return The queue depth over all users.
+     */
+    int queued();
+
+    /**
+     * Returns the number of messages of one user that wait for a worker.
+     *
+     * @param userId The ID of the user.
+     * @return The queue depth of the user.
+     */
+    int queued(String userId);
+
+    /**
+     * Returns the number of messages that are answered at the same time.
+     *
+     * @return The number of workers.
+     */
+    int workers();
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.scheduling;
+
+import com.qStivi.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@code CancellationRegistry} class tracks the latest message of every conversation, so that a message the user
+ * supersedes stops spending tokens. Starting a new message cancels the previous one of the same conversation,
+ * whether it is still queued or already waiting for the model; an edit or delete cancels it without a successor.
+ */
+public class CancellationRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(CancellationRegistry.class);
+
+    private final ConcurrentHashMap<String, RequestHandle> latest = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a new message of a conversation and cancels the message it supersedes.
+     *
+     * @param conversation The key of the conversation, usually the user ID.
+     * @return The handle of the new message.
+     */
+    public RequestHandle supersede(String conversation) {
+        RequestHandle handle = new RequestHandle(conversation);
+        RequestHandle previous = latest.put(conversation, handle);
+        if (previous != null && !previous.isCancelled()) {
+            logger.info("Cancelling superseded message of conversation {}", conversation);
+            Metrics.get().count("requests_superseded", 1);
+            previous.cancel();
+        }
+        return handle;
+    }
+
+    /**
+     * Cancels the latest message of a conversation, for example because the user edited or deleted it.
+     *
+     * @param conversation The key of the conversation, usually the user ID.
+     * @return {@code true} if a message was still in flight.
+     */
+    public boolean cancel(String conversation) {
+        RequestHandle handle = latest.remove(conversation);
+        if (handle == null || handle.isCancelled()) {
+            return false;
+        }
+        logger.info("Cancelling message of conversation {}", conversation);
+        Metrics.get().count("requests_cancelled", 1);
+        handle.cancel();
+        return true;
+    }
+
+    /**
+     * Forgets a message that finished, unless a newer message of the conversation replaced it already.
+     *
+     * @param handle The handle of the finished message.
+     */
+    public void finish(RequestHandle handle) {
+        latest.remove(handle.conversation(), handle);
+    }
+
+    /**
+     * Returns the number of conversations with a message in flight.
+     *
+     * @return The number of tracked messages.
+     */
+    public int inFlight() {
+        return latest.size();
+    }
+}
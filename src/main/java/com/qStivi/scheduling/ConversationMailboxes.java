@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.scheduling;
+
+import com.qStivi.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * The {@code ConversationMailboxes} class runs the tasks of each conversation one after the other, in submission order,
+ * while tasks of different conversations run in parallel.
+ * <p>
+ * Every conversation with pending tasks has a mailbox: a lock-free queue and a counter of pending tasks. The submitter
+ * that raises the counter from zero starts a virtual thread that drains the mailbox until the counter drops back to
+ * zero, so at most one task of a conversation runs at any time and no lock is shared between conversations.
+ * An empty mailbox retires itself by swapping its counter to a negative value and is removed; a submitter that finds
+ * a retired mailbox creates a new one.
+ */
+public class ConversationMailboxes implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationMailboxes.class);
+    private static final int RETIRED = -1;
+
+    private final ConcurrentHashMap<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("conversation-", 0).factory());
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    /**
+     * Queues a task of a conversation.
+     *
+     * @param conversation The key of the conversation, usually the user ID.
+     * @param task         The task to run.
+     * @param <T>          The type of the result.
+     * @return A future completed with the result of the task.
+     * @throws RejectedExecutionException If the mailboxes are closed.
+     */
+    public <T> CompletableFuture<T> submit(String conversation, Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        enqueue(conversation, () -> {
+            try {
+                future.complete(task.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Queues an asynchronous task of a conversation. The next task of the conversation starts only once the
+     * future returned by this task has completed, so the task may hand its work to another executor.
+     *
+     * @param conversation The key of the conversation, usually the user ID.
+     * @param task         The task, which starts the work and returns its future.
+     * @param <T>          The type of the result.
+     * @return A future completed like the future returned by the task.
+     * @throws RejectedExecutionException If the mailboxes are closed.
+     */
+    public <T> CompletableFuture<T> submitAsync(String conversation, Supplier<CompletableFuture<T>> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        enqueue(conversation, () -> {
+            try {
+                // Waiting only parks the virtual thread of this conversation
+                future.complete(task.get().join());
+            } catch (CompletionException e) {
+                future.completeExceptionally(e.getCause());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Returns the number of conversations with pending tasks.
+     *
+     * @return The number of live mailboxes.
+     */
+    public int active() {
+        return mailboxes.size();
+    }
+
+    /**
+     * Returns the number of tasks waiting behind an earlier task of their conversation.
+     *
+     * @return The number of waiting tasks of all conversations.
+     */
+    public int waiting() {
+        return waiting.get();
+    }
+
+    /**
+     * Returns the number of tasks of a conversation waiting behind its running task.
+     *
+     * @param conversation The key of the conversation, usually the user ID.
+     * @return The number of waiting tasks of the conversation.
+     */
+    public int waiting(String conversation) {
+        Mailbox mailbox = mailboxes.get(conversation);
+        return mailbox == null ? 0 : Math.max(0, mailbox.pending.get() - 1);
+    }
+
+    /**
+     * Stops accepting tasks. Tasks already queued still run.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private void enqueue(String conversation, Runnable task) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Mailboxes are closed");
+        }
+        while (true) {
+            Mailbox mailbox = mailboxes.computeIfAbsent(conversation, Mailbox::new);
+            int pending = mailbox.pending.get();
+            if (pending == RETIRED) {
+                mailboxes.remove(conversation, mailbox);
+                continue;
+            }
+            if (mailbox.pending.compareAndSet(pending, pending + 1)) {
+                if (pending > 0) {
+                    waiting.incrementAndGet();
+                }
+                mailbox.queue.add(task);
+                if (pending == 0) {
+                    Metrics.get().count("mailbox_started", 1);
+                    executor.execute(mailbox::drain);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * The queue of one conversation.
+     */
+    private final class Mailbox {
+
+        private final String conversation;
+        private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger();
+
+        private Mailbox(String conversation) {
+            this.conversation = conversation;
+        }
+
+        /**
+         * Runs tasks until none is pending, then retires the mailbox unless a task arrived meanwhile.
+         */
+        private void drain() {
+            boolean first = true;
+            do {
+                Runnable task;
+                while ((task = queue.poll()) == null) {
+                    // The submitter counted the task but has not added it yet
+                    Thread.onSpinWait();
+                }
+                if (!first) {
+                    // Only the task that started the drain was not waiting behind another
+                    waiting.decrementAndGet();
+                }
+                first = false;
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger.error("Task of conversation {} failed", conversation, e);
+                }
+            } while (pending.decrementAndGet() > 0);
+
+            if (pending.compareAndSet(0, RETIRED)) {
+                mailboxes.remove(conversation, this);
+            }
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.scheduling;
+
+import com.qStivi.config.ConfigSnapshot;
+import com.qStivi.config.SchedulingSettings;
+import com.qStivi.tokenizer.Tokenizers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * The {@code FairScheduler} class shares a fixed number of worker threads fairly between flows, for example users.
+ * <p>
+ * Every flow has its own queue. Flows with queued work are served with deficit round-robin: on each visit a flow
+ * earns a quantum of credit multiplied by the weight of the channel of its next task, and runs queued tasks while
+ * their cost fits its credit. A flow that submits many or large tasks therefore only delays itself, and a weight of
+ * two buys twice the share of a weight of one. A task costs its input tokens plus a fixed charge per message for the
+ * system message and the reply, so fairness holds for work, and many short messages cannot outrun one long one.
+ * Quantum, message cost and weights are read on every visit, so configuration changes apply to queued flows.
+ */
+public class FairScheduler implements Backlog, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(FairScheduler.class);
+
+    private final Supplier<ConfigSnapshot> settings;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final Map<String, Flow> flows = new HashMap<>();
+    private final ArrayDeque<Flow> active = new ArrayDeque<>();
+    private final Thread[] workers;
+    private int queued;
+    private boolean closed;
+
+    /**
+     * Constructs a {@code FairScheduler} and starts its worker threads.
+     *
+     * @param settings The supplier of the current {@link ConfigSnapshot}.
+     */
+    public FairScheduler(Supplier<ConfigSnapshot> settings) {
+        this(settings, settings.get().scheduling().workers());
+    }
+
+    /**
+     * Constructs a {@code FairScheduler} with the given number of worker threads and starts them.
+     *
+     * @param settings The supplier of the current {@link ConfigSnapshot}.
+     * @param workers  The number of tasks that run at the same time.
+     */
+    public FairScheduler(Supplier<ConfigSnapshot> settings, int workers) {
+        this.settings = settings;
+        this.workers = new Thread[workers];
+        for (int i = 0; i < workers; i++) {
+            this.workers[i] = Thread.ofPlatform().daemon().name("fair-scheduler-" + i).start(this::work);
+        }
+    }
+
+    /**
+     * Queues a task for the given flow, charging the tokens of its input plus the message cost.
+     *
+     * @param flow    The key of the flow, usually the user ID.
+     * @param channel The channel or tier whose weight applies to the flow.
+     * @param input   The input the task works on.
+     * @param task    The task to run.
+     * @param <T>     The type of the result.
+     * @return A future completed with the result of the task.
+     * @throws RejectedExecutionException If the scheduler is closed.
+     */
+    public <T> CompletableFuture<T> submit(String flow, String channel, CharSequence input, Callable<T> task) {
+        int tokens = input == null ? 0 : Tokenizers.forModel(settings.get().openAi().modelName()).count(input);
+        return submit(flow, channel, tokens, task);
+    }
+
+    /**
+     * Queues a task for the given flow.
+     *
+     * @param flow    The key of the flow, usually the user ID.
+     * @param channel The channel or tier whose weight applies to the flow.
+     * @param tokens  The input tokens of the task. The configured message cost is added, and the total is at least {@code 1}.
+     * @param task    The task to run.
+     * @param <T>     The type of the result.
+     * @return A future completed with the result of the task.
+     * @throws RejectedExecutionException If the scheduler is closed.
+     */
+    public <T> CompletableFuture<T> submit(String flow, String channel, int tokens, Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Runnable runnable = () -> {
+            try {
+                future.complete(task.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        };
+
+        lock.lock();
+        try {
+            if (closed) {
+                throw new RejectedExecutionException("Scheduler is closed");
+            }
+            Flow state = flows.get(flow);
+            if (state == null) {
+                state = new Flow(flow);
+                flows.put(flow, state);
+                active.addLast(state);
+            }
+            int cost = Math.max(1, settings.get().scheduling().messageCost() + Math.max(0, tokens));
+            state.queue.addLast(new Task(runnable, channel, cost));
+            queued++;
+            workAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+        return future;
+    }
+
+    /**
+     * Returns the number of queued tasks that have not started yet.
+     *
+     * @return The queue depth over all flows.
+     */
+    @Override
+    public int queued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of queued tasks of one flow that have not started yet.
+     *
+     * @param flow The key of the flow.
+     * @return The queue depth of the flow.
+     */
+    @Override
+    public int queued(String flow) {
+        lock.lock();
+        try {
+            Flow state = flows.get(flow);
+            return state == null ? 0 : state.queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of tasks that can run at the same time.
+     *
+     * @return The number of worker threads.
+     */
+    @Override
+    public int workers() {
+        return workers.length;
+    }
+
+    /**
+     * Stops accepting tasks and stops the workers once the queued tasks have run.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void work() {
+        while (true) {
+            Task task;
+            lock.lock();
+            try {
+                while ((task = next()) == null) {
+                    if (closed) {
+                        return;
+                    }
+                    workAvailable.awaitUninterruptibly();
+                }
+                queued--;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                task.runnable().run();
+            } catch (RuntimeException e) {
+                logger.error("Scheduled task failed", e);
+            }
+        }
+    }
+
+    /**
+     * Picks the next task by deficit round-robin. Must be called while holding the lock.
+     *
+     * @return The next task, or {@code null} if no task is queued.
+     */
+    private Task next() {
+        SchedulingSettings scheduling = settings.get().scheduling();
+        while (!active.isEmpty()) {
+            Flow flow = active.peekFirst();
+            Task head = flow.queue.peekFirst();
+            if (!flow.credited) {
+                flow.deficit += (long) scheduling.quantum() * weightOf(scheduling, head.channel());
+                flow.credited = true;
+            }
+
+            if (head.cost() <= flow.deficit) {
+                flow.queue.pollFirst();
+                flow.deficit -= head.cost();
+                if (flow.queue.isEmpty()) {
+                    // An idle flow keeps no credit and no state
+                    active.pollFirst();
+                    flows.remove(flow.key);
+                }
+                return head;
+            }
+
+            active.pollFirst();
+            flow.credited = false;
+            active.addLast(flow);
+        }
+        return null;
+    }
+
+    private static int weightOf(SchedulingSettings scheduling, String channel) {
+        Map<String, Integer> weights = scheduling.weights();
+        return weights.getOrDefault(channel, weights.getOrDefault("default", 1));
+    }
+
+    /**
+     * A queued task and its cost.
+     *
+     * @param runnable The task, which completes its own future.
+     * @param channel  The channel or tier whose weight applies while the task is next in its flow.
+     * @param cost     The cost charged to the flow.
+     */
+    private record Task(Runnable runnable, String channel, int cost) {
+    }
+
+    /**
+     * The queue and scheduling state of one flow.
+     */
+    private static final class Flow {
+
+        private final String key;
+        private final ArrayDeque<Task> queue = new ArrayDeque<>();
+        private long deficit;
+        private boolean credited;
+
+        Flow(String key) {
+            this.key = key;
+        }
+    }
+}
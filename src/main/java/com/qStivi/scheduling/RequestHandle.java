@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.scheduling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * The {@code RequestHandle} class lets a message that is queued or being processed be cancelled from another thread.
+ * <p>
+ * The thread working on the request {@link #bind}s the handle while it runs. Cancelling interrupts that thread,
+ * which ends waits such as for a model permit, and runs the callbacks registered with {@link #onCancel}. Those abort
+ * what an interrupt does not reach: upstream HTTP calls, whose socket reads ignore interrupts, and work on other
+ * threads such as memory lookups. Loops check {@link #checkCurrent()} between their iterations.
+ * Unbinding clears an interrupt meant for the request, so it never reaches the next task of a pooled thread.
+ */
+public final class RequestHandle {
+
+    private static final ThreadLocal<RequestHandle> CURRENT = new ThreadLocal<>();
+
+    private final String conversation;
+    private final List<Runnable> callbacks = new ArrayList<>();
+    private volatile boolean cancelled;
+    private Thread thread;
+
+    /**
+     * Constructs a {@code RequestHandle} for a message of a conversation.
+     *
+     * @param conversation The key of the conversation, usually the user ID.
+     */
+    public RequestHandle(String conversation) {
+        this.conversation = conversation;
+    }
+
+    /**
+     * Returns the handle bound to the current thread.
+     *
+     * @return The current {@code RequestHandle}, or {@code null} if the request cannot be cancelled.
+     */
+    public static RequestHandle current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Throws if the request of the current thread was cancelled.
+     *
+     * @throws CancellationException If the current request was cancelled.
+     */
+    public static void checkCurrent() {
+        RequestHandle handle = CURRENT.get();
+        if (handle != null) {
+            handle.check();
+        }
+    }
+
+    /**
+     * Returns the key of the conversation the message belongs to.
+     *
+     * @return The conversation key.
+     */
+    public String conversation() {
+        return conversation;
+    }
+
+    /**
+     * Returns whether the request was cancelled.
+     *
+     * @return {@code true} once {@link #cancel()} was called.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Throws if the request was cancelled.
+     *
+     * @throws CancellationException If the request was cancelled.
+     */
+    public void check() {
+        if (cancelled) {
+            throw new CancellationException("Request of conversation " + conversation + " was cancelled");
+        }
+    }
+
+    /**
+     * Cancels the request. Has no effect if it was cancelled before.
+     */
+    public void cancel() {
+        List<Runnable> pending;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            if (thread != null) {
+                thread.interrupt();
+            }
+            pending = List.copyOf(callbacks);
+            callbacks.clear();
+        }
+        pending.forEach(Runnable::run);
+    }
+
+    /**
+     * Registers an action that aborts work of the request, run on the cancelling thread.
+     * If the request is already cancelled, the action runs right away.
+     *
+     * @param action The action to run on cancellation.
+     */
+    public void onCancel(Runnable action) {
+        synchronized (this) {
+            if (!cancelled) {
+                callbacks.add(action);
+                return;
+            }
+        }
+        action.run();
+    }
+
+    /**
+     * Binds this handle to the current thread, which is interrupted if the request is cancelled while it is bound.
+     *
+     * @return A {@link Binding} that unbinds the handle when closed.
+     */
+    public Binding bind() {
+        RequestHandle previous = CURRENT.get();
+        synchronized (this) {
+            thread = Thread.currentThread();
+        }
+        CURRENT.set(this);
+        return new Binding(previous);
+    }
+
+    /**
+     * The {@code Binding} class represents the binding of a {@link RequestHandle} to a thread.
+     * Closing it restores whatever handle was bound before.
+     */
+    public final class Binding implements AutoCloseable {
+
+        private final RequestHandle previous;
+
+        private Binding(RequestHandle previous) {
+            this.previous = previous;
+        }
+
+        /**
+         * Unbinds the handle and clears an interrupt caused by its cancellation.
+         */
+        @Override
+        public void close() {
+            synchronized (RequestHandle.this) {
+                thread = null;
+                if (cancelled) {
+                    Thread.interrupted();
+                }
+            }
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
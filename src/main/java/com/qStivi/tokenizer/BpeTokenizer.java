@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.tokenizer;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * The {@code BpeTokenizer} class counts tokens with byte-pair encoding over a {@link BpeVocabulary}.
+ * <p>
+ * Text is split by the {@link PreTokenizer} of the encoding, each piece is encoded as UTF-8 into a scratch
+ * buffer, and adjacent parts are merged by lowest rank until no merge is left. Only the number of
+ * remaining parts is kept, so counting allocates no strings, arrays or token lists once the scratch
+ * buffers have grown to the largest piece seen. Scratch buffers are borrowed from a small shared pool rather than
+ * kept per thread, since counting mostly runs on short-lived virtual threads.
+ */
+public final class BpeTokenizer implements TokenCounter {
+
+    private static final int POOLED_SCRATCH = 64;
+    private static final int MAX_POOLED_BYTES = 1 << 16;
+
+    private final BpeVocabulary vocabulary;
+    private final PreTokenizer preTokenizer;
+    private final BlockingQueue<Scratch> scratch = new ArrayBlockingQueue<>(POOLED_SCRATCH);
+
+    /**
+     * Constructs a {@code BpeTokenizer} for a vocabulary of the {@code cl100k_base} encoding.
+     *
+     * @param vocabulary The {@link BpeVocabulary} of the encoding.
+     */
+    public BpeTokenizer(BpeVocabulary vocabulary) {
+        this(vocabulary, PreTokenizer.CL100K);
+    }
+
+    /**
+     * Constructs a {@code BpeTokenizer} for the given vocabulary and split pattern.
+     *
+     * @param vocabulary   The {@link BpeVocabulary} of the encoding.
+     * @param preTokenizer The {@link PreTokenizer} of the encoding.
+     */
+    BpeTokenizer(BpeVocabulary vocabulary, PreTokenizer preTokenizer) {
+        this.vocabulary = vocabulary;
+        this.preTokenizer = preTokenizer;
+    }
+
+    /**
+     * Counts the tokens of the given text.
+     *
+     * @param text The text to count.
+     * @return The number of tokens.
+     */
+    @Override
+    public int count(CharSequence text) {
+        int length = text.length();
+        if (length == 0) {
+            return 0;
+        }
+        Scratch buffers = scratch.poll();
+        if (buffers == null) {
+            buffers = new Scratch();
+        }
+        PreTokenizer.Splitter splitter = preTokenizer.split(text);
+        int tokens = 0;
+        int start = 0;
+        while (start < length) {
+            int end = splitter.next(start);
+            int bytes = buffers.encode(text, start, end);
+            tokens += countPiece(buffers, bytes);
+            start = end;
+        }
+        // Buffers grown by an unusually long piece are dropped, as are buffers returned to a full pool
+        if (buffers.bytes.length <= MAX_POOLED_BYTES) {
+            scratch.offer(buffers);
+        }
+        return tokens;
+    }
+
+    /**
+     * Counts the tokens of one UTF-8 encoded piece held in the scratch buffer.
+     */
+    private int countPiece(Scratch buffers, int length) {
+        byte[] bytes = buffers.bytes;
+        if (length == 1 || vocabulary.rank(bytes, 0, length) >= 0) {
+            return 1;
+        }
+
+        // Part i spans bounds[i] to bounds[i + 1]; pairRanks[i] is the rank of merging parts i and i + 1
+        buffers.ensureParts(length + 1);
+        int[] bounds = buffers.bounds;
+        int[] pairRanks = buffers.pairRanks;
+        int parts = length;
+        for (int i = 0; i <= length; i++) {
+            bounds[i] = i;
+        }
+        for (int i = 0; i < parts - 1; i++) {
+            pairRanks[i] = vocabulary.rank(bytes, i, 2);
+        }
+
+        while (parts > 1) {
+            int best = -1;
+            int bestRank = Integer.MAX_VALUE;
+            for (int i = 0; i < parts - 1; i++) {
+                int rank = pairRanks[i];
+                if (rank >= 0 && rank < bestRank) {
+                    bestRank = rank;
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+
+            // Merge parts best and best + 1 by removing the boundary between them
+            System.arraycopy(bounds, best + 2, bounds, best + 1, parts - best - 1);
+            System.arraycopy(pairRanks, best + 1, pairRanks, best, parts - best - 2);
+            parts--;
+
+            if (best < parts - 1) {
+                pairRanks[best] = rankOf(bytes, bounds, best);
+            }
+            if (best > 0) {
+                pairRanks[best - 1] = rankOf(bytes, bounds, best - 1);
+            }
+        }
+        return parts;
+    }
+
+    private int rankOf(byte[] bytes, int[] bounds, int part) {
+        return vocabulary.rank(bytes, bounds[part], bounds[part + 2] - bounds[part]);
+    }
+
+    /**
+     * Buffers that grow to the largest piece seen and are reused afterwards by one count at a time.
+     */
+    private static final class Scratch {
+
+        private byte[] bytes = new byte[256];
+        private int[] bounds = new int[257];
+        private int[] pairRanks = new int[257];
+
+        /**
+         * Encodes the given characters as UTF-8 into {@link #bytes}.
+         *
+         * @return The number of bytes written.
+         */
+        int encode(CharSequence text, int start, int end) {
+            if (bytes.length < (end - start) * 3) {
+                bytes = new byte[(end - start) * 3];
+            }
+            int length = 0;
+            for (int i = start; i < end; i++) {
+                char c = text.charAt(i);
+                if (c < 0x80) {
+                    bytes[length++] = (byte) c;
+                } else if (c < 0x800) {
+                    bytes[length++] = (byte) (0xc0 | (c >> 6));
+                    bytes[length++] = (byte) (0x80 | (c & 0x3f));
+                } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                    bytes[length++] = (byte) (0xf0 | (codePoint >> 18));
+                    bytes[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                    bytes[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                    bytes[length++] = (byte) (0x80 | (codePoint & 0x3f));
+                } else if (Character.isSurrogate(c)) {
+                    // Unpaired surrogates are replaced like the JDK encoder does
+                    bytes[length++] = '?';
+                } else {
+                    bytes[length++] = (byte) (0xe0 | (c >> 12));
+                    bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                    bytes[length++] = (byte) (0x80 | (c & 0x3f));
+                }
+            }
+            return length;
+        }
+
+        void ensureParts(int size) {
+            if (bounds.length < size) {
+                bounds = new int[size];
+                pairRanks = new int[size];
+            }
+        }
+    }
+}
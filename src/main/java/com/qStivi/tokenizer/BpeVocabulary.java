@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.tokenizer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * The {@code BpeVocabulary} class maps token byte sequences to their merge ranks.
+ * <p>
+ * All token bytes live in one pooled array and are found through an open-addressing table,
+ * so a lookup takes a slice of any byte array and never allocates. Vocabularies are read
+ * from the tiktoken format: one token per line as base64 bytes followed by its rank.
+ */
+public final class BpeVocabulary {
+
+    private static final int FNV_OFFSET = 0x811c9dc5;
+    private static final int FNV_PRIME = 0x01000193;
+
+    private final byte[] pool;
+    private final int[] offsets;
+    private final int[] ranks;
+    private final int[] table;
+    private final int mask;
+
+    private BpeVocabulary(byte[] pool, int[] offsets, int[] ranks, int size) {
+        this.pool = pool;
+        this.offsets = offsets;
+        this.ranks = ranks;
+
+        int capacity = Integer.highestOneBit(Math.max(size, 1) * 2 - 1) << 1;
+        this.table = new int[capacity];
+        this.mask = capacity - 1;
+        for (int token = 0; token < size; token++) {
+            int start = offsets[token];
+            int slot = hash(pool, start, offsets[token + 1] - start) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = token + 1;
+        }
+    }
+
+    /**
+     * Reads a vocabulary in the tiktoken format.
+     *
+     * @param reader The reader supplying the vocabulary. It is not closed.
+     * @return The parsed {@code BpeVocabulary}.
+     * @throws IOException If the vocabulary cannot be read or is malformed.
+     */
+    public static BpeVocabulary read(Reader reader) throws IOException {
+        BufferedReader lines = reader instanceof BufferedReader buffered ? buffered : new BufferedReader(reader);
+        Base64.Decoder decoder = Base64.getDecoder();
+
+        byte[] pool = new byte[1 << 16];
+        int[] offsets = new int[1 << 12];
+        int[] ranks = new int[1 << 12];
+        int size = 0;
+        int used = 0;
+
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            int space = line.indexOf(' ');
+            if (space <= 0) {
+                throw new IOException("Malformed vocabulary line: " + line);
+            }
+
+            byte[] token;
+            int rank;
+            try {
+                token = decoder.decode(line.substring(0, space));
+                rank = Integer.parseInt(line.substring(space + 1).trim());
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Malformed vocabulary line: " + line, e);
+            }
+
+            if (size + 2 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                ranks = Arrays.copyOf(ranks, ranks.length * 2);
+            }
+            if (used + token.length > pool.length) {
+                pool = Arrays.copyOf(pool, Math.max(pool.length * 2, used + token.length));
+            }
+            System.arraycopy(token, 0, pool, used, token.length);
+            offsets[size] = used;
+            ranks[size] = rank;
+            used += token.length;
+            size++;
+        }
+        offsets[size] = used;
+
+        return new BpeVocabulary(Arrays.copyOf(pool, used), Arrays.copyOf(offsets, size + 1), Arrays.copyOf(ranks, size), size);
+    }
+
+    /**
+     * Returns the rank of the token with the given bytes.
+     *
+     * @param bytes  The array holding the token bytes.
+     * @param offset The start of the token.
+     * @param length The number of token bytes.
+     * @return The rank of the token, or {@code -1} if it is not part of the vocabulary.
+     */
+    public int rank(byte[] bytes, int offset, int length) {
+        int slot = hash(bytes, offset, length) & mask;
+        int entry;
+        while ((entry = table[slot]) != 0) {
+            int token = entry - 1;
+            int start = offsets[token];
+            int end = offsets[token + 1];
+            if (end - start == length && Arrays.equals(pool, start, end, bytes, offset, offset + length)) {
+                return ranks[token];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of tokens in this vocabulary.
+     *
+     * @return The vocabulary size.
+     */
+    public int size() {
+        return ranks.length;
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = FNV_OFFSET;
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ (bytes[i] & 0xff)) * FNV_PRIME;
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
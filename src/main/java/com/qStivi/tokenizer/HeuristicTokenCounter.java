@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.tokenizer;
+
+/**
+ * The {@code HeuristicTokenCounter} class estimates token counts when no vocabulary is available.
+ * It assumes about four characters per token, which is close for English text.
+ */
+public final class HeuristicTokenCounter implements TokenCounter {
+
+    /**
+     * The shared instance.
+     */
+    public static final HeuristicTokenCounter INSTANCE = new HeuristicTokenCounter();
+
+    private HeuristicTokenCounter() {
+    }
+
+    /**
+     * Estimates the tokens of the given text.
+     *
+     * @param text The text to count.
+     * @return The estimated number of tokens.
+     */
+    @Override
+    public int count(CharSequence text) {
+        return (text.length() + 3) / 4;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.tokenizer;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The {@code PreTokenizer} enum splits text into the pieces that byte-pair encoding works on, following the split
+ * pattern of an encoding.
+ * <p>
+ * {@link #CL100K} splits contractions, words with an optional leading non-letter, numbers of up to three digits,
+ * punctuation runs and whitespace, without using regular expressions or allocating. {@link #O200K} also splits words
+ * where their case changes, attaches contractions to the word before them and keeps slashes with punctuation; its
+ * pattern relies on backtracking between overlapping letter classes, so it is matched with the encoding's own regular
+ * expression.
+ */
+enum PreTokenizer {
+
+    /**
+     * The split pattern of {@code cl100k_base}.
+     */
+    CL100K {
+        @Override
+        Splitter split(CharSequence text) {
+            return start -> cl100k(text, start);
+        }
+    },
+
+    /**
+     * The split pattern of {@code o200k_base}.
+     */
+    O200K {
+        @Override
+        Splitter split(CharSequence text) {
+            Matcher matcher = O200K_PATTERN.matcher(text).useTransparentBounds(true).useAnchoringBounds(false);
+            return start -> {
+                matcher.region(start, text.length());
+                // Every character is matched by one of the alternatives; the guard only keeps the loop finite
+                return matcher.lookingAt() && matcher.end() > start ? matcher.end() : start + Character.charCount(Character.codePointAt(text, start));
+            };
+        }
+    };
+
+    private static final String CONTRACTION = "(?i:'s|'t|'re|'ve|'m|'ll|'d)?";
+    private static final String UPPER = "[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]";
+    private static final String LOWER = "[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]";
+    private static final Pattern O200K_PATTERN = Pattern.compile(String.join("|",
+            "[^\\r\\n\\p{L}\\p{N}]?" + UPPER + "*" + LOWER + "+" + CONTRACTION,
+            "[^\\r\\n\\p{L}\\p{N}]?" + UPPER + "+" + LOWER + "*" + CONTRACTION,
+            "\\p{N}{1,3}",
+            " ?[^\\s\\p{L}\\p{N}]+[\\r\\n/]*",
+            "\\s*[\\r\\n]+",
+            "\\s+(?!\\S)",
+            "\\s+"), Pattern.UNICODE_CHARACTER_CLASS);
+
+    /**
+     * Returns the pre-tokenizer of an encoding.
+     *
+     * @param encoding The name of the encoding.
+     * @return The {@code PreTokenizer}, or {@code null} if the split pattern of the encoding is not implemented.
+     */
+    static PreTokenizer forEncoding(String encoding) {
+        return switch (encoding) {
+            case "cl100k_base" -> CL100K;
+            case "o200k_base" -> O200K;
+            default -> null;
+        };
+    }
+
+    /**
+     * Prepares splitting one text. The returned splitter is used by one thread at a time.
+     *
+     * @param text The text to split.
+     * @return The {@link Splitter} of the text.
+     */
+    abstract Splitter split(CharSequence text);
+
+    /**
+     * Finds the pieces of one text, one after the other.
+     */
+    @FunctionalInterface
+    interface Splitter {
+
+        /**
+         * Returns the end of the piece that starts at the given index.
+         *
+         * @param start The start of the piece, which must be less than the length of the text.
+         * @return The exclusive end of the piece.
+         */
+        int next(int start);
+    }
+
+    private static int cl100k(CharSequence text, int start) {
+        int length = text.length();
+        int c = Character.codePointAt(text, start);
+        int afterFirst = start + Character.charCount(c);
+
+        if (c == '\'') {
+            int end = contraction(text, afterFirst);
+            if (end > 0) {
+                return end;
+            }
+        }
+
+        if (Character.isLetter(c)) {
+            return skipLetters(text, afterFirst);
+        }
+        if (!Character.isDigit(c) && c != '\r' && c != '\n' && afterFirst < length
+                && Character.isLetter(Character.codePointAt(text, afterFirst))) {
+            return skipLetters(text, afterFirst);
+        }
+
+        if (Character.isDigit(c)) {
+            int end = afterFirst;
+            for (int digits = 1; digits < 3 && end < length; digits++) {
+                int next = Character.codePointAt(text, end);
+                if (!Character.isDigit(next)) {
+                    break;
+                }
+                end += Character.charCount(next);
+            }
+            return end;
+        }
+
+        int punctuationStart = c == ' ' && afterFirst < length ? afterFirst : start;
+        if (isPunctuation(Character.codePointAt(text, punctuationStart))) {
+            int end = punctuationStart;
+            while (end < length) {
+                int next = Character.codePointAt(text, end);
+                if (!isPunctuation(next)) {
+                    break;
+                }
+                end += Character.charCount(next);
+            }
+            while (end < length && (text.charAt(end) == '\r' || text.charAt(end) == '\n')) {
+                end++;
+            }
+            return end;
+        }
+
+        return whitespace(text, start);
+    }
+
+    private static int whitespace(CharSequence text, int start) {
+        int length = text.length();
+        int end = start;
+        int lastNewline = -1;
+        while (end < length) {
+            int next = Character.codePointAt(text, end);
+            if (!Character.isWhitespace(next)) {
+                break;
+            }
+            if (next == '\r' || next == '\n') {
+                lastNewline = end;
+            }
+            end += Character.charCount(next);
+        }
+
+        if (lastNewline >= 0) {
+            return lastNewline + 1;
+        }
+        if (end == length || end - start == 1) {
+            return end;
+        }
+        // Leave the last space to prefix the following word
+        return end - 1;
+    }
+
+    private static int contraction(CharSequence text, int index) {
+        int length = text.length();
+        if (index >= length) {
+            return -1;
+        }
+        char first = Character.toLowerCase(text.charAt(index));
+        if (first == 's' || first == 'd' || first == 'm' || first == 't') {
+            return index + 1;
+        }
+        if (index + 1 < length) {
+            char second = Character.toLowerCase(text.charAt(index + 1));
+            if ((first == 'l' && second == 'l') || (first == 'v' && second == 'e') || (first == 'r' && second == 'e')) {
+                return index + 2;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipLetters(CharSequence text, int index) {
+        int length = text.length();
+        while (index < length) {
+            int next = Character.codePointAt(text, index);
+            if (!Character.isLetter(next)) {
+                break;
+            }
+            index += Character.charCount(next);
+        }
+        return index;
+    }
+
+    private static boolean isPunctuation(int c) {
+        return !Character.isWhitespace(c) && !Character.isLetter(c) && !Character.isDigit(c);
+    }
+}
@@ -0,0 +1,22 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.tokenizer;
+
+/**
+ * The {@code TokenCounter} interface counts the tokens a model would see for a piece of text.
+ * Implementations are thread-safe and do not allocate per call.
+ */
+public interface TokenCounter {
+
+    /**
+     * Counts the tokens of the given text.
+     *
+     * @param text The text to count.
+     * @return The number of tokens.
+     */
+    int count(CharSequence text);
+}
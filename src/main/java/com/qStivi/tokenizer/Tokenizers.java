@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.tokenizer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The {@code Tokenizers} class provides the {@link TokenCounter} matching a model's encoding.
+ * <p>
+ * {@code cl100k_base} and {@code o200k_base}, the encoding of the default models, are counted exactly by a
+ * {@link BpeTokenizer} with the encoding's {@link PreTokenizer}. The vocabulary is read from the classpath as
+ * {@code /tokenizer/<encoding>.tiktoken}, or from the vocabulary directory set by {@link #configure}. If it is in
+ * neither place and downloads are enabled, the published vocabulary is downloaded into that directory once and
+ * verified against its SHA-256 hash. Vocabularies are loaded in the background, so counting never waits for the
+ * disk or the network; until a vocabulary is loaded, and for other encodings, the {@link HeuristicTokenCounter}
+ * estimates the count.
+ */
+public final class Tokenizers {
+
+    private static final Logger logger = LoggerFactory.getLogger(Tokenizers.class);
+    private static final String DOWNLOAD_URL = "https://openaipublic.blob.core.windows.net/encodings/";
+    private static final Map<String, String> SHA256 = Map.of(
+            "cl100k_base", "223921b76ee99bde995b7ff738513eef100fb51d18c93597a113bcffe865b2a7",
+            "o200k_base", "446a9538cb6c348e3516120d7c08b09f57c36495e2acfffe59a5bf8b0cfb1a2d");
+    private static final Map<String, TokenCounter> counters = new ConcurrentHashMap<>();
+
+    private static volatile Path directory;
+    private static volatile boolean download;
+
+    private Tokenizers() {
+    }
+
+    /**
+     * Sets where vocabularies that are not on the classpath are looked up, and forgets the counters loaded so far.
+     *
+     * @param vocabularies The directory holding {@code <encoding>.tiktoken} files, or {@code null} to use the classpath only.
+     * @param allowDownload Whether missing vocabularies are downloaded into the directory.
+     */
+    public static void configure(Path vocabularies, boolean allowDownload) {
+        directory = vocabularies;
+        download = allowDownload && vocabularies != null;
+        counters.clear();
+    }
+
+    /**
+     * Returns the token counter for the given model.
+     *
+     * @param modelName The name of the model.
+     * @return The {@link TokenCounter} of the model's encoding.
+     */
+    public static TokenCounter forModel(String modelName) {
+        return forEncoding(encodingOf(modelName));
+    }
+
+    /**
+     * Returns the token counter for the given encoding.
+     *
+     * @param encoding The name of the encoding, for example {@code cl100k_base}.
+     * @return The {@link TokenCounter} of the encoding.
+     */
+    public static TokenCounter forEncoding(String encoding) {
+        return counters.computeIfAbsent(encoding, Tokenizers::open);
+    }
+
+    /**
+     * Waits until the vocabulary of the given model is loaded, for example at startup.
+     *
+     * @param modelName The name of the model.
+     * @return {@code true} if its tokens are counted exactly; {@code false} if they are estimated.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public static boolean awaitExact(String modelName) throws InterruptedException {
+        if (!(forModel(modelName) instanceof LoadingCounter loading)) {
+            return false;
+        }
+        try {
+            return loading.exact.get() != HeuristicTokenCounter.INSTANCE;
+        } catch (ExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the name of the encoding used by the given model.
+     *
+     * @param modelName The name of the model.
+     * @return The name of the encoding.
+     */
+    static String encodingOf(String modelName) {
+        String model = modelName == null ? "" : modelName.toLowerCase();
+        if (model.startsWith("gpt-4o") || model.startsWith("gpt-4.1") || model.startsWith("gpt-5")
+                || model.startsWith("o1") || model.startsWith("o3") || model.startsWith("o4")) {
+            return "o200k_base";
+        }
+        return "cl100k_base";
+    }
+
+    private static TokenCounter open(String encoding) {
+        PreTokenizer preTokenizer = PreTokenizer.forEncoding(encoding);
+        if (preTokenizer == null) {
+            logger.info("Encoding {} is not supported by the local tokenizer, estimating token counts", encoding);
+            return HeuristicTokenCounter.INSTANCE;
+        }
+        Path vocabularies = directory;
+        boolean allowDownload = download;
+        CompletableFuture<TokenCounter> exact = new CompletableFuture<>();
+        Thread.ofVirtual().name("tokenizer-" + encoding)
+                .start(() -> exact.complete(load(encoding, preTokenizer, vocabularies, allowDownload)));
+        return new LoadingCounter(exact);
+    }
+
+    private static TokenCounter load(String encoding, PreTokenizer preTokenizer, Path vocabularies, boolean allowDownload) {
+        try {
+            long start = System.nanoTime();
+            BpeVocabulary vocabulary = readVocabulary(encoding, vocabularies, allowDownload);
+            if (vocabulary == null) {
+                logger.info("No vocabulary found for {}, estimating token counts", encoding);
+                return HeuristicTokenCounter.INSTANCE;
+            }
+            logger.info("Loaded {} tokens of {} in {} ms", vocabulary.size(), encoding, (System.nanoTime() - start) / 1_000_000);
+            return new BpeTokenizer(vocabulary, preTokenizer);
+        } catch (IOException e) {
+            logger.error("Failed to load vocabulary of {}, estimating token counts", encoding, e);
+            return HeuristicTokenCounter.INSTANCE;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return HeuristicTokenCounter.INSTANCE;
+        }
+    }
+
+    /**
+     * Reads a vocabulary from the classpath or the vocabulary directory, downloading it there if allowed.
+     *
+     * @return The vocabulary, or {@code null} if it is not available.
+     */
+    private static BpeVocabulary readVocabulary(String encoding, Path vocabularies, boolean allowDownload) throws IOException, InterruptedException {
+        try (InputStream in = Tokenizers.class.getResourceAsStream("/tokenizer/" + encoding + ".tiktoken")) {
+            if (in != null) {
+                return BpeVocabulary.read(new InputStreamReader(in, StandardCharsets.UTF_8));
+            }
+        }
+        if (vocabularies == null) {
+            return null;
+        }
+        Path file = vocabularies.resolve(encoding + ".tiktoken");
+        if (Files.notExists(file)) {
+            if (!allowDownload) {
+                return null;
+            }
+            downloadVocabulary(encoding, file);
+        }
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return BpeVocabulary.read(reader);
+        }
+    }
+
+    /**
+     * Downloads a published vocabulary, verifies its hash and moves it into place.
+     */
+    private static void downloadVocabulary(String encoding, Path file) throws IOException, InterruptedException {
+        logger.info("Downloading vocabulary of {} to {}", encoding, file);
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).followRedirects(HttpClient.Redirect.NORMAL).build()) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(DOWNLOAD_URL + encoding + ".tiktoken")).timeout(Duration.ofMinutes(2)).build();
+            HttpResponse<Path> response = client.send(request, HttpResponse.BodyHandlers.ofFile(temp));
+            if (response.statusCode() != 200) {
+                throw new IOException("Vocabulary download of " + encoding + " failed with HTTP " + response.statusCode());
+            }
+        }
+        String hash = sha256(temp);
+        if (!hash.equals(SHA256.get(encoding))) {
+            Files.deleteIfExists(temp);
+            throw new IOException("Downloaded vocabulary of " + encoding + " has the unexpected SHA-256 hash " + hash);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String sha256(Path file) throws IOException {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Counts with the exact tokenizer once its vocabulary is loaded, and estimates until then.
+     */
+    private static final class LoadingCounter implements TokenCounter {
+
+        private final CompletableFuture<TokenCounter> exact;
+
+        private LoadingCounter(CompletableFuture<TokenCounter> exact) {
+            this.exact = exact;
+        }
+
+        @Override
+        public int count(CharSequence text) {
+            return exact.getNow(HeuristicTokenCounter.INSTANCE).count(text);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.tools;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.time.Duration;
+
+/**
+ * The {@code Tool} interface describes a function the model can call, such as an in-game command.
+ * Implementations must be thread-safe, since independent calls run in parallel.
+ */
+public interface Tool {
+
+    /**
+     * Returns the name the model uses to call this tool.
+     *
+     * @return The tool name, unique within a {@link ToolRegistry}.
+     */
+    String name();
+
+    /**
+     * Returns the description that tells the model what this tool does and when to use it.
+     *
+     * @return The tool description.
+     */
+    String description();
+
+    /**
+     * Returns the JSON schema of the arguments of this tool.
+     *
+     * @return The parameter schema as an object node.
+     */
+    JsonNode parameters();
+
+    /**
+     * Runs this tool. Implementations should react to interruption, which signals a timeout.
+     *
+     * @param arguments The arguments chosen by the model.
+     * @return The result that is reported back to the model.
+     * @throws Exception If the tool fails; the message is reported to the model.
+     */
+    String execute(JsonNode arguments) throws Exception;
+
+    /**
+     * Returns how long a call may take before it is abandoned.
+     *
+     * @return The timeout, or {@code null} to use the configured default.
+     */
+    default Duration timeout() {
+        return null;
+    }
+
+    /**
+     * Returns how many calls of this tool may run at the same time.
+     *
+     * @return The concurrency limit.
+     */
+    default int maxConcurrent() {
+        return 4;
+    }
+
+    /**
+     * Returns how long the result of a call may be reused for calls with the same arguments.
+     *
+     * @return The time to live of cached results, or {@link Duration#ZERO} to never cache.
+     */
+    default Duration cacheTtl() {
+        return Duration.ZERO;
+    }
+}
@@ -0,0 +1,19 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.tools;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * The {@code ToolCall} record is one function call requested by the model.
+ *
+ * @param id        The ID that links the result to the call.
+ * @param name      The name of the called tool.
+ * @param arguments The arguments chosen by the model.
+ */
+public record ToolCall(String id, String name, JsonNode arguments) {
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.tools;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.qStivi.config.ConfigSnapshot;
+import com.qStivi.metrics.Metrics;
+import com.qStivi.metrics.Stage;
+import com.qStivi.tracing.RequestContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * The {@code ToolExecutor} class runs the {@link ToolCall}s of a model turn.
+ * <p>
+ * All calls of a turn start at once on virtual threads, so independent calls take as long as the slowest one
+ * instead of their sum. Each tool has its own concurrency limit and timeout, counted from the start of its call;
+ * a call that times out is interrupted.
+ * Results of tools with a cache time to live are reused for identical arguments. Failures never escape: they
+ * become error results, so the model can react to them in its next step.
+ */
+public class ToolExecutor implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ToolExecutor.class);
+
+    private final ToolRegistry registry;
+    private final Supplier<ConfigSnapshot> settings;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, Semaphore> permits = new ConcurrentHashMap<>();
+    private final Map<String, CachedResult> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a {@code ToolExecutor} for the tools of a registry.
+     *
+     * @param registry The {@link ToolRegistry} that resolves tool names.
+     * @param settings The supplier of the current {@link ConfigSnapshot}.
+     */
+    public ToolExecutor(ToolRegistry registry, Supplier<ConfigSnapshot> settings) {
+        this.registry = registry;
+        this.settings = settings;
+    }
+
+    /**
+     * Returns the registry whose tools this executor runs.
+     *
+     * @return The {@link ToolRegistry}.
+     */
+    public ToolRegistry registry() {
+        return registry;
+    }
+
+    /**
+     * Runs all calls in parallel and waits for each of them until its timeout.
+     *
+     * @param calls The calls of one model turn.
+     * @return The results, in the order of the calls.
+     */
+    public List<ToolResult> executeAll(List<ToolCall> calls) {
+        List<Pending> started = new ArrayList<>(calls.size());
+        for (ToolCall call : calls) {
+            started.add(start(call));
+        }
+
+        List<ToolResult> results = new ArrayList<>(calls.size());
+        for (Pending pending : started) {
+            results.add(finish(pending));
+        }
+        return results;
+    }
+
+    /**
+     * Runs one call, applying the tool's timeout, concurrency limit and cache.
+     *
+     * @param call The call to run.
+     * @return The result of the call.
+     */
+    public ToolResult execute(ToolCall call) {
+        return finish(start(call));
+    }
+
+    /**
+     * Stops the worker threads, interrupting running calls.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Resolves a call and starts it, unless it is answered from the cache or names an unknown tool.
+     */
+    private Pending start(ToolCall call) {
+        Optional<Tool> found = registry.find(call.name());
+        if (found.isEmpty()) {
+            logger.warn("Model called unknown tool {}", call.name());
+            return Pending.done(new ToolResult(call.id(), call.name(), "Error: unknown tool '" + call.name() + "'", false, false));
+        }
+
+        Tool tool = found.get();
+        JsonNode arguments = call.arguments() == null ? JsonNodeFactory.instance.objectNode() : call.arguments();
+        String cacheKey = tool.name() + '\u0000' + arguments;
+        boolean cacheable = tool.cacheTtl().compareTo(Duration.ZERO) > 0;
+        if (cacheable) {
+            CachedResult cached = cache.get(cacheKey);
+            if (cached != null && System.nanoTime() - cached.expiresAt() < 0) {
+                Metrics.get().cacheHit("tool_results");
+                return Pending.done(new ToolResult(call.id(), tool.name(), cached.content(), true, true));
+            }
+            Metrics.get().cacheMiss("tool_results");
+        }
+
+        Duration timeout = tool.timeout() == null ? settings.get().tools().timeout() : tool.timeout();
+        long start = System.nanoTime();
+        Future<ToolResult> future = executor.submit(RequestContext.wrap(() -> run(tool, call, arguments)));
+        return new Pending(call, null, future, start, timeout, cacheable ? cacheKey : null, tool.cacheTtl());
+    }
+
+    /**
+     * Waits for a started call until its timeout, counted from its start, and caches a successful result.
+     */
+    private ToolResult finish(Pending pending) {
+        if (pending.result() != null) {
+            return pending.result();
+        }
+
+        long remaining = pending.timeout().toNanos() - (System.nanoTime() - pending.start());
+        ToolResult result = await(pending.future(), pending.call(), remaining, pending.timeout());
+        Metrics.get().recordSince(Stage.TOOL_CALL, pending.start());
+
+        if (pending.cacheKey() != null && result.success()) {
+            evictExpired();
+            cache.put(pending.cacheKey(), new CachedResult(result.content(), System.nanoTime() + pending.cacheTtl().toNanos()));
+        }
+        return result;
+    }
+
+    private ToolResult run(Tool tool, ToolCall call, JsonNode arguments) throws InterruptedException {
+        Semaphore semaphore = permits.computeIfAbsent(tool.name(), name -> new Semaphore(tool.maxConcurrent()));
+        semaphore.acquire();
+        try {
+            logger.debug("Calling tool {} with {}", tool.name(), arguments);
+            return new ToolResult(call.id(), tool.name(), tool.execute(arguments), true, false);
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.warn("Tool {} failed: {}", tool.name(), e.getMessage());
+            return new ToolResult(call.id(), tool.name(), "Error: " + e.getMessage(), false, false);
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    private ToolResult await(Future<ToolResult> future, ToolCall call, long remainingNanos, Duration timeout) {
+        try {
+            return future.get(Math.max(0, remainingNanos), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            Metrics.get().recordError(Stage.TOOL_CALL);
+            logger.warn("Tool {} timed out after {} ms", call.name(), timeout.toMillis());
+            return new ToolResult(call.id(), call.name(), "Error: tool timed out after " + timeout.toMillis() + " ms", false, false);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return new ToolResult(call.id(), call.name(), "Error: call was cancelled", false, false);
+        } catch (ExecutionException e) {
+            Metrics.get().recordError(Stage.TOOL_CALL);
+            return new ToolResult(call.id(), call.name(), "Error: " + e.getCause().getMessage(), false, false);
+        }
+    }
+
+    private void evictExpired() {
+        if (cache.size() < settings.get().tools().cacheSize()) {
+            return;
+        }
+        long now = System.nanoTime();
+        cache.values().removeIf(entry -> now - entry.expiresAt() >= 0);
+        if (cache.size() >= settings.get().tools().cacheSize()) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * A call that was resolved and, unless its result is already known, started.
+     *
+     * @param call     The call.
+     * @param result   The result if the call did not have to run, or {@code null} if it is running.
+     * @param future   The running call.
+     * @param start    The {@link System#nanoTime()} the call started at.
+     * @param timeout  How long the call may run.
+     * @param cacheKey The key its result is cached under, or {@code null} if the tool is not cacheable.
+     * @param cacheTtl How long its result is cached.
+     */
+    private record Pending(ToolCall call, ToolResult result, Future<ToolResult> future, long start, Duration timeout,
+                           String cacheKey, Duration cacheTtl) {
+
+        static Pending done(ToolResult result) {
+            return new Pending(null, result, null, 0, null, null, null);
+        }
+    }
+
+    /**
+     * A cached tool result.
+     *
+     * @param content   The result.
+     * @param expiresAt The {@link System#nanoTime()} after which it may not be reused.
+     */
+    private record CachedResult(String content, long expiresAt) {
+    }
+}
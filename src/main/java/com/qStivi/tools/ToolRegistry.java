@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.tools;
+
+import com.theokanning.openai.completion.chat.ChatTool;
+import com.theokanning.openai.function.FunctionDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@code ToolRegistry} class holds the {@link Tool}s available to the model and describes them
+ * in the function-calling format of the OpenAI API.
+ */
+public class ToolRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(ToolRegistry.class);
+
+    private final Map<String, Tool> tools = new ConcurrentHashMap<>();
+    private volatile List<ChatTool> chatTools;
+
+    /**
+     * Registers a tool, replacing any tool with the same name.
+     *
+     * @param tool The {@link Tool} to register.
+     * @return This registry.
+     */
+    public ToolRegistry register(Tool tool) {
+        if (tools.put(tool.name(), tool) != null) {
+            logger.warn("Replaced tool {}", tool.name());
+        }
+        chatTools = null;
+        return this;
+    }
+
+    /**
+     * Returns the tool with the given name.
+     *
+     * @param name The tool name.
+     * @return The {@link Tool}, or an empty {@link Optional} if none is registered under that name.
+     */
+    public Optional<Tool> find(String name) {
+        return Optional.ofNullable(tools.get(name));
+    }
+
+    /**
+     * Returns all registered tools.
+     *
+     * @return An unmodifiable view of the tools.
+     */
+    public Collection<Tool> tools() {
+        return Collections.unmodifiableCollection(tools.values());
+    }
+
+    /**
+     * Returns whether no tool is registered.
+     *
+     * @return {@code true} if the registry is empty; {@code false} otherwise.
+     */
+    public boolean isEmpty() {
+        return tools.isEmpty();
+    }
+
+    /**
+     * Returns the tool definitions to send with a chat completion request. The list is built once per change.
+     *
+     * @return The registered tools as {@link ChatTool}s.
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public List<ChatTool> chatTools() {
+        List<ChatTool> current = chatTools;
+        if (current == null) {
+            List<ChatTool> built = new ArrayList<>(tools.size());
+            for (Tool tool : tools.values()) {
+                built.add(new ChatTool(FunctionDefinition.builder()
+                        .name(tool.name())
+                        .description(tool.description())
+                        .parametersDefinition(tool.parameters())
+                        .build()));
+            }
+            current = List.copyOf(built);
+            chatTools = current;
+        }
+        return current;
+    }
+}
@@ -0,0 +1,19 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.tools;
+
+/**
+ * The {@code ToolResult} record is the outcome of a {@link ToolCall}.
+ *
+ * @param callId  The ID of the call.
+ * @param name    The name of the called tool.
+ * @param content The result or error message that is reported back to the model.
+ * @param success Whether the tool completed without error.
+ * @param cached  Whether the result was reused from an earlier call.
+ */
+public record ToolResult(String callId, String name, String content, boolean success, boolean cached) {
+}
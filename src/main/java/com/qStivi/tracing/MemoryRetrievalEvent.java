@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.tracing;
+
+import jdk.jfr.*;
+
+/**
+ * The {@code MemoryRetrievalEvent} class is a JFR event spanning a public or private lookup in the {@code MemoryManager}.
+ */
+@Name("com.qStivi.MemoryRetrieval")
+@Label("Memory Retrieval")
+@Category({"qGPT", "Pipeline"})
+@StackTrace(false)
+public class MemoryRetrievalEvent extends Event {
+
+    @Label("Request Id")
+    public String requestId;
+
+    @Label("Scope")
+    public String scope;
+
+    @Label("Result Length")
+    @DataAmount(DataAmount.BYTES)
+    public int resultLength;
+}
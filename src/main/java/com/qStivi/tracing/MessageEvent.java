@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.tracing;
+
+import jdk.jfr.*;
+
+/**
+ * The {@code MessageEvent} class is a JFR event spanning the processing of one incoming message in the {@code CoreEngine}.
+ */
+@Name("com.qStivi.Message")
+@Label("Message")
+@Category({"qGPT", "Pipeline"})
+@StackTrace(false)
+public class MessageEvent extends Event {
+
+    @Label("Request Id")
+    public String requestId;
+
+    @Label("User Id")
+    public String userId;
+
+    @Label("Input Length")
+    @DataAmount(DataAmount.BYTES)
+    public int inputLength;
+
+    @Label("Success")
+    public boolean success;
+}
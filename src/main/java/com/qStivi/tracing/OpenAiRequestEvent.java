@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.tracing;
+
+import jdk.jfr.*;
+
+/**
+ * The {@code OpenAiRequestEvent} class is a JFR event spanning a chat completion request to the OpenAI service.
+ */
+@Name("com.qStivi.OpenAiRequest")
+@Label("OpenAI Request")
+@Category({"qGPT", "Pipeline"})
+@StackTrace(false)
+public class OpenAiRequestEvent extends Event {
+
+    @Label("Request Id")
+    public String requestId;
+
+    @Label("Model")
+    public String model;
+
+    @Label("Messages")
+    public int messageCount;
+
+    @Label("Prompt Tokens")
+    public long promptTokens;
+
+    @Label("Completion Tokens")
+    public long completionTokens;
+
+    @Label("Success")
+    public boolean success;
+}
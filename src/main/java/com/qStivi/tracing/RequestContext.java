@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.tracing;
+
+import org.slf4j.MDC;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code RequestContext} class carries the identity of the message currently being processed.
+ * The context is bound to the processing thread and mirrored into the logging {@link MDC} under
+ * {@value #MDC_KEY}, so every log line and JFR event of a request can be correlated by its request id.
+ * Components may attach per-request state to the context, which travels with it across {@link #wrap wrapped} tasks.
+ */
+public final class RequestContext {
+
+    /**
+     * The MDC key under which the request id is published.
+     */
+    public static final String MDC_KEY = "requestId";
+
+    private static final String NO_REQUEST = "-";
+    private static final ThreadLocal<RequestContext> CURRENT = new ThreadLocal<>();
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+    private static final String NODE_PREFIX = Integer.toHexString(ThreadLocalRandom.current().nextInt(0x1000, 0x10000));
+
+    private final String requestId;
+    private final String userId;
+    private final Map<Class<?>, Object> attachments = new ConcurrentHashMap<>();
+
+    private RequestContext(String requestId, String userId) {
+        this.requestId = requestId;
+        this.userId = userId;
+    }
+
+    /**
+     * Creates a new context for an incoming message and binds it to the current thread.
+     *
+     * @param userId The ID of the user who sent the message.
+     * @return A {@link Scope} that restores the previous context when closed.
+     */
+    public static Scope open(String userId) {
+        String requestId = NODE_PREFIX + "-" + Long.toString(SEQUENCE.incrementAndGet(), 36);
+        return bind(new RequestContext(requestId, userId));
+    }
+
+    /**
+     * Returns the context bound to the current thread.
+     *
+     * @return The current {@code RequestContext}, or {@code null} if no request is being processed.
+     */
+    public static RequestContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Returns the request id bound to the current thread.
+     *
+     * @return The current request id, or {@code "-"} if no request is being processed.
+     */
+    public static String currentId() {
+        RequestContext context = CURRENT.get();
+        return context == null ? NO_REQUEST : context.requestId;
+    }
+
+    /**
+     * Wraps a task so that it runs with the context of the calling thread.
+     *
+     * @param task The task to wrap.
+     * @return A {@link Runnable} that binds the captured context while running {@code task}.
+     */
+    public static Runnable wrap(Runnable task) {
+        RequestContext captured = CURRENT.get();
+        return () -> {
+            try (Scope ignored = bind(captured)) {
+                task.run();
+            }
+        };
+    }
+
+    /**
+     * Wraps a task so that it runs with the context of the calling thread.
+     *
+     * @param task The task to wrap.
+     * @param <T>  The result type of the task.
+     * @return A {@link Callable} that binds the captured context while running {@code task}.
+     */
+    public static <T> Callable<T> wrap(Callable<T> task) {
+        RequestContext captured = CURRENT.get();
+        return () -> {
+            try (Scope ignored = bind(captured)) {
+                return task.call();
+            }
+        };
+    }
+
+    /**
+     * Binds a context opened on another thread to the current thread, for a request that moves between threads.
+     *
+     * @param context The context to bind, or {@code null} to unbind the current one.
+     * @return A {@link Scope} that restores the previous context when closed.
+     */
+    public static Scope resume(RequestContext context) {
+        return bind(context);
+    }
+
+    private static Scope bind(RequestContext context) {
+        RequestContext previous = CURRENT.get();
+        set(context);
+        return new Scope(context, previous);
+    }
+
+    private static void set(RequestContext context) {
+        if (context == null) {
+            CURRENT.remove();
+            MDC.remove(MDC_KEY);
+        } else {
+            CURRENT.set(context);
+            MDC.put(MDC_KEY, context.requestId);
+        }
+    }
+
+    /**
+     * Returns the id of this request.
+     *
+     * @return The request id.
+     */
+    public String requestId() {
+        return requestId;
+    }
+
+    /**
+     * Returns the ID of the user who sent the message.
+     *
+     * @return The user ID.
+     */
+    public String userId() {
+        return userId;
+    }
+
+    /**
+     * Attaches per-request state to this context, replacing any previous attachment of the same type.
+     *
+     * @param type  The type under which the state is stored.
+     * @param value The state, or {@code null} to remove the attachment.
+     * @param <T>   The type of the state.
+     */
+    public <T> void attach(Class<T> type, T value) {
+        if (value == null) {
+            attachments.remove(type);
+        } else {
+            attachments.put(type, value);
+        }
+    }
+
+    /**
+     * Returns the per-request state of a type.
+     *
+     * @param type The type under which the state is stored.
+     * @param <T>  The type of the state.
+     * @return The attached state, or {@code null} if none is attached.
+     */
+    public <T> T attachment(Class<T> type) {
+        return type.cast(attachments.get(type));
+    }
+
+    /**
+     * The {@code Scope} class represents the binding of a {@link RequestContext} to a thread.
+     * Closing it restores whatever context was bound before.
+     */
+    public static final class Scope implements AutoCloseable {
+
+        private final RequestContext context;
+        private final RequestContext previous;
+
+        private Scope(RequestContext context, RequestContext previous) {
+            this.context = context;
+            this.previous = previous;
+        }
+
+        /**
+         * Returns the context bound by this scope.
+         *
+         * @return The bound {@link RequestContext}, or {@code null} if the scope binds no context.
+         */
+        public RequestContext context() {
+            return context;
+        }
+
+        /**
+         * Restores the previously bound context.
+         */
+        @Override
+        public void close() {
+            set(previous);
+        }
+    }
+}
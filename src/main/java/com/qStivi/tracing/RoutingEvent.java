@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.tracing;
+
+import jdk.jfr.*;
+
+/**
+ * The {@code RoutingEvent} class is a JFR event spanning the routing decision of the {@code MessageProcessor}.
+ */
+@Name("com.qStivi.Routing")
+@Label("Routing")
+@Category({"qGPT", "Pipeline"})
+@StackTrace(false)
+public class RoutingEvent extends Event {
+
+    @Label("Request Id")
+    public String requestId;
+
+    @Label("Complex Task")
+    public boolean complexTask;
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.tracing;
+
+import jdk.jfr.*;
+
+/**
+ * The {@code TaskIterationEvent} class is a JFR event spanning a single task iteration of the {@code TaskManager}.
+ */
+@Name("com.qStivi.TaskIteration")
+@Label("Task Iteration")
+@Category({"qGPT", "Pipeline"})
+@StackTrace(false)
+public class TaskIterationEvent extends Event {
+
+    @Label("Request Id")
+    public String requestId;
+
+    @Label("Iteration")
+    public int iteration;
+
+    @Label("Kind")
+    public String kind;
+}
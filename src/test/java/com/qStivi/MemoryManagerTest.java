@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi;
+
+import com.qStivi.tracing.RequestContext;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The {@code MemoryManagerTest} class contains unit tests for the prefetching of the {@link MemoryManager} class.
+ * It verifies that retrievals reuse prefetched lookups of the same request and look up again otherwise,
+ * and that only the lookups the message's memory task could make are prefetched.
+ */
+public class MemoryManagerTest {
+
+    private final AtomicInteger publicLookups = new AtomicInteger();
+    private final AtomicInteger privateLookups = new AtomicInteger();
+    private final MemoryManager memoryManager = new MemoryManager() {
+        @Override
+        String lookupPublicMemory(String input) {
+            publicLookups.incrementAndGet();
+            return super.lookupPublicMemory(input);
+        }
+
+        @Override
+        String lookupPrivateMemory(String userId, String input) {
+            privateLookups.incrementAndGet();
+            return super.lookupPrivateMemory(userId, input);
+        }
+    };
+
+    /**
+     * Tests that retrievals for the prefetched input are answered by the prefetch.
+     */
+    @Test
+    public void testRetrieve_UsesPrefetch() {
+        try (var scope = RequestContext.open("user");
+             var prefetch = memoryManager.prefetch("memory please", "user")) {
+            // Act
+            String publicMemory = memoryManager.retrievePublicMemory("memory please");
+            String privateMemory = memoryManager.retrievePrivateMemory("user", "memory please");
+
+            // Assert
+            assertEquals("Public memory for: memory please", publicMemory);
+            assertEquals("Private memory for user user: memory please", privateMemory);
+            assertEquals(1, publicLookups.get());
+            assertEquals(1, privateLookups.get());
+        }
+    }
+
+    /**
+     * Tests that retrievals for other inputs, or after the prefetch is closed, look up again.
+     */
+    @Test
+    public void testRetrieve_MissesPrefetch() {
+        try (var scope = RequestContext.open("user")) {
+            // Arrange
+            var prefetch = memoryManager.prefetch("memory please", "user");
+            prefetch.publicMemory("memory please");
+
+            // Act
+            String other = memoryManager.retrievePublicMemory("other memory");
+            prefetch.close();
+            memoryManager.retrievePublicMemory("memory please");
+
+            // Assert
+            assertEquals("Public memory for: other memory", other);
+            assertEquals(3, publicLookups.get());
+        }
+    }
+
+    /**
+     * Tests that a message is prefetched only for the branch of the memory task it can take.
+     */
+    @Test
+    public void testPrefetch_OnlyReachableLookups() {
+        try (var scope = RequestContext.open("user")) {
+            // Act
+            var chat = memoryManager.prefetch("hello there", "user");
+            chat.close();
+            var publicOnly = memoryManager.prefetch("memory please", "user");
+            publicOnly.publicMemory("memory please");
+            publicOnly.close();
+            var privateOnly = memoryManager.prefetch("private memory please", "user");
+            privateOnly.privateMemory("user", "private memory please");
+            privateOnly.close();
+
+            // Assert
+            assertEquals(1, publicLookups.get());
+            assertEquals(1, privateLookups.get());
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.qStivi.tools.Tool;
+import com.qStivi.tools.ToolRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The {@code TaskManagerTest} class contains unit tests for the {@link TaskManager} class.
+ * It verifies that actions call a tool only if they name it as a whole word.
+ */
+public class TaskManagerTest {
+
+    private final ToolRegistry registry = new ToolRegistry()
+            .register(new NamedTool("time"))
+            .register(new NamedTool("get_weather"));
+
+    /**
+     * Tests that a tool named as a word of the action is found, and the first of several named tools wins.
+     */
+    @Test
+    public void testToolOf_MatchesWholeName() {
+        // Act
+        Optional<Tool> weather = TaskManager.toolOf("action get_weather {\"city\": \"time\"}", registry);
+        Optional<Tool> first = TaskManager.toolOf("action time, then get_weather", registry);
+
+        // Assert
+        assertEquals("get_weather", weather.map(Tool::name).orElseThrow());
+        assertEquals("time", first.map(Tool::name).orElseThrow());
+    }
+
+    /**
+     * Tests that a tool name that is only part of a word, or only appears in the arguments, calls no tool.
+     */
+    @Test
+    public void testToolOf_IgnoresPartialNames() {
+        // Act
+        Optional<Tool> partial = TaskManager.toolOf("action measure the runtime of get_weathers", registry);
+        Optional<Tool> inArguments = TaskManager.toolOf("action lookup {\"field\": \"time\"}", registry);
+
+        // Assert
+        assertTrue(partial.isEmpty());
+        assertTrue(inArguments.isEmpty());
+    }
+
+    /**
+     * A tool that only has a name.
+     */
+    private record NamedTool(String name) implements Tool {
+
+        @Override
+        public String description() {
+            return "Test tool " + name;
+        }
+
+        @Override
+        public JsonNode parameters() {
+            return JsonNodeFactory.instance.objectNode().put("type", "object");
+        }
+
+        @Override
+        public String execute(JsonNode arguments) {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.batch;
+
+import com.qStivi.CoreEngine;
+import com.qStivi.config.ConfigSnapshot;
+import com.qStivi.openai.OpenAiException;
+import com.qStivi.openai.OpenAiSessions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The {@code BatchRunnerTest} class contains unit tests for the {@link BatchRunner} class.
+ * It verifies ordered output, error records, resuming from a checkpoint and that prompts without a user
+ * do not leave sessions behind.
+ */
+public class BatchRunnerTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Tests that results are written in input order even if later prompts finish first.
+     *
+     * @throws Exception If the batch fails.
+     */
+    @Test
+    public void testRun_OrderedOutput() throws Exception {
+        // Arrange
+        Path input = Files.writeString(directory.resolve("in.jsonl"), """
+                {"id":"a","input":"slow"}
+                {"id":"b","input":"fast"}
+
+                {"id":"c","input":"fast","userId":"u1"}
+                """);
+        Path output = directory.resolve("out.jsonl");
+        CoreEngine engine = new EchoEngine(Set.of());
+
+        // Act
+        BatchResult result = new BatchRunner(engine, 4, true).run(input, output);
+
+        // Assert
+        assertEquals(3, result.succeeded());
+        List<String> lines = Files.readAllLines(output);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).contains("\"id\":\"a\"") && lines.get(0).contains("\"output\":\"echo: slow\""), lines.get(0));
+        assertTrue(lines.get(1).contains("\"id\":\"b\""), lines.get(1));
+        assertTrue(lines.get(2).contains("\"userId\":\"u1\""), lines.get(2));
+    }
+
+    /**
+     * Tests that failed prompts are reported and retried on the next run while finished ones are skipped.
+     *
+     * @throws Exception If the batch fails.
+     */
+    @Test
+    public void testRun_ResumesFromCheckpoint() throws Exception {
+        // Arrange
+        Path input = Files.writeString(directory.resolve("in.jsonl"), """
+                {"input":"one"}
+                {"input":"two"}
+                not json
+                """);
+        Path output = directory.resolve("out.jsonl");
+
+        // Act
+        BatchResult first = new BatchRunner(new EchoEngine(Set.of("two")), 2, false).run(input, output);
+        BatchResult second = new BatchRunner(new EchoEngine(Set.of()), 2, false).run(input, output);
+
+        // Assert
+        assertEquals(1, first.succeeded());
+        assertEquals(2, first.failed());
+        assertEquals(1, second.succeeded());
+        assertEquals(2, second.skipped());
+        assertEquals(Set.of("1", "2", "3"), Set.copyOf(Files.readAllLines(BatchRunner.checkpointOf(output))));
+        assertTrue(Files.readAllLines(output).stream().anyMatch(line -> line.contains("Malformed JSON")));
+    }
+
+    /**
+     * Tests that prompts without a user are answered in transient sessions that are released afterwards,
+     * while the sessions of named users are left alone.
+     *
+     * @throws Exception If the batch fails.
+     */
+    @Test
+    public void testRun_ReleasesAnonymousSessions() throws Exception {
+        // Arrange
+        Path input = Files.writeString(directory.resolve("in.jsonl"), """
+                {"input":"one"}
+                {"input":"two","userId":"u1"}
+                """);
+        Path output = directory.resolve("out.jsonl");
+        var sessions = new OpenAiSessions(null, ConfigSnapshot::defaults);
+        var seen = new ConcurrentHashMap<String, Boolean>();
+        CoreEngine engine = new EchoEngine(Set.of()) {
+            @Override
+            public String processMessage(String input, String userId) throws OpenAiException {
+                seen.put(userId, sessions.active().containsKey(userId));
+                sessions.get(userId);
+                return super.processMessage(input, userId);
+            }
+        };
+
+        // Act
+        BatchResult result = new BatchRunner(engine, 2, true, sessions).run(input, output);
+
+        // Assert
+        assertEquals(2, result.succeeded());
+        assertTrue(seen.get("batch-1"), "The anonymous prompt runs in an open session");
+        assertFalse(seen.get("u1"));
+        assertEquals(Set.of("u1"), sessions.active().keySet());
+    }
+
+    /**
+     * A {@link CoreEngine} that echoes its input, delays slow prompts and fails chosen ones.
+     */
+    private static class EchoEngine extends CoreEngine {
+
+        private final Set<String> failing;
+
+        EchoEngine(Set<String> failing) {
+            super(null);
+            this.failing = failing;
+        }
+
+        @Override
+        public String processMessage(String input, String userId) throws OpenAiException {
+            if (failing.contains(input)) {
+                throw new OpenAiException("Failed on purpose");
+            }
+            if (input.equals("slow")) {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return "echo: " + input;
+        }
+    }
+}
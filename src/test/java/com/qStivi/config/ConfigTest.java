@@ -21,6 +21,8 @@ import java.io.Reader;
 import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -147,6 +149,32 @@ class ConfigTest {
         assertEquals("saved-token", savedConfig.getString(ConfigKeys.OPENAI_KEY));
     }
 
+    /**
+     * Tests that only the required keys are saved, so optional settings keep following their defaults.
+     *
+     * @throws IOException            If an I/O error occurs.
+     * @throws ConfigurationException If a configuration error occurs.
+     */
+    @Test
+    @DisplayName("Test Only Required Keys Are Saved")
+    void testOnlyRequiredKeysAreSaved() throws IOException, ConfigurationException {
+        // Arrange
+        when(mockConsoleAdapter.receiveMessage()).thenReturn("saved-token");
+
+        // Act
+        Config config = new Config(tempConfigFile.toString(), mockConsoleAdapter);
+
+        // Assert
+        PropertiesConfiguration savedConfig = new PropertiesConfiguration();
+        try (Reader reader = Files.newBufferedReader(tempConfigFile)) {
+            savedConfig.read(reader);
+        }
+        List<String> keys = new ArrayList<>();
+        savedConfig.getKeys().forEachRemaining(keys::add);
+        assertEquals(List.of(ConfigKeys.OPENAI_KEY), keys);
+        assertEquals(ConfigSnapshot.defaults().openAi().modelName(), config.snapshot().openAi().modelName());
+    }
+
     /**
      * Tests that the user is prompted until valid input is provided.
      */
@@ -197,6 +225,31 @@ class ConfigTest {
         verifyNoInteractions(mockConsoleAdapter);
     }
 
+    /**
+     * Tests that an optional key configured as empty keeps its empty value instead of being reset to the default.
+     *
+     * @throws IOException           If an I/O error occurs.
+     * @throws ConfigurationException If a configuration error occurs.
+     */
+    @Test
+    @DisplayName("Test Empty Optional Key Is Kept")
+    void testEmptyOptionalKeyIsKept() throws IOException, ConfigurationException {
+        // Arrange
+        PropertiesConfiguration existingConfig = new PropertiesConfiguration();
+        existingConfig.setProperty(ConfigKeys.OPENAI_KEY, "existing-token");
+        existingConfig.setProperty(ConfigKeys.MODELS_STRONG_NAME, "");
+        try (Writer writer = Files.newBufferedWriter(tempConfigFile)) {
+            existingConfig.write(writer);
+        }
+
+        // Act
+        Config config = new Config(tempConfigFile.toString(), mockConsoleAdapter);
+
+        // Assert
+        assertEquals("", config.getConfiguration().getString(ConfigKeys.MODELS_STRONG_NAME));
+        assertEquals("", config.snapshot().models().strongModel());
+    }
+
     /**
      * Tests that an exception is thrown during initialization if an I/O error occurs.
      *
@@ -258,4 +311,98 @@ class ConfigTest {
         IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> new Config("", mockConsoleAdapter));
         assertEquals("Config file path cannot be null or empty", exception.getMessage());
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests that the initial snapshot reflects the values of the configuration file and the defaults.
+     *
+     * @throws IOException            If an I/O error occurs.
+     * @throws ConfigurationException If a configuration error occurs.
+     */
+    @Test
+    @DisplayName("Test Snapshot Reflects Configuration File")
+    void testSnapshotReflectsConfigurationFile() throws IOException, ConfigurationException {
+        // Arrange
+        PropertiesConfiguration existingConfig = new PropertiesConfiguration();
+        existingConfig.setProperty(ConfigKeys.OPENAI_KEY, "existing-token");
+        existingConfig.setProperty(ConfigKeys.OPENAI_MODEL, "test-model");
+        try (Writer writer = Files.newBufferedWriter(tempConfigFile)) {
+            existingConfig.write(writer);
+        }
+
+        // Act
+        Config config = new Config(tempConfigFile.toString(), mockConsoleAdapter);
+        ConfigSnapshot snapshot = config.snapshot();
+
+        // Assert
+        assertEquals("existing-token", snapshot.openAi().apiKey());
+        assertEquals("test-model", snapshot.openAi().modelName());
+        assertEquals(ConfigSnapshot.defaults().openAi().maxTokens(), snapshot.openAi().maxTokens());
+    }
+
+    /**
+     * Tests that reloading publishes a new snapshot and notifies listeners when the file changed.
+     *
+     * @throws IOException            If an I/O error occurs.
+     * @throws ConfigurationException If a configuration error occurs.
+     */
+    @Test
+    @DisplayName("Test Reload Publishes New Snapshot")
+    void testReloadPublishesNewSnapshot() throws IOException, ConfigurationException {
+        // Arrange
+        when(mockConsoleAdapter.receiveMessage()).thenReturn("dummy-token");
+        Config config = new Config(tempConfigFile.toString(), mockConsoleAdapter);
+        List<ConfigSnapshot> published = new ArrayList<>();
+        config.addListener(published::add);
+
+        PropertiesConfiguration changedConfig = new PropertiesConfiguration();
+        try (Reader reader = Files.newBufferedReader(tempConfigFile)) {
+            changedConfig.read(reader);
+        }
+        changedConfig.setProperty(ConfigKeys.OPENAI_MAX_TOKENS, "123");
+        try (Writer writer = Files.newBufferedWriter(tempConfigFile)) {
+            changedConfig.write(writer);
+        }
+
+        // Act
+        boolean reloaded = config.reload();
+
+        // Assert
+        assertTrue(reloaded);
+        assertEquals(123, config.snapshot().openAi().maxTokens());
+        assertEquals("dummy-token", config.snapshot().openAi().apiKey());
+        assertEquals(1, published.size());
+        assertSame(config.snapshot(), published.getFirst());
+        assertFalse(config.reload(), "An unchanged file should not publish a new snapshot.");
+    }
+
+    /**
+     * Tests that an invalid value in the file keeps the previous snapshot.
+     *
+     * @throws IOException            If an I/O error occurs.
+     * @throws ConfigurationException If a configuration error occurs.
+     */
+    @Test
+    @DisplayName("Test Reload Ignores Invalid Values")
+    void testReloadIgnoresInvalidValues() throws IOException, ConfigurationException {
+        // Arrange
+        when(mockConsoleAdapter.receiveMessage()).thenReturn("dummy-token");
+        Config config = new Config(tempConfigFile.toString(), mockConsoleAdapter);
+        ConfigSnapshot before = config.snapshot();
+
+        PropertiesConfiguration changedConfig = new PropertiesConfiguration();
+        try (Reader reader = Files.newBufferedReader(tempConfigFile)) {
+            changedConfig.read(reader);
+        }
+        changedConfig.setProperty(ConfigKeys.OPENAI_MAX_TOKENS, "-5");
+        try (Writer writer = Files.newBufferedWriter(tempConfigFile)) {
+            changedConfig.write(writer);
+        }
+
+        // Act
+        boolean reloaded = config.reload();
+
+        // Assert
+        assertFalse(reloaded);
+        assertSame(before, config.snapshot());
+    }
+}
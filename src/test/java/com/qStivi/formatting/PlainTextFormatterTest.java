@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.formatting;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The {@code PlainTextFormatterTest} class contains unit tests for the {@link PlainTextFormatter} class.
+ * It verifies the conversion of markdown constructs and that streamed replies convert like complete ones without delay.
+ */
+public class PlainTextFormatterTest {
+
+    private static final String REPLY = """
+            Here is **bold**, *italic* and `code`, but 2 * 3 stays.
+            * first
+            * second
+            ```java
+            int x = a ** b;
+            ```
+            Done.""";
+
+    private static final String EXPECTED = """
+            Here is bold, italic and code, but 2 * 3 stays.
+            • first
+            • second
+                int x = a ** b;
+            Done.""";
+
+    private final PlainTextFormatter formatter = PlainTextFormatter.INSTANCE;
+
+    /**
+     * Tests that a complete reply is converted to plain text.
+     */
+    @Test
+    public void testFormat_CompleteReply() {
+        // Act
+        String result = formatter.format(REPLY);
+
+        // Assert
+        assertEquals(EXPECTED, result);
+    }
+
+    /**
+     * Tests that a reply streamed one character at a time converts to the same text.
+     */
+    @Test
+    public void testAppend_CharacterDeltas() {
+        // Arrange
+        var out = new StringBuilder();
+        FormattingStream stream = formatter.open(out::append);
+
+        // Act
+        for (int i = 0; i < REPLY.length(); i++) {
+            stream.append(REPLY.subSequence(i, i + 1));
+        }
+        stream.finish();
+
+        // Assert
+        assertEquals(EXPECTED, out.toString());
+    }
+
+    /**
+     * Tests that plain text is passed on immediately and only an ambiguous marker is held back.
+     */
+    @Test
+    public void testAppend_NoDelay() {
+        // Arrange
+        List<String> parts = new ArrayList<>();
+        FormattingStream stream = formatter.open(part -> parts.add(part.toString()));
+
+        // Act
+        stream.append("Hello wor");
+        stream.append("ld *");
+        stream.append("cat*");
+        stream.finish();
+
+        // Assert
+        assertEquals(List.of("Hello wor", "ld ", "cat"), parts);
+    }
+
+    /**
+     * Tests that unterminated constructs are closed when the reply ends.
+     */
+    @Test
+    public void testFinish_ClosesOpenConstructs() {
+        // Act
+        String result = formatter.format("```\ncode");
+
+        // Assert
+        assertEquals("    code", result);
+    }
+}
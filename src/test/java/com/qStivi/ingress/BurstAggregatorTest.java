@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.ingress;
+
+import com.qStivi.config.BurstSettings;
+import com.qStivi.config.ConfigKeys;
+import com.qStivi.config.ConfigSnapshot;
+import com.qStivi.metrics.Metrics;
+import org.apache.commons.configuration2.MapConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The {@code BurstAggregatorTest} class contains unit tests for the {@link BurstAggregator} class.
+ * It verifies that quick consecutive messages become one turn, that bursts end at the message limit
+ * that the quiet window adapts to the user's rhythm and that the wait is recorded as a delay, not as stage latency.
+ */
+public class BurstAggregatorTest {
+
+    private final List<String> submitted = new CopyOnWriteArrayList<>();
+    private BurstAggregator aggregator;
+
+    /**
+     * Submits pending bursts and stops the timer.
+     */
+    @AfterEach
+    public void tearDown() {
+        if (aggregator != null) {
+            aggregator.close();
+        }
+    }
+
+    /**
+     * Tests that messages within the quiet window are submitted as one turn, answered through the last message.
+     *
+     * @throws Exception If the turn fails.
+     */
+    @Test
+    public void testSubmit_MergesBurstIntoOneTurn() throws Exception {
+        // Arrange
+        aggregator = aggregator(new BurstSettings(true, Duration.ofMillis(300), Duration.ofMillis(20),
+                Duration.ofSeconds(1), Duration.ofSeconds(2), 8));
+
+        // Act
+        CompletableFuture<String> first = aggregator.submit("I need", "user", "default", null);
+        CompletableFuture<String> second = aggregator.submit("a cat", "user", "default", null);
+        CompletableFuture<String> third = aggregator.submit("picture", "user", "default", null);
+
+        // Assert
+        assertEquals("reply to I need\na cat\npicture", third.get(5, TimeUnit.SECONDS));
+        assertNull(first.get(5, TimeUnit.SECONDS));
+        assertNull(second.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of("I need\na cat\npicture"), submitted);
+    }
+
+    /**
+     * Tests that a burst is submitted as soon as it reaches the message limit, and that users are not merged.
+     *
+     * @throws Exception If the turn fails.
+     */
+    @Test
+    public void testSubmit_MaxMessagesEndsBurst() throws Exception {
+        // Arrange
+        aggregator = aggregator(new BurstSettings(true, Duration.ofSeconds(30), Duration.ofSeconds(30),
+                Duration.ofSeconds(30), Duration.ofSeconds(60), 2));
+
+        // Act
+        aggregator.submit("one", "user", "default", null);
+        CompletableFuture<String> full = aggregator.submit("two", "user", "default", null);
+        CompletableFuture<String> other = aggregator.submit("three", "other", "default", null);
+
+        // Assert
+        assertEquals("reply to one\ntwo", full.get(5, TimeUnit.SECONDS));
+        assertFalse(other.isDone());
+    }
+
+    /**
+     * Tests that disabled aggregation submits every message right away.
+     *
+     * @throws Exception If the turn fails.
+     */
+    @Test
+    public void testSubmit_DisabledPassesThrough() throws Exception {
+        // Arrange
+        aggregator = aggregator(new BurstSettings(false, Duration.ofSeconds(30), Duration.ofSeconds(1),
+                Duration.ofSeconds(30), Duration.ofSeconds(60), 8));
+
+        // Act
+        CompletableFuture<String> reply = aggregator.submit("hello", "user", "default", null);
+
+        // Assert
+        assertTrue(reply.isDone());
+        assertEquals("reply to hello", reply.get());
+    }
+
+    /**
+     * Tests that the quiet window shrinks for a user who sends quick bursts and keeps shrinking for single messages.
+     *
+     * @throws Exception If the turn fails.
+     */
+    @Test
+    public void testQuietWindow_AdaptsToUser() throws Exception {
+        // Arrange
+        aggregator = aggregator(new BurstSettings(true, Duration.ofMillis(500), Duration.ofMillis(10),
+                Duration.ofSeconds(1), Duration.ofSeconds(2), 8));
+        long initial = aggregator.quietWindowNanos("user");
+
+        // Act
+        aggregator.submit("one", "user", "default", null);
+        aggregator.submit("two", "user", "default", null);
+        CompletableFuture<String> burst = aggregator.submit("three", "user", "default", null);
+        long afterQuickBurst = aggregator.quietWindowNanos("user");
+        burst.get(5, TimeUnit.SECONDS);
+        aggregator.submit("alone", "other", "default", null).get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), initial);
+        assertTrue(afterQuickBurst < initial, "Quick bursts shorten the window");
+        assertTrue(aggregator.quietWindowNanos("other") < initial, "Single messages shorten the window");
+    }
+
+    /**
+     * Tests that the time a burst was held is recorded as a delay and not among the stage latencies.
+     *
+     * @throws Exception If the turn fails.
+     */
+    @Test
+    public void testFlush_RecordsDelayApartFromStages() throws Exception {
+        // Arrange
+        aggregator = aggregator(new BurstSettings(true, Duration.ofMillis(20), Duration.ofMillis(10),
+                Duration.ofSeconds(1), Duration.ofSeconds(2), 8));
+        long before = Metrics.get().delay("burst").getCount();
+
+        // Act
+        aggregator.submit("hello", "user", "default", null).get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(before + 1, Metrics.get().getDelays().get("burst").getCount());
+        assertFalse(Metrics.get().getHistograms().containsKey("burst"));
+    }
+
+    private BurstAggregator aggregator(BurstSettings burst) {
+        ConfigSnapshot snapshot = ConfigSnapshot.from(new MapConfiguration(Map.of(
+                ConfigKeys.BURST_ENABLED, burst.enabled(),
+                ConfigKeys.BURST_QUIET_WINDOW_MILLIS, burst.quietWindow().toMillis(),
+                ConfigKeys.BURST_MIN_QUIET_MILLIS, burst.minQuiet().toMillis(),
+                ConfigKeys.BURST_MAX_QUIET_MILLIS, burst.maxQuiet().toMillis(),
+                ConfigKeys.BURST_MAX_WAIT_MILLIS, burst.maxWait().toMillis(),
+                ConfigKeys.BURST_MAX_MESSAGES, burst.maxMessages())));
+        return new BurstAggregator(() -> snapshot, (input, userId, channel, onDelta) -> {
+            submitted.add(input);
+            return CompletableFuture.completedFuture("reply to " + input);
+        });
+    }
+}
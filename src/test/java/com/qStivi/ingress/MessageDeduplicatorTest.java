@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.ingress;
+
+import com.qStivi.config.ConfigKeys;
+import com.qStivi.config.ConfigSnapshot;
+import org.apache.commons.configuration2.MapConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The {@code MessageDeduplicatorTest} class contains unit tests for the {@link MessageDeduplicator} class.
+ * It verifies that redeliveries are recognized within the window, also beyond the exact set, and forgotten after it,
+ * and that the enabled setting is followed at runtime.
+ */
+public class MessageDeduplicatorTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    /**
+     * Tests that the second delivery of an id is a duplicate and other ids are not.
+     */
+    @Test
+    public void testIsDuplicate_Redelivery() {
+        // Arrange
+        var deduplicator = deduplicator(100);
+
+        // Act
+        boolean first = deduplicator.isDuplicate("m1");
+        boolean other = deduplicator.isDuplicate("m2");
+        boolean again = deduplicator.isDuplicate("m1");
+
+        // Assert
+        assertFalse(first);
+        assertFalse(other);
+        assertTrue(again);
+    }
+
+    /**
+     * Tests that ids evicted from the exact set are still recognized by the Bloom filters,
+     * and that distinct ids are not mistaken for duplicates.
+     */
+    @Test
+    public void testIsDuplicate_BeyondExactSet() {
+        // Arrange
+        var deduplicator = deduplicator(10);
+        int falsePositives = 0;
+
+        // Act
+        for (int i = 0; i < 10_000; i++) {
+            if (deduplicator.isDuplicate("message-" + i)) {
+                falsePositives++;
+            }
+        }
+
+        // Assert
+        assertEquals(0, falsePositives);
+        assertTrue(deduplicator.isDuplicate("message-0"));
+    }
+
+    /**
+     * Tests that ids are forgotten once the window has passed.
+     */
+    @Test
+    public void testIsDuplicate_AfterWindow() {
+        // Arrange
+        var deduplicator = deduplicator(100);
+        deduplicator.isDuplicate("m1");
+
+        // Act
+        now.addAndGet(Duration.ofMinutes(30).toNanos());
+        boolean afterWindow = deduplicator.isDuplicate("m1");
+
+        // Assert
+        assertFalse(afterWindow);
+    }
+
+    /**
+     * Tests that ids are neither checked nor recorded while deduplication is disabled, and checked again once it is
+     * enabled without a restart.
+     */
+    @Test
+    public void testIsDuplicate_FollowsEnabledSetting() {
+        // Arrange
+        var enabled = new AtomicBoolean(false);
+        var deduplicator = new MessageDeduplicator(() -> snapshot(enabled.get(), 100), now::get);
+
+        // Act
+        boolean first = deduplicator.isDuplicate("m1");
+        boolean redelivered = deduplicator.isDuplicate("m1");
+        enabled.set(true);
+        boolean afterEnabling = deduplicator.isDuplicate("m1");
+        boolean redeliveredAgain = deduplicator.isDuplicate("m1");
+
+        // Assert
+        assertFalse(first);
+        assertFalse(redelivered);
+        assertFalse(afterEnabling);
+        assertTrue(redeliveredAgain);
+    }
+
+    private MessageDeduplicator deduplicator(int exactSize) {
+        var snapshot = snapshot(true, exactSize);
+        return new MessageDeduplicator(() -> snapshot, now::get);
+    }
+
+    private static ConfigSnapshot snapshot(boolean enabled, int exactSize) {
+        return ConfigSnapshot.from(new MapConfiguration(Map.of(
+                ConfigKeys.DEDUP_ENABLED, enabled,
+                ConfigKeys.DEDUP_EXPECTED_MESSAGES, 10_000,
+                ConfigKeys.DEDUP_EXACT_SIZE, exactSize)));
+    }
+}
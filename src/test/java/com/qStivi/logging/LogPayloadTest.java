@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.logging;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The {@code LogPayloadTest} class contains unit tests for the {@link LogPayload} class.
+ * It verifies that long payloads are cut to the configured length with a count of the omitted characters.
+ */
+public class LogPayloadTest {
+
+    /**
+     * Restores the default length.
+     */
+    @AfterEach
+    public void tearDown() {
+        LogPayload.setMaxChars(200);
+    }
+
+    /**
+     * Tests that text up to the maximum length is written unchanged.
+     */
+    @Test
+    public void testToString_ShortTextUnchanged() {
+        // Arrange
+        LogPayload.setMaxChars(5);
+
+        // Act
+        String exact = LogPayload.of("Hello").toString();
+        String empty = LogPayload.of("").toString();
+
+        // Assert
+        assertEquals("Hello", exact);
+        assertEquals("", empty);
+    }
+
+    /**
+     * Tests that longer text is cut to the maximum length and reports how many characters were omitted.
+     */
+    @Test
+    public void testToString_LongTextTruncated() {
+        // Arrange
+        LogPayload.setMaxChars(5);
+
+        // Act
+        String truncated = LogPayload.of(new StringBuilder("Hello, world")).toString();
+
+        // Assert
+        assertEquals("Hello... (+7 chars)", truncated);
+    }
+
+    /**
+     * Tests that the length is read when the payload is formatted, so a changed limit applies to wrapped payloads.
+     */
+    @Test
+    public void testToString_ReadsLimitWhenFormatted() {
+        // Arrange
+        LogPayload payload = LogPayload.of("Hello, world");
+
+        // Act
+        LogPayload.setMaxChars(2);
+        String truncated = payload.toString();
+        LogPayload.setMaxChars(0);
+        String unlimited = payload.toString();
+
+        // Assert
+        assertEquals("He... (+10 chars)", truncated);
+        assertEquals("Hello, world", unlimited);
+    }
+
+    /**
+     * Tests that a missing payload is written as {@code null}.
+     */
+    @Test
+    public void testToString_Null() {
+        // Act
+        String text = LogPayload.of(null).toString();
+
+        // Assert
+        assertEquals("null", text);
+    }
+}
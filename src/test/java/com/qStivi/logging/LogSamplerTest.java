@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.logging;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The {@code LogSamplerTest} class contains unit tests for the {@link LogSampler} class.
+ * It verifies that samplers let through exactly one in every n calls, counted per sampler.
+ */
+public class LogSamplerTest {
+
+    /**
+     * Restores logging of every call.
+     */
+    @AfterEach
+    public void tearDown() {
+        LogSampler.setSampleEvery(1);
+    }
+
+    /**
+     * Tests that rates below two log every call.
+     */
+    @Test
+    public void testSample_LogsEveryCallByDefault() {
+        // Arrange
+        LogSampler sampler = new LogSampler();
+
+        // Act
+        long atOne = IntStream.range(0, 10).filter(i -> sampler.sample()).count();
+        LogSampler.setSampleEvery(0);
+        long atZero = IntStream.range(0, 10).filter(i -> sampler.sample()).count();
+
+        // Assert
+        assertEquals(10, atOne);
+        assertEquals(10, atZero);
+    }
+
+    /**
+     * Tests that a rate of n lets the first call and then every n-th call through, counting each sampler on its own.
+     */
+    @Test
+    public void testSample_LogsEveryNthCall() {
+        // Arrange
+        LogSampler.setSampleEvery(3);
+        LogSampler sampler = new LogSampler();
+        LogSampler other = new LogSampler();
+
+        // Act
+        List<Boolean> samples = IntStream.range(0, 7).mapToObj(i -> sampler.sample()).toList();
+        boolean otherFirst = other.sample();
+
+        // Assert
+        assertEquals(List.of(true, false, false, true, false, false, true), samples);
+        assertTrue(otherFirst);
+    }
+
+    /**
+     * Tests that concurrent calls let through exactly one in every n calls.
+     *
+     * @throws Exception If a thread fails.
+     */
+    @Test
+    public void testSample_ConcurrentRate() throws Exception {
+        // Arrange
+        LogSampler.setSampleEvery(10);
+        LogSampler sampler = new LogSampler();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Long>> futures = new ArrayList<>();
+
+        // Act
+        try {
+            for (int thread = 0; thread < 4; thread++) {
+                futures.add(executor.submit(() -> IntStream.range(0, 2_500).filter(i -> sampler.sample()).count()));
+            }
+            long logged = 0;
+            for (Future<Long> future : futures) {
+                logged += future.get(5, TimeUnit.SECONDS);
+            }
+
+            // Assert
+            assertEquals(1_000, logged);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.memory;
+
+import com.qStivi.config.ConfigSnapshot;
+import com.qStivi.config.IngestSettings;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The {@code DocumentIngestorTest} class contains unit tests for the {@link DocumentIngestor} class.
+ * It verifies that documents are cut into overlapping chunks, that ingested text can be recalled
+ * that only new or changed documents are read again, that deleted documents are retired and that near-duplicates
+ * are left out of searches only.
+ */
+public class DocumentIngestorTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Tests that consecutive chunks overlap and together cover the whole document.
+     *
+     * @throws Exception If the document cannot be ingested.
+     */
+    @Test
+    public void testIngest_OverlappingChunks() throws Exception {
+        // Arrange
+        var text = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            text.append("word").append(i).append(' ');
+        }
+        Files.writeString(directory.resolve("words.txt"), text);
+        var ingestor = ingestor(100, 20);
+
+        // Act
+        IngestProgress progress = ingestor.ingest(List.of(directory), p -> {
+        });
+
+        // Assert
+        List<Chunk> chunks = chunks(ingestor);
+        assertEquals(1, progress.filesRead());
+        assertEquals(chunks.size(), progress.chunksIndexed());
+        assertEquals(0, chunks.getFirst().offset());
+        for (int i = 1; i < chunks.size(); i++) {
+            Chunk previous = chunks.get(i - 1);
+            Chunk chunk = chunks.get(i);
+            assertTrue(chunk.text().length() <= 100);
+            assertEquals(previous.offset() + previous.text().length() - 20, chunk.offset());
+            assertTrue(previous.text().endsWith(chunk.text().substring(0, 20)));
+        }
+        Chunk last = chunks.getLast();
+        assertEquals(text.length(), last.offset() + last.text().length());
+    }
+
+    /**
+     * Tests that a search returns the chunk of the document that shares its words.
+     *
+     * @throws Exception If the documents cannot be ingested.
+     */
+    @Test
+    public void testSearch_FindsMatchingDocument() throws Exception {
+        // Arrange
+        Files.writeString(directory.resolve("cats.md"), "Cats purr when they are happy and sleep in the sun.");
+        Files.writeString(directory.resolve("ships.txt"), "Container ships carry cargo across the ocean.");
+        Files.writeString(directory.resolve("ignored.bin"), "Cats purr");
+        var ingestor = ingestor(100, 20);
+        ingestor.ingest(List.of(directory), p -> {
+        });
+
+        // Act
+        List<MemoryIndex.Match> matches = ingestor.search("why do cats purr", 1);
+
+        // Assert
+        assertEquals(2, ingestor.index().size());
+        assertEquals(1, matches.size());
+        assertEquals(directory.resolve("cats.md"), matches.getFirst().chunk().source());
+    }
+
+    /**
+     * Tests that unchanged documents are skipped and that an edited document replaces its old chunks,
+     * even where its text nearly repeats them.
+     *
+     * @throws Exception If the documents cannot be ingested.
+     */
+    @Test
+    public void testIngest_ReadsOnlyChangedDocuments() throws Exception {
+        // Arrange
+        Path cats = directory.resolve("cats.md");
+        Files.writeString(cats, "Cats purr when they are happy and sleep in the sun.");
+        Files.writeString(directory.resolve("ships.txt"), "Container ships carry cargo across the ocean.");
+        var ingestor = ingestor(100, 20);
+        ingestor.ingest(List.of(directory), p -> {
+        });
+
+        // Act
+        IngestProgress unchanged = ingestor.ingest(List.of(directory), p -> {
+        });
+        Files.writeString(cats, "Cats purr when they are happy and sleep in the sun. Dogs bark.");
+        Files.setLastModifiedTime(cats, FileTime.fromMillis(Files.getLastModifiedTime(cats).toMillis() + 1_000));
+        IngestProgress edited = ingestor.ingest(List.of(directory), p -> {
+        });
+
+        // Assert
+        assertEquals(0, unchanged.filesTotal());
+        assertEquals(1, edited.filesRead());
+        assertEquals(1, edited.chunksIndexed());
+        List<MemoryIndex.Match> matches = ingestor.search("why do cats purr", 5);
+        assertEquals(1, matches.size());
+        assertTrue(matches.getFirst().chunk().text().endsWith("Dogs bark."));
+    }
+
+    /**
+     * Tests that the chunks of a document that was deleted are retired at the next ingestion.
+     *
+     * @throws Exception If the documents cannot be ingested.
+     */
+    @Test
+    public void testIngest_RetiresDeletedDocuments() throws Exception {
+        // Arrange
+        Path cats = directory.resolve("cats.md");
+        Files.writeString(cats, "Cats purr when they are happy and sleep in the sun.");
+        Files.writeString(directory.resolve("ships.txt"), "Container ships carry cargo across the ocean.");
+        var ingestor = ingestor(100, 20);
+        ingestor.ingest(List.of(directory), p -> {
+        });
+
+        // Act
+        Files.delete(cats);
+        ingestor.ingest(List.of(directory), p -> {
+        });
+
+        // Assert
+        assertEquals(Set.of(directory.resolve("ships.txt")), ingestor.index().sources());
+        assertFalse(ingestor.index().isCurrent(cats, 0, 0));
+        assertTrue(ingestor.search("why do cats purr", 5).stream().noneMatch(match -> match.chunk().source().equals(cats)));
+    }
+
+    /**
+     * Tests that a chunk nearly repeating a chunk of another document is indexed but left out of searches, and is
+     * recalled once the other document no longer contains it.
+     *
+     * @throws Exception If the documents cannot be ingested.
+     */
+    @Test
+    public void testSearch_NearDuplicateSurvivesEditOfOriginal() throws Exception {
+        // Arrange
+        Path original = directory.resolve("a.md");
+        Path copy = directory.resolve("b.md");
+        Files.writeString(original, "Cats purr when they are happy and sleep in the warm sun all afternoon.");
+        Files.writeString(copy, "Cats purr when they are happy and sleep in the warm sun all afternoon!");
+        var ingestor = ingestor(100, 20);
+        ingestor.ingest(List.of(directory), p -> {
+        });
+        List<MemoryIndex.Match> before = ingestor.search("why do cats purr", 5);
+
+        // Act
+        Files.writeString(original, "Container ships carry cargo across the ocean.");
+        Files.setLastModifiedTime(original, FileTime.fromMillis(Files.getLastModifiedTime(original).toMillis() + 1_000));
+        ingestor.ingest(List.of(directory), p -> {
+        });
+        List<MemoryIndex.Match> after = ingestor.search("why do cats purr", 5);
+
+        // Assert
+        assertEquals(1, before.size());
+        assertEquals(copy, after.getFirst().chunk().source());
+    }
+
+    private static DocumentIngestor ingestor(int chunkChars, int overlapChars) {
+        var defaults = ConfigSnapshot.defaults().ingest();
+        var settings = new IngestSettings(List.of(), chunkChars, overlapChars, 2, 4, 64, defaults.extensions(),
+                false, defaults.directory(), defaults.snapshotEveryChunks(), defaults.snapshotInterval(), defaults.maxSegments(), true);
+        return new DocumentIngestor(settings, new HashingEmbedder(64), new MemoryIndex(64), text -> text.length() / 4);
+    }
+
+    private static List<Chunk> chunks(DocumentIngestor ingestor) {
+        // Chunks are indexed in parallel, so their order is restored from the offsets
+        var chunks = new ArrayList<>(ingestor.index().chunks());
+        chunks.sort(Comparator.comparingLong(Chunk::offset));
+        return chunks;
+    }
+}
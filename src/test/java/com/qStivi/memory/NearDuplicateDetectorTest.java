@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.memory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The {@code NearDuplicateDetectorTest} class contains unit tests for the {@link NearDuplicateDetector} class.
+ * It verifies that restated texts are recognized while different texts are kept.
+ */
+public class NearDuplicateDetectorTest {
+
+    private static final String FACT = "The cat named Whiskers likes to sleep on the warm windowsill every afternoon "
+            + "while the sun is shining and birds sing in the garden outside the old house near the river";
+
+    /**
+     * Tests that a text differing in case, punctuation or one word is a near-duplicate.
+     */
+    @Test
+    public void testAdd_NearDuplicates() {
+        // Arrange
+        var detector = new NearDuplicateDetector();
+        detector.add(FACT);
+
+        // Act
+        boolean shouted = detector.add(FACT.toUpperCase() + "!!");
+        boolean renamed = detector.add(FACT.replace("Whiskers", "Mittens"));
+
+        // Assert
+        assertFalse(shouted);
+        assertFalse(renamed);
+        assertEquals(1, detector.size());
+    }
+
+    /**
+     * Tests that unrelated texts and a text sharing only its first half are kept.
+     */
+    @Test
+    public void testAdd_DistinctTexts() {
+        // Arrange
+        var detector = new NearDuplicateDetector();
+        detector.add(FACT);
+
+        // Act
+        boolean unrelated = detector.add("Container ships carry cargo across the ocean to distant ports every day");
+        boolean partial = detector.add("The cat named Whiskers likes to sleep on the warm windowsill");
+
+        // Assert
+        assertTrue(unrelated);
+        assertTrue(partial);
+        assertEquals(3, detector.size());
+    }
+
+    /**
+     * Tests that duplicates are removed from a result list, keeping the first occurrence.
+     */
+    @Test
+    public void testDistinct_KeepsFirst() {
+        // Arrange
+        List<String> results = List.of(FACT, "Cats purr when they are happy.", FACT + " today", "cats purr when they are happy");
+
+        // Act
+        List<String> distinct = NearDuplicateDetector.distinct(results);
+
+        // Assert
+        assertEquals(List.of(FACT, "Cats purr when they are happy."), distinct);
+    }
+}
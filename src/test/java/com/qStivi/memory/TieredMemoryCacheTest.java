@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.memory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The {@code TieredMemoryCacheTest} class contains unit tests for the {@link TieredMemoryCache} class and its tiers.
+ * It verifies that lookups are served from the hot and warm tiers, that invalidation reaches both,
+ * that the warm tier stays within its bounds and that the hot tier keeps frequently used entries during a scan.
+ */
+public class TieredMemoryCacheTest {
+
+    @TempDir
+    Path directory;
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    /**
+     * Tests that a repeated lookup is answered by the hot tier without loading again.
+     */
+    @Test
+    public void testGet_HotTier() {
+        // Arrange
+        var cache = new TieredMemoryCache(100);
+
+        // Act
+        String first = cache.get("user", "cats", () -> load("cats"));
+        String second = cache.get("user", "cats", () -> load("cats"));
+
+        // Assert
+        assertEquals("memory of cats", first);
+        assertEquals("memory of cats", second);
+        assertEquals(1, loads.get());
+    }
+
+    /**
+     * Tests that entries survive a restart in the warm tier.
+     *
+     * @throws IOException If the warm tier cannot be opened.
+     */
+    @Test
+    public void testGet_WarmTierAfterRestart() throws IOException {
+        // Arrange
+        new TieredMemoryCache(100, directory).get("user", "cats", () -> load("cats"));
+        var restarted = new TieredMemoryCache(100, directory);
+
+        // Act
+        String value = restarted.get("user", "cats", () -> load("cats"));
+
+        // Assert
+        assertEquals("memory of cats", value);
+        assertEquals(1, loads.get());
+    }
+
+    /**
+     * Tests that invalidating an owner reloads its entries from both tiers and keeps other owners cached.
+     *
+     * @throws IOException If the warm tier cannot be opened.
+     */
+    @Test
+    public void testInvalidate_Owner() throws IOException {
+        // Arrange
+        var cache = new TieredMemoryCache(100, directory);
+        cache.get("alice", "cats", () -> load("cats"));
+        cache.get("bob", "cats", () -> load("cats"));
+
+        // Act
+        cache.invalidate("alice");
+        cache.get("alice", "cats", () -> load("cats"));
+        cache.get("bob", "cats", () -> load("cats"));
+
+        // Assert
+        assertEquals(3, loads.get());
+    }
+
+    /**
+     * Tests that the warm tier deletes its oldest entries once it holds more than its limit.
+     *
+     * @throws IOException If the warm tier cannot be opened.
+     */
+    @Test
+    public void testDiskTier_EvictsOverLimit() throws IOException {
+        // Arrange
+        var warm = new DiskTier(directory, 10, Duration.ofHours(1));
+
+        // Act
+        for (int i = 0; i < 25; i++) {
+            warm.put("user", "key-" + i, "value-" + i);
+        }
+
+        // Assert
+        assertTrue(warm.size() <= 10, "size " + warm.size());
+        assertEquals(warm.size(), new DiskTier(directory, 10, Duration.ofHours(1)).size());
+    }
+
+    /**
+     * Tests that entries of the warm tier older than its maximum age are misses and are deleted at startup.
+     *
+     * @throws IOException If the warm tier cannot be opened.
+     */
+    @Test
+    public void testDiskTier_ExpiresOldEntries() throws IOException {
+        // Arrange
+        var warm = new DiskTier(directory, 10, Duration.ofHours(1));
+        warm.put("user", "cats", "memory of cats");
+        FileTime twoHoursAgo = FileTime.from(Instant.now().minus(Duration.ofHours(2)));
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                Files.setLastModifiedTime(file, twoHoursAgo);
+            }
+        }
+
+        // Act
+        String value = warm.get("user", "cats");
+        var restarted = new DiskTier(directory, 10, Duration.ofHours(1));
+
+        // Assert
+        assertNull(value);
+        assertEquals(0, restarted.size());
+        try (Stream<Path> files = Files.walk(directory)) {
+            assertEquals(List.of(), files.filter(Files::isRegularFile).toList());
+        }
+    }
+
+    /**
+     * Tests that a scan of keys used once does not evict the keys used often.
+     */
+    @Test
+    public void testTinyLfu_ScanResistance() {
+        // Arrange
+        var cache = new TinyLfuCache<String, String>(100);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                if (cache.get("hot-" + i) == null) {
+                    cache.put("hot-" + i, "value");
+                }
+            }
+        }
+
+        // Act
+        for (int i = 0; i < 10_000; i++) {
+            cache.put("scan-" + i, "value");
+        }
+
+        // Assert
+        int retained = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.get("hot-" + i) != null) {
+                retained++;
+            }
+        }
+        // Only the window, a single entry here, is plain LRU; a pure LRU cache would retain none
+        assertTrue(retained >= 49, "retained " + retained);
+        assertTrue(cache.size() <= 100);
+    }
+
+    private String load(String key) {
+        loads.incrementAndGet();
+        return "memory of " + key;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The {@code LatencyHistogramTest} class contains unit tests for the {@link LatencyHistogram} class.
+ * It verifies bucket mapping, percentile estimation and the Prometheus rendering of recorded values.
+ */
+public class LatencyHistogramTest {
+
+    /**
+     * Tests that every bucket's upper bound maps back into the same bucket and that buckets are contiguous.
+     */
+    @Test
+    public void testBucketBounds_AreContiguous() {
+        long previousUpperBound = -1;
+        for (int i = 0; i < 200; i++) {
+            long upperBound = LatencyHistogram.bucketUpperBound(i);
+            assertEquals(i, LatencyHistogram.bucketIndex(upperBound));
+            assertEquals(i, LatencyHistogram.bucketIndex(previousUpperBound + 1));
+            previousUpperBound = upperBound;
+        }
+        assertTrue(LatencyHistogram.bucketIndex(Long.MAX_VALUE) >= 0);
+    }
+
+    /**
+     * Tests that percentile estimates stay within the histogram's relative error bound.
+     */
+    @Test
+    public void testValueAtQuantile_IsWithinErrorBound() {
+        // Arrange
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 10_000; value++) {
+            histogram.record(value * 1_000);
+        }
+
+        // Act
+        long p50 = histogram.getValueAtQuantile(0.5);
+        long p99 = histogram.getValueAtQuantile(0.99);
+
+        // Assert
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(10_000_000, histogram.getMax());
+        assertTrue(Math.abs(p50 - 5_000_000) <= 5_000_000 * 0.125, "p50 was " + p50);
+        assertTrue(Math.abs(p99 - 9_900_000) <= 9_900_000 * 0.125, "p99 was " + p99);
+    }
+
+    /**
+     * Tests that an empty histogram reports zero for every quantile.
+     */
+    @Test
+    public void testValueAtQuantile_EmptyHistogram_ReturnsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getValueAtQuantile(0.99));
+        assertThrows(IllegalArgumentException.class, () -> histogram.getValueAtQuantile(1.5));
+    }
+
+    /**
+     * Tests that recorded stages and token counters appear in the Prometheus text output.
+     */
+    @Test
+    public void testRender_ContainsStagesAndTokens() {
+        // Arrange
+        Metrics metrics = new Metrics();
+        metrics.histogram(Stage.OPENAI_REQUEST.metricName()).record(2_000_000);
+        metrics.recordTokens(12, 34);
+        metrics.cacheHit("memory");
+
+        // Act
+        String output = PrometheusExporter.render(metrics);
+
+        // Assert
+        assertTrue(output.contains("qgpt_stage_latency_seconds_count{stage=\"openai_request\"} 1"));
+        assertTrue(output.contains("qgpt_tokens_total{kind=\"prompt\"} 12"));
+        assertTrue(output.contains("qgpt_tokens_total{kind=\"completion\"} 34"));
+        assertTrue(output.contains("qgpt_cache_requests_total{cache=\"memory\",result=\"hit\"} 1"));
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The {@code PrometheusExporterTest} class contains unit tests for the {@link PrometheusExporter} class.
+ * It verifies that the endpoint serves the metrics and that closing the exporter stops its server threads.
+ */
+public class PrometheusExporterTest {
+
+    /**
+     * Tests that the exporter serves the metrics until it is closed, and leaves no server thread behind.
+     *
+     * @throws Exception If the endpoint cannot be read.
+     */
+    @Test
+    public void testClose_StopsServer() throws Exception {
+        // Arrange
+        var metrics = new Metrics();
+        metrics.count("requests", 3);
+        var exporter = new PrometheusExporter(metrics, 0);
+        int port = exporter.port();
+        String body = fetch(port);
+
+        // Act
+        exporter.close();
+
+        // Assert
+        assertTrue(body.contains("qgpt_requests_total 3"), body);
+        assertThrows(ConnectException.class, () -> fetch(port));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (serverThreadAlive() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(serverThreadAlive(), "HTTP dispatcher thread still running");
+    }
+
+    private static String fetch(int port) throws IOException {
+        var connection = (HttpURLConnection) URI.create("http://localhost:" + port + "/metrics").toURL().openConnection();
+        try (InputStream in = connection.getInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static boolean serverThreadAlive() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .anyMatch(thread -> thread.isAlive() && (thread.getName().startsWith("HTTP-Dispatcher") || thread.getName().equals("metrics-exporter")));
+    }
+}
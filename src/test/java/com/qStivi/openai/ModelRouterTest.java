@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.openai;
+
+import com.qStivi.config.ConfigKeys;
+import com.qStivi.config.ConfigSnapshot;
+import com.theokanning.openai.completion.chat.AssistantMessage;
+import com.theokanning.openai.completion.chat.ChatCompletionChoice;
+import org.apache.commons.configuration2.MapConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The {@code ModelRouterTest} class contains unit tests for the {@link ModelRouter} class.
+ * It verifies the model plans per route and prompt size, and the escalation rules of the cascade.
+ */
+public class ModelRouterTest {
+
+    private final ModelRouter router = new ModelRouter(ConfigSnapshot::defaults);
+
+    /**
+     * Tests that small chat requests cascade from the fast to the strong model when the cascade is enabled.
+     */
+    @Test
+    public void testPlan_ChatCascades() {
+        // Arrange
+        ConfigSnapshot snapshot = ConfigSnapshot.from(new MapConfiguration(Map.of(ConfigKeys.MODELS_CASCADE, true)));
+        ModelRouter cascading = new ModelRouter(() -> snapshot);
+
+        // Act
+        List<ModelRouter.Choice> plan = cascading.plan(Route.CHAT, 100);
+
+        // Assert
+        assertEquals(2, plan.size());
+        assertEquals(snapshot.openAi().modelName(), plan.get(0).model());
+        assertEquals(snapshot.models().strongModel(), plan.get(1).model());
+    }
+
+    /**
+     * Tests that small chat requests stay on the fast model by default.
+     */
+    @Test
+    public void testPlan_ChatUsesFastModelByDefault() {
+        // Act
+        List<ModelRouter.Choice> plan = router.plan(Route.CHAT, 100);
+
+        // Assert
+        assertEquals(List.of(new ModelRouter.Choice(ConfigSnapshot.defaults().openAi().modelName(),
+                ConfigSnapshot.defaults().openAi().maxTokens())), plan);
+    }
+
+    /**
+     * Tests that tasks and large inputs go to the strong model directly.
+     */
+    @Test
+    public void testPlan_TasksAndLargeInputsUseStrongModel() {
+        String strong = ConfigSnapshot.defaults().models().strongModel();
+        int threshold = ConfigSnapshot.defaults().models().escalateInputTokens();
+
+        assertEquals(List.of(new ModelRouter.Choice(strong, ConfigSnapshot.defaults().models().strongMaxTokens())), router.plan(Route.TASK, 1));
+        assertEquals(strong, router.plan(Route.CHAT, threshold).getFirst().model());
+        assertEquals(1, router.plan(Route.CHAT, threshold).size());
+    }
+
+    /**
+     * Tests that only the fast model is used when no strong model is configured.
+     */
+    @Test
+    public void testPlan_FastOnly() {
+        // Arrange
+        ConfigSnapshot snapshot = ConfigSnapshot.from(new MapConfiguration(Map.of(ConfigKeys.MODELS_STRONG_NAME, "")));
+        ModelRouter fastOnly = new ModelRouter(() -> snapshot);
+
+        // Act & Assert
+        assertEquals(1, fastOnly.plan(Route.TASK, 100_000).size());
+        assertEquals(snapshot.openAi().modelName(), fastOnly.plan(Route.TASK, 100_000).getFirst().model());
+    }
+
+    /**
+     * Tests that answers escalate when they were cut off, are empty or sound unsure, and are kept otherwise.
+     */
+    @Test
+    public void testShouldEscalate() {
+        assertTrue(router.shouldEscalate(choice("Here is half of", "length")));
+        assertTrue(router.shouldEscalate(choice("", "stop")));
+        assertTrue(router.shouldEscalate(choice("Meow, I'm not sure about that.", "stop")));
+        assertFalse(router.shouldEscalate(choice("Meow! The answer is 42.", "stop")));
+    }
+
+    /**
+     * Tests that a request runs while holding a permit of its model.
+     *
+     * @throws Exception If the request fails.
+     */
+    @Test
+    public void testCall_ReturnsResult() throws Exception {
+        assertEquals("ok", router.call("gpt-4o", () -> "ok"));
+    }
+
+    private static ChatCompletionChoice choice(String text, String finishReason) {
+        ChatCompletionChoice choice = new ChatCompletionChoice();
+        choice.setMessage(new AssistantMessage(text));
+        choice.setFinishReason(finishReason);
+        return choice;
+    }
+}
@@ -6,16 +6,20 @@
 
 package com.qStivi.openai;
 
+import com.qStivi.config.ConfigSnapshot;
 import com.theokanning.openai.completion.chat.*;
 import com.theokanning.openai.service.OpenAiService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
 /**
@@ -150,4 +154,57 @@ public class OpenAiClientTest {
         assertEquals("system", messages.getFirst().getRole());
         assertEquals("Test system message.", messages.getFirst().getTextContent());
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests that older turns are replaced by a summary when they are unchanged, and that the new history is reported.
+     */
+    @Test
+    public void testReplaceHistory_Unchanged() {
+        // Given
+        List<ChatMessage> history = List.of(new UserMessage("Hi"), new AssistantMessage("Meow"), new UserMessage("Bye"));
+        List<List<ChatMessage>> replaced = new ArrayList<>();
+        ConversationObserver observer = new ConversationObserver() {
+            @Override
+            public void onAppend(ChatMessage message) {
+            }
+
+            @Override
+            public void onReplace(List<ChatMessage> messages) {
+                replaced.add(messages);
+            }
+        };
+        OpenAiClient client = OpenAiClient.builder(mockService, ConfigSnapshot::defaults).history(history, observer).build();
+        List<ChatMessage> older = client.getMessages().subList(1, 3);
+
+        // When
+        boolean swapped = client.replaceHistory(older, new SystemMessage(ConversationCompactor.SUMMARY_PREFIX + "Greetings"));
+
+        // Then
+        assertTrue(swapped);
+        List<ChatMessage> messages = client.getMessages();
+        assertEquals(3, messages.size());
+        assertEquals(ConversationCompactor.SUMMARY_PREFIX + "Greetings", messages.get(1).getTextContent());
+        assertEquals("Bye", messages.get(2).getTextContent());
+        assertEquals(1, replaced.size());
+        assertEquals(2, replaced.getFirst().size());
+    }
+
+    /**
+     * Tests that a summary is discarded when the conversation was reset while it was being written.
+     */
+    @Test
+    public void testReplaceHistory_ChangedInBetween() {
+        // Given
+        List<ChatMessage> history = List.of(new UserMessage("Hi"), new AssistantMessage("Meow"), new UserMessage("Bye"));
+        OpenAiClient client = OpenAiClient.builder(mockService, ConfigSnapshot::defaults).history(history, ConversationObserver.NONE).build();
+        List<ChatMessage> older = client.getMessages().subList(1, 3);
+        client.resetConversation();
+
+        // When
+        boolean swapped = client.replaceHistory(older, new SystemMessage(ConversationCompactor.SUMMARY_PREFIX + "Greetings"));
+
+        // Then
+        assertFalse(swapped);
+        assertEquals(1, client.getMessages().size());
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.openai;
+
+import com.qStivi.config.ConfigSnapshot;
+import com.qStivi.scheduling.RequestHandle;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The {@code OpenAiTransportTest} class contains unit tests for the {@link OpenAiTransport} class.
+ * It verifies against a local HTTP server that services share one connection pool, and that cancelling a request
+ * cancels its HTTP call.
+ */
+public class OpenAiTransportTest {
+
+    private final CountDownLatch received = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final ExecutorService caller = Executors.newSingleThreadExecutor();
+    private final ExecutorService handlers = Executors.newCachedThreadPool();
+    private HttpServer server;
+    private OpenAiTransport transport;
+
+    /**
+     * Starts a local server that answers {@code /ok} right away and holds {@code /slow} until the test ends.
+     *
+     * @throws IOException If the server cannot be bound.
+     */
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/ok", exchange -> {
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.createContext("/slow", exchange -> {
+            received.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.setExecutor(handlers);
+        server.start();
+        transport = new OpenAiTransport(ConfigSnapshot.defaults().transport());
+    }
+
+    /**
+     * Releases held responses and stops the server and the transport.
+     */
+    @AfterEach
+    public void tearDown() {
+        release.countDown();
+        caller.shutdownNow();
+        transport.close();
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+
+    /**
+     * Tests that services with different API keys send their requests over the same pooled connection.
+     *
+     * @throws IOException If a request fails.
+     */
+    @Test
+    public void testService_SharesConnectionPool() throws IOException {
+        // Arrange
+        OkHttpClient first = transport.client("first-key", Duration.ofSeconds(5));
+        OkHttpClient second = transport.client("second-key", Duration.ofSeconds(5));
+
+        // Act
+        try (Response response = first.newCall(request("/ok")).execute()) {
+            assertEquals(204, response.code());
+        }
+        try (Response response = second.newCall(request("/ok")).execute()) {
+            assertEquals(204, response.code());
+        }
+
+        // Assert
+        assertSame(first.connectionPool(), second.connectionPool());
+        assertSame(first.dispatcher(), second.dispatcher());
+        assertEquals(1, transport.connectionCount());
+    }
+
+    /**
+     * Tests that cancelling the request bound to the calling thread aborts its blocked HTTP call.
+     * The call runs on a platform thread, whose socket read is not unblocked by the interrupt of the cancellation.
+     *
+     * @throws Exception If the call does not end.
+     */
+    @Test
+    public void testService_CancelledRequestCancelsCall() throws Exception {
+        // Arrange
+        OkHttpClient client = transport.client("key", Duration.ofSeconds(30));
+        RequestHandle handle = new RequestHandle("user");
+        Future<IOException> result = caller.submit(() -> {
+            try (RequestHandle.Binding ignored = handle.bind(); Response ignoredResponse = client.newCall(request("/slow")).execute()) {
+                return null;
+            } catch (IOException e) {
+                return e;
+            }
+        });
+        assertTrue(received.await(5, TimeUnit.SECONDS), "The request reaches the server");
+
+        // Act
+        handle.cancel();
+
+        // Assert
+        IOException failure = result.get(5, TimeUnit.SECONDS);
+        assertNotNull(failure, "The call fails instead of waiting for the response");
+        assertEquals(1, release.getCount(), "The server never answered");
+    }
+
+    private Request request(String path) {
+        return new Request.Builder().url("http://127.0.0.1:" + server.getAddress().getPort() + path).build();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.persistence;
+
+import com.qStivi.openai.ConversationObserver;
+import com.theokanning.openai.completion.chat.AssistantMessage;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import com.theokanning.openai.completion.chat.SystemMessage;
+import com.theokanning.openai.completion.chat.UserMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The {@code ConversationJournalTest} class contains unit tests for the {@link ConversationJournal} class.
+ * It verifies that conversations survive a restart, that replacements and snapshots are applied correctly,
+ * and that a torn record at the end of the journal is ignored.
+ */
+class ConversationJournalTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Tests that appended messages are restored after reopening the journal.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Test
+    void testRestore_AfterReopen_ReturnsAppendedMessages() throws IOException {
+        // Arrange
+        try (ConversationJournal journal = open()) {
+            ConversationObserver observer = journal.observer("alice");
+            observer.onAppend(new UserMessage("Hello"));
+            observer.onAppend(new AssistantMessage("Meow!"));
+            journal.observer("bob").onAppend(new UserMessage("Hi"));
+        }
+
+        // Act
+        List<ChatMessage> history;
+        try (ConversationJournal journal = open()) {
+            history = journal.restore("alice");
+        }
+
+        // Assert
+        assertEquals(2, history.size());
+        assertEquals("user", history.get(0).getRole());
+        assertEquals("Hello", history.get(0).getTextContent());
+        assertEquals("assistant", history.get(1).getRole());
+        assertEquals("Meow!", history.get(1).getTextContent());
+    }
+
+    /**
+     * Tests that a replacement discards the earlier history of the session only.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Test
+    void testRestore_AfterReplace_ReturnsReplacedHistory() throws IOException {
+        try (ConversationJournal journal = open()) {
+            journal.observer("alice").onAppend(new UserMessage("old"));
+            journal.observer("bob").onAppend(new UserMessage("kept"));
+            journal.observer("alice").onReplace(List.of(new SystemMessage("summary")));
+            journal.observer("alice").onAppend(new UserMessage("new"));
+
+            List<ChatMessage> alice = journal.restore("alice");
+            assertEquals(List.of("summary", "new"), alice.stream().map(ChatMessage::getTextContent).toList());
+            assertEquals(1, journal.restore("bob").size());
+            assertTrue(journal.restore("carol").isEmpty());
+        }
+    }
+
+    /**
+     * Tests that a snapshot keeps all sessions and empties the journal file.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Test
+    void testSnapshot_KeepsSessionsAndEmptiesJournal() throws IOException {
+        // Arrange
+        try (ConversationJournal journal = open()) {
+            journal.observer("alice").onAppend(new UserMessage("one"));
+            journal.observer("alice").onAppend(new AssistantMessage("two"));
+
+            // Act
+            journal.snapshot().join();
+            journal.observer("alice").onAppend(new UserMessage("three"));
+        }
+
+        // Assert
+        try (ConversationJournal journal = open()) {
+            assertEquals(List.of("one", "two", "three"), journal.restore("alice").stream().map(ChatMessage::getTextContent).toList());
+        }
+    }
+
+    /**
+     * Tests that garbage after the last complete record is discarded when the journal is reopened.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Test
+    void testRestore_TornTail_IsIgnored() throws IOException {
+        // Arrange
+        try (ConversationJournal journal = open()) {
+            journal.observer("alice").onAppend(new UserMessage("intact"));
+        }
+        Files.write(tempDir.resolve("conversations.journal"), new byte[]{0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+
+        // Act & Assert
+        try (ConversationJournal journal = open()) {
+            journal.observer("alice").onAppend(new UserMessage("after"));
+            assertEquals(List.of("intact", "after"), journal.restore("alice").stream().map(ChatMessage::getTextContent).toList());
+        }
+    }
+
+    private ConversationJournal open() throws IOException {
+        return new ConversationJournal(tempDir, false, 1_000, Duration.ofMinutes(10));
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.persistence;
+
+import com.qStivi.memory.Chunk;
+import com.qStivi.memory.MemoryIndex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The {@code MemoryIndexStoreTest} class contains unit tests for the {@link MemoryIndexStore} class.
+ * It verifies that an index is restored from segments and the log tail with its completed files,
+ * and that segments are merged without their retired chunks.
+ */
+class MemoryIndexStoreTest {
+
+    private static final int DIMENSIONS = 4;
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Tests that chunks in a segment and chunks only in the log are both restored, in order.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Test
+    void testRestore_SegmentAndLogTail() throws IOException {
+        // Arrange
+        var index = new MemoryIndex(DIMENSIONS);
+        try (MemoryIndexStore store = open(index, 100)) {
+            add(index, 0, 3);
+            store.snapshot().join();
+            add(index, 3, 5);
+        }
+
+        // Act
+        var restored = new MemoryIndex(DIMENSIONS);
+        try (MemoryIndexStore ignored = open(restored, 100)) {
+            // Assert
+            assertEquals(5, restored.size());
+            MemoryIndex.Slice slice = restored.slice(0, 5);
+            for (int i = 0; i < 5; i++) {
+                assertEquals("chunk " + i, slice.chunks().get(i).text());
+                assertEquals(i % DIMENSIONS == 0 ? 1f : 0f, slice.vectors()[i * DIMENSIONS]);
+            }
+            assertTrue(restored.contains(Path.of("doc.txt")));
+        }
+    }
+
+    /**
+     * Tests that completed files are restored and that chunks of a file read again stay retired.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Test
+    void testRestore_CompletionsRetireOldChunks() throws IOException {
+        // Arrange
+        var index = new MemoryIndex(DIMENSIONS);
+        try (MemoryIndexStore store = open(index, 100)) {
+            add(index, 0, 3);
+            index.complete(List.of(new MemoryIndex.Completion(Path.of("doc.txt"), 30, 1_000, 0)));
+            index.retire(Path.of("doc.txt"));
+            add(index, 3, 5);
+            index.complete(List.of(new MemoryIndex.Completion(Path.of("doc.txt"), 50, 2_000, 3)));
+            store.snapshot().join();
+        }
+
+        // Act
+        var restored = new MemoryIndex(DIMENSIONS);
+        try (MemoryIndexStore ignored = open(restored, 100)) {
+            List<MemoryIndex.Match> matches = restored.search(new float[]{1f, 0f, 0f, 0f}, 5);
+
+            // Assert
+            assertTrue(restored.isCurrent(Path.of("doc.txt"), 50, 2_000));
+            assertFalse(restored.isCurrent(Path.of("doc.txt"), 30, 1_000));
+            assertEquals(1, matches.size());
+            assertEquals("chunk 4", matches.getFirst().chunk().text());
+        }
+    }
+
+    /**
+     * Tests that frequent snapshots are merged so the number of segments stays bounded.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Test
+    void testSnapshot_MergesSegments() throws IOException {
+        // Arrange
+        var index = new MemoryIndex(DIMENSIONS);
+
+        // Act
+        try (MemoryIndexStore store = open(index, 100)) {
+            for (int i = 0; i < 10; i++) {
+                add(index, i, i + 1);
+                store.snapshot().join();
+            }
+        }
+
+        // Assert
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(2, files.filter(file -> file.getFileName().toString().endsWith(".seg")).count());
+        }
+        var restored = new MemoryIndex(DIMENSIONS);
+        try (MemoryIndexStore ignored = open(restored, 100)) {
+            assertEquals(10, restored.size());
+            assertEquals("chunk 9", restored.slice(9, 10).chunks().getFirst().text());
+        }
+    }
+
+    /**
+     * Tests that a merge drops retired chunks and that the positions of the remaining chunks, of chunks added after a
+     * restart and of completed files still agree after restarting again.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Test
+    void testMerge_DropsRetiredChunks() throws IOException {
+        // Arrange
+        Path doc = Path.of("doc.txt");
+        Path other = Path.of("other.txt");
+        var index = new MemoryIndex(DIMENSIONS);
+        try (MemoryIndexStore store = open(index, 100)) {
+            add(index, doc, 0, 3);
+            index.complete(List.of(new MemoryIndex.Completion(doc, 30, 1_000, 0)));
+            store.snapshot().join();
+            index.retire(doc);
+            add(index, doc, 3, 4);
+            index.complete(List.of(new MemoryIndex.Completion(doc, 40, 2_000, 3)));
+            store.snapshot().join();
+
+            // Act
+            add(index, other, 4, 7);
+            store.snapshot().join();
+        }
+        var restored = new MemoryIndex(DIMENSIONS);
+        try (MemoryIndexStore ignored = open(restored, 100)) {
+            add(restored, other, 7, 8);
+            restored.complete(List.of(new MemoryIndex.Completion(other, 80, 3_000, 1)));
+        }
+        var again = new MemoryIndex(DIMENSIONS);
+        try (MemoryIndexStore ignored = open(again, 100)) {
+
+            // Assert
+            assertEquals(5, again.size());
+            assertEquals(List.of("chunk 3", "chunk 4", "chunk 5", "chunk 6", "chunk 7"),
+                    again.slice(0, 5).chunks().stream().map(Chunk::text).toList());
+            assertTrue(again.isCurrent(doc, 40, 2_000));
+            assertTrue(again.isCurrent(other, 80, 3_000));
+            assertEquals(List.of("chunk 3", "chunk 7"),
+                    again.search(new float[]{0f, 0f, 0f, 1f}, 5).stream().map(match -> match.chunk().text()).sorted().toList());
+        }
+    }
+
+    private MemoryIndexStore open(MemoryIndex index, int snapshotEveryChunks) throws IOException {
+        return new MemoryIndexStore(tempDir, index, false, snapshotEveryChunks, Duration.ofHours(1), 2);
+    }
+
+    private static void add(MemoryIndex index, int from, int to) {
+        add(index, Path.of("doc.txt"), from, to);
+    }
+
+    private static void add(MemoryIndex index, Path source, int from, int to) {
+        for (int i = from; i < to; i++) {
+            float[] vector = new float[DIMENSIONS];
+            vector[i % DIMENSIONS] = 1f;
+            index.add(new Chunk(source, i * 10L, "chunk " + i, 2), vector);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.pipeline;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The {@code RingBufferTest} class contains unit tests for the {@link RingBuffer} class.
+ * It verifies the capacity rounding, rejection when full, FIFO order and that concurrent transfers lose nothing.
+ */
+public class RingBufferTest {
+
+    /**
+     * Tests that a full buffer rejects offers and frees a slot per poll, keeping FIFO order across laps.
+     */
+    @Test
+    public void testOffer_RejectsWhenFull() {
+        // Arrange
+        RingBuffer<Integer> ring = new RingBuffer<>(3);
+
+        // Act
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(i));
+        }
+        boolean acceptedFifth = ring.offer(4);
+        Integer first = ring.poll();
+        boolean acceptedAfterPoll = ring.offer(4);
+
+        // Assert
+        assertEquals(4, ring.capacity());
+        assertFalse(acceptedFifth);
+        assertEquals(Integer.valueOf(0), first);
+        assertTrue(acceptedAfterPoll);
+        assertEquals(List.of(1, 2, 3, 4), List.of(ring.poll(), ring.poll(), ring.poll(), ring.poll()));
+        assertNull(ring.poll());
+    }
+
+    /**
+     * Tests that concurrent producers and consumers transfer every element exactly once.
+     *
+     * @throws Exception If a thread is interrupted.
+     */
+    @Test
+    public void testOfferAndPoll_ConcurrentTransfersLoseNothing() throws Exception {
+        // Arrange
+        int producers = 4;
+        int consumers = 4;
+        int perProducer = 50_000;
+        RingBuffer<Integer> ring = new RingBuffer<>(64);
+        ConcurrentLinkedQueue<Integer> received = new ConcurrentLinkedQueue<>();
+        CountDownLatch done = new CountDownLatch(producers);
+        List<Thread> threads = new ArrayList<>();
+
+        // Act
+        for (int p = 0; p < producers; p++) {
+            int base = p * perProducer;
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    while (!ring.offer(base + i)) {
+                        Thread.onSpinWait();
+                    }
+                }
+                done.countDown();
+            }));
+        }
+        for (int c = 0; c < consumers; c++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                Integer[] batch = new Integer[16];
+                while (done.getCount() > 0 || ring.size() > 0) {
+                    int count = ring.drainTo(batch, batch.length);
+                    for (int i = 0; i < count; i++) {
+                        received.add(batch[i]);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Assert
+        boolean[] seen = new boolean[producers * perProducer];
+        for (int value : received) {
+            assertFalse(seen[value], "Received twice: " + value);
+            seen[value] = true;
+        }
+        assertEquals(producers * perProducer, received.size());
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.pipeline;
+
+import com.qStivi.config.PipelineSettings;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The {@code StagedPipelineTest} class contains unit tests for the {@link StagedPipeline} class.
+ * It verifies that events pass the stages in order, that failures skip to egress, that a full pipeline rejects events
+ * and that idle workers park.
+ */
+public class StagedPipelineTest {
+
+    private StagedPipeline<List<String>> pipeline;
+
+    /**
+     * Stops the workers.
+     */
+    @AfterEach
+    public void tearDown() {
+        if (pipeline != null) {
+            pipeline.close();
+        }
+    }
+
+    /**
+     * Tests that every event passes all stages in their order.
+     *
+     * @throws Exception If the pipeline fails.
+     */
+    @Test
+    public void testSubmit_PassesStagesInOrder() throws Exception {
+        // Arrange
+        pipeline = new StagedPipeline<>(settings(16), Map.of(
+                PipelineStage.INGRESS, trace -> trace.add("ingress"),
+                PipelineStage.ROUTING, trace -> trace.add("routing"),
+                PipelineStage.RETRIEVAL, trace -> trace.add("retrieval"),
+                PipelineStage.LLM, trace -> trace.add("llm"),
+                PipelineStage.EGRESS, trace -> trace.add("egress")));
+        List<CompletableFuture<List<String>>> futures = new ArrayList<>();
+
+        // Act
+        for (int i = 0; i < 10; i++) {
+            futures.add(pipeline.submit(Collections.synchronizedList(new ArrayList<>())));
+        }
+
+        // Assert
+        for (CompletableFuture<List<String>> future : futures) {
+            assertEquals(List.of("ingress", "routing", "retrieval", "llm", "egress"), future.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * Tests that a failing stage skips the remaining stages except egress and fails the future.
+     *
+     * @throws Exception If the pipeline fails unexpectedly.
+     */
+    @Test
+    public void testSubmit_FailureSkipsToEgress() throws Exception {
+        // Arrange
+        List<String> trace = Collections.synchronizedList(new ArrayList<>());
+        pipeline = new StagedPipeline<>(settings(16), Map.of(
+                PipelineStage.ROUTING, event -> {
+                    throw new IllegalStateException("boom");
+                },
+                PipelineStage.LLM, event -> event.add("llm"),
+                PipelineStage.EGRESS, event -> event.add("egress")));
+
+        // Act
+        ExecutionException error = assertThrows(ExecutionException.class, () -> pipeline.submit(trace).get(5, TimeUnit.SECONDS));
+
+        // Assert
+        assertTrue(error.getCause() instanceof IllegalStateException);
+        assertEquals(List.of("egress"), trace);
+    }
+
+    /**
+     * Tests that a stalled stage fills the rings behind it until new events are rejected.
+     *
+     * @throws Exception If the pipeline fails.
+     */
+    @Test
+    public void testSubmit_RejectsWhenBackedUp() throws Exception {
+        // Arrange
+        CountDownLatch release = new CountDownLatch(1);
+        pipeline = new StagedPipeline<>(settings(2), Map.of(PipelineStage.LLM, event -> release.await()));
+        List<CompletableFuture<List<String>>> accepted = new ArrayList<>();
+
+        // Act
+        CompletableFuture<List<String>> rejected = null;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (rejected == null && System.nanoTime() < deadline) {
+            CompletableFuture<List<String>> future = pipeline.submit(new ArrayList<>());
+            if (future.isCompletedExceptionally()) {
+                rejected = future;
+            } else {
+                accepted.add(future);
+            }
+        }
+        release.countDown();
+
+        // Assert
+        assertNotNull(rejected);
+        ExecutionException error = assertThrows(ExecutionException.class, rejected::get);
+        assertTrue(error.getCause() instanceof RejectedExecutionException);
+        for (CompletableFuture<List<String>> future : accepted) {
+            assertNotNull(future.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * Tests that idle workers park until an event arrives instead of polling, and exit once the pipeline is closed.
+     *
+     * @throws Exception If the pipeline fails.
+     */
+    @Test
+    public void testIdle_ParksUntilEventArrives() throws Exception {
+        // Arrange
+        pipeline = new StagedPipeline<>(settings(16), Map.of(PipelineStage.EGRESS, trace -> trace.add("egress")));
+        List<Thread> workers = awaitParked(PipelineStage.INGRESS.metricName() + "-", PipelineStage.EGRESS.metricName() + "-");
+
+        // Act
+        List<String> trace = pipeline.submit(Collections.synchronizedList(new ArrayList<>())).get(5, TimeUnit.SECONDS);
+        pipeline.close();
+
+        // Assert
+        assertEquals(List.of("egress"), trace);
+        for (Thread worker : workers) {
+            worker.join(5_000);
+            assertFalse(worker.isAlive(), worker.getName());
+        }
+    }
+
+    /**
+     * Waits until the platform workers of the given stages wait without a timeout.
+     */
+    private static List<Thread> awaitParked(String... prefixes) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (true) {
+            List<Thread> workers = Thread.getAllStackTraces().keySet().stream()
+                    .filter(thread -> List.of(prefixes).stream().anyMatch(thread.getName()::startsWith))
+                    .toList();
+            if (!workers.isEmpty() && workers.stream().allMatch(thread -> thread.getState() == Thread.State.WAITING)) {
+                return workers;
+            }
+            assertTrue(System.nanoTime() < deadline, "Workers did not park: " + workers.stream().map(Thread::getState).toList());
+            Thread.sleep(10);
+        }
+    }
+
+    private static PipelineSettings settings(int ringSize) {
+        return new PipelineSettings(true, ringSize, 4, 1, 1, 2, 1, 1);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.prompt;
+
+import com.qStivi.config.ConfigKeys;
+import com.qStivi.config.ConfigSnapshot;
+import org.apache.commons.configuration2.MapConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The {@code PromptAssemblerTest} class contains unit tests for the {@link PromptAssembler} class.
+ * It verifies that snippets are ranked by relevance and recency and packed into the token budget.
+ */
+public class PromptAssemblerTest {
+
+    private static final Instant NOW = Instant.parse("2024-06-01T00:00:00Z");
+
+    /**
+     * Tests that the most relevant snippets are used first and a snippet too large for the rest of the budget is skipped.
+     */
+    @Test
+    public void testAssemble_PacksBudget() {
+        // Arrange
+        var assembler = assembler(60, 128_000);
+        var large = snippet("word ".repeat(100), 0.9, null);
+        var best = snippet("Cats purr when they are happy.", 0.8, null);
+        var second = snippet("Cats sleep up to sixteen hours a day.", 0.5, null);
+        var irrelevant = snippet("Container ships carry cargo.", 0.05, null);
+
+        // Act
+        MemoryContext context = assembler.assemble(List.of(second, irrelevant, large, best), 100);
+
+        // Assert
+        assertEquals(List.of(best, second), context.used());
+        assertTrue(context.tokens() <= 60);
+        assertTrue(context.text().contains("Cats purr") && context.text().contains("sixteen hours"));
+    }
+
+    /**
+     * Tests that an old snippet ranks below a slightly less relevant recent one.
+     */
+    @Test
+    public void testAssemble_PrefersRecent() {
+        // Arrange
+        var assembler = assembler(30, 128_000);
+        var old = snippet("The user lives in Berlin.", 0.9, NOW.minus(Duration.ofDays(90)));
+        var recent = snippet("The user moved to Hamburg.", 0.7, NOW.minus(Duration.ofDays(1)));
+
+        // Act
+        MemoryContext context = assembler.assemble(List.of(old, recent), 100);
+
+        // Assert
+        assertEquals(recent, context.used().getFirst());
+    }
+
+    /**
+     * Tests that nothing is added when the context window is already used up by the request.
+     */
+    @Test
+    public void testAssemble_FullContextWindow() {
+        // Arrange
+        var assembler = assembler(1000, 6000);
+
+        // Act
+        MemoryContext context = assembler.assemble(List.of(snippet("Cats purr.", 0.9, null)), 1000);
+
+        // Assert
+        assertSame(MemoryContext.EMPTY, context);
+    }
+
+    private static PromptAssembler assembler(int memoryTokens, int contextTokens) {
+        var snapshot = ConfigSnapshot.from(new MapConfiguration(Map.of(
+                ConfigKeys.PROMPT_MEMORY_TOKENS, memoryTokens,
+                ConfigKeys.PROMPT_CONTEXT_TOKENS, contextTokens)));
+        return new PromptAssembler(() -> snapshot, () -> NOW);
+    }
+
+    private static Snippet snippet(String text, double relevance, Instant updated) {
+        return new Snippet(text, Snippet.Scope.PUBLIC, "test", relevance, updated);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.scheduling;
+
+import com.qStivi.config.ConfigKeys;
+import com.qStivi.config.ConfigSnapshot;
+import org.apache.commons.configuration2.MapConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The {@code AdmissionControllerTest} class contains unit tests for the {@link AdmissionController} class.
+ * It verifies the shedding thresholds, including messages waiting in a mailbox or another backlog, the wait estimate and the degraded replies.
+ */
+public class AdmissionControllerTest {
+
+    private static final String BUSY = "busy";
+
+    private final ConfigSnapshot snapshot = ConfigSnapshot.from(new MapConfiguration(Map.of(
+            ConfigKeys.SCHEDULING_WORKERS, 1,
+            ConfigKeys.SCHEDULING_QUANTUM, 10,
+            ConfigKeys.SCHEDULING_WEIGHTS, "default=1",
+            ConfigKeys.ADMISSION_MAX_QUEUE_DEPTH, 3,
+            ConfigKeys.ADMISSION_MAX_QUEUED_PER_USER, 2,
+            ConfigKeys.ADMISSION_MAX_WAIT_MILLIS, 1000,
+            ConfigKeys.ADMISSION_CACHE_SIZE, 10,
+            ConfigKeys.ADMISSION_BUSY_MESSAGE, BUSY)));
+    private final FairScheduler scheduler = new FairScheduler(() -> snapshot);
+    private final AdmissionController admission = new AdmissionController(() -> snapshot, scheduler);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    /**
+     * Blocks the only worker so that submitted tasks stay queued.
+     *
+     * @throws InterruptedException If the thread is interrupted while waiting for the worker.
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        scheduler.submit("blocker", "default", 1, () -> {
+            started.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Releases the worker and stops the scheduler.
+     */
+    @AfterEach
+    public void tearDown() {
+        release.countDown();
+        scheduler.close();
+    }
+
+    /**
+     * Tests that messages are shed once the sender's queue or the overall queue is full.
+     */
+    @Test
+    public void testAdmit_ShedsFullQueues() {
+        // Arrange
+        scheduler.submit("alice", "default", 1, () -> "a");
+        assertEquals(AdmissionController.Verdict.ADMITTED, admission.admit("alice"));
+        scheduler.submit("alice", "default", 1, () -> "a");
+
+        // Act & Assert
+        assertEquals(AdmissionController.Verdict.USER_QUEUE_FULL, admission.admit("alice"));
+        assertEquals(AdmissionController.Verdict.ADMITTED, admission.admit("bob"));
+        scheduler.submit("bob", "default", 1, () -> "b");
+        assertEquals(AdmissionController.Verdict.QUEUE_FULL, admission.admit("carol"));
+    }
+
+    /**
+     * Tests that messages waiting in the sender's mailbox behind an earlier message count against the sender's queue.
+     *
+     * @throws Exception If a task fails.
+     */
+    @Test
+    public void testAdmit_CountsMailboxBacklog() throws Exception {
+        // Arrange
+        CountDownLatch running = new CountDownLatch(1);
+        try (var mailboxes = new ConversationMailboxes()) {
+            var withMailboxes = new AdmissionController(() -> snapshot, scheduler, mailboxes);
+            var first = mailboxes.submit("alice", () -> {
+                running.countDown();
+                return release.await(5, TimeUnit.SECONDS);
+            });
+            assertTrue(running.await(5, TimeUnit.SECONDS));
+            assertEquals(AdmissionController.Verdict.ADMITTED, withMailboxes.admit("alice"));
+            mailboxes.submit("alice", () -> true);
+            mailboxes.submit("alice", () -> true);
+
+            // Act & Assert
+            assertEquals(2, mailboxes.waiting("alice"));
+            assertEquals(AdmissionController.Verdict.USER_QUEUE_FULL, withMailboxes.admit("alice"));
+            assertEquals(AdmissionController.Verdict.ADMITTED, withMailboxes.admit("bob"));
+            assertEquals(AdmissionController.Verdict.ADMITTED, admission.admit("alice"));
+            release.countDown();
+            assertTrue(first.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * Tests that the queue depth and worker count come from the given backlog, such as the message pipeline.
+     */
+    @Test
+    public void testAdmit_MeasuresGivenBacklog() {
+        // Arrange
+        var pipeline = new Backlog() {
+            @Override
+            public int queued() {
+                return 2;
+            }
+
+            @Override
+            public int queued(String userId) {
+                return userId.equals("alice") ? 2 : 0;
+            }
+
+            @Override
+            public int workers() {
+                return 4;
+            }
+        };
+        var withPipeline = new AdmissionController(() -> snapshot, pipeline);
+        withPipeline.completed("hi", "alice", "hello", TimeUnit.MILLISECONDS.toNanos(600));
+
+        // Act & Assert
+        assertEquals(300, TimeUnit.NANOSECONDS.toMillis(withPipeline.estimatedWaitNanos(pipeline.queued())));
+        assertEquals(AdmissionController.Verdict.USER_QUEUE_FULL, withPipeline.admit("alice"));
+        assertEquals(AdmissionController.Verdict.ADMITTED, withPipeline.admit("bob"));
+    }
+
+    /**
+     * Tests that messages are shed when the queue times the average processing time exceeds the maximum wait.
+     */
+    @Test
+    public void testAdmit_ShedsLongWaits() {
+        // Arrange
+        admission.completed("hi", "alice", "hello", TimeUnit.MILLISECONDS.toNanos(600));
+        scheduler.submit("alice", "default", 1, () -> "a");
+        assertEquals(AdmissionController.Verdict.ADMITTED, admission.admit("bob"));
+        scheduler.submit("bob", "default", 1, () -> "b");
+
+        // Act & Assert
+        assertEquals(1_200, TimeUnit.NANOSECONDS.toMillis(admission.estimatedWaitNanos(scheduler.queued())));
+        assertEquals(AdmissionController.Verdict.WAIT_TOO_LONG, admission.admit("carol"));
+    }
+
+    /**
+     * Tests that a shed message gets the sender's cached answer to the same message, or the busy message otherwise.
+     */
+    @Test
+    public void testDegrade_UsesCachedAnswerOfSameUser() {
+        // Arrange
+        admission.completed("What is your name?", "alice", "Mittens", 1_000);
+
+        // Act & Assert
+        assertEquals("Mittens", admission.degrade("  what is your name?", "alice", AdmissionController.Verdict.QUEUE_FULL));
+        assertEquals(BUSY, admission.degrade("What is your name?", "bob", AdmissionController.Verdict.QUEUE_FULL));
+        assertEquals(BUSY, admission.degrade("Something else", "alice", AdmissionController.Verdict.QUEUE_FULL));
+    }
+
+    /**
+     * Tests that deadlines expire once the maximum wait has passed.
+     */
+    @Test
+    public void testExpired() {
+        assertFalse(admission.expired(admission.deadline()));
+        assertTrue(admission.expired(System.nanoTime() - 1));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.scheduling;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The {@code CancellationRegistryTest} class contains unit tests for the {@link CancellationRegistry} and
+ * {@link RequestHandle} classes. It verifies that a newer message cancels the previous one of the same conversation,
+ * that cancelling interrupts the bound thread and that the interrupt does not outlive the binding.
+ */
+public class CancellationRegistryTest {
+
+    private final CancellationRegistry registry = new CancellationRegistry();
+
+    /**
+     * Tests that a new message cancels the previous message of the same conversation and runs its callbacks,
+     * but leaves other conversations alone.
+     */
+    @Test
+    public void testSupersede_CancelsPreviousMessageOfConversation() {
+        // Arrange
+        RequestHandle first = registry.supersede("alice");
+        RequestHandle other = registry.supersede("bob");
+        AtomicBoolean aborted = new AtomicBoolean();
+        first.onCancel(() -> aborted.set(true));
+
+        // Act
+        RequestHandle second = registry.supersede("alice");
+
+        // Assert
+        assertTrue(first.isCancelled());
+        assertTrue(aborted.get());
+        assertFalse(second.isCancelled());
+        assertFalse(other.isCancelled());
+        assertThrows(CancellationException.class, first::check);
+    }
+
+    /**
+     * Tests that cancelling interrupts the thread blocked on the request and that unbinding clears the interrupt.
+     *
+     * @throws Exception If the worker fails.
+     */
+    @Test
+    public void testCancel_InterruptsBoundThread() throws Exception {
+        // Arrange
+        RequestHandle handle = registry.supersede("alice");
+        CountDownLatch bound = new CountDownLatch(1);
+        CompletableFuture<Boolean> interruptedAfterUnbind = new CompletableFuture<>();
+        Thread worker = Thread.ofPlatform().start(() -> {
+            boolean interrupted = false;
+            try (var binding = handle.bind()) {
+                bound.countDown();
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+            interruptedAfterUnbind.complete(interrupted && Thread.currentThread().isInterrupted());
+        });
+        bound.await();
+
+        // Act
+        boolean cancelled = registry.cancel("alice");
+
+        // Assert
+        assertTrue(cancelled);
+        assertFalse(interruptedAfterUnbind.get(5, TimeUnit.SECONDS));
+        worker.join();
+        assertEquals(0, registry.inFlight());
+    }
+
+    /**
+     * Tests that a finished message does not remove the newer message that superseded it.
+     */
+    @Test
+    public void testFinish_KeepsNewerMessage() {
+        // Arrange
+        RequestHandle first = registry.supersede("alice");
+        RequestHandle second = registry.supersede("alice");
+
+        // Act
+        registry.finish(first);
+
+        // Assert
+        assertEquals(1, registry.inFlight());
+        assertTrue(registry.cancel("alice"));
+        assertTrue(second.isCancelled());
+    }
+}
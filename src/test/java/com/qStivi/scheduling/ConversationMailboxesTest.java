@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.scheduling;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The {@code ConversationMailboxesTest} class contains unit tests for the {@link ConversationMailboxes} class.
+ * It verifies that tasks of one conversation run in order and alone, while different conversations run in parallel.
+ */
+public class ConversationMailboxesTest {
+
+    private final ConversationMailboxes mailboxes = new ConversationMailboxes();
+
+    /**
+     * Stops accepting tasks.
+     */
+    @AfterEach
+    public void tearDown() {
+        mailboxes.close();
+    }
+
+    /**
+     * Tests that the tasks of one conversation run in submission order and never overlap.
+     *
+     * @throws Exception If a task fails.
+     */
+    @Test
+    public void testSubmit_SameConversationRunsInOrder() throws Exception {
+        // Arrange
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+
+        // Act
+        for (int i = 0; i < 200; i++) {
+            int n = i;
+            futures.add(mailboxes.submit("user", () -> {
+                if (running.incrementAndGet() > 1) {
+                    overlaps.incrementAndGet();
+                }
+                order.add(n);
+                running.decrementAndGet();
+                return n;
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(0, overlaps.get());
+        assertEquals(IntStream.range(0, 200).boxed().toList(), order);
+    }
+
+    /**
+     * Tests that a conversation waiting for its task does not hold up another conversation.
+     *
+     * @throws Exception If a task fails.
+     */
+    @Test
+    public void testSubmit_DifferentConversationsRunInParallel() throws Exception {
+        // Arrange
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> blocked = mailboxes.submit("slow", () -> {
+            release.await();
+            return "slow";
+        });
+
+        // Act
+        String fast = mailboxes.submit("fast", () -> "fast").get(5, TimeUnit.SECONDS);
+        release.countDown();
+
+        // Assert
+        assertEquals("fast", fast);
+        assertEquals("slow", blocked.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Tests that the next task of a conversation waits for the future of an asynchronous task.
+     *
+     * @throws Exception If a task fails.
+     */
+    @Test
+    public void testSubmitAsync_WaitsForReturnedFuture() throws Exception {
+        // Arrange
+        CompletableFuture<String> work = new CompletableFuture<>();
+        CompletableFuture<String> first = mailboxes.submitAsync("user", () -> work);
+        CompletableFuture<String> second = mailboxes.submit("user", () -> "second");
+
+        // Act
+        boolean secondRanEarly = second.isDone();
+        Thread.sleep(50);
+        secondRanEarly |= second.isDone();
+        work.complete("first");
+
+        // Assert
+        assertFalse(secondRanEarly);
+        assertEquals("first", first.get(5, TimeUnit.SECONDS));
+        assertEquals("second", second.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Tests that a failing task completes its future exceptionally and does not stop the conversation.
+     *
+     * @throws Exception If a task fails.
+     */
+    @Test
+    public void testSubmit_FailureDoesNotStopConversation() throws Exception {
+        // Arrange
+        CompletableFuture<String> failed = mailboxes.submit("user", () -> {
+            throw new IllegalStateException("boom");
+        });
+
+        // Act
+        String next = mailboxes.submit("user", () -> "next").get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertTrue(failed.isCompletedExceptionally());
+        assertEquals("next", next);
+    }
+
+    /**
+     * Tests that mailboxes without pending tasks are removed.
+     *
+     * @throws Exception If a task fails.
+     */
+    @Test
+    public void testActive_IdleMailboxesAreRemoved() throws Exception {
+        // Arrange
+        mailboxes.submit("a", () -> 1).get(5, TimeUnit.SECONDS);
+        mailboxes.submit("b", () -> 2).get(5, TimeUnit.SECONDS);
+
+        // Act
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (mailboxes.active() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+
+        // Assert
+        assertEquals(0, mailboxes.active());
+    }
+
+    /**
+     * Tests that only the tasks behind a running task of their conversation count as waiting.
+     *
+     * @throws Exception If a task fails.
+     */
+    @Test
+    public void testWaiting_CountsTasksBehindRunningTask() throws Exception {
+        // Arrange
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> first = mailboxes.submit("user", () -> {
+            started.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // Act
+        mailboxes.submit("user", () -> true);
+        CompletableFuture<Boolean> last = mailboxes.submit("user", () -> true);
+        int waitingBehind = mailboxes.waiting("user");
+        int waitingTotal = mailboxes.waiting();
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        last.get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(2, waitingBehind);
+        assertEquals(2, waitingTotal);
+        assertEquals(0, mailboxes.waiting());
+        assertEquals(0, mailboxes.waiting("other"));
+    }
+}
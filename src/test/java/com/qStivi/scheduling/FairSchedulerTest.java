@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.scheduling;
+
+import com.qStivi.config.ConfigKeys;
+import com.qStivi.config.ConfigSnapshot;
+import org.apache.commons.configuration2.MapConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The {@code FairSchedulerTest} class contains unit tests for the {@link FairScheduler} class.
+ * It verifies that flows are served round-robin by cost and weight, that message costs and weight changes apply,
+ * and that results and errors reach the caller.
+ */
+public class FairSchedulerTest {
+
+    private final AtomicReference<ConfigSnapshot> snapshot = new AtomicReference<>(settings("default=1,premium=2"));
+    private final FairScheduler scheduler = new FairScheduler(snapshot::get);
+
+    /**
+     * Stops the worker threads.
+     */
+    @AfterEach
+    public void tearDown() {
+        scheduler.close();
+    }
+
+    /**
+     * Tests that a flow with many queued tasks does not delay another flow beyond one task per round.
+     *
+     * @throws Exception If a task fails.
+     */
+    @Test
+    public void testSubmit_RoundRobinBetweenFlows() throws Exception {
+        // Arrange
+        List<String> order = queueBehindBlocker(new String[]{"spammer", "spammer", "spammer", "spammer", "normal", "normal"}, "default");
+
+        // Assert
+        assertEquals(List.of("spammer", "normal", "spammer", "normal", "spammer", "spammer"), order);
+    }
+
+    /**
+     * Tests that a flow with twice the weight runs twice as many tasks per round.
+     *
+     * @throws Exception If a task fails.
+     */
+    @Test
+    public void testSubmit_WeightsShareOfFlow() throws Exception {
+        // Arrange
+        List<String> order = queueBehindBlocker(new String[]{"spammer", "spammer", "spammer", "premium", "premium", "premium"}, "premium");
+
+        // Assert
+        assertEquals(List.of("spammer", "premium", "premium", "spammer", "premium", "spammer"), order);
+    }
+
+    /**
+     * Tests that a weight changed while tasks are queued applies from the next visit of their flow.
+     *
+     * @throws Exception If a task fails.
+     */
+    @Test
+    public void testSubmit_ReadsWeightOnEachVisit() throws Exception {
+        // Arrange
+        snapshot.set(settings("default=1"));
+
+        // Act
+        List<String> order = queueBehindBlocker(new String[]{"spammer", "spammer", "spammer", "premium", "premium", "premium"}, "premium",
+                () -> snapshot.set(settings("default=1,premium=2")));
+
+        // Assert
+        assertEquals(List.of("spammer", "premium", "premium", "spammer", "premium", "spammer"), order);
+    }
+
+    /**
+     * Tests that every message is charged the message cost, so a flow of empty messages does not run them all in one round.
+     *
+     * @throws Exception If a task fails.
+     */
+    @Test
+    public void testSubmit_ChargesMessageCost() throws Exception {
+        // Arrange
+        CountDownLatch release = block();
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (String flow : new String[]{"spammer", "spammer", "spammer", "spammer", "normal", "normal"}) {
+            futures.add(scheduler.submit(flow, "default", 0, () -> order.add(flow)));
+        }
+
+        // Act
+        release.countDown();
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(List.of("spammer", "spammer", "normal", "normal", "spammer", "spammer"), order);
+    }
+
+    /**
+     * Tests that the result or error of a task completes its future.
+     */
+    @Test
+    public void testSubmit_CompletesFuture() {
+        assertEquals("ok", scheduler.submit("user", "default", 1, () -> "ok").join());
+        CompletableFuture<String> failing = scheduler.submit("user", "default", 1, () -> {
+            throw new IllegalStateException("boom");
+        });
+        assertTrue(assertThrows(Exception.class, failing::join).getCause() instanceof IllegalStateException);
+    }
+
+    private List<String> queueBehindBlocker(String[] flows, String premiumChannel) throws Exception {
+        return queueBehindBlocker(flows, premiumChannel, () -> {
+        });
+    }
+
+    /**
+     * Queues tasks of 5 tokens, which cost 10 with the message cost, while the only worker is blocked, then runs the
+     * given change, releases the worker and records the order the tasks ran in. Flows named "premium" are submitted on
+     * the given channel, all others on the default channel.
+     */
+    private List<String> queueBehindBlocker(String[] flows, String premiumChannel, Runnable beforeRelease) throws Exception {
+        CountDownLatch release = block();
+
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (String flow : flows) {
+            String channel = flow.equals("premium") ? premiumChannel : "default";
+            futures.add(scheduler.submit(flow, channel, 5, () -> order.add(flow)));
+        }
+        assertEquals(flows.length, scheduler.queued());
+
+        beforeRelease.run();
+        release.countDown();
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+        return order;
+    }
+
+    /**
+     * Occupies the only worker until the returned latch is released.
+     */
+    private CountDownLatch block() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.submit("blocker", "default", 0, () -> {
+            started.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private static ConfigSnapshot settings(String weights) {
+        return ConfigSnapshot.from(new MapConfiguration(Map.of(
+                ConfigKeys.SCHEDULING_WORKERS, 1,
+                ConfigKeys.SCHEDULING_QUANTUM, 10,
+                ConfigKeys.SCHEDULING_MESSAGE_COST, 5,
+                ConfigKeys.SCHEDULING_WEIGHTS, weights)));
+    }
+}
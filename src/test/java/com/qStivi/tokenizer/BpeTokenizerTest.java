@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.tokenizer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The {@code BpeTokenizerTest} class contains unit tests for the {@link BpeTokenizer} class.
+ * It verifies vocabulary parsing, pre-tokenization and merging against a small hand-written vocabulary, and how
+ * {@link Tokenizers} finds vocabularies.
+ */
+public class BpeTokenizerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private String tiktoken;
+    private BpeVocabulary vocabulary;
+    private BpeTokenizer tokenizer;
+
+    /**
+     * Sets up a vocabulary with every single byte and the merges needed to build "hello".
+     *
+     * @throws IOException If the vocabulary cannot be parsed.
+     */
+    @BeforeEach
+    public void setUp() throws IOException {
+        StringBuilder lines = new StringBuilder();
+        Base64.Encoder encoder = Base64.getEncoder();
+        for (int b = 0; b < 256; b++) {
+            lines.append(encoder.encodeToString(new byte[]{(byte) b})).append(' ').append(b).append('\n');
+        }
+        String[] merges = {"he", "ll", "llo", "hello"};
+        for (int i = 0; i < merges.length; i++) {
+            lines.append(encoder.encodeToString(merges[i].getBytes(StandardCharsets.UTF_8))).append(' ').append(256 + i).append('\n');
+        }
+
+        tiktoken = lines.toString();
+        vocabulary = BpeVocabulary.read(new StringReader(tiktoken));
+        tokenizer = new BpeTokenizer(vocabulary);
+    }
+
+    /**
+     * Restores the default vocabulary lookup, which only uses the classpath.
+     */
+    @AfterEach
+    public void tearDown() {
+        Tokenizers.configure(null, false);
+    }
+
+    /**
+     * Tests that ranks are found for known byte slices and missing for unknown ones.
+     */
+    @Test
+    public void testVocabulary_RankLookup() {
+        // Arrange
+        byte[] bytes = "xhellox".getBytes(StandardCharsets.UTF_8);
+
+        // Act & Assert
+        assertEquals(260, vocabulary.size());
+        assertEquals(259, vocabulary.rank(bytes, 1, 5));
+        assertEquals('x', vocabulary.rank(bytes, 0, 1));
+        assertEquals(-1, vocabulary.rank(bytes, 0, 2));
+    }
+
+    /**
+     * Tests that pieces are merged by rank and that unmerged bytes count as one token each.
+     */
+    @Test
+    public void testCount_MergesByRank() {
+        assertEquals(0, tokenizer.count(""));
+        assertEquals(1, tokenizer.count("hello"));
+        assertEquals(2, tokenizer.count("hellos"));
+        assertEquals(7, tokenizer.count("hello world"));
+        assertEquals(5, tokenizer.count("12345"));
+        assertEquals(2, tokenizer.count("é"));
+    }
+
+    /**
+     * Tests that text is split into words, contractions, punctuation runs and whitespace like the cl100k pattern.
+     */
+    @Test
+    public void testPreTokenizer_Pieces() {
+        // Act
+        List<String> pieces = split(PreTokenizer.CL100K, "I'm here!!\n  ok");
+
+        // Assert
+        assertEquals(List.of("I", "'m", " here", "!!\n", " ", " ok"), pieces);
+    }
+
+    /**
+     * Tests that the o200k pattern splits words where their case changes, keeps contractions with their word and
+     * attaches line breaks to punctuation.
+     */
+    @Test
+    public void testPreTokenizer_O200kPieces() {
+        // Act
+        List<String> pieces = split(PreTokenizer.O200K, "HelloWorld isn't 12345 OK!!\n\nbye");
+
+        // Assert
+        assertEquals(List.of("Hello", "World", " isn't", " ", "123", "45", " OK", "!!\n\n", "bye"), pieces);
+    }
+
+    /**
+     * Tests that models are mapped to their encodings and that encodings without local support or vocabulary
+     * fall back to an estimate.
+     *
+     * @throws InterruptedException If the test is interrupted while the vocabulary is looked up.
+     */
+    @Test
+    public void testTokenizers_FallBackWithoutVocabulary() throws InterruptedException {
+        // Arrange
+        Tokenizers.configure(tempDir, false);
+
+        // Act
+        boolean exact = Tokenizers.awaitExact("gpt-4o-mini");
+
+        // Assert
+        assertEquals("o200k_base", Tokenizers.encodingOf("gpt-4o-mini"));
+        assertEquals("cl100k_base", Tokenizers.encodingOf("gpt-3.5-turbo"));
+        assertSame(HeuristicTokenCounter.INSTANCE, Tokenizers.forEncoding("missing_encoding"));
+        assertFalse(exact);
+        assertEquals(HeuristicTokenCounter.INSTANCE.count("hello world"), Tokenizers.forModel("gpt-4o-mini").count("hello world"));
+    }
+
+    /**
+     * Tests that a vocabulary in the configured directory is loaded and counts exactly.
+     *
+     * @throws IOException          If the vocabulary cannot be written.
+     * @throws InterruptedException If the test is interrupted while the vocabulary is loaded.
+     */
+    @Test
+    public void testTokenizers_LoadsVocabularyFromDirectory() throws IOException, InterruptedException {
+        // Arrange
+        Files.writeString(tempDir.resolve("o200k_base.tiktoken"), tiktoken);
+        Tokenizers.configure(tempDir, false);
+
+        // Act
+        boolean exact = Tokenizers.awaitExact("gpt-4o-mini");
+
+        // Assert
+        assertTrue(exact);
+        assertEquals(1, Tokenizers.forModel("gpt-4o-mini").count("hello"));
+    }
+
+    private static List<String> split(PreTokenizer preTokenizer, String text) {
+        List<String> pieces = new ArrayList<>();
+        PreTokenizer.Splitter splitter = preTokenizer.split(text);
+        for (int start = 0; start < text.length(); ) {
+            int end = splitter.next(start);
+            pieces.add(text.substring(start, end));
+            start = end;
+        }
+        return pieces;
+    }
+}
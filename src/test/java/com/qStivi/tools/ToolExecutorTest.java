@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.tools;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.qStivi.config.ConfigKeys;
+import com.qStivi.config.ConfigSnapshot;
+import org.apache.commons.configuration2.MapConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The {@code ToolExecutorTest} class contains unit tests for the {@link ToolExecutor} class.
+ * It verifies that calls run in parallel, time out on their own or within a turn, hit the cache, and that failures are
+ * reported as results.
+ */
+public class ToolExecutorTest {
+
+    private final ConfigSnapshot snapshot = ConfigSnapshot.from(new MapConfiguration(Map.of(
+            ConfigKeys.TOOLS_TIMEOUT_MILLIS, 200,
+            ConfigKeys.TOOLS_CACHE_SIZE, 100)));
+    private final ToolRegistry registry = new ToolRegistry();
+    private final ToolExecutor executor = new ToolExecutor(registry, () -> snapshot);
+
+    /**
+     * Stops the executor threads.
+     */
+    @AfterEach
+    public void tearDown() {
+        executor.close();
+    }
+
+    /**
+     * Tests that independent calls run at the same time and results keep the call order.
+     */
+    @Test
+    public void testExecuteAll_RunsInParallel() {
+        // Arrange
+        var barrier = new CountDownLatch(2);
+        registry.register(new TestTool("wait", Duration.ZERO, arguments -> {
+            barrier.countDown();
+            // Only succeeds if the other call runs concurrently
+            return barrier.await(1, TimeUnit.SECONDS) ? arguments.path("id").asText() : "serial";
+        }));
+
+        // Act
+        List<ToolResult> results = executor.executeAll(List.of(call("1", "wait", "a"), call("2", "wait", "b")));
+
+        // Assert
+        assertEquals(List.of("a", "b"), results.stream().map(ToolResult::content).toList());
+        assertEquals(List.of("1", "2"), results.stream().map(ToolResult::callId).toList());
+        assertTrue(results.stream().allMatch(ToolResult::success));
+    }
+
+    /**
+     * Tests that a slow call of a turn is abandoned after its timeout while the other calls still return.
+     */
+    @Test
+    public void testExecuteAll_BoundedByTimeout() {
+        // Arrange
+        registry.register(new TestTool("slow", Duration.ZERO, arguments -> {
+            Thread.sleep(5_000);
+            return "done";
+        }));
+        registry.register(new TestTool("fast", Duration.ZERO, arguments -> arguments.path("id").asText()));
+        long start = System.nanoTime();
+
+        // Act
+        List<ToolResult> results = executor.executeAll(List.of(call("1", "slow", "a"), call("2", "fast", "b")));
+
+        // Assert
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2), "The turn waits only for the timeout");
+        assertFalse(results.get(0).success());
+        assertTrue(results.get(0).content().contains("timed out"), results.get(0).content());
+        assertEquals("b", results.get(1).content());
+    }
+
+    /**
+     * Tests that a call exceeding the timeout is abandoned and reported as a failure.
+     */
+    @Test
+    public void testExecute_Timeout() {
+        // Arrange
+        registry.register(new TestTool("slow", Duration.ZERO, arguments -> {
+            Thread.sleep(5_000);
+            return "done";
+        }));
+
+        // Act
+        ToolResult result = executor.execute(call("1", "slow", "a"));
+
+        // Assert
+        assertFalse(result.success());
+        assertTrue(result.content().contains("timed out"), result.content());
+    }
+
+    /**
+     * Tests that identical calls to a cacheable tool execute only once.
+     */
+    @Test
+    public void testExecute_CachedResult() {
+        // Arrange
+        var executions = new AtomicInteger();
+        registry.register(new TestTool("lookup", Duration.ofMinutes(1), arguments -> "result " + executions.incrementAndGet()));
+
+        // Act
+        ToolResult first = executor.execute(call("1", "lookup", "a"));
+        ToolResult second = executor.execute(call("2", "lookup", "a"));
+
+        // Assert
+        assertEquals("result 1", first.content());
+        assertEquals("result 1", second.content());
+        assertFalse(first.cached());
+        assertTrue(second.cached());
+        assertEquals(1, executions.get());
+    }
+
+    /**
+     * Tests that unknown tools and failing tools are reported to the model instead of thrown.
+     */
+    @Test
+    public void testExecute_Failures() {
+        // Arrange
+        registry.register(new TestTool("broken", Duration.ZERO, arguments -> {
+            throw new IllegalStateException("out of range");
+        }));
+
+        // Act
+        ToolResult unknown = executor.execute(call("1", "missing", "a"));
+        ToolResult broken = executor.execute(call("2", "broken", "a"));
+
+        // Assert
+        assertFalse(unknown.success());
+        assertTrue(unknown.content().contains("missing"), unknown.content());
+        assertFalse(broken.success());
+        assertTrue(broken.content().contains("out of range"), broken.content());
+    }
+
+    private static ToolCall call(String id, String tool, String argument) {
+        return new ToolCall(id, tool, JsonNodeFactory.instance.objectNode().put("id", argument));
+    }
+
+    /**
+     * The body of a {@link TestTool}.
+     */
+    private interface Body {
+        String run(JsonNode arguments) throws Exception;
+    }
+
+    /**
+     * A tool whose behavior is given by the test.
+     */
+    private record TestTool(String name, Duration cacheTtl, Body body) implements Tool {
+
+        @Override
+        public String description() {
+            return "Test tool " + name;
+        }
+
+        @Override
+        public JsonNode parameters() {
+            return JsonNodeFactory.instance.objectNode().put("type", "object");
+        }
+
+        @Override
+        public String execute(JsonNode arguments) throws Exception {
+            return body.run(arguments);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2024 Stephan Glaue
+ *
+ * This source code is licensed under the MIT License found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.qStivi.tracing;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The {@code RequestContextTest} class contains unit tests for the {@link RequestContext} class.
+ * It verifies that the context and its MDC entry follow a request across executor hops and are cleared afterwards.
+ */
+public class RequestContextTest {
+
+    private final ExecutorService first = Executors.newSingleThreadExecutor();
+    private final ExecutorService second = Executors.newSingleThreadExecutor();
+
+    /**
+     * Stops the executors.
+     */
+    @AfterEach
+    public void tearDown() {
+        first.shutdownNow();
+        second.shutdownNow();
+    }
+
+    /**
+     * Tests that opening a context binds it and its MDC entry, and that closing it clears both.
+     */
+    @Test
+    public void testOpen_BindsAndClears() {
+        // Act
+        RequestContext context;
+        String mdc;
+        try (RequestContext.Scope scope = RequestContext.open("user")) {
+            context = scope.context();
+            mdc = MDC.get(RequestContext.MDC_KEY);
+            assertSame(context, RequestContext.current());
+        }
+
+        // Assert
+        assertEquals("user", context.userId());
+        assertEquals(context.requestId(), mdc);
+        assertNull(RequestContext.current());
+        assertEquals("-", RequestContext.currentId());
+        assertNull(MDC.get(RequestContext.MDC_KEY));
+    }
+
+    /**
+     * Tests that closing a nested context restores the outer one and its MDC entry.
+     */
+    @Test
+    public void testOpen_NestedRestoresOuter() {
+        try (RequestContext.Scope outer = RequestContext.open("outer")) {
+            // Act
+            try (RequestContext.Scope ignored = RequestContext.open("inner")) {
+                assertEquals("inner", RequestContext.current().userId());
+            }
+
+            // Assert
+            assertSame(outer.context(), RequestContext.current());
+            assertEquals(outer.context().requestId(), MDC.get(RequestContext.MDC_KEY));
+        }
+    }
+
+    /**
+     * Tests that a wrapped task sees the context, its attachments and its MDC entry on each executor it hops to,
+     * and that the worker threads hold no context once the tasks are done.
+     *
+     * @throws Exception If a task fails.
+     */
+    @Test
+    public void testWrap_PropagatesAcrossExecutorHops() throws Exception {
+        // Arrange
+        List<String> seen = Collections.synchronizedList(new ArrayList<>());
+        String requestId;
+
+        // Act
+        try (RequestContext.Scope scope = RequestContext.open("user")) {
+            requestId = scope.context().requestId();
+            scope.context().attach(String.class, "state");
+            Future<Future<?>> hop = first.submit(RequestContext.wrap(() -> {
+                seen.add(RequestContext.currentId() + " " + MDC.get(RequestContext.MDC_KEY));
+                return second.submit(RequestContext.wrap(() -> {
+                    seen.add(RequestContext.currentId() + " " + MDC.get(RequestContext.MDC_KEY));
+                    seen.add(RequestContext.current().attachment(String.class));
+                }));
+            }));
+            hop.get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS);
+        }
+
+        // Assert
+        assertEquals(List.of(requestId + " " + requestId, requestId + " " + requestId, "state"), seen);
+        for (ExecutorService executor : List.of(first, second)) {
+            String leftover = executor.submit(() -> RequestContext.currentId() + " " + MDC.get(RequestContext.MDC_KEY))
+                    .get(5, TimeUnit.SECONDS);
+            assertEquals("- null", leftover);
+        }
+    }
+
+    /**
+     * Tests that a task wrapped without a context unbinds a context left behind on its worker thread.
+     *
+     * @throws Exception If a task fails.
+     */
+    @Test
+    public void testWrap_WithoutContextRunsUnbound() throws Exception {
+        // Arrange
+        first.submit(() -> RequestContext.open("stale")).get(5, TimeUnit.SECONDS);
+
+        // Act
+        String during = first.submit(RequestContext.wrap(() -> RequestContext.currentId() + " " + MDC.get(RequestContext.MDC_KEY)))
+                .get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals("- null", during);
+    }
+}